@@ -1,7 +1,9 @@
 package com.medoc.opd;
 
+import com.medoc.opd.config.NativeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
 
 /**
  * OPD Token Allocation System
@@ -16,6 +18,7 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
  * Access Swagger UI: http://localhost:8080/swagger-ui.html
  */
 @SpringBootApplication
+@ImportRuntimeHints(NativeHints.class)
 public class OPDTokenSystemApplication {
 
     public static void main(String[] args) {
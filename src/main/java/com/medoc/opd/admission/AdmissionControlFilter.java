@@ -0,0 +1,387 @@
+package com.medoc.opd.admission;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.medoc.opd.cluster.ClusterConfig;
+import com.medoc.opd.config.CachedBodyRequest;
+import com.medoc.opd.config.GlobalExceptionHandler.ErrorResponse;
+import com.medoc.opd.model.TokenSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control for the API: sheds overload with {@code 429 Too Many
+ * Requests} before any engine work is done.
+ *
+ * Every {@code /api/**} request passes three checks, cheapest first:
+ * <ol>
+ *   <li>a token bucket per client (the remote address, or the
+ *       {@code X-Client-Id} header when a {@code trusted-proxies} gateway
+ *       sent the request), so one kiosk or integration cannot flood the API;</li>
+ *   <li>for allocations ({@code POST /api/tokens}), a token bucket per doctor
+ *       from the request body, so a burst for one doctor cannot monopolise
+ *       that doctor's lock;</li>
+ *   <li>a concurrency limit: at most {@code max-concurrent} requests run at
+ *       once and up to {@code max-queue} more wait up to
+ *       {@code queue-timeout-millis} for a turn.</li>
+ * </ol>
+ *
+ * The wait queue is ordered by {@link RequestClass}: patient-flow moves
+ * (check-in, start, complete, no-show, cancel) before bookings, bookings by
+ * {@code TokenSource} priority, then admin changes, then reads. A full queue
+ * sheds its lowest-ranked waiter to make room for a better-ranked arrival, so
+ * under a flood of dashboard polls the polls are what gets rejected. With
+ * {@code opd.admission.priority-scheduling=false} the queue is plain FIFO.
+ *
+ * {@code POST /api/tokens/emergency} is the fast lane: it skips all three,
+ * and is only held to a generous bucket of its own per client
+ * ({@code emergency-client-rate}), so a faulty kiosk cannot fill the pool
+ * through it. Event long-polls ({@code /api/events}) skip the concurrency
+ * limit since they mostly wait, but they hold a thread while they do, so at
+ * most {@code max-long-polls} run at once. The normal lane can therefore never
+ * hold more than {@code max-concurrent + max-queue + max-long-polls} Tomcat
+ * threads, and the rest of the pool stays free for emergencies (and for the
+ * internal cluster/standby and actuator endpoints, which are not filtered).
+ * Requests forwarded by a cluster peer, which only counts with clustering on
+ * and the cluster secret presented ({@link ClusterConfig#isTrustedForward}),
+ * are not charged to a client bucket again. Each kind of bucket is kept for
+ * at most {@code max-tracked-keys} keys, least recently used dropped first.
+ *
+ * Metrics: {@code opd.admission.admitted} (tag {@code class}),
+ * {@code opd.admission.rejected} (tag {@code reason}), the timer
+ * {@code opd.admission.queue.wait} and gauge {@code opd.admission.queue.depth}
+ * (both tagged {@code class}), and the gauge {@code opd.admission.in-flight}.
+ */
+@Slf4j
+@Component
+@Order(0)
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "opd.admission.enabled", havingValue = "true")
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    public static final String CLIENT_ID_HEADER = "X-Client-Id";
+
+    // Within a class, bookings are ranked by TokenSource base priority (at most 1000)
+    private static final long RANKS_PER_CLASS = 10_000;
+    private static final int MAX_SOURCE_PRIORITY = 1_000;
+
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    // Absent unless opd.cluster.enabled, in which case no request counts as forwarded
+    private final ObjectProvider<ClusterConfig> clusterConfig;
+
+    @Value("${opd.admission.client-rate:20}")
+    private double clientRate;
+
+    @Value("${opd.admission.client-burst:40}")
+    private double clientBurst;
+
+    @Value("${opd.admission.doctor-rate:10}")
+    private double doctorRate;
+
+    @Value("${opd.admission.doctor-burst:30}")
+    private double doctorBurst;
+
+    @Value("${opd.admission.max-concurrent:32}")
+    private int maxConcurrent;
+
+    @Value("${opd.admission.max-queue:64}")
+    private int maxQueue;
+
+    @Value("${opd.admission.queue-timeout-millis:500}")
+    private long queueTimeoutMillis;
+
+    @Value("${opd.admission.priority-scheduling:true}")
+    private boolean priorityScheduling;
+
+    @Value("${opd.admission.max-long-polls:16}")
+    private int maxLongPolls;
+
+    @Value("${opd.admission.emergency-client-rate:2}")
+    private double emergencyClientRate;
+
+    @Value("${opd.admission.emergency-client-burst:10}")
+    private double emergencyClientBurst;
+
+    @Value("${opd.admission.max-tracked-keys:10000}")
+    private int maxTrackedKeys;
+
+    // Remote addresses, e.g. the API gateway, whose X-Client-Id header is believed
+    @Value("${opd.admission.trusted-proxies:}")
+    private Set<String> trustedProxies;
+
+    @Value("${server.tomcat.threads.max:200}")
+    private int serverThreads;
+
+    private final Map<String, TokenBucket> clientBuckets = boundedBuckets();
+    private final Map<String, TokenBucket> doctorBuckets = boundedBuckets();
+    private final Map<String, TokenBucket> emergencyBuckets = boundedBuckets();
+    private final Map<RequestClass, Counter> admitted = new EnumMap<>(RequestClass.class);
+    private final Map<RequestClass, Timer> queueWait = new EnumMap<>(RequestClass.class);
+
+    private PriorityScheduler scheduler;
+    private Semaphore longPolls;
+    private Counter rejectedClient;
+    private Counter rejectedDoctor;
+    private Counter rejectedQueueFull;
+    private Counter rejectedQueueTimeout;
+    private Counter rejectedDisplaced;
+    private Counter rejectedEmergency;
+    private Counter rejectedLongPolls;
+
+    @PostConstruct
+    public void start() {
+        if (maxConcurrent < 1 || maxQueue < 0 || maxLongPolls < 0) {
+            throw new IllegalArgumentException(
+                    "opd.admission.max-concurrent must be >= 1, max-queue and max-long-polls >= 0");
+        }
+        scheduler = new PriorityScheduler(maxConcurrent, maxQueue, RequestClass.values().length);
+        longPolls = new Semaphore(maxLongPolls);
+        int normalLane = maxConcurrent + maxQueue + maxLongPolls;
+        if (normalLane >= serverThreads) {
+            log.warn("opd.admission.max-concurrent + max-queue + max-long-polls ({}) leaves no server threads for "
+                    + "emergencies (server.tomcat.threads.max={})", normalLane, serverThreads);
+        }
+
+        for (RequestClass requestClass : RequestClass.values()) {
+            admitted.put(requestClass, Counter.builder("opd.admission.admitted")
+                    .description("API requests let through admission control")
+                    .tag("class", requestClass.getTag())
+                    .register(meterRegistry));
+            if (requestClass == RequestClass.EMERGENCY) {
+                continue;
+            }
+            queueWait.put(requestClass, Timer.builder("opd.admission.queue.wait")
+                    .description("Time admitted requests waited for a concurrency slot")
+                    .tag("class", requestClass.getTag())
+                    .register(meterRegistry));
+            Gauge.builder("opd.admission.queue.depth", scheduler, s -> s.getWaiting(requestClass.ordinal()))
+                    .description("Requests waiting for a concurrency slot")
+                    .tag("class", requestClass.getTag())
+                    .register(meterRegistry);
+        }
+        rejectedClient = rejected("client-rate");
+        rejectedDoctor = rejected("doctor-rate");
+        rejectedQueueFull = rejected("queue-full");
+        rejectedQueueTimeout = rejected("queue-timeout");
+        rejectedDisplaced = rejected("displaced");
+        rejectedEmergency = rejected("emergency-rate");
+        rejectedLongPolls = rejected("long-polls");
+        Gauge.builder("opd.admission.in-flight", scheduler, PriorityScheduler::getRunning)
+                .description("Requests holding a concurrency slot")
+                .register(meterRegistry);
+
+        log.info("Admission control on: {}/s per client (burst {}), {}/s per doctor (burst {}), "
+                + "{} concurrent + {} queued ({})", clientRate, clientBurst, doctorRate, doctorBurst, maxConcurrent,
+                maxQueue, priorityScheduling ? "priority order" : "FIFO");
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI();
+        RequestClass requestClass = RequestClass.classify(request.getMethod(), path);
+
+        long now = System.nanoTime();
+        if (requestClass == RequestClass.EMERGENCY) {
+            long wait = acquire(emergencyBuckets, clientKey(request), emergencyClientRate, emergencyClientBurst, now);
+            if (wait > 0) {
+                rejectedEmergency.increment();
+                reject(response, wait, "Too many emergency admissions from this client");
+                return;
+            }
+            admitted.get(requestClass).increment();
+            chain.doFilter(request, response);
+            return;
+        }
+
+        if (!isForwardedByPeer(request)) {
+            long wait = acquire(clientBuckets, clientKey(request), clientRate, clientBurst, now);
+            if (wait > 0) {
+                rejectedClient.increment();
+                reject(response, wait, "Too many requests from this client");
+                return;
+            }
+        }
+
+        long rank = requestClass.ordinal() * RANKS_PER_CLASS;
+        if (requestClass == RequestClass.BOOKING) {
+            CachedBodyRequest cached = CachedBodyRequest.of(request);
+            request = cached;
+            JsonNode body = readBody(cached);
+            String doctorId = text(body, "doctorId");
+            if (doctorId != null) {
+                long wait = acquire(doctorBuckets, doctorId, doctorRate, doctorBurst, now);
+                if (wait > 0) {
+                    rejectedDoctor.increment();
+                    reject(response, wait, "Too many bookings for doctor " + doctorId + " right now");
+                    return;
+                }
+            }
+            rank += MAX_SOURCE_PRIORITY - sourcePriority(text(body, "source"));
+        }
+
+        if (path.startsWith("/api/events")) {
+            if (!longPolls.tryAcquire()) {
+                rejectedLongPolls.increment();
+                reject(response, TimeUnit.SECONDS.toNanos(1), "Too many open event polls");
+                return;
+            }
+            try {
+                admitted.get(requestClass).increment();
+                chain.doFilter(request, response);
+            } finally {
+                longPolls.release();
+            }
+            return;
+        }
+
+        PriorityScheduler.Outcome outcome;
+        try {
+            outcome = scheduler.acquire(priorityScheduling ? rank : 0, requestClass.ordinal(),
+                    TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            outcome = PriorityScheduler.Outcome.TIMED_OUT;
+        }
+        switch (outcome) {
+            case QUEUE_FULL -> rejectedQueueFull.increment();
+            case TIMED_OUT -> rejectedQueueTimeout.increment();
+            case DISPLACED -> rejectedDisplaced.increment();
+            case ADMITTED -> queueWait.get(requestClass).record(System.nanoTime() - now, TimeUnit.NANOSECONDS);
+        }
+        if (outcome != PriorityScheduler.Outcome.ADMITTED) {
+            reject(response, TimeUnit.SECONDS.toNanos(1), "Server is busy");
+            return;
+        }
+
+        try {
+            admitted.get(requestClass).increment();
+            chain.doFilter(request, response);
+        } finally {
+            scheduler.release();
+        }
+    }
+
+    /**
+     * Takes a permit from the key's bucket, creating it if needed.
+     *
+     * @return 0 if admitted, otherwise nanoseconds until the bucket has a permit again
+     */
+    private long acquire(Map<String, TokenBucket> buckets, String key, double rate, double burst, long now) {
+        TokenBucket bucket;
+        synchronized (buckets) {
+            bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(rate, burst, now));
+        }
+        return bucket.tryAcquire(now);
+    }
+
+    /**
+     * Buckets by key, dropping the least recently used past {@code max-tracked-keys}.
+     * Callers synchronize on the map.
+     */
+    private Map<String, TokenBucket> boundedBuckets() {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+                return size() > maxTrackedKeys;
+            }
+        };
+    }
+
+    private boolean isForwardedByPeer(HttpServletRequest request) {
+        ClusterConfig cluster = clusterConfig.getIfAvailable();
+        return cluster != null && cluster.isTrustedForward(request);
+    }
+
+    /**
+     * The remote address, or the client ID a trusted proxy vouches for. Any
+     * other sender could pick a fresh ID per request to dodge its bucket.
+     */
+    private String clientKey(HttpServletRequest request) {
+        String remote = request.getRemoteAddr();
+        if (trustedProxies.contains(remote)) {
+            String clientId = request.getHeader(CLIENT_ID_HEADER);
+            if (clientId != null && !clientId.isBlank()) {
+                return "id:" + clientId;
+            }
+        }
+        return "addr:" + remote;
+    }
+
+    private JsonNode readBody(CachedBodyRequest request) {
+        if (request.getBody().length == 0) {
+            return null;
+        }
+        try {
+            return objectMapper.readTree(request.getBody());
+        } catch (IOException e) {
+            // Malformed body; let the controller reject it
+            return null;
+        }
+    }
+
+    private static String text(JsonNode body, String field) {
+        JsonNode value = body != null ? body.get(field) : null;
+        return value != null && value.isTextual() ? value.asText() : null;
+    }
+
+    private static int sourcePriority(String source) {
+        if (source == null) {
+            return 0;
+        }
+        try {
+            return Math.min(TokenSource.valueOf(source).getBasePriority(), MAX_SOURCE_PRIORITY);
+        } catch (IllegalArgumentException e) {
+            return 0;
+        }
+    }
+
+    private void reject(HttpServletResponse response, long retryAfterNanos, String message) throws IOException {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER,
+                String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(retryAfterNanos + 999_999_999L))));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(),
+                new ErrorResponse(HttpStatus.TOO_MANY_REQUESTS.value(), message, LocalDateTime.now()));
+    }
+
+    private Counter rejected(String reason) {
+        return Counter.builder("opd.admission.rejected")
+                .description("API requests shed with 429 before reaching the engine")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
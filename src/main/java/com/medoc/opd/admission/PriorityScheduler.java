@@ -0,0 +1,174 @@
+package com.medoc.opd.admission;
+
+import java.util.Comparator;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit whose waiters are served by rank rather than arrival:
+ * at most {@code maxConcurrent} callers hold a slot, up to {@code maxQueue}
+ * more wait, and each freed slot goes to the waiter with the lowest rank
+ * (earliest arrival among equals). When the queue is full, a newcomer
+ * displaces the worst-ranked waiter if it outranks it, so overload is shed
+ * from the bottom.
+ *
+ * With every caller on the same rank this is a plain FIFO limiter.
+ */
+public class PriorityScheduler {
+
+    public enum Outcome {
+        ADMITTED,
+        /** Queue full of waiters ranked at least as high. */
+        QUEUE_FULL,
+        /** Waited the full timeout without getting a slot. */
+        TIMED_OUT,
+        /** Was waiting, then pushed out of a full queue by a higher-ranked request. */
+        DISPLACED
+    }
+
+    private final int maxConcurrent;
+    private final int maxQueue;
+    private final TreeSet<Waiter> queue = new TreeSet<>(
+            Comparator.comparingLong((Waiter w) -> w.rank).thenComparingLong(w -> w.sequence));
+
+    // Each waiter has its own condition, so a freed slot wakes exactly the thread it goes to
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // All guarded by lock
+    private int running;
+    private long sequence;
+    private final int[] waitingByBucket;
+
+    /**
+     * @param buckets number of waiting counters kept for {@link #getWaiting(int)},
+     *                e.g. one per request class
+     */
+    public PriorityScheduler(int maxConcurrent, int maxQueue, int buckets) {
+        if (maxConcurrent < 1 || maxQueue < 0) {
+            throw new IllegalArgumentException("Need at least one concurrent slot and a non-negative queue");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueue = maxQueue;
+        this.waitingByBucket = new int[buckets];
+    }
+
+    /**
+     * Takes a slot, waiting up to {@code timeoutNanos} behind better-ranked
+     * callers. Every {@link Outcome#ADMITTED} must be paired with
+     * {@link #release()}.
+     *
+     * @param rank   lower runs sooner
+     * @param bucket which {@link #getWaiting(int)} counter the caller shows up in while queued
+     */
+    public Outcome acquire(long rank, int bucket, long timeoutNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            if (running < maxConcurrent && queue.isEmpty()) {
+                running++;
+                return Outcome.ADMITTED;
+            }
+            if (queue.size() >= maxQueue) {
+                Waiter worst = queue.isEmpty() ? null : queue.last();
+                if (worst == null || worst.rank <= rank) {
+                    return Outcome.QUEUE_FULL;
+                }
+                dequeue(worst);
+                worst.complete(Outcome.DISPLACED);
+            }
+
+            Waiter waiter = new Waiter(rank, sequence++, bucket, lock.newCondition());
+            queue.add(waiter);
+            waitingByBucket[bucket]++;
+            long remaining = timeoutNanos;
+            try {
+                while (waiter.outcome == null) {
+                    if (remaining <= 0) {
+                        dequeue(waiter);
+                        return Outcome.TIMED_OUT;
+                    }
+                    remaining = waiter.signal.awaitNanos(remaining);
+                }
+                return waiter.outcome;
+            } catch (InterruptedException e) {
+                if (waiter.outcome == Outcome.ADMITTED) {
+                    // Granted while being interrupted: give the slot to the next waiter
+                    release();
+                } else if (waiter.outcome == null) {
+                    dequeue(waiter);
+                }
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release() {
+        lock.lock();
+        try {
+            running--;
+            while (running < maxConcurrent && !queue.isEmpty()) {
+                Waiter next = queue.first();
+                dequeue(next);
+                next.complete(Outcome.ADMITTED);
+                running++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getRunning() {
+        lock.lock();
+        try {
+            return running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWaiting(int bucket) {
+        lock.lock();
+        try {
+            return waitingByBucket[bucket];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dequeue(Waiter waiter) {
+        if (queue.remove(waiter)) {
+            waitingByBucket[waiter.bucket]--;
+        }
+    }
+
+    private static final class Waiter {
+        private final long rank;
+        private final long sequence;
+        private final int bucket;
+        private final Condition signal;
+        private Outcome outcome;
+
+        private Waiter(long rank, long sequence, int bucket, Condition signal) {
+            this.rank = rank;
+            this.sequence = sequence;
+            this.bucket = bucket;
+            this.signal = signal;
+        }
+
+        private void complete(Outcome result) {
+            outcome = result;
+            signal.signal();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.medoc.opd.admission;
+
+import java.util.Set;
+
+/**
+ * Scheduling class of an API request, in the order requests are served
+ * when they compete for the engine.
+ */
+public enum RequestClass {
+
+    /** {@code POST /api/tokens/emergency}: never queued. */
+    EMERGENCY("emergency"),
+
+    /** Moves of a patient already in the building: check-in, start, complete, no-show, cancel. */
+    PATIENT_FLOW("patient-flow"),
+
+    /** New allocations ({@code POST /api/tokens}); ordered among themselves by {@code TokenSource}. */
+    BOOKING("booking"),
+
+    /** Slot, capacity and schedule changes. */
+    ADMIN("admin"),
+
+    /** GETs: queues, dashboards, statistics, analytics, events. */
+    READ("read");
+
+    private static final Set<String> FLOW_ACTIONS = Set.of(
+            "check-in", "start-consultation", "complete-consultation", "no-show");
+
+    private final String tag;
+
+    RequestClass(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * Metric tag value.
+     */
+    public String getTag() {
+        return tag;
+    }
+
+    public static RequestClass classify(String method, String path) {
+        if ("GET".equals(method) || "HEAD".equals(method)) {
+            return READ;
+        }
+        if (!path.startsWith("/api/tokens")) {
+            return ADMIN;
+        }
+        String[] segments = path.substring("/api/tokens".length()).split("/");
+        // "" for /api/tokens, then the token ID or sub-resource, then the action
+        if (segments.length <= 1) {
+            return "POST".equals(method) ? BOOKING : ADMIN;
+        }
+        if (segments.length == 2) {
+            if ("emergency".equals(segments[1])) {
+                return EMERGENCY;
+            }
+            return "DELETE".equals(method) ? PATIENT_FLOW : ADMIN;
+        }
+        return segments.length == 3 && FLOW_ACTIONS.contains(segments[2]) ? PATIENT_FLOW : ADMIN;
+    }
+}
@@ -0,0 +1,50 @@
+package com.medoc.opd.admission;
+
+/**
+ * Token bucket: holds up to {@code capacity} permits, refilled continuously
+ * at {@code ratePerSecond}. A full bucket allows a burst of {@code capacity}
+ * requests; after that requests are admitted at the refill rate.
+ *
+ * Time is passed in (from {@link System#nanoTime()}) so callers read the
+ * clock once per request.
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double permitsPerNano;
+
+    private double permits;
+    private long lastRefillNanos;
+
+    public TokenBucket(double ratePerSecond, double capacity, long nowNanos) {
+        if (ratePerSecond <= 0 || capacity < 1) {
+            throw new IllegalArgumentException("Token bucket needs a positive rate and a capacity of at least 1");
+        }
+        this.capacity = capacity;
+        this.permitsPerNano = ratePerSecond / 1_000_000_000.0;
+        this.permits = capacity;
+        this.lastRefillNanos = nowNanos;
+    }
+
+    /**
+     * Takes one permit if available.
+     *
+     * @return 0 if the permit was taken, otherwise nanoseconds until one will be
+     */
+    public synchronized long tryAcquire(long nowNanos) {
+        refill(nowNanos);
+        if (permits >= 1) {
+            permits -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - permits) / permitsPerNano);
+    }
+
+    private void refill(long nowNanos) {
+        long elapsed = nowNanos - lastRefillNanos;
+        if (elapsed > 0) {
+            permits = Math.min(capacity, permits + elapsed * permitsPerNano);
+            lastRefillNanos = nowNanos;
+        }
+    }
+}
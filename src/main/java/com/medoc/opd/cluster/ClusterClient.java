@@ -0,0 +1,59 @@
+package com.medoc.opd.cluster;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Internal node-to-node RPC: plain HTTP/1.1 against the peer's own endpoints,
+ * with short timeouts so a dead peer is noticed quickly.
+ */
+@Component
+@ConditionalOnProperty(name = "opd.cluster.enabled", havingValue = "true")
+public class ClusterClient {
+
+    private final ClusterConfig config;
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofMillis(500))
+            .build();
+
+    public ClusterClient(ClusterConfig config) {
+        this.config = config;
+    }
+
+    public HttpResponse<byte[]> get(String node, String path, Duration timeout)
+            throws IOException, InterruptedException {
+        return send(node, "GET", path, Map.of(), null, timeout);
+    }
+
+    public HttpResponse<byte[]> postJson(String node, String path, byte[] body, Duration timeout)
+            throws IOException, InterruptedException {
+        return send(node, "POST", path, Map.of("Content-Type", "application/json"), body, timeout);
+    }
+
+    /**
+     * Send a request to {@code node}. Every call carries the forwarded header and
+     * the cluster secret, so the receiving node handles it locally instead of
+     * routing it again.
+     */
+    public HttpResponse<byte[]> send(String node, String method, String pathAndQuery, Map<String, String> headers,
+            byte[] body, Duration timeout) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(config.urlOf(node) + pathAndQuery))
+                .timeout(timeout)
+                .header(ClusterConfig.FORWARDED_HEADER, config.getNodeId())
+                .header(ClusterConfig.SECRET_HEADER, config.getSecretHeaderValue())
+                .method(method, body == null || body.length == 0
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofByteArray(body));
+        headers.forEach(request::header);
+        return http.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
@@ -0,0 +1,108 @@
+package com.medoc.opd.cluster;
+
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Static cluster layout from {@code opd.cluster.*}: this node's ID and every
+ * node's base URL, e.g.
+ * {@code opd.cluster.nodes=node-1=http://localhost:8080,node-2=http://localhost:8081}.
+ */
+@Getter
+@Component
+@ConditionalOnProperty(name = "opd.cluster.enabled", havingValue = "true")
+public class ClusterConfig {
+
+    /** Header marking a request that has already been routed once, so it is never forwarded again. */
+    public static final String FORWARDED_HEADER = "X-OPD-Forwarded-By";
+
+    /** Carries {@code opd.cluster.secret} on node-to-node requests. */
+    public static final String SECRET_HEADER = "X-OPD-Cluster-Secret";
+
+    private final String nodeId;
+    private final Map<String, String> nodeUrls;
+    private final int replicationFactor;
+    private final int virtualNodes;
+    private final long heartbeatMillis;
+    @Getter(AccessLevel.NONE)
+    private final String secret;
+
+    public ClusterConfig(
+            @Value("${opd.cluster.node-id}") String nodeId,
+            @Value("${opd.cluster.nodes}") String nodes,
+            @Value("${opd.cluster.replication-factor:2}") int replicationFactor,
+            @Value("${opd.cluster.virtual-nodes:128}") int virtualNodes,
+            @Value("${opd.cluster.heartbeat-millis:1000}") long heartbeatMillis,
+            @Value("${opd.cluster.secret:}") String secret) {
+        if (secret.isBlank()) {
+            throw new IllegalArgumentException("opd.cluster.secret must be set when opd.cluster.enabled=true");
+        }
+        this.nodeId = nodeId;
+        this.nodeUrls = new LinkedHashMap<>();
+        for (String entry : nodes.split(",")) {
+            String[] kv = entry.trim().split("=", 2);
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Expected nodeId=url in opd.cluster.nodes but got: " + entry);
+            }
+            nodeUrls.put(kv[0].trim(), kv[1].trim().replaceAll("/$", ""));
+        }
+        if (!nodeUrls.containsKey(nodeId)) {
+            throw new IllegalArgumentException("opd.cluster.node-id " + nodeId + " is not listed in opd.cluster.nodes");
+        }
+        this.replicationFactor = replicationFactor;
+        this.virtualNodes = virtualNodes;
+        this.heartbeatMillis = heartbeatMillis;
+        this.secret = secret;
+    }
+
+    /**
+     * Whether {@code request} was forwarded by a peer, and so is already
+     * routed and already charged to a client. A client can send the
+     * forwarded header too, so it is honoured only with the cluster secret;
+     * otherwise the request is treated as a client's.
+     */
+    public boolean isTrustedForward(HttpServletRequest request) {
+        String forwardedBy = request.getHeader(FORWARDED_HEADER);
+        if (forwardedBy == null || forwardedBy.equals(nodeId) || !nodeUrls.containsKey(forwardedBy)) {
+            return false;
+        }
+        String presented = request.getHeader(SECRET_HEADER);
+        return presented != null && MessageDigest.isEqual(
+                presented.getBytes(StandardCharsets.UTF_8), secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Value for {@link #SECRET_HEADER}.
+     */
+    public String getSecretHeaderValue() {
+        return secret;
+    }
+
+    public List<String> getPeers() {
+        List<String> peers = new ArrayList<>(nodeUrls.keySet());
+        peers.remove(nodeId);
+        return peers;
+    }
+
+    public String urlOf(String node) {
+        return nodeUrls.get(node);
+    }
+
+    /**
+     * Position of this node in the configured list; used to keep token numbers unique.
+     */
+    public int getNodeIndex() {
+        return new ArrayList<>(nodeUrls.keySet()).indexOf(nodeId);
+    }
+}
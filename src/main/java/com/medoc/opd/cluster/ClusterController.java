@@ -0,0 +1,75 @@
+package com.medoc.opd.cluster;
+
+import com.medoc.opd.service.OPDTokenEngine;
+import io.swagger.v3.oas.annotations.Hidden;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Node-to-node endpoints: health for membership, state transfer, journal
+ * delivery and ID lookup. Not part of the public API.
+ */
+@Hidden
+@RestController
+@RequestMapping("/internal/cluster")
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "opd.cluster.enabled", havingValue = "true")
+public class ClusterController {
+
+    private final ClusterConfig config;
+    private final ClusterMembership membership;
+    private final ClusterReplicator replicator;
+    private final OPDTokenEngine engine;
+
+    @GetMapping("/health")
+    public ResponseEntity<Map<String, Object>> health() {
+        Map<String, Object> body = new HashMap<>();
+        body.put("nodeId", config.getNodeId());
+        body.put("joined", membership.isJoined());
+        body.put("ready", membership.isReady());
+        // Healthy once joined, so peers put it on their rings; it serves the API once they have
+        return ResponseEntity.status(membership.isJoined() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE).body(body);
+    }
+
+    @GetMapping("/ring")
+    public ResponseEntity<Map<String, Object>> ring() {
+        Map<String, Object> body = new HashMap<>();
+        body.put("nodeId", config.getNodeId());
+        body.put("liveNodes", membership.getLiveNodes());
+        body.put("settledNodes", membership.getSettledNodes());
+        body.put("replicationFactor", config.getReplicationFactor());
+        body.put("journalSequence", replicator.getSequence());
+        body.put("replicationBacklog", replicator.getBacklog());
+        body.put("ownedDoctors", engine.getDoctorIds().stream().filter(membership::isOwner).count());
+        body.put("knownDoctors", engine.getDoctorIds().size());
+        return ResponseEntity.ok(body);
+    }
+
+    @GetMapping("/state")
+    public ResponseEntity<List<ReplicationEntry>> state() {
+        return ResponseEntity.ok(replicator.ownedState());
+    }
+
+    @PostMapping("/replicate")
+    public ResponseEntity<Void> replicate(@RequestBody List<ReplicationEntry> entries) {
+        for (ReplicationEntry entry : entries) {
+            engine.applyReplicatedState(entry.getDoctorId(), entry.getSlots(), entry.getTokens());
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/locate/{id}")
+    public ResponseEntity<Map<String, String>> locate(@PathVariable String id) {
+        String doctorId = engine.findDoctorId(id);
+        return doctorId == null
+                ? ResponseEntity.notFound().build()
+                : ResponseEntity.ok(Map.of("doctorId", doctorId));
+    }
+}
@@ -0,0 +1,274 @@
+package com.medoc.opd.cluster;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.medoc.opd.service.OPDTokenEngine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Tracks which configured nodes are alive and derives the hash ring from them.
+ *
+ * Peers are polled every {@code opd.cluster.heartbeat-millis}; a peer that
+ * misses three polls in a row drops out of the ring and its doctors move to
+ * the next node clockwise (which already holds them when the replication
+ * factor is at least 2). A starting node first copies the state of the
+ * doctors its peers own, and only then reports healthy, so it never joins
+ * the ring empty-handed.
+ *
+ * A joining node takes over doctors the moment it puts itself on its own
+ * ring, but their previous owners keep taking writes until their next
+ * heartbeat sees it, then send it full copies. So the node stays not
+ * ready (API requests get 503) until every live peer has it on its ring
+ * and has delivered everything queued for it. Otherwise those full copies
+ * would overwrite writes the node had already accepted.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "opd.cluster.enabled", havingValue = "true")
+public class ClusterMembership {
+
+    private static final int MAX_MISSED_HEARTBEATS = 3;
+    private static final Duration PROBE_TIMEOUT = Duration.ofMillis(500);
+
+    private final ClusterConfig config;
+    private final ClusterClient client;
+    private final OPDTokenEngine engine;
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, Integer> missedHeartbeats = new ConcurrentHashMap<>();
+    private final List<BiConsumer<ConsistentHashRing, ConsistentHashRing>> ringListeners = new CopyOnWriteArrayList<>();
+    private volatile Set<String> live;
+    private volatile ConsistentHashRing ring;
+    // Live nodes as of the last ring change whose listeners have all run
+    private volatile Set<String> settled;
+    private volatile boolean joined;
+    private volatile boolean ready;
+    private ScheduledExecutorService heartbeat;
+
+    @PostConstruct
+    public void init() {
+        live = Set.of(config.getNodeId());
+        settled = live;
+        ring = new ConsistentHashRing(live, config.getVirtualNodes());
+        engine.setOwnershipCheck(this::isOwner);
+        engine.setTokenNumbering(config.getNodeIndex(), config.getNodeUrls().size());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void join() {
+        // Initial view without firing ring listeners: nothing has been replicated yet
+        Set<String> reachable = new TreeSet<>(List.of(config.getNodeId()));
+        for (String peer : config.getPeers()) {
+            if (probe(peer)) {
+                reachable.add(peer);
+            }
+        }
+        live = Collections.unmodifiableSet(reachable);
+        settled = live;
+        ring = new ConsistentHashRing(reachable, config.getVirtualNodes());
+
+        int doctors = 0;
+        for (String peer : reachable) {
+            if (!peer.equals(config.getNodeId())) {
+                doctors += copyStateFrom(peer);
+            }
+        }
+        joined = true;
+        // Even peers that missed the probe above get to hand over before this node serves requests
+        ready = config.getNodeUrls().size() == 1;
+        log.info("Node {} joined cluster with live nodes {} ({} doctors copied from peers){}",
+                config.getNodeId(), reachable, doctors, ready ? "" : "; waiting for peers to hand over");
+
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cluster-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(this::heartbeat, config.getHeartbeatMillis(),
+                config.getHeartbeatMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        ready = false;
+        if (heartbeat != null) {
+            heartbeat.shutdownNow();
+        }
+    }
+
+    public void addRingListener(BiConsumer<ConsistentHashRing, ConsistentHashRing> listener) {
+        ringListeners.add(listener);
+    }
+
+    /**
+     * Whether this node serves API requests.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Whether this node has copied its peers' state and may be put on their
+     * rings; it becomes ready once they have.
+     */
+    public boolean isJoined() {
+        return joined;
+    }
+
+    public Set<String> getSettledNodes() {
+        return settled;
+    }
+
+    public ConsistentHashRing getRing() {
+        return ring;
+    }
+
+    public Set<String> getLiveNodes() {
+        return live;
+    }
+
+    public String ownerOf(String doctorId) {
+        return ring.ownerOf(doctorId);
+    }
+
+    public boolean isOwner(String doctorId) {
+        return config.getNodeId().equals(ring.ownerOf(doctorId));
+    }
+
+    /**
+     * Nodes that should receive this doctor's journal, excluding this node.
+     */
+    public List<String> replicaTargets(ConsistentHashRing ring, String doctorId) {
+        List<String> targets = new ArrayList<>(ring.replicasOf(doctorId, config.getReplicationFactor()));
+        targets.remove(config.getNodeId());
+        return targets;
+    }
+
+    private void heartbeat() {
+        updateRing();
+        if (joined && !ready && peersHandedOver()) {
+            ready = true;
+            log.info("Node {} is ready: every reachable peer has it on its ring", config.getNodeId());
+        }
+    }
+
+    private void updateRing() {
+        Set<String> next = new TreeSet<>(live);
+        for (String peer : config.getPeers()) {
+            if (probe(peer)) {
+                missedHeartbeats.remove(peer);
+                next.add(peer);
+            } else if (missedHeartbeats.merge(peer, 1, Integer::sum) >= MAX_MISSED_HEARTBEATS) {
+                next.remove(peer);
+            }
+        }
+        if (next.equals(live)) {
+            return;
+        }
+
+        ConsistentHashRing previous = ring;
+        live = Collections.unmodifiableSet(next);
+        ring = new ConsistentHashRing(next, config.getVirtualNodes());
+        log.warn("Cluster membership changed: {} -> {}", previous.getNodes(), ring.getNodes());
+        for (BiConsumer<ConsistentHashRing, ConsistentHashRing> listener : ringListeners) {
+            try {
+                listener.accept(previous, ring);
+            } catch (RuntimeException e) {
+                log.error("Ring listener failed", e);
+            }
+        }
+        settled = live;
+    }
+
+    /**
+     * Whether every reachable peer has this node on a settled ring and
+     * nothing left to replicate to it. Asks all configured peers, not just
+     * live ones, so a peer whose first probe timed out is not skipped.
+     */
+    private boolean peersHandedOver() {
+        for (String peer : config.getNodeUrls().keySet()) {
+            if (peer.equals(config.getNodeId())) {
+                continue;
+            }
+            JsonNode view;
+            try {
+                HttpResponse<byte[]> response = client.get(peer, "/internal/cluster/ring", PROBE_TIMEOUT);
+                if (response.statusCode() != 200) {
+                    return false;
+                }
+                view = objectMapper.readTree(response.body());
+            } catch (HttpTimeoutException | JsonProcessingException e) {
+                // Up but slow, or mid-restart: ask again next heartbeat
+                return false;
+            } catch (IOException e) {
+                // Down: nothing to wait for; if it comes back it hands over like any rejoining peer
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            boolean settledWithUs = false;
+            for (JsonNode node : view.path("settledNodes")) {
+                settledWithUs |= node.asText().equals(config.getNodeId());
+            }
+            if (!settledWithUs || view.path("replicationBacklog").path(config.getNodeId()).asInt(0) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean probe(String peer) {
+        try {
+            return client.get(peer, "/internal/cluster/health", PROBE_TIMEOUT).statusCode() == 200;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private int copyStateFrom(String peer) {
+        try {
+            HttpResponse<byte[]> response = client.get(peer, "/internal/cluster/state", Duration.ofSeconds(30));
+            if (response.statusCode() != 200) {
+                log.warn("Could not copy state from {}: HTTP {}", peer, response.statusCode());
+                return 0;
+            }
+            List<ReplicationEntry> entries = objectMapper.readValue(response.body(), new TypeReference<>() { });
+            for (ReplicationEntry entry : entries) {
+                engine.applyReplicatedState(entry.getDoctorId(), entry.getSlots(), entry.getTokens());
+            }
+            return entries.size();
+        } catch (IOException e) {
+            log.warn("Could not copy state from {}", peer, e);
+            return 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.medoc.opd.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.medoc.opd.model.DoctorSnapshot;
+import com.medoc.opd.service.DoctorSnapshotListener;
+import com.medoc.opd.service.OPDTokenEngine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Journal-based replication from a doctor's owner to the next
+ * {@code opd.cluster.replication-factor - 1} nodes on the ring.
+ *
+ * Every local publish is turned into a {@link ReplicationEntry} holding only
+ * the slots and tokens that changed, and queued per target peer. One sender
+ * thread per peer ships entries in order, batched. When membership changes,
+ * the node that holds the authoritative copy of a doctor sends a full copy to
+ * every node that has just become responsible for it.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "opd.cluster.enabled", havingValue = "true")
+public class ClusterReplicator implements DoctorSnapshotListener {
+
+    private static final int MAX_BATCH = 500;
+
+    private final ClusterConfig config;
+    private final ClusterClient client;
+    private final ClusterMembership membership;
+    private final OPDTokenEngine engine;
+    private final ObjectMapper objectMapper;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, PeerStream> streams = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void start() {
+        for (String peer : config.getPeers()) {
+            PeerStream stream = new PeerStream(peer);
+            streams.put(peer, stream);
+            stream.thread.start();
+        }
+        engine.addSnapshotListener(this);
+        membership.addRingListener(this::onRingChange);
+    }
+
+    @PreDestroy
+    public void stop() {
+        engine.removeSnapshotListener(this);
+        streams.values().forEach(stream -> stream.thread.interrupt());
+    }
+
+    @Override
+    public void onPublish(DoctorSnapshot previous, DoctorSnapshot current) {
+        List<String> targets = membership.replicaTargets(membership.getRing(), current.getDoctorId());
+        if (targets.isEmpty()) {
+            return;
+        }
+        ReplicationEntry entry = ReplicationEntry.delta(config.getNodeId(), sequence.incrementAndGet(),
+                previous, current);
+        for (String target : targets) {
+            streams.get(target).offer(entry);
+        }
+    }
+
+    /**
+     * Last journal sequence this node has assigned.
+     */
+    public long getSequence() {
+        return sequence.get();
+    }
+
+    /**
+     * Entries queued or in flight but not yet acknowledged, per peer; a
+     * pending resync counts as one.
+     */
+    public Map<String, Integer> getBacklog() {
+        Map<String, Integer> backlog = new TreeMap<>();
+        streams.forEach((peer, stream) -> backlog.put(peer, stream.queue.size() + stream.inFlight.get()
+                + (stream.resyncNeeded.get() ? 1 : 0)));
+        return backlog;
+    }
+
+    /**
+     * Full copies of every doctor this node owns, e.g. for a joining peer.
+     */
+    public List<ReplicationEntry> ownedState() {
+        return engine.getDoctorIds().stream()
+                .filter(membership::isOwner)
+                .map(this::fullCopy)
+                .collect(Collectors.toList());
+    }
+
+    private void onRingChange(ConsistentHashRing before, ConsistentHashRing after) {
+        int resynced = 0;
+        for (String doctorId : engine.getDoctorIds()) {
+            // The previous owner still holds the freshest copy if it survived; otherwise its first replica does
+            String previousOwner = before.ownerOf(doctorId);
+            String authority = after.contains(previousOwner) ? previousOwner : after.ownerOf(doctorId);
+            if (!authority.equals(config.getNodeId())) {
+                continue;
+            }
+
+            List<String> newTargets = membership.replicaTargets(after, doctorId);
+            newTargets.removeAll(membership.replicaTargets(before, doctorId));
+            if (!newTargets.isEmpty()) {
+                ReplicationEntry copy = fullCopy(doctorId);
+                newTargets.forEach(target -> streams.get(target).offer(copy));
+                resynced++;
+            }
+        }
+        if (resynced > 0) {
+            log.info("Sent full copies of {} doctor(s) to nodes that became responsible for them", resynced);
+        }
+    }
+
+    private ReplicationEntry fullCopy(String doctorId) {
+        return ReplicationEntry.fullCopy(config.getNodeId(), sequence.incrementAndGet(),
+                engine.getDoctorSnapshot(doctorId));
+    }
+
+    /**
+     * Ordered, batched delivery to one peer. A batch is retried until the peer
+     * acknowledges it or drops out of the ring; a peer that comes back gets
+     * full copies through {@link #onRingChange} instead.
+     *
+     * Deltas only carry changed rows, so one lost entry would leave the peer
+     * diverged for good. When the backlog overflows it is discarded instead,
+     * and the peer is sent full copies of every doctor it replicates from
+     * this node; deltas queued meanwhile follow them.
+     */
+    private final class PeerStream {
+        private final String peer;
+        private final BlockingQueue<ReplicationEntry> queue = new LinkedBlockingQueue<>(100_000);
+        private final AtomicBoolean resyncNeeded = new AtomicBoolean();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final Thread thread;
+
+        private PeerStream(String peer) {
+            this.peer = peer;
+            this.thread = new Thread(this::run, "replicate-" + peer);
+            this.thread.setDaemon(true);
+        }
+
+        private void offer(ReplicationEntry entry) {
+            if (!queue.offer(entry) && !resyncNeeded.getAndSet(true)) {
+                log.error("Replication backlog to {} is full; will resend full copies instead", peer);
+                queue.clear();
+            }
+        }
+
+        private void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    if (resyncNeeded.getAndSet(false)) {
+                        resync();
+                        continue;
+                    }
+                    List<ReplicationEntry> batch = new ArrayList<>();
+                    ReplicationEntry first = queue.poll(200, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    deliver(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Replace whatever was queued with full copies taken now: anything
+         * published before the queue was cleared is in the copies, anything
+         * after is queued behind them.
+         */
+        private void resync() throws InterruptedException {
+            queue.clear();
+            List<ReplicationEntry> copies = engine.getDoctorIds().stream()
+                    .filter(membership::isOwner)
+                    .filter(doctorId -> membership.replicaTargets(membership.getRing(), doctorId).contains(peer))
+                    .map(ClusterReplicator.this::fullCopy)
+                    .collect(Collectors.toList());
+            log.info("Resending full copies of {} doctor(s) to {}", copies.size(), peer);
+            for (int from = 0; from < copies.size(); from += MAX_BATCH) {
+                if (!deliver(copies.subList(from, Math.min(from + MAX_BATCH, copies.size())))) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Send until acknowledged. Gives up, dropping the backlog, once the
+         * peer has left the ring.
+         */
+        private boolean deliver(List<ReplicationEntry> batch) throws InterruptedException {
+            inFlight.set(batch.size());
+            try {
+                while (!send(batch)) {
+                    if (!membership.getLiveNodes().contains(peer)) {
+                        queue.clear();
+                        return false;
+                    }
+                    TimeUnit.MILLISECONDS.sleep(200);
+                }
+                return true;
+            } finally {
+                inFlight.set(0);
+            }
+        }
+
+        private boolean send(List<ReplicationEntry> batch) throws InterruptedException {
+            try {
+                byte[] body = objectMapper.writeValueAsBytes(batch);
+                int status = client.postJson(peer, "/internal/cluster/replicate", body, Duration.ofSeconds(5))
+                        .statusCode();
+                return status / 100 == 2;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+}
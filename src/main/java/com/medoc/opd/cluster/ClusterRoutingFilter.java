@@ -0,0 +1,195 @@
+package com.medoc.opd.cluster;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.medoc.opd.config.CachedBodyRequest;
+import com.medoc.opd.config.GlobalExceptionHandler.ErrorResponse;
+import com.medoc.opd.controller.TokenController;
+import com.medoc.opd.service.OPDTokenEngine;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sends every doctor-scoped API request to the node that owns the doctor.
+ *
+ * The doctor is taken from the path ({@code /slots/doctor/{id}},
+ * {@code /tokens/queue/{id}}, {@code /analytics/doctors/{id}}), the
+ * {@code doctorId} query parameter, the JSON body of a create request, or,
+ * for {@code /slots/{id}} and {@code /tokens/{id}}, from the slot or token
+ * itself. IDs this node has never seen are looked up on the peers. Requests
+ * that are not doctor-scoped (e.g. listing all slots, or a patient's tokens)
+ * are answered from this node's own view.
+ *
+ * Requests already forwarded by a peer are handled locally; a forwarded
+ * header that does not come from a peer (see
+ * {@link ClusterConfig#isTrustedForward}) is ignored and the request routed
+ * like any other.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "opd.cluster.enabled", havingValue = "true")
+public class ClusterRoutingFilter extends OncePerRequestFilter {
+
+    private static final Duration FORWARD_TIMEOUT = Duration.ofSeconds(10);
+    private static final List<String> FORWARDED_REQUEST_HEADERS = List.of(
+            HttpHeaders.CONTENT_TYPE, HttpHeaders.ACCEPT, HttpHeaders.IF_NONE_MATCH, HttpHeaders.IF_MATCH,
+            TokenController.IDEMPOTENCY_KEY_HEADER);
+    private static final List<String> RETURNED_RESPONSE_HEADERS = List.of(
+            HttpHeaders.CONTENT_TYPE, HttpHeaders.ETAG, HttpHeaders.CACHE_CONTROL, HttpHeaders.LOCATION, HttpHeaders.VARY);
+    private static final Set<String> TOKEN_SUBRESOURCES = Set.of("queue", "statistics", "emergency", "patient");
+
+    private final ClusterConfig config;
+    private final ClusterMembership membership;
+    private final ClusterClient client;
+    private final OPDTokenEngine engine;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/") || config.isTrustedForward(request);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!membership.isReady()) {
+            writeError(response, HttpStatus.SERVICE_UNAVAILABLE, "Node is still joining the cluster");
+            return;
+        }
+
+        CachedBodyRequest cached = CachedBodyRequest.of(request);
+        String doctorId = resolveDoctor(cached);
+        if (doctorId == null || membership.isOwner(doctorId)) {
+            chain.doFilter(cached, response);
+            return;
+        }
+        forward(membership.ownerOf(doctorId), cached, response);
+    }
+
+    private String resolveDoctor(CachedBodyRequest request) {
+        String[] path = request.getRequestURI().substring("/api/".length()).split("/");
+        String resource = path[0];
+        String second = path.length > 1 ? path[1] : null;
+
+        if ("analytics".equals(resource) && "doctors".equals(second)) {
+            return path.length > 2 ? path[2] : null;
+        }
+        if (!"slots".equals(resource) && !"tokens".equals(resource) && !"schedules".equals(resource)) {
+            return null;
+        }
+        if (second == null || ("tokens".equals(resource) && "emergency".equals(second))) {
+            return "POST".equals(request.getMethod()) ? bodyDoctorId(request) : null;
+        }
+        if ("schedules".equals(resource)) {
+            return null;
+        }
+        if ("slots".equals(resource) && "doctor".equals(second)) {
+            return path.length > 2 ? path[2] : null;
+        }
+        if ("tokens".equals(resource) && "queue".equals(second)) {
+            return path.length > 2 ? path[2] : null;
+        }
+        if ("tokens".equals(resource) && "statistics".equals(second)) {
+            return request.getParameter("doctorId");
+        }
+        if ("tokens".equals(resource) && TOKEN_SUBRESOURCES.contains(second)) {
+            return null;
+        }
+        return locate(second);
+    }
+
+    private String bodyDoctorId(CachedBodyRequest request) {
+        if (request.getBody().length == 0) {
+            return null;
+        }
+        try {
+            JsonNode doctorId = objectMapper.readTree(request.getBody()).get("doctorId");
+            return doctorId != null && doctorId.isTextual() ? doctorId.asText() : null;
+        } catch (IOException e) {
+            // Malformed body; let the controller reject it
+            return null;
+        }
+    }
+
+    private String locate(String id) {
+        String doctorId = engine.findDoctorId(id);
+        if (doctorId != null) {
+            return doctorId;
+        }
+        for (String peer : membership.getLiveNodes()) {
+            if (peer.equals(config.getNodeId())) {
+                continue;
+            }
+            try {
+                HttpResponse<byte[]> found = client.get(peer, "/internal/cluster/locate/" + id, FORWARD_TIMEOUT);
+                if (found.statusCode() == 200) {
+                    return objectMapper.readTree(found.body()).get("doctorId").asText();
+                }
+            } catch (IOException e) {
+                log.debug("Locate of {} on {} failed", id, peer, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private void forward(String owner, CachedBodyRequest request, HttpServletResponse response) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        for (String name : FORWARDED_REQUEST_HEADERS) {
+            String value = request.getHeader(name);
+            if (value != null) {
+                headers.put(name, value);
+            }
+        }
+        String target = request.getRequestURI()
+                + (request.getQueryString() != null ? "?" + request.getQueryString() : "");
+
+        HttpResponse<byte[]> reply;
+        try {
+            reply = client.send(owner, request.getMethod(), target, headers, request.getBody(), FORWARD_TIMEOUT);
+        } catch (IOException e) {
+            writeError(response, HttpStatus.SERVICE_UNAVAILABLE, "Owner node " + owner + " is unreachable");
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writeError(response, HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while forwarding to " + owner);
+            return;
+        }
+
+        response.setStatus(reply.statusCode());
+        for (String name : RETURNED_RESPONSE_HEADERS) {
+            reply.headers().firstValue(name).ifPresent(value -> response.setHeader(name, value));
+        }
+        response.setHeader(ClusterConfig.FORWARDED_HEADER, owner);
+        response.getOutputStream().write(reply.body());
+    }
+
+    private void writeError(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(),
+                new ErrorResponse(status.value(), message, LocalDateTime.now()));
+    }
+}
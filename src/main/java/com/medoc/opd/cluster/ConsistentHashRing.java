@@ -0,0 +1,82 @@
+package com.medoc.opd.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Consistent hash ring with virtual nodes. Maps a doctor ID to an ordered
+ * list of distinct nodes: the first is the owner, the rest are replicas.
+ * Adding or removing a node only moves the doctors adjacent to its points.
+ * Immutable; membership changes build a new ring.
+ */
+public final class ConsistentHashRing {
+
+    private final NavigableMap<Long, String> points = new TreeMap<>();
+    private final List<String> nodes;
+
+    public ConsistentHashRing(Collection<String> nodeIds, int virtualNodes) {
+        this.nodes = List.copyOf(new TreeSet<>(nodeIds));
+        for (String node : nodes) {
+            for (int v = 0; v < virtualNodes; v++) {
+                points.put(hash(node + "#" + v), node);
+            }
+        }
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    public boolean contains(String nodeId) {
+        return nodes.contains(nodeId);
+    }
+
+    public String ownerOf(String key) {
+        if (points.isEmpty()) {
+            throw new IllegalStateException("Hash ring has no nodes");
+        }
+        Map.Entry<Long, String> entry = points.ceilingEntry(hash(key));
+        return (entry != null ? entry : points.firstEntry()).getValue();
+    }
+
+    /**
+     * Owner followed by the next distinct nodes clockwise, up to {@code count} in total.
+     */
+    public List<String> replicasOf(String key, int count) {
+        int wanted = Math.min(count, nodes.size());
+        List<String> result = new ArrayList<>(wanted);
+        if (wanted == 0) {
+            return result;
+        }
+        // Walk clockwise from the key, wrapping around once
+        long h = hash(key);
+        for (Collection<String> arc : List.of(points.tailMap(h, true).values(), points.headMap(h, false).values())) {
+            for (String node : arc) {
+                if (!result.contains(node)) {
+                    result.add(node);
+                    if (result.size() == wanted) {
+                        return result;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 64-bit FNV-1a with a final avalanche step, so similar IDs (LD0001, LD0002) spread out.
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
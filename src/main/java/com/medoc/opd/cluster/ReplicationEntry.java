@@ -0,0 +1,66 @@
+package com.medoc.opd.cluster;
+
+import com.medoc.opd.model.DoctorSnapshot;
+import com.medoc.opd.model.TimeSlot;
+import com.medoc.opd.model.Token;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * One journal record shipped from a doctor's owner to its replicas: the
+ * post-images of the slots and tokens that a mutation changed (or all of
+ * them, for a full resync). Applying a record is an idempotent upsert.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplicationEntry {
+
+    private String sourceNode;
+
+    /** Per-source journal sequence, increasing. */
+    private long sequence;
+
+    private String doctorId;
+
+    /** Epoch of the source snapshot this record was taken from. */
+    private long epoch;
+
+    /** Wall-clock time the source published the change, for lag measurement. */
+    private long publishedAtMillis;
+
+    private List<TimeSlot> slots;
+    private List<Token> tokens;
+
+    /**
+     * Record holding every slot and token of the snapshot.
+     */
+    public static ReplicationEntry fullCopy(String sourceNode, long sequence, DoctorSnapshot snapshot) {
+        return new ReplicationEntry(sourceNode, sequence, snapshot.getDoctorId(), snapshot.getEpoch(),
+                System.currentTimeMillis(), snapshot.getSlots(), snapshot.getTokens());
+    }
+
+    /**
+     * Record holding only the slots and tokens that differ between two
+     * consecutive snapshots of the same doctor.
+     */
+    public static ReplicationEntry delta(String sourceNode, long sequence,
+                                         DoctorSnapshot previous, DoctorSnapshot current) {
+        Map<String, Token> previousTokens = previous.getTokens().stream()
+                .collect(Collectors.toMap(Token::getTokenId, Function.identity()));
+        List<TimeSlot> slots = current.getSlots().stream()
+                .filter(slot -> !slot.equals(previous.getSlotsById().get(slot.getSlotId())))
+                .collect(Collectors.toList());
+        List<Token> tokens = current.getTokens().stream()
+                .filter(token -> !token.equals(previousTokens.get(token.getTokenId())))
+                .collect(Collectors.toList());
+        return new ReplicationEntry(sourceNode, sequence, current.getDoctorId(), current.getEpoch(),
+                System.currentTimeMillis(), slots, tokens);
+    }
+}
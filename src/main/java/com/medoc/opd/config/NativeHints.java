@@ -0,0 +1,51 @@
+package com.medoc.opd.config;
+
+import com.medoc.opd.cluster.ReplicationEntry;
+import com.medoc.opd.controller.ScheduleController;
+import com.medoc.opd.controller.SlotController;
+import com.medoc.opd.controller.TokenController;
+import com.medoc.opd.events.EngineEvent;
+import com.medoc.opd.model.QueueEntry;
+import com.medoc.opd.model.ReallocationNotice;
+import com.medoc.opd.model.TimeSlot;
+import com.medoc.opd.model.Token;
+import com.medoc.opd.model.TokenView;
+import com.medoc.opd.tenant.TenantImage;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+/**
+ * Reflection metadata a GraalVM native image needs beyond what Spring AOT
+ * infers from controller signatures.
+ *
+ * Spring AOT already covers request and response types of the
+ * {@code @RestController} methods, and springdoc ships its own hints. Missing
+ * are the types Jackson reads or writes by hand: pre-serialized polling
+ * bodies ({@code ResponseCache}), the event log file, tenant images and the
+ * cluster / standby replication streams. Bean Validation reads constraint annotations
+ * from request DTO fields, so those need their fields registered too.
+ * Lombok needs nothing: it only runs at compile time.
+ */
+public class NativeHints implements RuntimeHintsRegistrar {
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(),
+                QueueEntry.class, TokenView.class, TimeSlot.class, Token.class, ReallocationNotice.class,
+                EngineEvent.class, ReplicationEntry.class, TenantImage.class);
+
+        // @Jacksonized builder that replicated tokens are read through
+        hints.reflection().registerType(ReallocationNotice.ReallocationNoticeBuilder.class,
+                MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.INVOKE_DECLARED_METHODS);
+
+        for (Class<?> request : new Class<?>[] {
+                TokenController.AllocateTokenRequest.class, TokenController.EmergencyTokenRequest.class,
+                SlotController.CreateSlotRequest.class, SlotController.AdjustCapacityRequest.class,
+                SlotController.AdjustCapacityRangeRequest.class, ScheduleController.CreateScheduleRequest.class}) {
+            hints.reflection().registerType(request, MemberCategory.DECLARED_FIELDS,
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.medoc.opd.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Binary wire format for clients on slow links (kiosks, display boards).
+ *
+ * A request with {@code Accept: application/cbor} gets the same document as
+ * the JSON response, field for field, encoded as CBOR (RFC 8949): no quoting,
+ * length-prefixed strings and small integers in one byte. The mapper is
+ * built from the application's Jackson settings, so dates, time zone and
+ * modules match the JSON output exactly. JSON stays the default.
+ */
+@Configuration
+public class WireFormatConfig {
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+}
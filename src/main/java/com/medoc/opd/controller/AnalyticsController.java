@@ -0,0 +1,82 @@
+package com.medoc.opd.controller;
+
+import com.medoc.opd.model.AnalyticsPoint;
+import com.medoc.opd.service.OPDTokenEngine;
+import com.medoc.opd.service.TokenAnalytics;
+import com.medoc.opd.tenant.TenantEngines;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/analytics")
+@RequiredArgsConstructor
+@Tag(name = "Analytics", description = "Time series of bookings, arrivals, waits, consultations and no-shows")
+public class AnalyticsController {
+
+    private static final int DEFAULT_WINDOW_HOURS = 12;
+
+    private final TenantEngines tenants;
+
+    @GetMapping("/doctors/{doctorId}")
+    @Operation(summary = "Doctor time series",
+            description = "Activity for [from, to) in points of stepMinutes (default: one bucket, 15 min), "
+                    + "plus a summary of the whole window. Defaults to the last 12 hours")
+    public ResponseEntity<Map<String, Object>> doctorSeries(
+            @PathVariable String doctorId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) Integer stepMinutes) {
+        TokenAnalytics analytics = engine().getAnalytics();
+        LocalDateTime end = to != null ? to : engine().now();
+        LocalDateTime start = from != null ? from : end.minusHours(DEFAULT_WINDOW_HOURS);
+        int step = effectiveStep(analytics, stepMinutes);
+        return ResponseEntity.ok(response("doctorId", doctorId, step,
+                analytics.doctorSummary(doctorId, start, end),
+                analytics.doctorSeries(doctorId, start, end, step)));
+    }
+
+    @GetMapping("/departments/{department}")
+    @Operation(summary = "Department time series",
+            description = "Same as the doctor series, aggregated over every doctor in the department")
+    public ResponseEntity<Map<String, Object>> departmentSeries(
+            @PathVariable String department,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) Integer stepMinutes) {
+        TokenAnalytics analytics = engine().getAnalytics();
+        LocalDateTime end = to != null ? to : engine().now();
+        LocalDateTime start = from != null ? from : end.minusHours(DEFAULT_WINDOW_HOURS);
+        int step = effectiveStep(analytics, stepMinutes);
+        return ResponseEntity.ok(response("department", department, step,
+                analytics.departmentSummary(department, start, end),
+                analytics.departmentSeries(department, start, end, step)));
+    }
+
+    private static int effectiveStep(TokenAnalytics analytics, Integer stepMinutes) {
+        int bucket = analytics.getBucketMinutes();
+        return stepMinutes == null ? bucket : Math.max(1, stepMinutes / bucket) * bucket;
+    }
+
+    private static Map<String, Object> response(String keyName, String key, int step,
+                                                AnalyticsPoint summary, List<AnalyticsPoint> points) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put(keyName, key);
+        body.put("stepMinutes", step);
+        body.put("summary", summary);
+        body.put("points", points);
+        return body;
+    }
+
+    private OPDTokenEngine engine() {
+        return tenants.current();
+    }
+}
@@ -0,0 +1,51 @@
+package com.medoc.opd.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * ETag / If-Match handling for single tokens and slots, whose ETag is their
+ * version number. A mutation sent with If-Match only applies if the entity
+ * is still at that version; otherwise the engine answers 412 with the
+ * current ETag, and the client re-reads instead of overwriting a change it
+ * never saw.
+ */
+final class ConditionalRequests {
+
+    private ConditionalRequests() {
+    }
+
+    static String etag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * Version required by an If-Match header, or null for none / {@code *}.
+     * Weak tags are accepted, since versions are exact either way.
+     */
+    static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        if (tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            tag = tag.substring(1, tag.length() - 1);
+        }
+        try {
+            return Long.parseLong(tag);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("If-Match must be a single ETag returned by this API: " + ifMatch);
+        }
+    }
+
+    static <T> ResponseEntity<T> versioned(HttpStatus status, T body, long version) {
+        return ResponseEntity.status(status).eTag(etag(version)).body(body);
+    }
+
+    static <T> ResponseEntity<T> versioned(T body, long version) {
+        return versioned(HttpStatus.OK, body, version);
+    }
+}
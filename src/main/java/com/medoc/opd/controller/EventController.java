@@ -0,0 +1,41 @@
+package com.medoc.opd.controller;
+
+import com.medoc.opd.events.EngineEventStream;
+import com.medoc.opd.events.EventBatch;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/events")
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "opd.events.enabled", havingValue = "true", matchIfMissing = true)
+@Tag(name = "Events", description = "Ordered stream of slot and token changes, read by offset")
+public class EventController {
+
+    private static final int MAX_LIMIT = 5_000;
+    private static final long MAX_WAIT_MILLIS = 30_000;
+
+    private final EngineEventStream stream;
+
+    @GetMapping
+    @Operation(summary = "Read events",
+            description = "Events from offset `from` on, oldest first. Pass the returned nextOffset as `from` in the "
+                    + "next call. With waitMillis, waits up to that long for new events when there are none (long "
+                    + "polling). `gap` is true if some requested events are no longer held")
+    public ResponseEntity<EventBatch> read(
+            @RequestParam(defaultValue = "0") long from,
+            @RequestParam(defaultValue = "500") int limit,
+            @RequestParam(defaultValue = "0") long waitMillis) throws IOException, InterruptedException {
+        return ResponseEntity.ok(stream.read(Math.max(0, from), Math.min(Math.max(1, limit), MAX_LIMIT),
+                Math.min(Math.max(0, waitMillis), MAX_WAIT_MILLIS)));
+    }
+}
@@ -0,0 +1,193 @@
+package com.medoc.opd.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.medoc.opd.tenant.TenantEngines;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Versioned cache of pre-serialized bodies for hot polling endpoints.
+ * Each entry is keyed by endpoint + doctor + encoding and tagged with the
+ * version the engine reported when it was built; a new engine epoch for that
+ * doctor makes the entry stale without any explicit eviction.
+ *
+ * Bodies are JSON unless the request's Accept header prefers
+ * {@code application/cbor}. Each encoding has its own ETag, so a client
+ * never gets a 304 for bytes in a format it did not ask for. The ETags are
+ * weak because the server may gzip the body on the way out (Tomcat skips
+ * compression for strong ETags); If-None-Match accepts either form.
+ *
+ * Entries and ETags of a non-default tenant carry its scope, so tenants
+ * never see each other's bodies even where their doctor IDs and epochs
+ * coincide.
+ *
+ * At most {@code opd.response-cache.max-entries} bodies are kept, least
+ * recently used first out, so stale entries of doctors nobody polls any more
+ * and of unloaded tenant generations age out. Bodies for doctors the engine
+ * does not know are rendered but not kept, so requests for made-up IDs
+ * cannot push out real entries.
+ */
+@Component
+public class ResponseCache {
+
+    private static final String CBOR_TAG_SUFFIX = "+cbor";
+
+    private static final String VARY = HttpHeaders.ACCEPT + ", " + TenantEngines.TENANT_HEADER;
+
+    private final ObjectMapper objectMapper;
+    private final ObjectMapper cborMapper;
+    private final TenantEngines tenants;
+    // Access-ordered; guarded by itself, and only held to look up or store, never to render
+    private final Map<String, CachedBody> entries;
+
+    public ResponseCache(ObjectMapper objectMapper, MappingJackson2CborHttpMessageConverter cborConverter,
+                         TenantEngines tenants, @Value("${opd.response-cache.max-entries:10000}") int maxEntries) {
+        this.objectMapper = objectMapper;
+        this.cborMapper = cborConverter.getObjectMapper();
+        this.tenants = tenants;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedBody> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Answer a GET from cache when possible.
+     * Returns 304 if the client already holds the current version, the cached
+     * bytes if the version is unchanged, otherwise renders and caches the body.
+     */
+    public ResponseEntity<byte[]> respond(String key, String version, String ifNoneMatch, Supplier<?> body) {
+        return respond(key, version, true, ifNoneMatch, body);
+    }
+
+    /**
+     * As {@link #respond(String, String, String, Supplier)}, but with
+     * {@code store} false the body is rendered without being cached, e.g. for
+     * a doctor the engine does not know.
+     */
+    public ResponseEntity<byte[]> respond(String key, String version, boolean store, String ifNoneMatch,
+                                          Supplier<?> body) {
+        boolean cbor = prefersCbor(currentAccept());
+        String scope = tenants.currentScope();
+        if (!scope.isEmpty()) {
+            key = scope + "/" + key;
+            version = scope + ":" + version;
+        }
+        String opaqueTag = "\"" + version + (cbor ? CBOR_TAG_SUFFIX : "") + "\"";
+        String etag = "W/" + opaqueTag;
+
+        if (ifNoneMatch != null && noneMatchHits(ifNoneMatch, opaqueTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).header(HttpHeaders.VARY, VARY).build();
+        }
+
+        String entryKey = cbor ? key + CBOR_TAG_SUFFIX : key;
+        CachedBody cached;
+        synchronized (entries) {
+            cached = entries.get(entryKey);
+        }
+        if (cached == null || !cached.version.equals(version)) {
+            cached = new CachedBody(version, serialize(cbor ? cborMapper : objectMapper, body.get()));
+            if (store) {
+                synchronized (entries) {
+                    entries.put(entryKey, cached);
+                }
+            }
+        }
+
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .header(HttpHeaders.VARY, VARY)
+                .contentType(cbor ? MediaType.APPLICATION_CBOR : MediaType.APPLICATION_JSON)
+                .body(cached.bytes);
+    }
+
+    /**
+     * True if an If-None-Match list names {@code opaqueTag} or is {@code *}.
+     * Tags compare weakly (RFC 9110 section 13.1.2), so {@code W/"v"} and
+     * {@code "v"} are the same tag.
+     */
+    static boolean noneMatchHits(String ifNoneMatch, String opaqueTag) {
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * True if the Accept header ranks CBOR above JSON. Anything unparseable,
+     * missing or naming neither gets JSON, as before CBOR existed.
+     */
+    static boolean prefersCbor(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return false;
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(accept);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        double cbor = 0;
+        double json = 0;
+        for (MediaType type : accepted) {
+            // Exact matches only: wildcards mean "anything", which stays JSON
+            if (type.equalsTypeAndSubtype(MediaType.APPLICATION_CBOR)) {
+                cbor = Math.max(cbor, type.getQualityValue());
+            } else if (type.equalsTypeAndSubtype(MediaType.APPLICATION_JSON)) {
+                json = Math.max(json, type.getQualityValue());
+            }
+        }
+        return cbor > json;
+    }
+
+    private static String currentAccept() {
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+            HttpServletRequest request = attributes.getRequest();
+            return request.getHeader(HttpHeaders.ACCEPT);
+        }
+        return null;
+    }
+
+    private static byte[] serialize(ObjectMapper mapper, Object body) {
+        try {
+            return mapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize cached response", e);
+        }
+    }
+
+    private static final class CachedBody {
+        private final String version;
+        private final byte[] bytes;
+
+        private CachedBody(String version, byte[] bytes) {
+            this.version = version;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.medoc.opd.controller;
+
+import com.medoc.opd.model.ScheduleTemplate;
+import com.medoc.opd.service.ScheduleService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.*;
+
+@RestController
+@RequestMapping("/api/schedules")
+@RequiredArgsConstructor
+@Tag(name = "Schedule Management", description = "APIs for recurring doctor schedules")
+public class ScheduleController {
+
+    private final ScheduleService scheduleService;
+
+    @PostMapping
+    @Operation(summary = "Create a schedule template",
+            description = "Registers a weekly schedule for a doctor and creates its slots up to the rolling horizon")
+    public ResponseEntity<ScheduleTemplate> createTemplate(@Valid @RequestBody CreateScheduleRequest request) {
+        ScheduleTemplate template = ScheduleTemplate.builder()
+                .doctorId(request.getDoctorId())
+                .doctorName(request.getDoctorName())
+                .department(request.getDepartment())
+                .sessions(new ArrayList<>(request.getSessions()))
+                .slotMinutes(request.getSlotMinutes())
+                .capacity(request.getCapacity())
+                .holidays(request.getHolidays() != null ? new HashSet<>(request.getHolidays()) : new HashSet<>())
+                .validFrom(request.getValidFrom())
+                .validUntil(request.getValidUntil())
+                .build();
+        return ResponseEntity.status(HttpStatus.CREATED).body(scheduleService.addTemplate(template));
+    }
+
+    @GetMapping
+    @Operation(summary = "Get all schedule templates")
+    public ResponseEntity<Collection<ScheduleTemplate>> getTemplates() {
+        return ResponseEntity.ok(scheduleService.getTemplates());
+    }
+
+    @GetMapping("/{templateId}")
+    @Operation(summary = "Get schedule template by ID")
+    public ResponseEntity<ScheduleTemplate> getTemplate(@PathVariable String templateId) {
+        return ResponseEntity.ok(scheduleService.getTemplate(templateId));
+    }
+
+    @DeleteMapping("/{templateId}")
+    @Operation(summary = "Remove a schedule template",
+            description = "Stops generating new slots from the template; slots already created are kept")
+    public ResponseEntity<ScheduleTemplate> removeTemplate(@PathVariable String templateId) {
+        return ResponseEntity.ok(scheduleService.removeTemplate(templateId));
+    }
+
+    @PostMapping("/materialize")
+    @Operation(summary = "Materialize schedules ahead",
+            description = "Creates every missing slot up to the given date (inclusive) in one bulk insert; "
+                    + "at most opd.schedule.max-materialize-days ahead")
+    public ResponseEntity<Map<String, Object>> materialize(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate through) {
+        long start = System.nanoTime();
+        int created = scheduleService.materializeThrough(through);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("through", through);
+        result.put("slotsCreated", created);
+        result.put("elapsedMillis", (System.nanoTime() - start) / 1_000_000);
+        return ResponseEntity.ok(result);
+    }
+
+    // Request DTOs
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CreateScheduleRequest {
+        @NotBlank(message = "Doctor ID is required")
+        private String doctorId;
+
+        @NotBlank(message = "Doctor name is required")
+        private String doctorName;
+
+        private String department;
+
+        @NotEmpty(message = "At least one weekly session is required")
+        private List<ScheduleTemplate.Session> sessions;
+
+        @Min(value = 1, message = "Slot length must be at least 1 minute")
+        private int slotMinutes;
+
+        @Min(value = 1, message = "Capacity must be at least 1")
+        private int capacity;
+
+        private Set<LocalDate> holidays;
+
+        private LocalDate validFrom;
+
+        private LocalDate validUntil;
+    }
+}
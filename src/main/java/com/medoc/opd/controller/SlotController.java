@@ -1,8 +1,14 @@
 package com.medoc.opd.controller;
 
+import com.medoc.opd.model.RebalanceSummary;
 import com.medoc.opd.model.TimeSlot;
 import com.medoc.opd.service.OPDTokenEngine;
+import com.medoc.opd.tenant.TenantEngines;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Min;
@@ -12,6 +18,7 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -19,18 +26,22 @@ import org.springframework.web.bind.annotation.*;
 import java.time.LocalDateTime;
 import java.util.List;
 
+import static com.medoc.opd.controller.ConditionalRequests.expectedVersion;
+import static com.medoc.opd.controller.ConditionalRequests.versioned;
+
 @RestController
 @RequestMapping("/api/slots")
 @RequiredArgsConstructor
 @Tag(name = "Slot Management", description = "APIs for managing doctor time slots")
 public class SlotController {
 
-    private final OPDTokenEngine engine;
+    private final TenantEngines tenants;
+    private final ResponseCache responseCache;
 
     @PostMapping
     @Operation(summary = "Create a new time slot", description = "Creates a new time slot for a doctor with specified capacity")
     public ResponseEntity<TimeSlot> createSlot(@Valid @RequestBody CreateSlotRequest request) {
-        TimeSlot slot = engine.createSlot(
+        TimeSlot slot = engine().createSlot(
                 request.getDoctorId(),
                 request.getDoctorName(),
                 request.getDepartment(),
@@ -38,33 +49,64 @@ public class SlotController {
                 request.getEndTime(),
                 request.getMaxCapacity()
         );
-        return ResponseEntity.status(HttpStatus.CREATED).body(slot);
+        return versioned(HttpStatus.CREATED, slot, slot.getVersion());
     }
 
     @GetMapping("/{slotId}")
-    @Operation(summary = "Get slot by ID", description = "Retrieve details of a specific time slot")
+    @Operation(summary = "Get slot by ID", description = "Retrieve details of a specific time slot. "
+            + "The ETag is the slot's version; send it back as If-Match to make a change conditional")
     public ResponseEntity<TimeSlot> getSlot(@PathVariable String slotId) {
-        return ResponseEntity.ok(engine.getSlot(slotId));
+        TimeSlot slot = engine().getSlot(slotId);
+        return versioned(slot, slot.getVersion());
     }
 
     @GetMapping
     @Operation(summary = "Get all slots", description = "Retrieve all time slots in the system")
     public ResponseEntity<List<TimeSlot>> getAllSlots() {
-        return ResponseEntity.ok(engine.getAllSlots());
+        return ResponseEntity.ok(engine().getAllSlots());
     }
 
     @GetMapping("/doctor/{doctorId}")
-    @Operation(summary = "Get doctor's slots", description = "Retrieve all time slots for a specific doctor")
-    public ResponseEntity<List<TimeSlot>> getDoctorSlots(@PathVariable String doctorId) {
-        return ResponseEntity.ok(engine.getDoctorSlots(doctorId));
+    @Operation(summary = "Get doctor's slots", description = "Retrieve all time slots for a specific doctor. " +
+            "Supports If-None-Match; the ETag changes on every mutation for the doctor")
+    @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json",
+            array = @ArraySchema(schema = @Schema(implementation = TimeSlot.class))))
+    public ResponseEntity<byte[]> getDoctorSlots(
+            @PathVariable String doctorId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        long epoch = engine().getDoctorSnapshot(doctorId).getEpoch();
+        // Epoch 0: a doctor the engine has never heard of
+        return responseCache.respond("slots:" + doctorId, String.valueOf(epoch), epoch > 0, ifNoneMatch,
+                () -> engine().getDoctorSlots(doctorId));
     }
 
     @PutMapping("/{slotId}/capacity")
-    @Operation(summary = "Adjust slot capacity", description = "Dynamically adjust the capacity of a time slot")
+    @Operation(summary = "Adjust slot capacity", description = "Dynamically adjust the capacity of a time slot. "
+            + TokenController.IF_MATCH_NOTE)
     public ResponseEntity<TimeSlot> adjustCapacity(
             @PathVariable String slotId,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @Valid @RequestBody AdjustCapacityRequest request) {
-        return ResponseEntity.ok(engine.adjustSlotCapacity(slotId, request.getNewCapacity()));
+        TimeSlot slot = engine().adjustSlotCapacity(slotId, request.getNewCapacity(), expectedVersion(ifMatch));
+        return versioned(slot, slot.getVersion());
+    }
+
+    @PutMapping("/doctor/{doctorId}/capacity")
+    @Operation(summary = "Adjust capacity over a time range",
+            description = "Sets the capacity of every slot of the doctor overlapping [from, to) in one atomic step " +
+                    "(0 closes the slots) and moves displaced patients to later slots. Returns every move made")
+    public ResponseEntity<RebalanceSummary> adjustCapacityRange(
+            @PathVariable String doctorId,
+            @Valid @RequestBody AdjustCapacityRangeRequest request) {
+        return ResponseEntity.ok(engine().adjustCapacityRange(
+                doctorId, request.getFrom(), request.getTo(), request.getNewCapacity()));
+    }
+
+    /**
+     * Engine of the tenant this request is for.
+     */
+    private OPDTokenEngine engine() {
+        return tenants.current();
     }
 
     // Request DTOs
@@ -97,4 +139,18 @@ public class SlotController {
         @Min(value = 0, message = "Capacity cannot be negative")
         private int newCapacity;
     }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class AdjustCapacityRangeRequest {
+        @NotNull(message = "Range start is required")
+        private LocalDateTime from;
+
+        @NotNull(message = "Range end is required")
+        private LocalDateTime to;
+
+        @Min(value = 0, message = "Capacity cannot be negative")
+        private int newCapacity;
+    }
 }
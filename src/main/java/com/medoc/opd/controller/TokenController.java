@@ -1,9 +1,16 @@
 package com.medoc.opd.controller;
 
+import com.medoc.opd.model.QueueEntry;
 import com.medoc.opd.model.Token;
 import com.medoc.opd.model.TokenSource;
+import com.medoc.opd.model.TokenView;
 import com.medoc.opd.service.OPDTokenEngine;
+import com.medoc.opd.tenant.TenantEngines;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
@@ -12,13 +19,16 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Map;
+
+import static com.medoc.opd.controller.ConditionalRequests.expectedVersion;
+import static com.medoc.opd.controller.ConditionalRequests.versioned;
 
 @RestController
 @RequestMapping("/api/tokens")
@@ -26,12 +36,21 @@ import java.util.Map;
 @Tag(name = "Token Management", description = "APIs for managing patient tokens")
 public class TokenController {
 
-    private final OPDTokenEngine engine;
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    static final String IF_MATCH_NOTE = "With If-Match, applies only if the ETag still matches, else 412";
+
+    private final TenantEngines tenants;
+    private final ResponseCache responseCache;
 
     @PostMapping
-    @Operation(summary = "Allocate a token", description = "Allocate a new token to a patient for a doctor's slot")
-    public ResponseEntity<Token> allocateToken(@Valid @RequestBody AllocateTokenRequest request) {
-        Token token = engine.allocateToken(
+    @Operation(summary = "Allocate a token", description = "Allocate a new token to a patient for a doctor's slot. "
+            + "Retries carrying the same Idempotency-Key header return the original token instead of booking again")
+    public ResponseEntity<Token> allocateToken(
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @Valid @RequestBody AllocateTokenRequest request) {
+        Token token = engine().allocateToken(
+                idempotencyKey,
                 request.getPatientId(),
                 request.getPatientName(),
                 request.getDoctorId(),
@@ -39,77 +58,148 @@ public class TokenController {
                 request.getPreferredTime(),
                 request.getNotes()
         );
-        return ResponseEntity.status(HttpStatus.CREATED).body(token);
+        return versioned(HttpStatus.CREATED, token, token.getVersion());
     }
 
     @PostMapping("/emergency")
     @Operation(summary = "Allocate emergency token", description = "Allocate highest priority emergency token, can exceed slot capacity")
-    public ResponseEntity<Token> allocateEmergencyToken(@Valid @RequestBody EmergencyTokenRequest request) {
-        Token token = engine.allocateEmergencyToken(
+    public ResponseEntity<Token> allocateEmergencyToken(
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @Valid @RequestBody EmergencyTokenRequest request) {
+        Token token = engine().allocateEmergencyToken(
+                idempotencyKey,
                 request.getPatientId(),
                 request.getPatientName(),
                 request.getDoctorId(),
                 request.getNotes()
         );
-        return ResponseEntity.status(HttpStatus.CREATED).body(token);
+        return versioned(HttpStatus.CREATED, token, token.getVersion());
     }
 
     @GetMapping("/{tokenId}")
-    @Operation(summary = "Get token by ID", description = "Retrieve details of a specific token")
+    @Operation(summary = "Get token by ID", description = "Retrieve details of a specific token. "
+            + "The ETag is the token's version; send it back as If-Match to make a change conditional")
     public ResponseEntity<Token> getToken(@PathVariable String tokenId) {
-        return ResponseEntity.ok(engine.getToken(tokenId));
+        Token token = engine().getToken(tokenId);
+        return versioned(token, token.getVersion());
     }
 
     @GetMapping
     @Operation(summary = "Get all tokens", description = "Retrieve all tokens in the system")
     public ResponseEntity<List<Token>> getAllTokens() {
-        return ResponseEntity.ok(engine.getAllTokens());
+        return ResponseEntity.ok(engine().getAllTokens());
+    }
+
+    @GetMapping("/patient/{patientId}")
+    @Operation(summary = "Get a patient's tokens",
+            description = "Tokens issued to a patient across all doctors, most recent first. Only unfinished tokens "
+                    + "unless includeHistory=true. In a cluster, covers only the doctors this node holds")
+    public ResponseEntity<List<Token>> getPatientTokens(@PathVariable String patientId,
+            @RequestParam(defaultValue = "false") boolean includeHistory) {
+        return ResponseEntity.ok(engine().getPatientTokens(patientId, includeHistory));
     }
 
     @PostMapping("/{tokenId}/check-in")
-    @Operation(summary = "Check-in patient", description = "Mark patient as checked in and waiting")
-    public ResponseEntity<Token> checkIn(@PathVariable String tokenId) {
-        return ResponseEntity.ok(engine.checkIn(tokenId));
+    @Operation(summary = "Check-in patient", description = "Mark patient as checked in and waiting. " + IF_MATCH_NOTE)
+    public ResponseEntity<Token> checkIn(
+            @PathVariable String tokenId,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Token token = engine().checkIn(tokenId, expectedVersion(ifMatch));
+        return versioned(token, token.getVersion());
     }
 
     @PostMapping("/{tokenId}/start-consultation")
-    @Operation(summary = "Start consultation", description = "Mark consultation as started")
-    public ResponseEntity<Token> startConsultation(@PathVariable String tokenId) {
-        return ResponseEntity.ok(engine.startConsultation(tokenId));
+    @Operation(summary = "Start consultation", description = "Mark consultation as started. " + IF_MATCH_NOTE)
+    public ResponseEntity<Token> startConsultation(
+            @PathVariable String tokenId,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Token token = engine().startConsultation(tokenId, expectedVersion(ifMatch));
+        return versioned(token, token.getVersion());
     }
 
     @PostMapping("/{tokenId}/complete-consultation")
-    @Operation(summary = "Complete consultation", description = "Mark consultation as completed")
-    public ResponseEntity<Token> completeConsultation(@PathVariable String tokenId) {
-        return ResponseEntity.ok(engine.completeConsultation(tokenId));
+    @Operation(summary = "Complete consultation", description = "Mark consultation as completed. " + IF_MATCH_NOTE)
+    public ResponseEntity<Token> completeConsultation(
+            @PathVariable String tokenId,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Token token = engine().completeConsultation(tokenId, expectedVersion(ifMatch));
+        return versioned(token, token.getVersion());
     }
 
     @DeleteMapping("/{tokenId}")
-    @Operation(summary = "Cancel token", description = "Cancel a token and free up slot capacity")
-    public ResponseEntity<Token> cancelToken(@PathVariable String tokenId) {
-        return ResponseEntity.ok(engine.cancelToken(tokenId));
+    @Operation(summary = "Cancel token", description = "Cancel a token and free up slot capacity. " + IF_MATCH_NOTE)
+    public ResponseEntity<Token> cancelToken(
+            @PathVariable String tokenId,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Token token = engine().cancelToken(tokenId, expectedVersion(ifMatch));
+        return versioned(token, token.getVersion());
     }
 
     @PostMapping("/{tokenId}/no-show")
-    @Operation(summary = "Mark as no-show", description = "Mark patient as no-show and free up capacity")
-    public ResponseEntity<Token> markNoShow(@PathVariable String tokenId) {
-        return ResponseEntity.ok(engine.markNoShow(tokenId));
+    @Operation(summary = "Mark as no-show", description = "Mark patient as no-show and free up capacity. " + IF_MATCH_NOTE)
+    public ResponseEntity<Token> markNoShow(
+            @PathVariable String tokenId,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Token token = engine().markNoShow(tokenId, expectedVersion(ifMatch));
+        return versioned(token, token.getVersion());
     }
 
     @GetMapping("/queue/{doctorId}")
-    @Operation(summary = "Get doctor's queue", description = "Get current queue for a doctor sorted by priority")
-    public ResponseEntity<List<Token>> getDoctorQueue(@PathVariable String doctorId) {
-        return ResponseEntity.ok(engine.getDoctorQueue(doctorId));
+    @Operation(summary = "Get doctor's queue", description = "Get current queue for a doctor sorted by priority, " +
+            "each token with its position and estimated call time. view=display returns the slim TokenView " +
+            "projection for kiosks and display boards. Send Accept: application/cbor for a binary encoding. " +
+            "Supports If-None-Match; the ETag changes on every mutation for the doctor and every minute (priority aging)")
+    @ApiResponse(responseCode = "200", content = {
+            @Content(mediaType = "application/json",
+                    array = @ArraySchema(schema = @Schema(implementation = QueueEntry.class))),
+            @Content(mediaType = "application/cbor",
+                    array = @ArraySchema(schema = @Schema(implementation = QueueEntry.class)))})
+    public ResponseEntity<byte[]> getDoctorQueue(
+            @PathVariable String doctorId,
+            @RequestParam(defaultValue = "full") String view,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        OPDTokenEngine engine = engine();
+        // Dynamic priority ages with the engine clock, so the version also rolls over each minute
+        long epoch = engine.getDoctorSnapshot(doctorId).getEpoch();
+        String version = epoch + "-" + (engine.getClock().millis() / 60_000);
+        // Epoch 0: a doctor the engine has never heard of
+        boolean known = epoch > 0;
+        if (view.equalsIgnoreCase("display")) {
+            return responseCache.respond("queue-display:" + doctorId, "display-" + version, known, ifNoneMatch,
+                    () -> engine.getDoctorQueueWithEstimates(doctorId).stream().map(TokenView::of).toList());
+        }
+        if (!view.equalsIgnoreCase("full")) {
+            throw new IllegalArgumentException("view must be 'full' or 'display': " + view);
+        }
+        return responseCache.respond("queue:" + doctorId, version, known, ifNoneMatch,
+                () -> engine.getDoctorQueueWithEstimates(doctorId));
     }
 
     @GetMapping("/statistics")
-    @Operation(summary = "Get statistics", description = "Get token statistics for a doctor or overall system")
-    public ResponseEntity<Map<String, Object>> getStatistics(
-            @RequestParam(required = false) String doctorId) {
-        return ResponseEntity.ok(engine.getStatistics(doctorId));
+    @Operation(summary = "Get statistics", description = "Get token statistics for a doctor or overall system. " +
+            "Supports If-None-Match; the ETag changes when the underlying tokens change")
+    @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json",
+            schema = @Schema(type = "object")))
+    public ResponseEntity<byte[]> getStatistics(
+            @RequestParam(required = false) String doctorId,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        OPDTokenEngine engine = engine();
+        long epoch = doctorId != null
+                ? engine.getDoctorSnapshot(doctorId).getEpoch()
+                : engine.getCurrentEpoch();
+        return responseCache.respond("statistics:" + (doctorId != null ? doctorId : "*"), String.valueOf(epoch),
+                doctorId == null || epoch > 0, ifNoneMatch, () -> engine.getStatistics(doctorId));
+    }
+
+    /**
+     * Engine of the tenant this request is for.
+     */
+    private OPDTokenEngine engine() {
+        return tenants.current();
     }
 
     // Request DTOs
+
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
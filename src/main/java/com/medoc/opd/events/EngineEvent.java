@@ -0,0 +1,63 @@
+package com.medoc.opd.events;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.medoc.opd.model.TokenStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One change to the engine's state, as published on the event stream.
+ * Fields that do not apply to the event type are left null.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class EngineEvent {
+
+    public enum Type {
+        SLOT_CREATED,
+        SLOT_CAPACITY_CHANGED,
+        SLOT_CLOSED,
+        TOKEN_ALLOCATED,
+        TOKEN_REALLOCATED,
+        TOKEN_STATUS_CHANGED
+    }
+
+    /** Position in this node's stream; gap-free and increasing. Assigned when the event is appended. */
+    private long offset;
+
+    private Type type;
+
+    /** Engine clock when the change was published. */
+    private LocalDateTime at;
+
+    private String doctorId;
+
+    /** Snapshot epoch of the doctor that contains the change. */
+    private long epoch;
+
+    private String slotId;
+    private String tokenId;
+    private String patientId;
+    private Integer tokenNumber;
+
+    /** Token status before and after; {@code fromStatus} is null for a new token. */
+    private TokenStatus fromStatus;
+    private TokenStatus toStatus;
+
+    /** Slot the token left, for {@link Type#TOKEN_REALLOCATED}. */
+    private String previousSlotId;
+
+    /** Slot capacity before and after, for slot events. */
+    private Integer previousCapacity;
+    private Integer capacity;
+
+    /** Version of the token or slot after the change (its ETag). */
+    private Long version;
+}
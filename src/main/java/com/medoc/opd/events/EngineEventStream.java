@@ -0,0 +1,292 @@
+package com.medoc.opd.events;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.medoc.opd.model.DoctorSnapshot;
+import com.medoc.opd.model.TimeSlot;
+import com.medoc.opd.model.Token;
+import com.medoc.opd.service.DoctorSnapshotListener;
+import com.medoc.opd.service.OPDTokenEngine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Change-data-capture stream of the engine: every locally made change to a
+ * slot or token becomes a typed {@link EngineEvent} with a node-wide offset.
+ *
+ * Events are derived from consecutive snapshots of a doctor (the same
+ * source the standby stream uses), so they come out in mutation order per
+ * doctor and cost only the slots and tokens that changed. Publishers hand
+ * each batch to a writer thread, which assigns offsets and appends to the
+ * buffer and file outside the doctor's lock. The newest
+ * {@code opd.events.buffer-size} events are held in memory; with
+ * {@code opd.events.file} set, every event is also appended to a JSON-lines
+ * file, offsets carry on across restarts, and reads that fall behind the
+ * buffer are served from the file. Consumers read by offset over HTTP
+ * ({@code GET /api/events}) or subscribe in-process.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "opd.events.enabled", havingValue = "true", matchIfMissing = true)
+public class EngineEventStream implements DoctorSnapshotListener {
+
+    private final OPDTokenEngine engine;
+    private final ObjectMapper objectMapper;
+
+    @Value("${opd.events.buffer-size:65536}")
+    private int bufferSize;
+
+    @Value("${opd.events.file:}")
+    private String file;
+
+    private EventRingBuffer buffer;
+    // Dropped (memory-only from then on) if the file log fails
+    private volatile EventFileLog fileLog;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<List<EngineEvent>> pending = new LinkedBlockingQueue<>();
+    private volatile boolean writing;
+    private Thread writer;
+
+    @PostConstruct
+    public void start() throws IOException {
+        long firstOffset = 0;
+        if (!file.isBlank()) {
+            Path path = Path.of(file);
+            firstOffset = EventFileLog.nextOffsetIn(path);
+            fileLog = new EventFileLog(path, objectMapper);
+        }
+        buffer = new EventRingBuffer(bufferSize, firstOffset);
+        writing = true;
+        writer = new Thread(this::write, "event-writer");
+        writer.setDaemon(true);
+        writer.start();
+        engine.addSnapshotListener(this);
+        log.info("Publishing engine events from offset {} (buffer {}, file {})",
+                firstOffset, buffer.getCapacity(), fileLog != null ? file : "off");
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        engine.removeSnapshotListener(this);
+        writing = false;
+        writer.interrupt();
+        writer.join();
+        subscriptions.forEach(Subscription::close);
+        if (fileLog != null) {
+            fileLog.close();
+        }
+    }
+
+    @Override
+    public void onPublish(DoctorSnapshot previous, DoctorSnapshot current) {
+        List<EngineEvent> events = diff(previous, current, engine.now());
+        if (!events.isEmpty()) {
+            // Offsets are assigned by the writer, off the doctor's lock; a doctor
+            // publishes under its lock, so its batches queue in epoch order
+            pending.add(events);
+        }
+    }
+
+    /**
+     * Up to {@code max} events from {@code fromOffset} on. If nothing that new
+     * exists yet, waits up to {@code waitMillis} for it (long polling).
+     */
+    public EventBatch read(long fromOffset, int max, long waitMillis) throws IOException, InterruptedException {
+        EventFileLog fileLog = this.fileLog;
+        long oldest = buffer.getOldestOffset();
+        List<EngineEvent> events;
+        if (fromOffset < oldest && fileLog != null) {
+            events = fileLog.read(fromOffset, max);
+        } else {
+            if (waitMillis > 0) {
+                buffer.await(fromOffset, waitMillis);
+            }
+            events = buffer.read(fromOffset, max);
+            oldest = buffer.getOldestOffset();
+        }
+
+        long next = events.isEmpty()
+                ? Math.min(Math.max(fromOffset, oldest), buffer.getNextOffset())
+                : events.get(events.size() - 1).getOffset() + 1;
+        boolean gap = events.isEmpty() ? fromOffset < oldest && fileLog == null
+                : events.get(0).getOffset() > fromOffset;
+        return new EventBatch(events, next, fileLog != null ? 0 : oldest, gap);
+    }
+
+    /**
+     * Deliver every event from {@code fromOffset} on to {@code consumer}, in
+     * offset order, on a dedicated thread. Delivery is at least once: if the
+     * consumer throws, the same event is offered again a second later.
+     */
+    public Subscription subscribe(long fromOffset, Consumer<EngineEvent> consumer) {
+        Subscription subscription = new Subscription(fromOffset, consumer);
+        subscriptions.add(subscription);
+        subscription.thread.start();
+        return subscription;
+    }
+
+    public long getNextOffset() {
+        return buffer.getNextOffset();
+    }
+
+    /**
+     * Events for what changed between two consecutive snapshots of one doctor.
+     * Looks only at the slots and tokens the newer snapshot marks as changed.
+     */
+    static List<EngineEvent> diff(DoctorSnapshot previous, DoctorSnapshot current, LocalDateTime at) {
+        List<EngineEvent> events = new ArrayList<>();
+        String doctorId = current.getDoctorId();
+        long epoch = current.getEpoch();
+
+        for (String slotId : current.getChangedSlotIds()) {
+            TimeSlot slot = current.getSlotsById().get(slotId);
+            TimeSlot before = previous.getSlotsById().get(slotId);
+            if (before != null && before.getVersion() == slot.getVersion()) {
+                continue;
+            }
+            EngineEvent.EngineEventBuilder event = EngineEvent.builder()
+                    .at(at).doctorId(doctorId).epoch(epoch)
+                    .slotId(slot.getSlotId()).capacity(slot.getMaxCapacity()).version(slot.getVersion());
+            if (before == null) {
+                events.add(event.type(EngineEvent.Type.SLOT_CREATED).build());
+                continue;
+            }
+            if (before.getMaxCapacity() != slot.getMaxCapacity()) {
+                events.add(event.type(EngineEvent.Type.SLOT_CAPACITY_CHANGED)
+                        .previousCapacity(before.getMaxCapacity()).build());
+            }
+            if (before.isActive() && !slot.isActive()) {
+                events.add(event.type(EngineEvent.Type.SLOT_CLOSED).previousCapacity(null).build());
+            }
+        }
+
+        // A token keeps its index across snapshots, so its previous image is at the same index, if any
+        List<Token> before = previous.getTokens();
+        List<Token> after = current.getTokens();
+        for (int index : current.getChangedTokenIndexes().values()) {
+            Token token = after.get(index);
+            Token old = index < before.size() ? before.get(index) : null;
+            if (old != null && old.getVersion() == token.getVersion()) {
+                continue;
+            }
+
+            EngineEvent.EngineEventBuilder event = EngineEvent.builder()
+                    .at(at).doctorId(doctorId).epoch(epoch)
+                    .slotId(token.getSlotId()).tokenId(token.getTokenId()).patientId(token.getPatientId())
+                    .tokenNumber(token.getTokenNumber()).toStatus(token.getStatus()).version(token.getVersion());
+            if (old == null) {
+                events.add(event.type(EngineEvent.Type.TOKEN_ALLOCATED).build());
+            } else if (!Objects.equals(old.getSlotId(), token.getSlotId())) {
+                events.add(event.type(EngineEvent.Type.TOKEN_REALLOCATED)
+                        .previousSlotId(old.getSlotId()).fromStatus(old.getStatus()).build());
+            } else if (old.getStatus() != token.getStatus()) {
+                events.add(event.type(EngineEvent.Type.TOKEN_STATUS_CHANGED).fromStatus(old.getStatus()).build());
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Moves published events into the buffer and file, in the order doctors published them.
+     */
+    private void write() {
+        List<List<EngineEvent>> batches = new ArrayList<>();
+        while (writing || !pending.isEmpty()) {
+            try {
+                batches.add(pending.take());
+            } catch (InterruptedException e) {
+                // Woken by stop(): drain whatever was published before it
+            }
+            pending.drainTo(batches);
+            for (List<EngineEvent> events : batches) {
+                buffer.append(events);
+                EventFileLog eventLog = fileLog;
+                if (eventLog != null && !eventLog.append(events)) {
+                    // Never block on the disk: older reads now report a gap instead
+                    fileLog = null;
+                }
+            }
+            batches.clear();
+        }
+    }
+
+    /**
+     * An in-process consumer of the stream, fed on its own thread.
+     */
+    public final class Subscription implements AutoCloseable {
+
+        private static final int BATCH = 500;
+        private static final long RETRY_MILLIS = 1_000;
+
+        private final Consumer<EngineEvent> consumer;
+        private final Thread thread;
+        private volatile long offset;
+        private volatile boolean running = true;
+
+        private Subscription(long fromOffset, Consumer<EngineEvent> consumer) {
+            this.offset = fromOffset;
+            this.consumer = consumer;
+            this.thread = new Thread(this::run, "event-subscription");
+            thread.setDaemon(true);
+        }
+
+        /** Offset of the next event to be delivered. */
+        public long getOffset() {
+            return offset;
+        }
+
+        @Override
+        public void close() {
+            running = false;
+            thread.interrupt();
+            subscriptions.remove(this);
+        }
+
+        private void run() {
+            while (running) {
+                try {
+                    EventBatch batch = read(offset, BATCH, RETRY_MILLIS);
+                    if (batch.isGap()) {
+                        log.warn("Event subscriber fell behind; skipping from offset {} to {}",
+                                offset, batch.getEvents().isEmpty() ? batch.getNextOffset()
+                                        : batch.getEvents().get(0).getOffset());
+                    }
+                    if (batch.getEvents().isEmpty()) {
+                        offset = batch.getNextOffset();
+                    }
+                    for (EngineEvent event : batch.getEvents()) {
+                        consumer.accept(event);
+                        offset = event.getOffset() + 1;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (IOException | RuntimeException e) {
+                    log.error("Event subscriber failed at offset {}; retrying", offset, e);
+                    try {
+                        Thread.sleep(RETRY_MILLIS);
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.medoc.opd.events;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * One read from the event stream.
+ */
+@Value
+public class EventBatch {
+
+    List<EngineEvent> events;
+
+    /** Offset to ask for next. */
+    long nextOffset;
+
+    /** Oldest offset that can still be read. */
+    long oldestOffset;
+
+    /** True if events between the requested offset and the first one returned are gone. */
+    boolean gap;
+}
@@ -0,0 +1,234 @@
+package com.medoc.opd.events;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only file of published events, one JSON object per line, for
+ * consumers that need to go back further than the ring buffer holds and
+ * for replaying the stream after the fact.
+ *
+ * Publishers only enqueue; a single writer thread encodes, writes and
+ * flushes in batches. Events still queued when the process dies are lost,
+ * and a torn last line is ignored by readers.
+ *
+ * Publishers never wait for the disk: once a write fails or the queue is
+ * full, the log marks itself failed, stops writing and rejects further
+ * events, and its owner carries on without it.
+ */
+@Slf4j
+public class EventFileLog implements Closeable {
+
+    private static final String OFFSET_PREFIX = "{\"offset\":";
+
+    private final Path path;
+    private final ObjectMapper objectMapper;
+
+    // Bounded so a stalled disk cannot exhaust the heap; overflowing it fails the log
+    private final BlockingQueue<EngineEvent> pending = new LinkedBlockingQueue<>(100_000);
+    private final BufferedWriter writer;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+    private volatile boolean failed;
+
+    public EventFileLog(Path path, ObjectMapper objectMapper) throws IOException {
+        this.path = path;
+        this.objectMapper = objectMapper;
+        boolean tornTail = endsWithoutNewline(path);
+        this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (tornTail) {
+            // Keep the torn line on its own so the next event starts a line of its own
+            writer.newLine();
+        }
+        this.writerThread = new Thread(this::drainLoop, "event-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Offset one past the last complete event in the file, or 0 if there is none,
+     * so a restarted node continues the stream where it left off.
+     */
+    public static long nextOffsetIn(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+            long end = file.length();
+            while (end > 0) {
+                long start = end - 1;
+                // Walk back to the previous newline
+                while (start > 0) {
+                    file.seek(start - 1);
+                    if (file.read() == '\n') {
+                        break;
+                    }
+                    start--;
+                }
+                byte[] bytes = new byte[(int) (end - start)];
+                file.seek(start);
+                file.readFully(bytes);
+                String line = new String(bytes, StandardCharsets.UTF_8).trim();
+                long offset = offsetOf(line);
+                if (offset >= 0 && line.endsWith("}")) {
+                    return offset + 1;
+                }
+                end = start - 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Queue events for writing without blocking.
+     *
+     * @return false if the log has failed, now or earlier; it then writes nothing more
+     */
+    public boolean append(List<EngineEvent> events) {
+        if (failed) {
+            return false;
+        }
+        for (EngineEvent event : events) {
+            if (!pending.offer(event)) {
+                fail("writer is " + pending.size() + " events behind", null);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Up to {@code max} events from {@code fromOffset} on, scanning the file from
+     * the start. Lines before the offset are skipped without being decoded.
+     */
+    public List<EngineEvent> read(long fromOffset, int max) throws IOException {
+        List<EngineEvent> events = new ArrayList<>();
+        if (!Files.exists(path) || max <= 0) {
+            return events;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while (events.size() < max && (line = reader.readLine()) != null) {
+                long offset = offsetOf(line);
+                if (offset < fromOffset) {
+                    continue;
+                }
+                try {
+                    events.add(objectMapper.readValue(line, EngineEvent.class));
+                } catch (IOException e) {
+                    // Torn line left by a crash mid-write; later lines are intact
+                    log.debug("Skipping unreadable line in {}", path);
+                }
+            }
+        }
+        return events;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer.close();
+    }
+
+    private void drainLoop() {
+        List<EngineEvent> batch = new ArrayList<>();
+        try {
+            while (running || !pending.isEmpty()) {
+                EngineEvent first = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                if (failed) {
+                    break;
+                }
+                batch.add(first);
+                pending.drainTo(batch);
+                for (EngineEvent event : batch) {
+                    writer.write(objectMapper.writeValueAsString(event));
+                    writer.newLine();
+                }
+                batch.clear();
+                writer.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            fail("write failed", e);
+        }
+        if (failed) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.debug("Closing failed event log {}", path, e);
+            }
+        }
+    }
+
+    private void fail(String reason, Exception cause) {
+        if (failed) {
+            return;
+        }
+        failed = true;
+        running = false;
+        pending.clear();
+        log.error("Event log {} failed ({}); no further events will be written to it", path, reason, cause);
+    }
+
+    private static boolean endsWithoutNewline(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+            if (file.length() == 0) {
+                return false;
+            }
+            file.seek(file.length() - 1);
+            return file.read() != '\n';
+        }
+    }
+
+    /**
+     * Offset at the start of a line as written by this class, or -1 if the line is not one.
+     */
+    private static long offsetOf(String line) {
+        if (!line.startsWith(OFFSET_PREFIX)) {
+            return -1;
+        }
+        long offset = 0;
+        int digits = 0;
+        for (int i = OFFSET_PREFIX.length(); i < line.length() && Character.isDigit(line.charAt(i)); i++) {
+            offset = offset * 10 + (line.charAt(i) - '0');
+            digits++;
+        }
+        return digits == 0 ? -1 : offset;
+    }
+}
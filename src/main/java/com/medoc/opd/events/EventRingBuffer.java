@@ -0,0 +1,95 @@
+package com.medoc.opd.events;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded in-memory window of the most recent events, addressed by offset.
+ *
+ * Appends assign consecutive offsets; once the buffer is full each append
+ * overwrites the oldest event. Readers ask for events from an offset and
+ * get whatever of that range is still held, so a reader that falls more
+ * than a buffer behind sees a gap (reported through {@link #getOldestOffset})
+ * rather than blocking writers. Appends and reads hold the monitor only to
+ * copy references.
+ */
+public class EventRingBuffer {
+
+    private final EngineEvent[] ring;
+    private final int mask;
+    private final long firstOffset;
+    private long nextOffset;
+
+    /**
+     * @param capacity    rounded up to a power of two
+     * @param firstOffset offset of the first event appended, e.g. one past the last on disk
+     */
+    public EventRingBuffer(int capacity, long firstOffset) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Event buffer needs room for at least one event");
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.ring = new EngineEvent[size];
+        this.mask = size - 1;
+        this.firstOffset = firstOffset;
+        this.nextOffset = firstOffset;
+    }
+
+    /**
+     * Append events as one contiguous run of offsets, waking any waiting readers.
+     */
+    public synchronized void append(List<EngineEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        for (EngineEvent event : events) {
+            event.setOffset(nextOffset);
+            ring[(int) (nextOffset & mask)] = event;
+            nextOffset++;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Up to {@code max} events from {@code fromOffset} on, or from the oldest
+     * held event if {@code fromOffset} has already been overwritten.
+     */
+    public synchronized List<EngineEvent> read(long fromOffset, int max) {
+        long start = Math.max(fromOffset, getOldestOffset());
+        long end = Math.min(nextOffset, start + Math.max(0, max));
+        List<EngineEvent> events = new ArrayList<>((int) Math.max(0, end - start));
+        for (long offset = start; offset < end; offset++) {
+            events.add(ring[(int) (offset & mask)]);
+        }
+        return events;
+    }
+
+    /**
+     * Wait until an event at or after {@code fromOffset} exists, or the timeout passes.
+     *
+     * @return whether such an event exists
+     */
+    public synchronized boolean await(long fromOffset, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+        while (nextOffset <= fromOffset && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return nextOffset > fromOffset;
+    }
+
+    /** Offset the next appended event will get. */
+    public synchronized long getNextOffset() {
+        return nextOffset;
+    }
+
+    /** Smallest offset still held (equal to {@link #getNextOffset} when empty). */
+    public synchronized long getOldestOffset() {
+        return Math.max(firstOffset, nextOffset - ring.length);
+    }
+
+    public int getCapacity() {
+        return ring.length;
+    }
+}
@@ -0,0 +1,14 @@
+package com.medoc.opd.exception;
+
+import java.time.LocalDate;
+
+/**
+ * Exception thrown when a patient already holds an active token with the
+ * same doctor on the same day.
+ */
+public class DuplicateBookingException extends RuntimeException {
+    public DuplicateBookingException(String patientId, String doctorId, LocalDate date, int existingTokenNumber) {
+        super("Patient " + patientId + " already has token " + existingTokenNumber
+                + " with doctor " + doctorId + " on " + date);
+    }
+}
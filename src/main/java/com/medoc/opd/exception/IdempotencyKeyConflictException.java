@@ -0,0 +1,10 @@
+package com.medoc.opd.exception;
+
+/**
+ * Exception thrown when an idempotency key is reused for a different request.
+ */
+public class IdempotencyKeyConflictException extends RuntimeException {
+    public IdempotencyKeyConflictException(String idempotencyKey) {
+        super("Idempotency key " + idempotencyKey + " was already used for a different booking request");
+    }
+}
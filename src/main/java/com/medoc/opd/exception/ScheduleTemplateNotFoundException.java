@@ -0,0 +1,10 @@
+package com.medoc.opd.exception;
+
+/**
+ * Exception thrown when a schedule template is not found.
+ */
+public class ScheduleTemplateNotFoundException extends RuntimeException {
+    public ScheduleTemplateNotFoundException(String templateId) {
+        super("Schedule template not found with ID: " + templateId);
+    }
+}
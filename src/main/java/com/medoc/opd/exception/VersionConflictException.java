@@ -0,0 +1,19 @@
+package com.medoc.opd.exception;
+
+/**
+ * Exception thrown when a conditional update names a version of a token or
+ * slot that is no longer current.
+ */
+public class VersionConflictException extends RuntimeException {
+
+    private final long currentVersion;
+
+    public VersionConflictException(String kind, String id, long expectedVersion, long currentVersion) {
+        super(kind + " " + id + " has changed: version is " + currentVersion + ", request expected " + expectedVersion);
+        this.currentVersion = currentVersion;
+    }
+
+    public long getCurrentVersion() {
+        return currentVersion;
+    }
+}
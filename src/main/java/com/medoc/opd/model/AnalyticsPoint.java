@@ -0,0 +1,42 @@
+package com.medoc.opd.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Token activity for one doctor or department over {@code [start, end)}.
+ * Durations are in minutes; percentiles are sketch estimates (within 2%).
+ */
+@Value
+@Builder
+public class AnalyticsPoint {
+
+    LocalDateTime start;
+    LocalDateTime end;
+
+    long bookings;
+
+    /** Patients who checked in. */
+    long arrivals;
+
+    long consultationsStarted;
+    long consultationsCompleted;
+    long cancellations;
+    long noShows;
+
+    /** No-shows / (no-shows + arrivals); 0 when neither happened. */
+    double noShowRate;
+
+    /** Check-in to consultation start, for consultations started in the window. */
+    double waitMeanMinutes;
+    double waitP50Minutes;
+    double waitP90Minutes;
+    double waitP99Minutes;
+
+    /** Consultation start to completion, for consultations completed in the window. */
+    double consultationMeanMinutes;
+    double consultationP50Minutes;
+    double consultationP90Minutes;
+}
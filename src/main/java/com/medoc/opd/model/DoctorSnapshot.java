@@ -0,0 +1,74 @@
+package com.medoc.opd.model;
+
+import lombok.Value;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable, epoch-versioned view of one doctor's slots and tokens.
+ * Published by the engine after every mutation batch; readers never see
+ * a half-applied change and never touch the live objects writers mutate.
+ */
+@Value
+public class DoctorSnapshot {
+
+    String doctorId;
+    long epoch;
+
+    /** Copies of the doctor's slots, ordered by start time. */
+    List<TimeSlot> slots;
+
+    /** Copies of every token ever issued for this doctor. */
+    List<Token> tokens;
+
+    Map<String, TimeSlot> slotsById;
+
+    /**
+     * Copies of the checked-in tokens in calling order, kept by the engine
+     * under a fair queueing discipline; null under priority aging, whose
+     * order changes with the clock and is sorted on read.
+     */
+    List<Token> callOrder;
+
+    /** Slots created or changed since the doctor's previous snapshot. */
+    Set<String> changedSlotIds;
+
+    /**
+     * Tokens issued or changed since the doctor's previous snapshot, by their
+     * index in {@link #tokens}. A token keeps its index in every later snapshot.
+     */
+    Map<String, Integer> changedTokenIndexes;
+
+    public DoctorSnapshot(String doctorId, long epoch, List<TimeSlot> slots, List<Token> tokens) {
+        this(doctorId, epoch, slots, tokens, null);
+    }
+
+    public DoctorSnapshot(String doctorId, long epoch, List<TimeSlot> slots, List<Token> tokens,
+                          List<Token> callOrder) {
+        this(doctorId, epoch, slots, tokens, callOrder, Set.of(), Map.of());
+    }
+
+    public DoctorSnapshot(String doctorId, long epoch, List<TimeSlot> slots, List<Token> tokens,
+                          List<Token> callOrder, Set<String> changedSlotIds,
+                          Map<String, Integer> changedTokenIndexes) {
+        this.doctorId = doctorId;
+        this.epoch = epoch;
+        this.slots = Collections.unmodifiableList(slots);
+        this.tokens = Collections.unmodifiableList(tokens);
+        this.callOrder = callOrder != null ? Collections.unmodifiableList(callOrder) : null;
+        this.changedSlotIds = Collections.unmodifiableSet(changedSlotIds);
+        this.changedTokenIndexes = Collections.unmodifiableMap(changedTokenIndexes);
+
+        Map<String, TimeSlot> byId = new LinkedHashMap<>();
+        slots.forEach(slot -> byId.put(slot.getSlotId(), slot));
+        this.slotsById = Collections.unmodifiableMap(byId);
+    }
+
+    public static DoctorSnapshot empty(String doctorId) {
+        return new DoctorSnapshot(doctorId, 0L, List.of(), List.of());
+    }
+}
@@ -0,0 +1,29 @@
+package com.medoc.opd.model;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * A token in a doctor's queue together with when the patient can expect to
+ * be called. Serialized as the token's own fields plus the estimate, so
+ * clients that only read the token keep working.
+ */
+@Value
+@Builder
+public class QueueEntry {
+
+    @JsonUnwrapped
+    Token token;
+
+    /** 1-based place in the queue. */
+    int position;
+
+    /** Estimated time the doctor calls this patient in. */
+    LocalDateTime estimatedCallAt;
+
+    /** Minutes from now until {@link #estimatedCallAt}; 0 if the call is due. */
+    long estimatedWaitMinutes;
+}
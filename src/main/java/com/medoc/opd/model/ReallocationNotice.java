@@ -0,0 +1,54 @@
+package com.medoc.opd.model;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
+
+import java.time.LocalDateTime;
+
+/**
+ * A patient still to be told that the engine moved their token, or could not
+ * move it out of an overfull slot. Held on the token itself until a
+ * notification has been delivered, so it is recorded together with the move
+ * and travels with the token wherever the token is replicated.
+ *
+ * Further moves before delivery replace the notice but keep the slot the
+ * patient last knew about, so the patient gets one message from where they
+ * were to where they are now.
+ */
+@Value
+@Builder(toBuilder = true)
+@Jacksonized
+public class ReallocationNotice {
+
+    public enum Type {
+        /** The token was moved to a later slot. */
+        MOVED,
+        /** No later slot had room; the token stays in its overfull slot. */
+        UNPLACED
+    }
+
+    /** Engine-wide sequence; a delivery only clears the notice it was built from. */
+    long sequence;
+
+    Type type;
+
+    String tokenId;
+    int tokenNumber;
+    String patientId;
+    String patientName;
+    String doctorId;
+
+    /** Slot the patient was booked into when last told anything. */
+    String originalSlotId;
+    LocalDateTime originalStartTime;
+
+    /** Slot the token is in now. */
+    String slotId;
+    LocalDateTime startTime;
+
+    /** Moves (or failed moves) folded into this notice. */
+    int moves;
+
+    LocalDateTime recordedAt;
+}
@@ -0,0 +1,45 @@
+package com.medoc.opd.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Outcome of a range capacity change for one doctor: which slots changed and
+ * where every displaced token went.
+ */
+@Value
+@Builder
+public class RebalanceSummary {
+
+    String doctorId;
+    LocalDateTime from;
+    LocalDateTime to;
+    int newCapacity;
+
+    int slotsAdjusted;
+    int slotsClosed;
+    int tokensDisplaced;
+    int tokensMoved;
+
+    /** Displaced tokens with no later slot to go to; they stay put and need a call from staff. */
+    int tokensUnplaced;
+
+    List<TokenMove> moves;
+
+    /**
+     * One displaced token. {@code toSlotId} is null if it could not be placed.
+     */
+    @Value
+    public static class TokenMove {
+        String tokenId;
+        int tokenNumber;
+        String patientId;
+        TokenSource source;
+        String fromSlotId;
+        String toSlotId;
+        LocalDateTime newStartTime;
+    }
+}
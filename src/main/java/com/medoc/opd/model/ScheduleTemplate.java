@@ -0,0 +1,120 @@
+package com.medoc.opd.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Recurring weekly schedule for a doctor. Sessions are cut into slots of
+ * {@code slotMinutes}; holidays and dates outside the validity window are skipped.
+ * Slots are materialized a rolling horizon ahead rather than all at once.
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScheduleTemplate {
+
+    @Builder.Default
+    private String templateId = UUID.randomUUID().toString();
+
+    private String doctorId;
+    private String doctorName;
+    private String department;
+
+    @Builder.Default
+    private List<Session> sessions = new ArrayList<>();
+
+    private int slotMinutes;
+    private int capacity;
+
+    @Builder.Default
+    private Set<LocalDate> holidays = new HashSet<>();
+
+    // Inclusive; null means open-ended
+    private LocalDate validFrom;
+    private LocalDate validUntil;
+
+    // Last date slots have been generated for
+    private LocalDate materializedThrough;
+
+    /**
+     * A weekly consulting window, e.g. Monday 09:00-13:00.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Session {
+        private DayOfWeek dayOfWeek;
+        private LocalTime start;
+        private LocalTime end;
+    }
+
+    /**
+     * Check the template describes a usable schedule.
+     */
+    public void validate() {
+        if (slotMinutes <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Slot length and capacity must be positive");
+        }
+        if (validFrom != null && validUntil != null && validUntil.isBefore(validFrom)) {
+            throw new IllegalArgumentException("validUntil is before validFrom");
+        }
+        for (Session session : sessions) {
+            if (session.getDayOfWeek() == null || session.getStart() == null || session.getEnd() == null
+                    || !session.getStart().isBefore(session.getEnd())) {
+                throw new IllegalArgumentException("Invalid session " + session);
+            }
+        }
+    }
+
+    /**
+     * Whether slots should exist for this date at all.
+     */
+    public boolean isWorkingDay(LocalDate date) {
+        return (validFrom == null || !date.isBefore(validFrom))
+                && (validUntil == null || !date.isAfter(validUntil))
+                && !holidays.contains(date);
+    }
+
+    /**
+     * Build (but do not register) the slots this template defines for one date.
+     * A trailing part of a session shorter than {@code slotMinutes} is dropped.
+     */
+    public List<TimeSlot> slotsFor(LocalDate date) {
+        List<TimeSlot> result = new ArrayList<>();
+        if (!isWorkingDay(date)) {
+            return result;
+        }
+        for (Session session : sessions) {
+            if (session.getDayOfWeek() != date.getDayOfWeek()) {
+                continue;
+            }
+            LocalDateTime sessionEnd = date.atTime(session.getEnd());
+            LocalDateTime start = date.atTime(session.getStart());
+            while (!start.plusMinutes(slotMinutes).isAfter(sessionEnd)) {
+                result.add(TimeSlot.builder()
+                        .doctorId(doctorId)
+                        .doctorName(doctorName)
+                        .department(department)
+                        .startTime(start)
+                        .endTime(start.plusMinutes(slotMinutes))
+                        .maxCapacity(capacity)
+                        .build());
+                start = start.plusMinutes(slotMinutes);
+            }
+        }
+        return result;
+    }
+}
@@ -13,7 +13,7 @@ import java.util.UUID;
  * Each slot has a fixed capacity and time window.
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class TimeSlot {
@@ -38,6 +38,13 @@ public class TimeSlot {
     
     private String notes;
 
+    /**
+     * Starts at 1 and goes up by one with every change to occupancy, capacity
+     * or the active flag made through the methods below; served as the slot's ETag.
+     */
+    @Builder.Default
+    private volatile long version = 1;
+
     /**
      * Check if slot has available capacity.
      */
@@ -71,6 +78,7 @@ public class TimeSlot {
      */
     public synchronized void incrementOccupancy() {
         this.currentOccupancy++;
+        this.version++;
     }
 
     /**
@@ -79,6 +87,25 @@ public class TimeSlot {
     public synchronized void decrementOccupancy() {
         if (this.currentOccupancy > 0) {
             this.currentOccupancy--;
+            this.version++;
+        }
+    }
+
+    /**
+     * Set a new capacity, counting it as a change.
+     */
+    public synchronized void changeCapacity(int newCapacity) {
+        this.maxCapacity = newCapacity;
+        this.version++;
+    }
+
+    /**
+     * Take the slot out of allocation, counting it as a change.
+     */
+    public synchronized void deactivate() {
+        if (this.isActive) {
+            this.isActive = false;
+            this.version++;
         }
     }
 
@@ -1,22 +1,39 @@
 package com.medoc.opd.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 
 import java.time.LocalDateTime;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * Represents a patient token for OPD consultation.
  * Each token is associated with a specific slot and patient.
+ *
+ * Status changes are compare-and-set moves allowed by the
+ * {@link TokenStatus} transition table: of several concurrent attempts to
+ * leave the same status, exactly one wins, and only the winner touches the
+ * token's timestamps or its slot's occupancy. Each successful move also
+ * bumps {@link #version}, which clients use for conditional updates.
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class Token {
+
+    private static final AtomicReferenceFieldUpdater<Token, TokenStatus> STATUS =
+            AtomicReferenceFieldUpdater.newUpdater(Token.class, TokenStatus.class, "status");
+    private static final AtomicLongFieldUpdater<Token> VERSION =
+            AtomicLongFieldUpdater.newUpdater(Token.class, "version");
     
     @Builder.Default
     private String tokenId = UUID.randomUUID().toString();
@@ -29,8 +46,11 @@ public class Token {
     
     private TokenSource source;
     
+    // No setter: only the transition methods move it. Jackson writes the field directly
     @Builder.Default
-    private TokenStatus status = TokenStatus.ALLOCATED;
+    @Setter(AccessLevel.NONE)
+    @JsonProperty
+    private volatile TokenStatus status = TokenStatus.ALLOCATED;
     
     @Builder.Default
     private LocalDateTime createdAt = LocalDateTime.now();
@@ -46,6 +66,16 @@ public class Token {
     @Builder.Default
     private int reallocatedCount = 0;
 
+    /** Starts at 1 and goes up by one with every status change; served as the token's ETag. */
+    @Builder.Default
+    @Setter(AccessLevel.NONE)
+    @JsonProperty
+    private volatile long version = 1;
+
+    /** Set when the engine moves the token and cleared once the patient has been notified. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private ReallocationNotice pendingNotice;
+
     /**
      * Calculate base priority from token source.
      */
@@ -57,63 +87,142 @@ public class Token {
      * Calculate dynamic priority including wait time bonus.
      */
     public double getDynamicPriority() {
+        return getDynamicPriority(LocalDateTime.now());
+    }
+
+    /**
+     * Calculate dynamic priority as of the given (engine clock) time.
+     */
+    public double getDynamicPriority(LocalDateTime now) {
         if (checkedInAt == null) {
             return getBasePriority();
         }
         
-        long waitTimeMinutes = java.time.Duration.between(
-            checkedInAt, 
-            LocalDateTime.now()
-        ).toMinutes();
+        long waitTimeMinutes = java.time.Duration.between(checkedInAt, now).toMinutes();
         
         return source.calculateDynamicPriority(waitTimeMinutes);
     }
 
+    /**
+     * Atomically move from {@code from} to {@code to}, provided the token is
+     * still in {@code from} and the table allows it.
+     */
+    public boolean transition(TokenStatus from, TokenStatus to) {
+        if (!from.canTransitionTo(to) || !STATUS.compareAndSet(this, from, to)) {
+            return false;
+        }
+        VERSION.incrementAndGet(this);
+        return true;
+    }
+
+    /**
+     * Atomically move to {@code to} from whatever the current status is, if the table allows it.
+     *
+     * @return the status the token left, or null if its current status does not allow the move
+     */
+    public TokenStatus transitionTo(TokenStatus to) {
+        while (true) {
+            TokenStatus current = status;
+            if (!current.canTransitionTo(to)) {
+                return null;
+            }
+            if (STATUS.compareAndSet(this, current, to)) {
+                VERSION.incrementAndGet(this);
+                return current;
+            }
+        }
+    }
+
     /**
      * Mark token as checked in.
      */
-    public void checkIn() {
-        this.status = TokenStatus.CHECKED_IN;
-        this.checkedInAt = LocalDateTime.now();
+    public boolean checkIn() {
+        return checkIn(LocalDateTime.now());
+    }
+
+    public boolean checkIn(LocalDateTime at) {
+        if (transitionTo(TokenStatus.CHECKED_IN) == null) {
+            return false;
+        }
+        this.checkedInAt = at;
+        return true;
     }
 
     /**
      * Start consultation.
      */
-    public void startConsultation() {
-        this.status = TokenStatus.IN_CONSULTATION;
-        this.consultationStartedAt = LocalDateTime.now();
+    public boolean startConsultation() {
+        return startConsultation(LocalDateTime.now());
+    }
+
+    public boolean startConsultation(LocalDateTime at) {
+        if (!transition(TokenStatus.CHECKED_IN, TokenStatus.IN_CONSULTATION)) {
+            return false;
+        }
+        this.consultationStartedAt = at;
+        return true;
     }
 
     /**
      * Complete consultation.
      */
-    public void complete() {
-        this.status = TokenStatus.COMPLETED;
-        this.consultationCompletedAt = LocalDateTime.now();
+    public boolean complete() {
+        return complete(LocalDateTime.now());
+    }
+
+    public boolean complete(LocalDateTime at) {
+        if (!transition(TokenStatus.IN_CONSULTATION, TokenStatus.COMPLETED)) {
+            return false;
+        }
+        this.consultationCompletedAt = at;
+        return true;
     }
 
     /**
-     * Cancel token.
+     * Move to CANCELLED or NO_SHOW and give the seat back to {@code slot}, as
+     * one step: the seat is released only by the caller whose status change
+     * wins, so concurrent cancel / no-show calls release it exactly once.
+     *
+     * @return the status the token left, or null if its current status does not allow the move
      */
-    public void cancel() {
-        this.status = TokenStatus.CANCELLED;
+    public TokenStatus releaseSeat(TokenStatus to, TimeSlot slot) {
+        if (!to.releasesSeat()) {
+            throw new IllegalArgumentException(to + " does not release a seat");
+        }
+        TokenStatus previous = transitionTo(to);
+        if (previous != null) {
+            slot.decrementOccupancy();
+        }
+        return previous;
     }
 
     /**
-     * Mark as no-show.
+     * Cancel token, releasing its seat in {@code slot}.
      */
-    public void markNoShow() {
-        this.status = TokenStatus.NO_SHOW;
+    public boolean cancel(TimeSlot slot) {
+        return releaseSeat(TokenStatus.CANCELLED, slot) != null;
     }
 
     /**
-     * Mark as reallocated and increment count.
+     * Mark as no-show, releasing its seat in {@code slot}.
      */
-    public void reallocate(String newSlotId) {
-        this.slotId = newSlotId;
-        this.status = TokenStatus.REALLOCATED;
+    public boolean markNoShow(TimeSlot slot) {
+        return releaseSeat(TokenStatus.NO_SHOW, slot) != null;
+    }
+
+    /**
+     * Mark as reallocated and move the seat from {@code from} to {@code to},
+     * if the token's status allows it. Increments the reallocation count.
+     */
+    public boolean reallocate(TimeSlot from, TimeSlot to) {
+        if (transitionTo(TokenStatus.REALLOCATED) == null) {
+            return false;
+        }
+        from.decrementOccupancy();
+        to.incrementOccupancy();
+        this.slotId = to.getSlotId();
         this.reallocatedCount++;
+        return true;
     }
 
     /**
@@ -127,11 +236,18 @@ public class Token {
      * Get wait time in minutes.
      */
     public long getWaitTimeMinutes() {
+        return getWaitTimeMinutes(LocalDateTime.now());
+    }
+
+    /**
+     * Get wait time in minutes as of the given (engine clock) time.
+     */
+    public long getWaitTimeMinutes(LocalDateTime now) {
         if (checkedInAt == null) return 0;
         
         LocalDateTime endTime = consultationStartedAt != null 
             ? consultationStartedAt 
-            : LocalDateTime.now();
+            : now;
             
         return java.time.Duration.between(checkedInAt, endTime).toMinutes();
     }
@@ -1,7 +1,15 @@
 package com.medoc.opd.model;
 
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Represents the lifecycle status of a token.
+ *
+ * Which status may follow which is fixed by a transition table, checked by
+ * {@link Token} on every status change; no other path changes a token's status.
  */
 public enum TokenStatus {
     ALLOCATED("Token allocated, patient not yet arrived"),
@@ -12,6 +20,26 @@ public enum TokenStatus {
     NO_SHOW("Patient did not arrive for allocated slot"),
     REALLOCATED("Token moved to different slot due to capacity constraints");
 
+    private static final Map<TokenStatus, Set<TokenStatus>> TRANSITIONS = new EnumMap<>(TokenStatus.class);
+
+    static {
+        // Reallocation may move a token again, and takes checked-in patients back to "expected"
+        allow(ALLOCATED, CHECKED_IN, REALLOCATED, CANCELLED, NO_SHOW);
+        allow(REALLOCATED, CHECKED_IN, REALLOCATED, CANCELLED, NO_SHOW);
+        allow(CHECKED_IN, IN_CONSULTATION, REALLOCATED, CANCELLED, NO_SHOW);
+        allow(IN_CONSULTATION, COMPLETED, CANCELLED);
+        for (TokenStatus status : values()) {
+            TRANSITIONS.putIfAbsent(status, EnumSet.noneOf(TokenStatus.class));
+            if (status.isTerminal() != TRANSITIONS.get(status).isEmpty()) {
+                throw new IllegalStateException("Terminal states, and only they, must have no way out: " + status);
+            }
+        }
+    }
+
+    private static void allow(TokenStatus from, TokenStatus first, TokenStatus... rest) {
+        TRANSITIONS.put(from, EnumSet.of(first, rest));
+    }
+
     private final String description;
 
     TokenStatus(String description) {
@@ -35,4 +63,26 @@ public enum TokenStatus {
     public boolean isTerminal() {
         return this == COMPLETED || this == CANCELLED || this == NO_SHOW;
     }
+
+    /**
+     * Whether a token in this status may move to {@code next}.
+     */
+    public boolean canTransitionTo(TokenStatus next) {
+        return TRANSITIONS.get(this).contains(next);
+    }
+
+    /**
+     * Statuses a token in this status may move to.
+     */
+    public Set<TokenStatus> nextStatuses() {
+        return EnumSet.copyOf(TRANSITIONS.get(this));
+    }
+
+    /**
+     * Check if a token in this state has given up its seat in the slot.
+     * Completed tokens keep theirs: the seat was used.
+     */
+    public boolean releasesSeat() {
+        return this == CANCELLED || this == NO_SHOW;
+    }
 }
@@ -0,0 +1,38 @@
+package com.medoc.opd.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Slim projection of a queued token for kiosks and display boards: what a
+ * waiting-room screen shows, without IDs, patient details or audit
+ * timestamps. About a quarter of the size of a full {@link QueueEntry}.
+ */
+@Value
+@Builder
+public class TokenView {
+
+    int tokenNumber;
+    TokenStatus status;
+    TokenSource source;
+
+    /** 1-based place in the queue. */
+    int position;
+
+    LocalDateTime estimatedCallAt;
+    long estimatedWaitMinutes;
+
+    public static TokenView of(QueueEntry entry) {
+        Token token = entry.getToken();
+        return TokenView.builder()
+                .tokenNumber(token.getTokenNumber())
+                .status(token.getStatus())
+                .source(token.getSource())
+                .position(entry.getPosition())
+                .estimatedCallAt(entry.getEstimatedCallAt())
+                .estimatedWaitMinutes(entry.getEstimatedWaitMinutes())
+                .build();
+    }
+}
@@ -0,0 +1,56 @@
+package com.medoc.opd.notification;
+
+import com.medoc.opd.model.ReallocationNotice;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Stand-in sender for development and tests: logs each notification and
+ * keeps the most recent ones in memory instead of contacting anyone.
+ */
+@Slf4j
+public class LoggingNotificationSender implements NotificationSender {
+
+    private final int retained;
+    private final Deque<PatientNotification> sent = new ArrayDeque<>();
+    private long sentCount;
+
+    public LoggingNotificationSender(int retained) {
+        this.retained = retained;
+    }
+
+    @Override
+    public synchronized void send(List<PatientNotification> batch) {
+        for (PatientNotification notification : batch) {
+            for (ReallocationNotice notice : notification.getNotices()) {
+                if (notice.getType() == ReallocationNotice.Type.MOVED) {
+                    log.info("Notify {} ({}): token {} moved from {} to {}", notification.getPatientName(),
+                            notification.getPatientId(), notice.getTokenNumber(),
+                            notice.getOriginalStartTime(), notice.getStartTime());
+                } else {
+                    log.info("Notify {} ({}): token {} could not be moved; expect a longer wait after {}",
+                            notification.getPatientName(), notification.getPatientId(),
+                            notice.getTokenNumber(), notice.getStartTime());
+                }
+            }
+            sent.addLast(notification);
+            if (sent.size() > retained) {
+                sent.removeFirst();
+            }
+            sentCount++;
+        }
+    }
+
+    /** The most recent notifications, oldest first. */
+    public synchronized List<PatientNotification> getSent() {
+        return new ArrayList<>(sent);
+    }
+
+    public synchronized long getSentCount() {
+        return sentCount;
+    }
+}
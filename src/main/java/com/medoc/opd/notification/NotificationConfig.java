@@ -0,0 +1,18 @@
+package com.medoc.opd.notification;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Falls back to the logging stub when no real {@link NotificationSender} is configured.
+ */
+@Configuration
+public class NotificationConfig {
+
+    @Bean
+    @ConditionalOnMissingBean(NotificationSender.class)
+    public NotificationSender loggingNotificationSender() {
+        return new LoggingNotificationSender(1_000);
+    }
+}
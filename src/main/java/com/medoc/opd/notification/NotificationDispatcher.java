@@ -0,0 +1,161 @@
+package com.medoc.opd.notification;
+
+import com.medoc.opd.model.ReallocationNotice;
+import com.medoc.opd.service.OPDTokenEngine;
+import com.medoc.opd.tenant.TenantEngines;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers the engine's reallocation notices in batches.
+ *
+ * Every {@code opd.notifications.interval-millis} the dispatcher collects up
+ * to {@code opd.notifications.batch-size} pending notices, merges those of
+ * the same patient into one {@link PatientNotification}, hands the batch to
+ * the {@link NotificationSender} and then clears the notices in the engine.
+ * A failed batch stays pending and is retried with exponential back-off up to
+ * {@code opd.notifications.max-backoff-millis}. All of this runs on the
+ * dispatcher's own thread; the engine only records notices. With
+ * multi-tenancy, every loaded tenant's outbox is drained the same way.
+ *
+ * Metrics: {@code opd.notifications.sent}, {@code opd.notifications.failed}
+ * and the gauge {@code opd.notifications.pending}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "opd.notifications.enabled", havingValue = "true", matchIfMissing = true)
+public class NotificationDispatcher {
+
+    private final TenantEngines tenants;
+    private final NotificationSender sender;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${opd.notifications.interval-millis:1000}")
+    private long intervalMillis;
+
+    @Value("${opd.notifications.batch-size:100}")
+    private int batchSize;
+
+    @Value("${opd.notifications.max-backoff-millis:60000}")
+    private long maxBackoffMillis;
+
+    private ScheduledExecutorService dispatcher;
+    private Counter sent;
+    private Counter failed;
+    private long backoffMillis;
+    private long nextAttemptAt;
+
+    @PostConstruct
+    public void start() {
+        sent = Counter.builder("opd.notifications.sent")
+                .description("Patient notifications handed to the sender")
+                .register(meterRegistry);
+        failed = Counter.builder("opd.notifications.failed")
+                .description("Notification batches the sender rejected")
+                .register(meterRegistry);
+        Gauge.builder("opd.notifications.pending", this, NotificationDispatcher::getPendingCount)
+                .description("Tokens whose patient has yet to be told about a reallocation")
+                .register(meterRegistry);
+
+        dispatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "notification-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dispatcher.scheduleWithFixedDelay(this::tick, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        log.info("Dispatching reallocation notifications via {} (every {} ms, batches of {})",
+                sender.getClass().getSimpleName(), intervalMillis, batchSize);
+    }
+
+    @PreDestroy
+    public void stop() {
+        dispatcher.shutdownNow();
+    }
+
+    /**
+     * Send everything pending, one batch after another, until nothing is left
+     * or a batch fails.
+     *
+     * @return notices delivered
+     */
+    public int dispatchPending() {
+        int[] delivered = {0};
+        tenants.forEachEngine((tenantId, engine) -> delivered[0] += dispatchPending(tenantId, engine));
+        return delivered[0];
+    }
+
+    private int dispatchPending(String tenantId, OPDTokenEngine engine) {
+        int delivered = 0;
+        while (true) {
+            List<ReallocationNotice> notices = engine.collectNotices(batchSize);
+            if (notices.isEmpty()) {
+                return delivered;
+            }
+            List<PatientNotification> batch = byPatient(tenantId, notices);
+            try {
+                sender.send(batch);
+            } catch (RuntimeException e) {
+                failed.increment();
+                throw e;
+            }
+            engine.acknowledgeNotices(notices);
+            sent.increment(batch.size());
+            delivered += notices.size();
+            if (notices.size() < batchSize) {
+                return delivered;
+            }
+        }
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        if (now < nextAttemptAt) {
+            return;
+        }
+        try {
+            dispatchPending();
+            backoffMillis = 0;
+        } catch (RuntimeException e) {
+            backoffMillis = backoffMillis == 0 ? intervalMillis : Math.min(backoffMillis * 2, maxBackoffMillis);
+            nextAttemptAt = now + backoffMillis;
+            log.warn("Sending notifications failed; retrying in {} ms", backoffMillis, e);
+        }
+    }
+
+    /**
+     * One notification per patient, in the order their first notice was collected.
+     */
+    static List<PatientNotification> byPatient(String tenantId, List<ReallocationNotice> notices) {
+        Map<String, List<ReallocationNotice>> grouped = new LinkedHashMap<>();
+        for (ReallocationNotice notice : notices) {
+            grouped.computeIfAbsent(notice.getPatientId(), p -> new ArrayList<>()).add(notice);
+        }
+        List<PatientNotification> batch = new ArrayList<>(grouped.size());
+        grouped.forEach((patientId, patientNotices) -> batch.add(
+                new PatientNotification(tenantId, patientId, patientNotices.get(0).getPatientName(), patientNotices)));
+        return batch;
+    }
+
+    private int getPendingCount() {
+        int[] pending = {0};
+        tenants.forEachEngine((tenantId, engine) -> pending[0] += engine.getPendingNoticeCount());
+        return pending[0];
+    }
+}
@@ -0,0 +1,17 @@
+package com.medoc.opd.notification;
+
+import java.util.List;
+
+/**
+ * Delivers patient notifications (SMS, push, e-mail gateway...). Declare a
+ * bean of this type to replace the logging stub.
+ *
+ * Called from a single dispatcher thread, never from a request or the
+ * engine. Throwing fails the whole batch, which is retried later; a patient
+ * may therefore receive the same message twice, so implementations that can
+ * should de-duplicate on the notices' sequence numbers.
+ */
+public interface NotificationSender {
+
+    void send(List<PatientNotification> batch);
+}
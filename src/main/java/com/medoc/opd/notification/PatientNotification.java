@@ -0,0 +1,21 @@
+package com.medoc.opd.notification;
+
+import com.medoc.opd.model.ReallocationNotice;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * One message to one patient, covering every token of theirs the engine has
+ * moved (or failed to move) since they were last notified.
+ */
+@Value
+public class PatientNotification {
+
+    /** Branch the patient booked with; {@code "default"} without multi-tenancy. */
+    String tenantId;
+
+    String patientId;
+    String patientName;
+    List<ReallocationNotice> notices;
+}
@@ -0,0 +1,154 @@
+package com.medoc.opd.replay;
+
+import com.medoc.opd.service.EngineCommand;
+import com.medoc.opd.service.EngineCommandListener;
+import com.medoc.opd.service.OPDTokenEngine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opt-in capture of every mutating engine command into a binary log
+ * ({@code opd.capture.enabled=true}). Request threads only enqueue; a single
+ * writer thread encodes and writes. On shutdown the final state digest is
+ * appended so {@link CommandReplayer} can verify a replay.
+ *
+ * An existing capture is never overwritten: if the file exists, this run
+ * writes to a timestamped file next to it. Request threads never wait for
+ * the disk. If a write fails or the writer falls too far behind, capture
+ * stops for the rest of the run; a log with gaps could not be replayed
+ * anyway.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "opd.capture.enabled", havingValue = "true")
+public class CommandCapture implements EngineCommandListener {
+
+    private final OPDTokenEngine engine;
+
+    @Value("${opd.capture.file:opd-commands.oplog}")
+    private String captureFile;
+
+    // Bounded so a stalled disk cannot exhaust the heap; overflowing it stops the capture
+    private final BlockingQueue<EngineCommand> pending = new LinkedBlockingQueue<>(100_000);
+    private final AtomicLong dropped = new AtomicLong();
+    private Path path;
+    private CommandLogWriter writer;
+    private Thread writerThread;
+    private volatile boolean running;
+    private volatile boolean failed;
+
+    @PostConstruct
+    public void start() throws IOException {
+        path = Path.of(captureFile);
+        if (Files.exists(path)) {
+            path = timestamped(path);
+        }
+        writer = new CommandLogWriter(Files.newOutputStream(path, StandardOpenOption.CREATE_NEW),
+                engine.isSimulationMode(), engine.getAllocationSettings());
+        running = true;
+        writerThread = new Thread(this::drainLoop, "command-capture");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        engine.addCommandListener(this);
+        log.info("Capturing engine commands to {}", path);
+    }
+
+    @Override
+    public void onCommand(EngineCommand command) {
+        if (failed || !pending.offer(command)) {
+            dropped.incrementAndGet();
+            fail("writer is " + pending.size() + " commands behind", null);
+        }
+    }
+
+    /**
+     * Commands not recorded because capture had failed or fallen behind.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        engine.removeCommandListener(this);
+        running = false;
+        writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        if (failed) {
+            log.warn("Command capture {} is incomplete: {} commands dropped", path, dropped.get());
+            return;
+        }
+        writer.writeDigest(EngineStateDigest.of(engine));
+        writer.close();
+        log.info("Command capture closed: {}", path);
+    }
+
+    private void fail(String reason, Exception cause) {
+        synchronized (this) {
+            if (failed) {
+                return;
+            }
+            failed = true;
+        }
+        running = false;
+        engine.removeCommandListener(this);
+        log.error("Command capture to {} failed ({}); no further commands will be recorded", path, reason, cause);
+    }
+
+    private static Path timestamped(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        String rolled = dot > 0 ? name.substring(0, dot) + "-" + stamp + name.substring(dot) : name + "-" + stamp;
+        return path.resolveSibling(rolled);
+    }
+
+    private void drainLoop() {
+        List<EngineCommand> batch = new ArrayList<>();
+        try {
+            while ((running || !pending.isEmpty()) && !failed) {
+                EngineCommand first = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                pending.drainTo(batch);
+                for (EngineCommand command : batch) {
+                    writer.write(command);
+                }
+                batch.clear();
+                writer.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            fail("write failed", e);
+        }
+        if (failed) {
+            pending.clear();
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.debug("Closing failed command capture {}", path, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.medoc.opd.replay;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Constants and primitive encodings shared by {@link CommandLogWriter} and {@link CommandLogReader}.
+ *
+ * Layout: header {@code MAGIC, VERSION, simulationMode}, then (version 3 on)
+ * the engine's allocation settings as a count and UTF key/value pairs, then
+ * records, each
+ * starting with a record tag. Integers are LEB128 varints (zig-zag for signed
+ * values), timestamps are delta-encoded, and strings go through a per-file
+ * dictionary so repeated doctor IDs, names and token IDs cost one or two bytes.
+ */
+final class CommandLogFormat {
+
+    static final int MAGIC = 0x4F50444C; // "OPDL"
+    // 2: adds the expected version of conditional commands; version 1 logs are still readable
+    // 3: adds the allocation settings to the header; older logs replay under the defaults
+    static final int VERSION = 3;
+
+    static final int RECORD_COMMAND = 1;
+    static final int RECORD_DIGEST = 2;
+
+    // Command field presence bits
+    static final int F_FAILURE = 1;
+    static final int F_DOCTOR_ID = 1 << 1;
+    static final int F_DOCTOR_NAME = 1 << 2;
+    static final int F_DEPARTMENT = 1 << 3;
+    static final int F_PATIENT_ID = 1 << 4;
+    static final int F_PATIENT_NAME = 1 << 5;
+    static final int F_SOURCE = 1 << 6;
+    static final int F_START_TIME = 1 << 7;
+    static final int F_END_TIME = 1 << 8;
+    static final int F_PREFERRED_TIME = 1 << 9;
+    static final int F_CAPACITY = 1 << 10;
+    static final int F_NOTES = 1 << 11;
+    static final int F_TARGET_ID = 1 << 12;
+    static final int F_RESULT_ID = 1 << 13;
+    static final int F_EXPECTED_VERSION = 1 << 14;
+
+    // String reference tags; values >= STRING_REF_BASE are dictionary indexes
+    static final int STRING_NEW_TEXT = 0;
+    static final int STRING_NEW_UUID = 1;
+    static final int STRING_REF_BASE = 2;
+
+    private CommandLogFormat() {
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static void writeSignedVarLong(DataOutput out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    static long readSignedVarLong(DataInput in) throws IOException {
+        long raw = readVarLong(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    static void writeDateTime(DataOutput out, LocalDateTime time) throws IOException {
+        writeSignedVarLong(out, time.toEpochSecond(ZoneOffset.UTC));
+        writeVarLong(out, time.getNano());
+    }
+
+    static LocalDateTime readDateTime(DataInput in) throws IOException {
+        long seconds = readSignedVarLong(in);
+        int nanos = (int) readVarLong(in);
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+}
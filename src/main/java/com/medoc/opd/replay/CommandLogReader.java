@@ -0,0 +1,123 @@
+package com.medoc.opd.replay;
+
+import com.medoc.opd.model.TokenSource;
+import com.medoc.opd.service.EngineCommand;
+import lombok.Value;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.medoc.opd.replay.CommandLogFormat.*;
+
+/**
+ * Reads a log produced by {@link CommandLogWriter}. A log cut short by a crash
+ * is read up to the last complete record.
+ */
+public final class CommandLogReader {
+
+    /**
+     * Everything in one capture file.
+     */
+    @Value
+    public static class CommandLog {
+        boolean simulationMode;
+        /** Allocation settings by property name; empty for logs older than version 3. */
+        Map<String, String> settings;
+        List<EngineCommand> commands;
+        /** Digest of the final captured state, or null if capture did not shut down cleanly. */
+        String finalDigest;
+    }
+
+    private CommandLogReader() {
+    }
+
+    public static CommandLog read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 64 * 1024));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an OPD command log");
+        }
+        int version = in.readUnsignedByte();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported command log version " + version);
+        }
+        boolean simulationMode = in.readBoolean();
+        Map<String, String> settings = new LinkedHashMap<>();
+        if (version >= 3) {
+            for (long n = readVarLong(in); n > 0; n--) {
+                settings.put(in.readUTF(), in.readUTF());
+            }
+        }
+
+        List<String> dictionary = new ArrayList<>();
+        List<EngineCommand> commands = new ArrayList<>();
+        String digest = null;
+        long timestamp = 0;
+
+        while (true) {
+            int tag;
+            try {
+                tag = in.readUnsignedByte();
+            } catch (EOFException e) {
+                break;
+            }
+            try {
+                if (tag == RECORD_DIGEST) {
+                    digest = in.readUTF();
+                    continue;
+                }
+                if (tag != RECORD_COMMAND) {
+                    throw new IOException("Unknown record tag " + tag);
+                }
+
+                EngineCommand.EngineCommandBuilder c = EngineCommand.builder()
+                        .type(EngineCommand.Type.values()[in.readUnsignedByte()])
+                        .sequence(readVarLong(in));
+                timestamp += readSignedVarLong(in);
+                c.timestampMillis(timestamp).durationNanos(readVarLong(in));
+
+                int fields = (int) readVarLong(in);
+                if ((fields & F_FAILURE) != 0) c.failure(readString(in, dictionary));
+                if ((fields & F_DOCTOR_ID) != 0) c.doctorId(readString(in, dictionary));
+                if ((fields & F_DOCTOR_NAME) != 0) c.doctorName(readString(in, dictionary));
+                if ((fields & F_DEPARTMENT) != 0) c.department(readString(in, dictionary));
+                if ((fields & F_PATIENT_ID) != 0) c.patientId(readString(in, dictionary));
+                if ((fields & F_PATIENT_NAME) != 0) c.patientName(readString(in, dictionary));
+                if ((fields & F_SOURCE) != 0) c.source(TokenSource.values()[in.readUnsignedByte()]);
+                if ((fields & F_START_TIME) != 0) c.startTime(readDateTime(in));
+                if ((fields & F_END_TIME) != 0) c.endTime(readDateTime(in));
+                if ((fields & F_PREFERRED_TIME) != 0) c.preferredTime(readDateTime(in));
+                if ((fields & F_CAPACITY) != 0) c.capacity((int) readSignedVarLong(in));
+                if ((fields & F_NOTES) != 0) c.notes(readString(in, dictionary));
+                if ((fields & F_TARGET_ID) != 0) c.targetId(readString(in, dictionary));
+                if ((fields & F_RESULT_ID) != 0) c.resultId(readString(in, dictionary));
+                if ((fields & F_EXPECTED_VERSION) != 0) c.expectedVersion(readVarLong(in));
+                commands.add(c.build());
+            } catch (EOFException e) {
+                // Truncated tail record
+                break;
+            }
+        }
+
+        return new CommandLog(simulationMode, settings, commands, digest);
+    }
+
+    private static String readString(DataInputStream in, List<String> dictionary) throws IOException {
+        int ref = (int) readVarLong(in);
+        if (ref >= STRING_REF_BASE) {
+            return dictionary.get(ref - STRING_REF_BASE);
+        }
+        String value = ref == STRING_NEW_UUID
+                ? new UUID(in.readLong(), in.readLong()).toString()
+                : in.readUTF();
+        dictionary.add(value);
+        return value;
+    }
+}
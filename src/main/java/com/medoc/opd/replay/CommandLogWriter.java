@@ -0,0 +1,124 @@
+package com.medoc.opd.replay;
+
+import com.medoc.opd.service.EngineCommand;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import static com.medoc.opd.replay.CommandLogFormat.*;
+
+/**
+ * Appends {@link EngineCommand}s to a compact binary log. Not thread-safe;
+ * {@link CommandCapture} funnels all commands through a single writer thread.
+ */
+public class CommandLogWriter implements Closeable {
+
+    private static final Pattern UUID_PATTERN =
+            Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
+    private final DataOutputStream out;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private long lastTimestamp;
+
+    /**
+     * @param settings the engine's {@link com.medoc.opd.service.OPDTokenEngine#getAllocationSettings()}
+     */
+    public CommandLogWriter(OutputStream stream, boolean simulationMode, Map<String, String> settings)
+            throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeBoolean(simulationMode);
+        writeVarLong(out, settings.size());
+        for (Map.Entry<String, String> setting : settings.entrySet()) {
+            out.writeUTF(setting.getKey());
+            out.writeUTF(setting.getValue());
+        }
+    }
+
+    public void write(EngineCommand c) throws IOException {
+        out.writeByte(RECORD_COMMAND);
+        out.writeByte(c.getType().ordinal());
+        writeVarLong(out, c.getSequence());
+        writeSignedVarLong(out, c.getTimestampMillis() - lastTimestamp);
+        lastTimestamp = c.getTimestampMillis();
+        writeVarLong(out, c.getDurationNanos());
+
+        int fields = 0;
+        fields |= c.getFailure() != null ? F_FAILURE : 0;
+        fields |= c.getDoctorId() != null ? F_DOCTOR_ID : 0;
+        fields |= c.getDoctorName() != null ? F_DOCTOR_NAME : 0;
+        fields |= c.getDepartment() != null ? F_DEPARTMENT : 0;
+        fields |= c.getPatientId() != null ? F_PATIENT_ID : 0;
+        fields |= c.getPatientName() != null ? F_PATIENT_NAME : 0;
+        fields |= c.getSource() != null ? F_SOURCE : 0;
+        fields |= c.getStartTime() != null ? F_START_TIME : 0;
+        fields |= c.getEndTime() != null ? F_END_TIME : 0;
+        fields |= c.getPreferredTime() != null ? F_PREFERRED_TIME : 0;
+        fields |= c.getCapacity() != 0 ? F_CAPACITY : 0;
+        fields |= c.getNotes() != null ? F_NOTES : 0;
+        fields |= c.getTargetId() != null ? F_TARGET_ID : 0;
+        fields |= c.getResultId() != null ? F_RESULT_ID : 0;
+        fields |= c.getExpectedVersion() != null ? F_EXPECTED_VERSION : 0;
+        writeVarLong(out, fields);
+
+        if ((fields & F_FAILURE) != 0) writeString(c.getFailure());
+        if ((fields & F_DOCTOR_ID) != 0) writeString(c.getDoctorId());
+        if ((fields & F_DOCTOR_NAME) != 0) writeString(c.getDoctorName());
+        if ((fields & F_DEPARTMENT) != 0) writeString(c.getDepartment());
+        if ((fields & F_PATIENT_ID) != 0) writeString(c.getPatientId());
+        if ((fields & F_PATIENT_NAME) != 0) writeString(c.getPatientName());
+        if ((fields & F_SOURCE) != 0) out.writeByte(c.getSource().ordinal());
+        if ((fields & F_START_TIME) != 0) writeDateTime(out, c.getStartTime());
+        if ((fields & F_END_TIME) != 0) writeDateTime(out, c.getEndTime());
+        if ((fields & F_PREFERRED_TIME) != 0) writeDateTime(out, c.getPreferredTime());
+        if ((fields & F_CAPACITY) != 0) writeSignedVarLong(out, c.getCapacity());
+        if ((fields & F_NOTES) != 0) writeString(c.getNotes());
+        if ((fields & F_TARGET_ID) != 0) writeString(c.getTargetId());
+        if ((fields & F_RESULT_ID) != 0) writeString(c.getResultId());
+        if ((fields & F_EXPECTED_VERSION) != 0) writeVarLong(out, c.getExpectedVersion());
+    }
+
+    /**
+     * Append the digest of the engine state the captured commands produced.
+     */
+    public void writeDigest(String digest) throws IOException {
+        out.writeByte(RECORD_DIGEST);
+        out.writeUTF(digest);
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeString(String value) throws IOException {
+        Integer index = dictionary.get(value);
+        if (index != null) {
+            writeVarLong(out, STRING_REF_BASE + index);
+            return;
+        }
+
+        if (UUID_PATTERN.matcher(value).matches()) {
+            UUID uuid = UUID.fromString(value);
+            writeVarLong(out, STRING_NEW_UUID);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        } else {
+            writeVarLong(out, STRING_NEW_TEXT);
+            out.writeUTF(value);
+        }
+        dictionary.put(value, dictionary.size());
+    }
+}
@@ -0,0 +1,187 @@
+package com.medoc.opd.replay;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.medoc.opd.replay.CommandLogReader.CommandLog;
+import com.medoc.opd.service.EngineCommand;
+import com.medoc.opd.service.OPDTokenEngine;
+import com.medoc.opd.simulation.SimulationClock;
+import org.HdrHistogram.Histogram;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds a captured command log into a fresh engine, either as fast as
+ * possible or at the original pacing, then checks that the final state
+ * matches the captured one and reports per-operation latency.
+ *
+ * The engine runs on a {@link SimulationClock} set to each command's recorded
+ * timestamp, and under the simulation mode and allocation settings recorded
+ * in the log header, so decisions come out the same as in production.
+ *
+ * Usage: mvn compile exec:java -Dexec.mainClass="com.medoc.opd.replay.CommandReplayer" \
+ *            -Dexec.args="log=opd-commands.oplog speed=max"
+ */
+public class CommandReplayer {
+
+    public enum Speed { MAX, ORIGINAL }
+
+    private final CommandLog log;
+    private final Speed speed;
+    private final OPDTokenEngine engine = new OPDTokenEngine();
+    private final Map<String, String> idMap = new HashMap<>();
+    private final Map<EngineCommand.Type, Histogram> replayed = new EnumMap<>(EngineCommand.Type.class);
+    private final Map<EngineCommand.Type, Histogram> original = new EnumMap<>(EngineCommand.Type.class);
+    private int outcomeMismatches;
+
+    public CommandReplayer(CommandLog log, Speed speed) {
+        this.log = log;
+        this.speed = speed;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(kv[0], kv.length > 1 ? kv[1] : "");
+        }
+        if (!options.containsKey("log")) {
+            System.err.println("Usage: CommandReplayer log=<file> [speed=max|original]");
+            System.exit(2);
+        }
+
+        ((Logger) LoggerFactory.getLogger("com.medoc.opd.service")).setLevel(Level.OFF);
+        CommandLog log;
+        try (InputStream in = Files.newInputStream(Path.of(options.get("log")))) {
+            log = CommandLogReader.read(in);
+        }
+
+        CommandReplayer replayer = new CommandReplayer(log,
+                Speed.valueOf(options.getOrDefault("speed", "max").toUpperCase()));
+        boolean matches = replayer.replay();
+        System.exit(matches ? 0 : 1);
+    }
+
+    /**
+     * Replay the log and print the report. Returns true if outcomes and final state match.
+     */
+    public boolean replay() throws InterruptedException {
+        List<EngineCommand> commands = new ArrayList<>(log.getCommands());
+        // The publish sequence is the order the engine actually applied the commands in
+        commands.sort(Comparator.comparingLong(EngineCommand::getSequence));
+
+        engine.setSimulationMode(log.isSimulationMode());
+        engine.applyAllocationSettings(log.getSettings());
+        SimulationClock clock = SimulationClock.discrete(commands.isEmpty()
+                ? LocalDateTime.now()
+                : toDateTime(commands.get(0).getTimestampMillis()));
+        engine.setClock(clock);
+
+        long realStart = System.nanoTime();
+        long firstTimestamp = commands.isEmpty() ? 0 : commands.get(0).getTimestampMillis();
+
+        for (EngineCommand command : commands) {
+            if (speed == Speed.ORIGINAL) {
+                long dueNanos = TimeUnit.MILLISECONDS.toNanos(command.getTimestampMillis() - firstTimestamp);
+                long sleepNanos = dueNanos - (System.nanoTime() - realStart);
+                if (sleepNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                }
+            }
+            clock.advanceTo(toDateTime(command.getTimestampMillis()));
+
+            long start = System.nanoTime();
+            String failure = null;
+            String resultId = null;
+            try {
+                resultId = execute(command);
+            } catch (RuntimeException e) {
+                failure = e.getClass().getSimpleName();
+            }
+            record(replayed, command.getType(), System.nanoTime() - start);
+            record(original, command.getType(), command.getDurationNanos());
+
+            if (!Objects.equals(failure, command.getFailure())) {
+                outcomeMismatches++;
+            } else if (resultId != null && command.getResultId() != null) {
+                idMap.put(command.getResultId(), resultId);
+            }
+        }
+        double seconds = (System.nanoTime() - realStart) / 1e9;
+
+        String digest = EngineStateDigest.of(engine);
+        boolean stateMatches = log.getFinalDigest() == null || log.getFinalDigest().equals(digest);
+        printReport(commands.size(), seconds, digest, stateMatches);
+        return stateMatches && outcomeMismatches == 0;
+    }
+
+    private String execute(EngineCommand c) {
+        return switch (c.getType()) {
+            case CREATE_SLOT -> engine.createSlot(c.getDoctorId(), c.getDoctorName(), c.getDepartment(),
+                    c.getStartTime(), c.getEndTime(), c.getCapacity()).getSlotId();
+            case ALLOCATE -> engine.allocateToken(c.getPatientId(), c.getPatientName(), c.getDoctorId(),
+                    c.getSource(), c.getPreferredTime(), c.getNotes()).getTokenId();
+            case ALLOCATE_EMERGENCY -> engine.allocateEmergencyToken(c.getPatientId(), c.getPatientName(),
+                    c.getDoctorId(), c.getNotes()).getTokenId();
+            case CHECK_IN -> engine.checkIn(mapped(c), c.getExpectedVersion()).getTokenId();
+            case START_CONSULTATION -> engine.startConsultation(mapped(c), c.getExpectedVersion()).getTokenId();
+            case COMPLETE_CONSULTATION -> engine.completeConsultation(mapped(c), c.getExpectedVersion()).getTokenId();
+            case CANCEL -> engine.cancelToken(mapped(c), c.getExpectedVersion()).getTokenId();
+            case NO_SHOW -> engine.markNoShow(mapped(c), c.getExpectedVersion()).getTokenId();
+            case ADJUST_CAPACITY -> engine.adjustSlotCapacity(mapped(c), c.getCapacity(), c.getExpectedVersion())
+                    .getSlotId();
+            case EXPIRE_SLOT -> engine.expireSlot(mapped(c)).getSlotId();
+            case ADJUST_CAPACITY_RANGE -> {
+                engine.adjustCapacityRange(c.getDoctorId(), c.getStartTime(), c.getEndTime(), c.getCapacity());
+                yield null;
+            }
+        };
+    }
+
+    private String mapped(EngineCommand c) {
+        // Unknown IDs (e.g. typos that 404'd in production) are passed through so they fail the same way
+        return idMap.getOrDefault(c.getTargetId(), c.getTargetId());
+    }
+
+    private static void record(Map<EngineCommand.Type, Histogram> histograms, EngineCommand.Type type, long nanos) {
+        histograms.computeIfAbsent(type, t -> new Histogram(3))
+                .recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+    }
+
+    private void printReport(int count, double seconds, String digest, boolean stateMatches) {
+        System.out.printf("Replayed %,d commands in %.2fs (%s speed)%n", count, seconds, speed);
+        System.out.printf("Settings: %s%n", log.getSettings().isEmpty()
+                ? "defaults (not recorded in this log)" : log.getSettings());
+        System.out.printf("%-22s %9s %18s %18s %18s%n", "", "", "p50 us", "p99 us", "max us");
+        System.out.printf("%-22s %9s %8s %9s %8s %9s %8s %9s%n",
+                "operation", "count", "orig", "replay", "orig", "replay", "orig", "replay");
+        replayed.forEach((type, h) -> {
+            Histogram o = original.get(type);
+            System.out.printf("%-22s %,9d %8d %9d %8d %9d %8d %9d%n", type, h.getTotalCount(),
+                    o.getValueAtPercentile(50), h.getValueAtPercentile(50),
+                    o.getValueAtPercentile(99), h.getValueAtPercentile(99),
+                    o.getMaxValue(), h.getMaxValue());
+        });
+
+        System.out.printf("%nOutcome mismatches: %d%n", outcomeMismatches);
+        if (log.getFinalDigest() == null) {
+            System.out.println("Final state: not verified (log has no digest; capture did not shut down cleanly)");
+        } else {
+            System.out.printf("Final state: %s%n", stateMatches ? "MATCHES capture" : "DIFFERS from capture");
+        }
+        System.out.printf("Replay digest: %s%n", digest);
+    }
+
+    private static LocalDateTime toDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+}
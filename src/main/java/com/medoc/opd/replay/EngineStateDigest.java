@@ -0,0 +1,54 @@
+package com.medoc.opd.replay;
+
+import com.medoc.opd.model.TimeSlot;
+import com.medoc.opd.model.Token;
+import com.medoc.opd.service.OPDTokenEngine;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fingerprint of an engine's slots and tokens that ignores generated IDs and
+ * token numbers, so a replayed engine can be compared with the original one.
+ * Tokens are described by the start time of the slot they ended up in.
+ */
+public final class EngineStateDigest {
+
+    private EngineStateDigest() {
+    }
+
+    public static String of(OPDTokenEngine engine) {
+        List<String> lines = new ArrayList<>();
+        Map<String, TimeSlot> slotsById = new HashMap<>();
+
+        for (TimeSlot slot : engine.getAllSlots()) {
+            slotsById.put(slot.getSlotId(), slot);
+            lines.add("S|" + slot.getDoctorId() + "|" + slot.getStartTime() + "|" + slot.getEndTime()
+                    + "|" + slot.getMaxCapacity() + "|" + slot.getCurrentOccupancy() + "|" + slot.isActive());
+        }
+        for (Token token : engine.getAllTokens()) {
+            TimeSlot slot = slotsById.get(token.getSlotId());
+            lines.add("T|" + token.getDoctorId() + "|" + token.getPatientId() + "|" + token.getSource()
+                    + "|" + token.getStatus() + "|" + (slot != null ? slot.getStartTime() : "?")
+                    + "|" + token.getReallocatedCount());
+        }
+        lines.sort(null);
+
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            for (String line : lines) {
+                sha.update(line.getBytes(StandardCharsets.UTF_8));
+                sha.update((byte) '\n');
+            }
+            return HexFormat.of().formatHex(sha.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
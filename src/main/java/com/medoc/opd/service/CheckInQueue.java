@@ -0,0 +1,159 @@
+package com.medoc.opd.service;
+
+import com.medoc.opd.model.Token;
+import com.medoc.opd.model.TokenSource;
+import com.medoc.opd.model.TokenStatus;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * One doctor's checked-in patients in calling order under a
+ * {@link QueueDiscipline#DEADLINE} or {@link QueueDiscipline#WEIGHTED_FAIR}
+ * discipline.
+ *
+ * Each patient gets a sort key once, at check-in, that never changes as
+ * time passes, so the order is kept in a tree: O(log n) per check-in and
+ * O(n) to list, with no re-sorting on read. Emergencies always come first,
+ * in arrival order.
+ *
+ * For weighted fair queueing, a patient's key is their virtual finish time:
+ * the later of the doctor's virtual time and their source's previous finish
+ * time, plus 1 / weight. The virtual time moves to the finish time of the
+ * patient called in (self-clocked fair queueing), so a source that had no
+ * one waiting cannot bank credit for later.
+ *
+ * Not thread-safe; guarded by the doctor's lock like the rest of the
+ * doctor's state.
+ */
+final class CheckInQueue {
+
+    private final QueueDiscipline discipline;
+    private final double agingPointsPerMinute;
+    private final Map<TokenSource, Double> weights;
+
+    private final TreeSet<Entry> order = new TreeSet<>();
+    private final Map<String, Entry> byTokenId = new HashMap<>();
+    private final Map<TokenSource, Double> lastFinish = new EnumMap<>(TokenSource.class);
+    private double virtualTime;
+    private long sequence;
+
+    CheckInQueue(QueueDiscipline discipline, double agingPointsPerMinute, Map<TokenSource, Double> weights) {
+        if (discipline == QueueDiscipline.PRIORITY_AGING) {
+            throw new IllegalArgumentException("Priority aging is sorted on read, not queued");
+        }
+        this.discipline = discipline;
+        this.agingPointsPerMinute = agingPointsPerMinute;
+        this.weights = weights;
+    }
+
+    /**
+     * Queue a token that has just checked in (again, after a reallocation,
+     * replaces its earlier place).
+     */
+    void add(Token token) {
+        Entry previous = byTokenId.remove(token.getTokenId());
+        if (previous != null) {
+            order.remove(previous);
+        }
+
+        TokenSource source = token.getSource();
+        boolean emergency = source == TokenSource.EMERGENCY;
+        // Emergencies are ordered by sequence alone
+        double start = 0;
+        double key = 0;
+        if (!emergency && discipline == QueueDiscipline.DEADLINE) {
+            key = minutes(token.getCheckedInAt()) - source.getBasePriority() / agingPointsPerMinute;
+        } else if (!emergency) {
+            start = Math.max(virtualTime, lastFinish.getOrDefault(source, 0.0));
+            key = start + 1.0 / weights.get(source);
+            lastFinish.put(source, key);
+        }
+
+        Entry entry = new Entry(token, emergency, start, key, sequence++);
+        order.add(entry);
+        byTokenId.put(token.getTokenId(), entry);
+    }
+
+    /**
+     * Start over from the given tokens, queueing those checked in by check-in
+     * time. For state installed wholesale (replication, a reloaded tenant);
+     * weighted fair order is recomputed rather than restored.
+     */
+    void rebuild(Collection<Token> tokens) {
+        order.clear();
+        byTokenId.clear();
+        lastFinish.clear();
+        virtualTime = 0;
+        tokens.stream()
+                .filter(t -> t.getStatus() == TokenStatus.CHECKED_IN && t.getCheckedInAt() != null)
+                .sorted(Comparator.comparing(Token::getCheckedInAt).thenComparingInt(Token::getTokenNumber))
+                .forEach(this::add);
+    }
+
+    /**
+     * Checked-in tokens in calling order. First drops tokens that have left
+     * CHECKED_IN since the last call; a token called in advances the virtual
+     * time, one that left otherwise hands its share back to its source.
+     */
+    List<Token> callOrder() {
+        List<Token> waiting = new ArrayList<>(order.size());
+        for (Iterator<Entry> it = order.iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            TokenStatus status = entry.token.getStatus();
+            if (status == TokenStatus.CHECKED_IN) {
+                waiting.add(entry.token);
+                continue;
+            }
+            it.remove();
+            byTokenId.remove(entry.token.getTokenId());
+            if (entry.emergency || discipline != QueueDiscipline.WEIGHTED_FAIR) {
+                continue;
+            }
+            if (status == TokenStatus.IN_CONSULTATION) {
+                virtualTime = Math.max(virtualTime, entry.key);
+            } else if (lastFinish.get(entry.token.getSource()) == entry.key) {
+                lastFinish.put(entry.token.getSource(), entry.start);
+            }
+        }
+        return waiting;
+    }
+
+    private static double minutes(LocalDateTime at) {
+        return at.toEpochSecond(ZoneOffset.UTC) / 60.0;
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        private final Token token;
+        private final boolean emergency;
+        private final double start;
+        private final double key;
+        private final long seq;
+
+        private Entry(Token token, boolean emergency, double start, double key, long seq) {
+            this.token = token;
+            this.emergency = emergency;
+            this.start = start;
+            this.key = key;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (emergency != other.emergency) {
+                return emergency ? -1 : 1;
+            }
+            int byKey = Double.compare(key, other.key);
+            return byKey != 0 ? byKey : Long.compare(seq, other.seq);
+        }
+    }
+}
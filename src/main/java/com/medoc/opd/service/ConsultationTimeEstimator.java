@@ -0,0 +1,85 @@
+package com.medoc.opd.service;
+
+import lombok.Value;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streaming estimate of how long a consultation takes, per doctor, fed by
+ * the engine each time a consultation completes.
+ *
+ * Each doctor keeps an exponentially weighted moving average of consultation
+ * length and of its absolute deviation (the same smoothing TCP uses for
+ * round-trip times), so an update is O(1) and recent behaviour dominates.
+ * A doctor without history borrows the hospital-wide average, which itself
+ * starts from a configured default. Estimates are immutable and swapped
+ * atomically, so readers never lock.
+ */
+public class ConsultationTimeEstimator {
+
+    // Weight of the newest consultation in the average and in the deviation
+    private static final double MEAN_WEIGHT = 0.2;
+    private static final double DEVIATION_WEIGHT = 0.25;
+
+    // A single forgotten "complete" click must not swamp the average
+    private static final double MAX_SAMPLE_RATIO = 4.0;
+
+    private final double defaultMinutes;
+    private final Map<String, Estimate> byDoctor = new ConcurrentHashMap<>();
+    private final AtomicReference<Estimate> global = new AtomicReference<>();
+
+    public ConsultationTimeEstimator(double defaultMinutes) {
+        if (defaultMinutes <= 0) {
+            throw new IllegalArgumentException("Default consultation time must be positive");
+        }
+        this.defaultMinutes = defaultMinutes;
+    }
+
+    public double getDefaultMinutes() {
+        return defaultMinutes;
+    }
+
+    public void record(String doctorId, double minutes) {
+        if (minutes < 0) {
+            return;
+        }
+        byDoctor.compute(doctorId, (d, estimate) -> update(estimate, minutes));
+        global.updateAndGet(estimate -> update(estimate, minutes));
+    }
+
+    /**
+     * Current estimate for the doctor, falling back to the hospital-wide one
+     * and then to the configured default.
+     */
+    public Estimate getEstimate(String doctorId) {
+        Estimate estimate = byDoctor.get(doctorId);
+        if (estimate != null) {
+            return estimate;
+        }
+        estimate = global.get();
+        return estimate != null ? estimate : new Estimate(defaultMinutes, defaultMinutes / 2, 0);
+    }
+
+    private static Estimate update(Estimate estimate, double minutes) {
+        if (estimate == null) {
+            return new Estimate(minutes, minutes / 2, 1);
+        }
+        double sample = Math.min(minutes, estimate.meanMinutes * MAX_SAMPLE_RATIO);
+        double deviation = (1 - DEVIATION_WEIGHT) * estimate.deviationMinutes
+                + DEVIATION_WEIGHT * Math.abs(sample - estimate.meanMinutes);
+        double mean = (1 - MEAN_WEIGHT) * estimate.meanMinutes + MEAN_WEIGHT * sample;
+        return new Estimate(mean, deviation, estimate.samples + 1);
+    }
+
+    @Value
+    public static class Estimate {
+        /** Smoothed consultation length. */
+        double meanMinutes;
+        /** Smoothed absolute deviation from the mean. */
+        double deviationMinutes;
+        /** Completions seen; 0 means the default is being used. */
+        long samples;
+    }
+}
@@ -0,0 +1,14 @@
+package com.medoc.opd.service;
+
+import com.medoc.opd.model.DoctorSnapshot;
+
+/**
+ * Observer of locally made changes to a doctor's state. Called with the
+ * doctor's lock held, right after a new snapshot is published, so calls for
+ * one doctor arrive in mutation order. Implementations must be quick.
+ */
+@FunctionalInterface
+public interface DoctorSnapshotListener {
+
+    void onPublish(DoctorSnapshot previous, DoctorSnapshot current);
+}
@@ -0,0 +1,72 @@
+package com.medoc.opd.service;
+
+import com.medoc.opd.model.TokenSource;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Record of one mutating call on {@link OPDTokenEngine}: its arguments, the ID
+ * it created (if any), when it ran and how long it took. Emitted to
+ * {@link EngineCommandListener}s for capture and replay.
+ */
+@Value
+@Builder(toBuilder = true)
+public class EngineCommand {
+
+    public enum Type {
+        CREATE_SLOT,
+        ALLOCATE,
+        ALLOCATE_EMERGENCY,
+        CHECK_IN,
+        START_CONSULTATION,
+        COMPLETE_CONSULTATION,
+        CANCEL,
+        NO_SHOW,
+        ADJUST_CAPACITY,
+        EXPIRE_SLOT,
+        ADJUST_CAPACITY_RANGE
+    }
+
+    Type type;
+
+    /**
+     * Snapshot epoch the command published (or the current epoch if it failed).
+     * Orders commands the way the engine actually serialized them.
+     */
+    long sequence;
+
+    /** Engine clock at the start of the call, epoch millis. */
+    long timestampMillis;
+
+    long durationNanos;
+
+    /** Simple name of the exception thrown, or null if the call succeeded. */
+    String failure;
+
+    String doctorId;
+    String doctorName;
+    String department;
+    String patientId;
+    String patientName;
+    TokenSource source;
+    LocalDateTime startTime;
+    LocalDateTime endTime;
+    LocalDateTime preferredTime;
+    int capacity;
+    String notes;
+
+    /** Slot or token the command acted on. */
+    String targetId;
+
+    /** Version the caller required the target to be at (If-Match), or null. */
+    Long expectedVersion;
+
+    /** Slot or token the command created or returned. */
+    String resultId;
+
+    public boolean isSuccessful() {
+        return failure == null;
+    }
+}
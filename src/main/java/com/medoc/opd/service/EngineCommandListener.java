@@ -0,0 +1,12 @@
+package com.medoc.opd.service;
+
+/**
+ * Receives every mutating command executed by {@link OPDTokenEngine}.
+ * Called on the caller's thread after the command finished, so
+ * implementations must be cheap and thread-safe.
+ */
+@FunctionalInterface
+public interface EngineCommandListener {
+
+    void onCommand(EngineCommand command);
+}
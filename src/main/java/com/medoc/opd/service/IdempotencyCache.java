@@ -0,0 +1,96 @@
+package com.medoc.opd.service;
+
+import com.medoc.opd.exception.IdempotencyKeyConflictException;
+import lombok.Value;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Bounded, time-expiring map from client idempotency keys to the token the
+ * first request with that key produced.
+ *
+ * A key is claimed before its allocation runs, so a retry that arrives while
+ * the original is still in flight waits for it instead of allocating again.
+ * Entries are kept in claim order; since every entry lives for the same TTL,
+ * expired entries are always at the head and eviction never scans live ones.
+ */
+class IdempotencyCache {
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private volatile long ttlMillis;
+    private volatile int maxKeys;
+
+    IdempotencyCache(long ttlMillis, int maxKeys) {
+        this.ttlMillis = ttlMillis;
+        this.maxKeys = maxKeys;
+    }
+
+    void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    void setMaxKeys(int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Claim a key for a new request whose result will be delivered through
+     * {@code pending}.
+     *
+     * @return {@code pending} itself if the caller now owns the key and must
+     *         complete it (or {@link #release} the key); otherwise the token ID,
+     *         possibly not yet known, of the request that claimed it first
+     * @throws IdempotencyKeyConflictException if the key was first used for a different request
+     */
+    synchronized CompletableFuture<String> claim(String key, String fingerprint, long nowMillis,
+                                                 CompletableFuture<String> pending) {
+        evictExpired(nowMillis);
+        Entry existing = entries.get(key);
+        if (existing != null) {
+            if (!existing.getFingerprint().equals(fingerprint)) {
+                throw new IdempotencyKeyConflictException(key);
+            }
+            return existing.getTokenId();
+        }
+        entries.put(key, new Entry(fingerprint, pending, nowMillis + ttlMillis));
+        while (entries.size() > maxKeys) {
+            Iterator<Entry> eldest = entries.values().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+        return pending;
+    }
+
+    /**
+     * Forget a key whose request failed, so a retry runs again. Requests
+     * already waiting on it fail the same way.
+     */
+    synchronized void release(String key, CompletableFuture<String> pending, RuntimeException failure) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.getTokenId() == pending) {
+            entries.remove(key);
+        }
+        pending.completeExceptionally(failure);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private void evictExpired(long nowMillis) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext() && it.next().getExpiresAtMillis() <= nowMillis) {
+            it.remove();
+        }
+    }
+
+    @Value
+    private static class Entry {
+        String fingerprint;
+        CompletableFuture<String> tokenId;
+        long expiresAtMillis;
+    }
+}
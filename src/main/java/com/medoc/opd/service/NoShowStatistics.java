@@ -0,0 +1,99 @@
+package com.medoc.opd.service;
+
+import com.medoc.opd.model.TokenSource;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Streaming attendance counts per doctor and token source, fed by the engine
+ * as tokens resolve (checked in, cancelled or no-show).
+ *
+ * Show probabilities are smoothed: a doctor's per-source rate is pulled
+ * towards the hospital-wide rate for that source until the doctor has enough
+ * history of their own, and the hospital-wide rate starts from "everyone
+ * shows up". With no history the estimate is therefore 1.0, which never
+ * overbooks.
+ */
+public class NoShowStatistics {
+
+    public enum Outcome { ATTENDED, CANCELLED, NO_SHOW }
+
+    // Pseudo-observations backing each prior
+    private static final double DOCTOR_PRIOR_WEIGHT = 20;
+    private static final double GLOBAL_PRIOR_WEIGHT = 10;
+
+    private static final int SOURCES = TokenSource.values().length;
+    private static final int OUTCOMES = Outcome.values().length;
+
+    private final Map<String, AtomicLongArray> byDoctor = new ConcurrentHashMap<>();
+    private final AtomicLongArray global = new AtomicLongArray(SOURCES * OUTCOMES);
+
+    public void record(String doctorId, TokenSource source, Outcome outcome) {
+        int index = source.ordinal() * OUTCOMES + outcome.ordinal();
+        byDoctor.computeIfAbsent(doctorId, d -> new AtomicLongArray(SOURCES * OUTCOMES)).incrementAndGet(index);
+        global.incrementAndGet(index);
+    }
+
+    /**
+     * Smoothed probability that a booked token of this source actually turns up.
+     */
+    public double getShowProbability(String doctorId, TokenSource source) {
+        double globalRate = smoothed(global, source, 1.0, GLOBAL_PRIOR_WEIGHT);
+        AtomicLongArray counts = byDoctor.get(doctorId);
+        return counts == null ? globalRate : smoothed(counts, source, globalRate, DOCTOR_PRIOR_WEIGHT);
+    }
+
+    /**
+     * Show probability for a doctor's bookings as a whole: per-source rates
+     * weighted by how often each source has booked with this doctor.
+     */
+    public double getShowProbability(String doctorId) {
+        AtomicLongArray counts = byDoctor.get(doctorId);
+        long total = 0;
+        double weighted = 0;
+        for (TokenSource source : TokenSource.values()) {
+            long resolved = resolved(counts != null ? counts : global, source);
+            total += resolved;
+            weighted += resolved * getShowProbability(doctorId, source);
+        }
+        return total == 0 ? 1.0 : weighted / total;
+    }
+
+    /**
+     * Raw (unsmoothed) share of resolved tokens per source that did not turn up.
+     */
+    public Map<TokenSource, Double> getNoShowRates(String doctorId) {
+        AtomicLongArray counts = doctorId != null ? byDoctor.get(doctorId) : global;
+        Map<TokenSource, Double> rates = new EnumMap<>(TokenSource.class);
+        if (counts == null) {
+            return rates;
+        }
+        for (TokenSource source : TokenSource.values()) {
+            long resolved = resolved(counts, source);
+            if (resolved > 0) {
+                rates.put(source, 1.0 - (double) count(counts, source, Outcome.ATTENDED) / resolved);
+            }
+        }
+        return rates;
+    }
+
+    private static double smoothed(AtomicLongArray counts, TokenSource source, double prior, double priorWeight) {
+        return (count(counts, source, Outcome.ATTENDED) + prior * priorWeight)
+                / (resolved(counts, source) + priorWeight);
+    }
+
+    private static long resolved(AtomicLongArray counts, TokenSource source) {
+        long total = 0;
+        for (Outcome outcome : Outcome.values()) {
+            total += count(counts, source, outcome);
+        }
+        return total;
+    }
+
+    private static long count(AtomicLongArray counts, TokenSource source, Outcome outcome) {
+        return counts.get(source.ordinal() * OUTCOMES + outcome.ordinal());
+    }
+}
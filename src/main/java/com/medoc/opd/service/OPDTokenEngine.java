@@ -6,10 +6,21 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -25,10 +36,61 @@ public class OPDTokenEngine {
     private final Map<String, TimeSlot> slots = new ConcurrentHashMap<>();
     private final Map<String, Token> tokens = new ConcurrentHashMap<>();
     private final AtomicInteger tokenCounter = new AtomicInteger(1);
+    private volatile int tokenNumberStride = 1;
+
+    // patientId -> IDs of every token issued to the patient, across doctors, for desk lookups
+    private final Map<String, Set<String>> tokenIdsByPatient = new ConcurrentHashMap<>();
+
+    // Per-doctor write lock, indexes and published read snapshot
+    private final Map<String, DoctorState> doctors = new ConcurrentHashMap<>();
+    private final AtomicLong epochCounter = new AtomicLong();
+
+    // Observers of mutating commands (capture/replay); empty in normal operation
+    private final List<EngineCommandListener> commandListeners = new CopyOnWriteArrayList<>();
+    private static final String DEFAULT_FAIR_WEIGHTS = "PAID_PRIORITY:5,ONLINE_BOOKING:3,FOLLOW_UP:2,WALK_IN:1";
+
+    // Observers of local state changes (cluster replication); and which doctors this node may act on by itself
+    private final List<DoctorSnapshotListener> snapshotListeners = new CopyOnWriteArrayList<>();
+    private volatile Predicate<String> ownsDoctor = doctorId -> true;
 
     @Value("${opd.simulation.mode:false}")
     private boolean simulationMode = false;
 
+    // Automatic no-show detection and slot roll-over, driven by a timing wheel on the engine clock
+    @Value("${opd.expiry.grace-minutes:15}")
+    private long noShowGraceMinutes = 15;
+    private volatile boolean expiryEnabled = false;
+    private final TimingWheel expiryWheel = new TimingWheel(1_000, 4_096);
+
+    // Predictive overbooking: book past maxCapacity while the chance of more shows than seats stays within risk
+    @Value("${opd.overbooking.enabled:false}")
+    private volatile boolean overbookingEnabled = false;
+    private volatile OverbookingPolicy overbookingPolicy = new OverbookingPolicy(0.05, 1.5);
+    private final NoShowStatistics noShowStatistics = new NoShowStatistics();
+
+    // Per-doctor and per-department time series of token activity, fed on every transition
+    private volatile TokenAnalytics analytics = new TokenAnalytics(15, 48);
+
+    // Smoothed consultation length per doctor, updated on each completion; drives queue call-time estimates
+    private volatile ConsultationTimeEstimator consultationTimes = new ConsultationTimeEstimator(10);
+
+    // Client retries of the same booking (same Idempotency-Key) return the first result instead of booking again
+    private final IdempotencyCache idempotencyKeys = new IdempotencyCache(TimeUnit.MINUTES.toMillis(60), 100_000);
+    @Value("${opd.booking.one-per-patient-per-day:true}")
+    private volatile boolean onePerPatientPerDay = true;
+
+    // Patients to tell about reallocations: the notice sits on the token, these only index which doctors have any
+    private final Set<String> doctorsWithNotices = ConcurrentHashMap.newKeySet();
+    private final AtomicLong noticeSequence = new AtomicLong();
+
+    // Order in which doctors call checked-in patients; the fair disciplines keep a CheckInQueue per doctor
+    private volatile QueueDiscipline queueDiscipline = QueueDiscipline.PRIORITY_AGING;
+    private volatile double agingPointsPerMinute = 5;
+    private volatile Map<TokenSource, Double> fairWeights = parseFairWeights(DEFAULT_FAIR_WEIGHTS);
+
+    // Source of "now" for every time-based decision; swap for a SimulationClock to replay days fast
+    private volatile Clock clock = Clock.systemDefaultZone();
+
     /**
      * Enable or disable simulation mode.
      * In simulation mode, time-based slot filtering is relaxed.
@@ -37,12 +99,331 @@ public class OPDTokenEngine {
         this.simulationMode = simulationMode;
     }
 
+    /**
+     * Replace the engine clock. Used by simulations to fast-forward time.
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Register a listener that sees every mutating command after it completes.
+     */
+    public void addCommandListener(EngineCommandListener listener) {
+        commandListeners.add(listener);
+    }
+
+    public void removeCommandListener(EngineCommandListener listener) {
+        commandListeners.remove(listener);
+    }
+
+    /**
+     * Register a listener that sees every snapshot published by a local mutation.
+     */
+    public void addSnapshotListener(DoctorSnapshotListener listener) {
+        snapshotListeners.add(listener);
+    }
+
+    public void removeSnapshotListener(DoctorSnapshotListener listener) {
+        snapshotListeners.remove(listener);
+    }
+
+    /**
+     * Restrict background work (slot expiry) to doctors this node owns. In a
+     * cluster, replicas hold other nodes' doctors and must not mutate them.
+     */
+    public void setOwnershipCheck(Predicate<String> ownsDoctor) {
+        this.ownsDoctor = ownsDoctor;
+    }
+
+    /**
+     * Issue token numbers {@code offset + 1, offset + 1 + stride, ...} so that
+     * several nodes never hand out the same number.
+     */
+    public void setTokenNumbering(int offset, int stride) {
+        tokenCounter.set(offset + 1);
+        this.tokenNumberStride = stride;
+    }
+
+    /**
+     * Move the token counter past every token number this engine holds, so a
+     * promoted standby does not reissue numbers the old primary gave out.
+     */
+    public void continueTokenNumbering() {
+        int highest = tokens.values().stream().mapToInt(Token::getTokenNumber).max().orElse(0);
+        int stride = tokenNumberStride;
+        tokenCounter.updateAndGet(next -> next > highest ? next : next + ((highest - next) / stride + 1) * stride);
+    }
+
+    public boolean isSimulationMode() {
+        return simulationMode;
+    }
+
+    /**
+     * Turn automatic slot expiry on or off. When switched on, every existing
+     * active slot gets its expiry timer; new slots get one as they are created.
+     * The timers only fire when {@link #advanceTimers()} is called.
+     */
+    public void setExpiryEnabled(boolean enabled) {
+        if (enabled && !expiryEnabled) {
+            expiryEnabled = true;
+            slots.values().stream()
+                    .filter(TimeSlot::isActive)
+                    .forEach(this::scheduleExpiry);
+        } else {
+            expiryEnabled = enabled;
+        }
+    }
+
+    public void setNoShowGraceMinutes(long noShowGraceMinutes) {
+        this.noShowGraceMinutes = noShowGraceMinutes;
+    }
+
+    public void setOverbookingEnabled(boolean overbookingEnabled) {
+        this.overbookingEnabled = overbookingEnabled;
+    }
+
+    public boolean isOverbookingEnabled() {
+        return overbookingEnabled;
+    }
+
+    /**
+     * Replace the overbooking risk target and cap.
+     *
+     * @param risk     acceptable probability that more patients turn up than a slot can seat
+     * @param maxRatio never book more than this multiple of a slot's capacity
+     */
+    @Value("${opd.overbooking.risk:0.05}")
+    public void setOverbookingRisk(double risk) {
+        overbookingPolicy = new OverbookingPolicy(risk, overbookingPolicy.getMaxRatio());
+    }
+
+    @Value("${opd.overbooking.max-ratio:1.5}")
+    public void setOverbookingMaxRatio(double maxRatio) {
+        overbookingPolicy = new OverbookingPolicy(overbookingPolicy.getRisk(), maxRatio);
+    }
+
+    public NoShowStatistics getNoShowStatistics() {
+        return noShowStatistics;
+    }
+
+    public TokenAnalytics getAnalytics() {
+        return analytics;
+    }
+
+    /**
+     * Replace the analytics store with one of the given bucket width. Drops history.
+     */
+    @Value("${opd.analytics.bucket-minutes:15}")
+    public void setAnalyticsBucketMinutes(int bucketMinutes) {
+        analytics = new TokenAnalytics(bucketMinutes, analytics.getRetentionHours());
+    }
+
+    /**
+     * Replace the analytics store with one keeping the given history. Drops history.
+     */
+    @Value("${opd.analytics.retention-hours:48}")
+    public void setAnalyticsRetentionHours(int retentionHours) {
+        analytics = new TokenAnalytics(analytics.getBucketMinutes(), retentionHours);
+    }
+
+    public ConsultationTimeEstimator getConsultationTimes() {
+        return consultationTimes;
+    }
+
+    /**
+     * Replace the consultation time estimator with one assuming the given length
+     * until consultations have been seen. Drops history.
+     */
+    @Value("${opd.estimate.default-consultation-minutes:10}")
+    public void setDefaultConsultationMinutes(double minutes) {
+        consultationTimes = new ConsultationTimeEstimator(minutes);
+    }
+
+    @Value("${opd.idempotency.ttl-minutes:60}")
+    public void setIdempotencyTtlMinutes(long ttlMinutes) {
+        idempotencyKeys.setTtlMillis(TimeUnit.MINUTES.toMillis(ttlMinutes));
+    }
+
+    @Value("${opd.idempotency.max-keys:100000}")
+    public void setIdempotencyMaxKeys(int maxKeys) {
+        idempotencyKeys.setMaxKeys(maxKeys);
+    }
+
+    public QueueDiscipline getQueueDiscipline() {
+        return queueDiscipline;
+    }
+
+    /**
+     * Change how doctors' queues are ordered. Doctors already known are
+     * re-queued from their checked-in patients, by check-in time.
+     */
+    @Value("${opd.queue.discipline:PRIORITY_AGING}")
+    public void setQueueDiscipline(QueueDiscipline discipline) {
+        queueDiscipline = discipline;
+        requeueAll();
+    }
+
+    /**
+     * Rate at which a waiting patient catches up with higher base priorities
+     * under {@link QueueDiscipline#DEADLINE}.
+     */
+    @Value("${opd.queue.aging-points-per-minute:5}")
+    public void setAgingPointsPerMinute(double pointsPerMinute) {
+        if (pointsPerMinute <= 0) {
+            throw new IllegalArgumentException("Aging rate must be positive");
+        }
+        agingPointsPerMinute = pointsPerMinute;
+        requeueAll();
+    }
+
+    /**
+     * Shares of the doctor's time under {@link QueueDiscipline#WEIGHTED_FAIR},
+     * as {@code SOURCE:weight} pairs, e.g. {@value #DEFAULT_FAIR_WEIGHTS}.
+     * Every source but EMERGENCY needs a weight.
+     */
+    @Value("${opd.queue.fair-weights:" + DEFAULT_FAIR_WEIGHTS + "}")
+    public void setFairWeights(String weights) {
+        fairWeights = parseFairWeights(weights);
+        requeueAll();
+    }
+
+    private static Map<TokenSource, Double> parseFairWeights(String spec) {
+        Map<TokenSource, Double> weights = new EnumMap<>(TokenSource.class);
+        for (String pair : spec.split(",")) {
+            String[] kv = pair.trim().split(":", 2);
+            double weight = kv.length == 2 ? Double.parseDouble(kv[1].trim()) : 0;
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Expected SOURCE:weight with a positive weight but got: " + pair);
+            }
+            weights.put(TokenSource.valueOf(kv[0].trim()), weight);
+        }
+        for (TokenSource source : TokenSource.values()) {
+            if (source != TokenSource.EMERGENCY && !weights.containsKey(source)) {
+                throw new IllegalArgumentException("No fair queueing weight for " + source);
+            }
+        }
+        return Collections.unmodifiableMap(weights);
+    }
+
+    private CheckInQueue newCheckInQueue() {
+        QueueDiscipline discipline = queueDiscipline;
+        return discipline == QueueDiscipline.PRIORITY_AGING
+                ? null
+                : new CheckInQueue(discipline, agingPointsPerMinute, fairWeights);
+    }
+
+    private void requeueAll() {
+        for (DoctorState state : doctors.values()) {
+            synchronized (state) {
+                state.checkInQueue = newCheckInQueue();
+                if (state.checkInQueue != null) {
+                    state.checkInQueue.rebuild(state.tokens.values());
+                }
+                publish(state, false);
+            }
+        }
+    }
+
+    /**
+     * Reject a second active token for the same patient, doctor and day (emergencies excepted).
+     */
+    public void setOnePerPatientPerDay(boolean onePerPatientPerDay) {
+        this.onePerPatientPerDay = onePerPatientPerDay;
+    }
+
+    /**
+     * Every setting besides simulation mode that changes which slot a command
+     * lands in or who is called next, keyed by property name. A command log
+     * records these so a replay runs under the same rules.
+     */
+    public Map<String, String> getAllocationSettings() {
+        Map<String, String> settings = new LinkedHashMap<>();
+        settings.put("opd.overbooking.enabled", String.valueOf(overbookingEnabled));
+        settings.put("opd.overbooking.risk", String.valueOf(overbookingPolicy.getRisk()));
+        settings.put("opd.overbooking.max-ratio", String.valueOf(overbookingPolicy.getMaxRatio()));
+        settings.put("opd.queue.discipline", queueDiscipline.name());
+        settings.put("opd.queue.aging-points-per-minute", String.valueOf(agingPointsPerMinute));
+        settings.put("opd.queue.fair-weights", fairWeights.entrySet().stream()
+                .map(e -> e.getKey() + ":" + e.getValue())
+                .collect(Collectors.joining(",")));
+        settings.put("opd.booking.one-per-patient-per-day", String.valueOf(onePerPatientPerDay));
+        return settings;
+    }
+
+    /**
+     * Apply settings as returned by {@link #getAllocationSettings()}; keys not
+     * given are left as they are, unknown keys are rejected.
+     */
+    public void applyAllocationSettings(Map<String, String> settings) {
+        settings.forEach((key, value) -> {
+            switch (key) {
+                case "opd.overbooking.enabled" -> setOverbookingEnabled(Boolean.parseBoolean(value));
+                case "opd.overbooking.risk" -> setOverbookingRisk(Double.parseDouble(value));
+                case "opd.overbooking.max-ratio" -> setOverbookingMaxRatio(Double.parseDouble(value));
+                case "opd.queue.discipline" -> setQueueDiscipline(QueueDiscipline.valueOf(value));
+                case "opd.queue.aging-points-per-minute" -> setAgingPointsPerMinute(Double.parseDouble(value));
+                case "opd.queue.fair-weights" -> setFairWeights(value);
+                case "opd.booking.one-per-patient-per-day" -> setOnePerPatientPerDay(Boolean.parseBoolean(value));
+                default -> throw new IllegalArgumentException("Unknown allocation setting " + key);
+            }
+        });
+    }
+
+    /**
+     * Number of bookings a slot accepts: its capacity, or with overbooking on,
+     * the limit the doctor's attendance history supports at the configured risk.
+     * The show probability is the doctor's aggregate across sources, weighted by
+     * their past booking mix, not the mix of tokens in this slot; a slot holding
+     * mostly walk-ins with a doctor whose bookings are mostly online is limited
+     * using the online rate.
+     */
+    public int getBookingLimit(TimeSlot slot) {
+        if (!overbookingEnabled) {
+            return slot.getMaxCapacity();
+        }
+        return overbookingPolicy.bookingLimit(slot.getMaxCapacity(),
+                noShowStatistics.getShowProbability(slot.getDoctorId()));
+    }
+
+    /**
+     * Fire every expiry timer that is due according to the engine clock.
+     * Called periodically by {@link SlotExpiryTicker}, or by a simulation after moving its clock.
+     *
+     * @return number of slots expired
+     */
+    public int advanceTimers() {
+        return expiryWheel.advance(clock.millis());
+    }
+
+    /**
+     * Current time according to the engine clock.
+     */
+    public LocalDateTime now() {
+        return LocalDateTime.now(clock);
+    }
+
     /**
      * Create a new time slot for a doctor.
      */
     public TimeSlot createSlot(String doctorId, String doctorName, String department,
             LocalDateTime startTime, LocalDateTime endTime,
             int maxCapacity) {
+        return command(EngineCommand.builder()
+                        .type(EngineCommand.Type.CREATE_SLOT)
+                        .doctorId(doctorId).doctorName(doctorName).department(department)
+                        .startTime(startTime).endTime(endTime).capacity(maxCapacity),
+                () -> doCreateSlot(doctorId, doctorName, department, startTime, endTime, maxCapacity),
+                TimeSlot::getSlotId);
+    }
+
+    private Published<TimeSlot> doCreateSlot(String doctorId, String doctorName, String department,
+            LocalDateTime startTime, LocalDateTime endTime,
+            int maxCapacity) {
         TimeSlot slot = TimeSlot.builder()
                 .doctorId(doctorId)
                 .doctorName(doctorName)
@@ -52,9 +433,67 @@ public class OPDTokenEngine {
                 .maxCapacity(maxCapacity)
                 .build();
 
-        slots.put(slot.getSlotId(), slot);
+        DoctorState state = doctorState(doctorId);
+        long epoch;
+        synchronized (state) {
+            slots.put(slot.getSlotId(), slot);
+            state.slots.put(slot.getSlotId(), slot);
+            state.touch(slot);
+            epoch = publish(state);
+        }
+
+        if (expiryEnabled) {
+            scheduleExpiry(slot);
+        }
+
         log.info("Created slot {} for Dr. {} ({}-{})", slot.getSlotId(), doctorName, startTime, endTime);
-        return slot;
+        return new Published<>(slot, epoch);
+    }
+
+    /**
+     * Register many slots at once, e.g. a materialized schedule. Each doctor's
+     * slots go in under one lock acquisition and one snapshot publish, and the
+     * batch is logged once instead of per slot.
+     */
+    public List<TimeSlot> createSlots(List<TimeSlot> newSlots) {
+        Map<String, List<TimeSlot>> byDoctor = newSlots.stream()
+                .collect(Collectors.groupingBy(TimeSlot::getDoctorId, LinkedHashMap::new, Collectors.toList()));
+
+        for (Map.Entry<String, List<TimeSlot>> entry : byDoctor.entrySet()) {
+            DoctorState state = doctorState(entry.getKey());
+            long timestamp = clock.millis();
+            long sequence;
+            synchronized (state) {
+                for (TimeSlot slot : entry.getValue()) {
+                    slots.put(slot.getSlotId(), slot);
+                    state.slots.put(slot.getSlotId(), slot);
+                    state.touch(slot);
+                }
+                sequence = publish(state);
+            }
+
+            if (expiryEnabled) {
+                entry.getValue().forEach(this::scheduleExpiry);
+            }
+            if (!commandListeners.isEmpty()) {
+                // Recorded as individual creations so capture and replay need no batch format
+                for (TimeSlot slot : entry.getValue()) {
+                    notifyListeners(EngineCommand.builder()
+                            .type(EngineCommand.Type.CREATE_SLOT)
+                            .sequence(sequence)
+                            .timestampMillis(timestamp)
+                            .doctorId(slot.getDoctorId()).doctorName(slot.getDoctorName())
+                            .department(slot.getDepartment())
+                            .startTime(slot.getStartTime()).endTime(slot.getEndTime())
+                            .capacity(slot.getMaxCapacity())
+                            .resultId(slot.getSlotId())
+                            .build());
+                }
+            }
+        }
+
+        log.info("Created {} slots for {} doctor(s)", newSlots.size(), byDoctor.size());
+        return newSlots;
     }
 
     /**
@@ -63,33 +502,74 @@ public class OPDTokenEngine {
      */
     public Token allocateToken(String patientId, String patientName, String doctorId,
             TokenSource source, LocalDateTime preferredTime, String notes) {
+        return allocateToken(null, patientId, patientName, doctorId, source, preferredTime, notes);
+    }
+
+    /**
+     * Allocate a token, at most once per idempotency key. A repeated key
+     * returns the token the first request created, without searching for a
+     * slot again; a request still in flight with the same key is waited for.
+     *
+     * @param idempotencyKey client-chosen key identifying this booking attempt, or null
+     */
+    public Token allocateToken(String idempotencyKey, String patientId, String patientName, String doctorId,
+            TokenSource source, LocalDateTime preferredTime, String notes) {
+        return idempotent(idempotencyKey, patientId + '|' + doctorId + '|' + source,
+                () -> command(EngineCommand.builder()
+                                .type(EngineCommand.Type.ALLOCATE)
+                                .patientId(patientId).patientName(patientName).doctorId(doctorId)
+                                .source(source).preferredTime(preferredTime).notes(notes),
+                        () -> doAllocateToken(patientId, patientName, doctorId, source, preferredTime, notes),
+                        Token::getTokenId));
+    }
 
-        // Find best available slot
-        TimeSlot bestSlot = findBestSlot(doctorId, preferredTime, source);
+    private Published<Token> doAllocateToken(String patientId, String patientName, String doctorId,
+            TokenSource source, LocalDateTime preferredTime, String notes) {
 
-        if (bestSlot == null) {
-            throw new SlotCapacityExceededException(
-                    "No available slots found for doctor " + doctorId + " near preferred time " + preferredTime);
-        }
+        DoctorState state = doctorState(doctorId);
+        Token token;
+        TimeSlot bestSlot;
+        long epoch;
 
-        // Create and allocate token
-        Token token = Token.builder()
-                .patientId(patientId)
-                .patientName(patientName)
-                .slotId(bestSlot.getSlotId())
-                .doctorId(doctorId)
-                .source(source)
-                .tokenNumber(tokenCounter.getAndIncrement())
-                .notes(notes)
-                .build();
+        synchronized (state) {
+            // Find best available slot
+            bestSlot = findBestSlot(state, preferredTime, source);
 
-        tokens.put(token.getTokenId(), token);
-        bestSlot.incrementOccupancy();
+            if (bestSlot == null) {
+                throw new SlotCapacityExceededException(
+                        "No available slots found for doctor " + doctorId + " near preferred time " + preferredTime);
+            }
+            if (onePerPatientPerDay) {
+                LocalDate day = bestSlot.getStartTime().toLocalDate();
+                Token existing = findActiveBooking(state, patientId, day);
+                if (existing != null) {
+                    throw new DuplicateBookingException(patientId, doctorId, day, existing.getTokenNumber());
+                }
+            }
+
+            // Create and allocate token
+            token = Token.builder()
+                    .patientId(patientId)
+                    .patientName(patientName)
+                    .slotId(bestSlot.getSlotId())
+                    .doctorId(doctorId)
+                    .source(source)
+                    .tokenNumber(tokenCounter.getAndAdd(tokenNumberStride))
+                    .createdAt(now())
+                    .notes(notes)
+                    .build();
+
+            storeToken(state, token);
+            bestSlot.incrementOccupancy();
+            state.touch(bestSlot);
+            analytics.record(TokenAnalytics.Event.BOOKED, doctorId, bestSlot.getDepartment(), token.getCreatedAt(), null);
+            epoch = publish(state);
+        }
 
         log.info("Allocated token {} to patient {} in slot {} (source: {})",
                 token.getTokenNumber(), patientName, bestSlot.getSlotId(), source);
 
-        return token;
+        return new Published<>(token, epoch);
     }
 
     /**
@@ -97,51 +577,130 @@ public class OPDTokenEngine {
      */
     public Token allocateEmergencyToken(String patientId, String patientName,
             String doctorId, String notes) {
+        return allocateEmergencyToken(null, patientId, patientName, doctorId, notes);
+    }
+
+    /**
+     * Allocate an emergency token, at most once per idempotency key.
+     */
+    public Token allocateEmergencyToken(String idempotencyKey, String patientId, String patientName,
+            String doctorId, String notes) {
+        return idempotent(idempotencyKey, patientId + '|' + doctorId + '|' + TokenSource.EMERGENCY,
+                () -> command(EngineCommand.builder()
+                                .type(EngineCommand.Type.ALLOCATE_EMERGENCY)
+                                .patientId(patientId).patientName(patientName).doctorId(doctorId).notes(notes),
+                        () -> doAllocateEmergencyToken(patientId, patientName, doctorId, notes),
+                        Token::getTokenId));
+    }
 
-        // For emergencies, find current or next immediate slot
-        TimeSlot emergencySlot = findEmergencySlot(doctorId);
+    /**
+     * Run an allocation once per key. Repeats never reach {@link #command}, so
+     * they are neither captured nor replicated: they change nothing.
+     */
+    private Token idempotent(String key, String fingerprint, Supplier<Token> allocation) {
+        if (key == null) {
+            return allocation.get();
+        }
 
-        if (emergencySlot == null) {
-            throw new SlotNotFoundException("No active or upcoming slots for doctor " + doctorId);
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        CompletableFuture<String> first = idempotencyKeys.claim(key, fingerprint, clock.millis(), pending);
+        if (first != pending) {
+            try {
+                Token original = getToken(first.join());
+                log.info("Idempotency key {} repeated; returning token {}", key, original.getTokenNumber());
+                return original;
+            } catch (CompletionException e) {
+                // The first attempt failed; report the same failure
+                throw (RuntimeException) e.getCause();
+            }
         }
 
-        // Create emergency token
-        Token emergencyToken = Token.builder()
-                .patientId(patientId)
-                .patientName(patientName)
-                .slotId(emergencySlot.getSlotId())
-                .doctorId(doctorId)
-                .source(TokenSource.EMERGENCY)
-                .tokenNumber(tokenCounter.getAndIncrement())
-                .notes("EMERGENCY: " + notes)
-                .build();
+        try {
+            Token token = allocation.get();
+            pending.complete(token.getTokenId());
+            return token;
+        } catch (RuntimeException e) {
+            idempotencyKeys.release(key, pending, e);
+            throw e;
+        }
+    }
+
+    private Published<Token> doAllocateEmergencyToken(String patientId, String patientName,
+            String doctorId, String notes) {
+
+        DoctorState state = doctorState(doctorId);
+        Token emergencyToken;
+        long epoch;
 
-        tokens.put(emergencyToken.getTokenId(), emergencyToken);
-        emergencySlot.incrementOccupancy();
+        synchronized (state) {
+            // For emergencies, find current or next immediate slot
+            TimeSlot emergencySlot = findEmergencySlot(state);
 
-        log.warn("EMERGENCY token {} allocated to {} in slot {} (capacity may be exceeded)",
-                emergencyToken.getTokenNumber(), patientName, emergencySlot.getSlotId());
+            if (emergencySlot == null) {
+                throw new SlotNotFoundException("No active or upcoming slots for doctor " + doctorId);
+            }
+
+            // Create emergency token
+            emergencyToken = Token.builder()
+                    .patientId(patientId)
+                    .patientName(patientName)
+                    .slotId(emergencySlot.getSlotId())
+                    .doctorId(doctorId)
+                    .source(TokenSource.EMERGENCY)
+                    .tokenNumber(tokenCounter.getAndAdd(tokenNumberStride))
+                    .createdAt(now())
+                    .notes("EMERGENCY: " + notes)
+                    .build();
+
+            storeToken(state, emergencyToken);
+            emergencySlot.incrementOccupancy();
+            state.touch(emergencySlot);
+            analytics.record(TokenAnalytics.Event.BOOKED, doctorId, emergencySlot.getDepartment(),
+                    emergencyToken.getCreatedAt(), null);
+
+            log.warn("EMERGENCY token {} allocated to {} in slot {} (capacity may be exceeded)",
+                    emergencyToken.getTokenNumber(), patientName, emergencySlot.getSlotId());
+
+            // If slot is now overcapacity, trigger reallocation
+            if (emergencySlot.getCurrentOccupancy() > getBookingLimit(emergencySlot)) {
+                reallocateOverflowTokens(state, emergencySlot);
+            }
 
-        // If slot is now overcapacity, trigger reallocation
-        if (emergencySlot.getCurrentOccupancy() > emergencySlot.getMaxCapacity()) {
-            reallocateOverflowTokens(emergencySlot);
+            epoch = publish(state);
         }
 
-        return emergencyToken;
+        return new Published<>(emergencyToken, epoch);
+    }
+
+    /**
+     * The patient's unfinished token with this doctor whose slot falls on the
+     * given day, or null. Looks only at the patient's own tokens.
+     */
+    private Token findActiveBooking(DoctorState state, String patientId, LocalDate day) {
+        for (String tokenId : state.tokenIdsByPatient.getOrDefault(patientId, List.of())) {
+            Token token = state.tokens.get(tokenId);
+            if (token.getStatus().isTerminal()) {
+                continue;
+            }
+            TimeSlot slot = state.slots.get(token.getSlotId());
+            if (slot != null && slot.getStartTime().toLocalDate().equals(day)) {
+                return token;
+            }
+        }
+        return null;
     }
 
     /**
      * Find the best slot for allocation based on time proximity and capacity.
      */
-    private TimeSlot findBestSlot(String doctorId, LocalDateTime preferredTime, TokenSource source) {
-        LocalDateTime now = LocalDateTime.now();
+    private TimeSlot findBestSlot(DoctorState state, LocalDateTime preferredTime, TokenSource source) {
+        LocalDateTime now = now();
 
-        return slots.values().stream()
-                .filter(slot -> slot.getDoctorId().equals(doctorId))
+        return state.slots.values().stream()
                 .filter(slot -> slot.isActive())
                 .filter(slot -> simulationMode || slot.isFuture(now) || slot.isOngoing(now))
                 // For non-emergency, only consider slots with capacity
-                .filter(slot -> source == TokenSource.EMERGENCY || slot.hasCapacity())
+                .filter(slot -> source == TokenSource.EMERGENCY || hasBookingRoom(slot))
                 .min(Comparator.comparingDouble(slot -> calculateSlotScore(slot, preferredTime)))
                 .orElse(null);
     }
@@ -149,11 +708,10 @@ public class OPDTokenEngine {
     /**
      * Find emergency slot (current or next immediate slot).
      */
-    private TimeSlot findEmergencySlot(String doctorId) {
-        LocalDateTime now = LocalDateTime.now();
+    private TimeSlot findEmergencySlot(DoctorState state) {
+        LocalDateTime now = now();
 
-        return slots.values().stream()
-                .filter(slot -> slot.getDoctorId().equals(doctorId))
+        return state.slots.values().stream()
                 .filter(slot -> slot.isActive())
                 .filter(slot -> simulationMode || slot.isFuture(now) || slot.isOngoing(now))
                 .min(Comparator.comparing(TimeSlot::getStartTime))
@@ -180,8 +738,8 @@ public class OPDTokenEngine {
      * Reallocate overflow tokens when slot exceeds capacity.
      * Moves lowest priority non-emergency tokens to next available slots.
      */
-    private void reallocateOverflowTokens(TimeSlot overflowSlot) {
-        int overflow = overflowSlot.getCurrentOccupancy() - overflowSlot.getMaxCapacity();
+    private void reallocateOverflowTokens(DoctorState state, TimeSlot overflowSlot) {
+        int overflow = overflowSlot.getCurrentOccupancy() - getBookingLimit(overflowSlot);
 
         if (overflow <= 0) {
             return; // No overflow
@@ -190,27 +748,30 @@ public class OPDTokenEngine {
         log.warn("Slot {} has overflow of {}. Initiating reallocation.", overflowSlot.getSlotId(), overflow);
 
         // Find tokens in this slot, sorted by priority (lowest first)
-        List<Token> tokensInSlot = tokens.values().stream()
+        LocalDateTime now = now();
+        List<Token> tokensInSlot = state.tokens.values().stream()
                 .filter(t -> t.getSlotId().equals(overflowSlot.getSlotId()))
                 .filter(Token::canBeReallocated)
-                .sorted(Comparator.comparingDouble(Token::getDynamicPriority))
+                .sorted(Comparator.comparingDouble(t -> t.getDynamicPriority(now)))
                 .limit(overflow)
                 .collect(Collectors.toList());
 
         // Reallocate each token
         for (Token token : tokensInSlot) {
-            TimeSlot newSlot = findNextAvailableSlot(overflowSlot.getDoctorId(), overflowSlot.getEndTime());
+            TimeSlot newSlot = findNextAvailableSlot(state, overflowSlot.getEndTime());
 
             if (newSlot != null) {
-                // Move token to new slot
-                overflowSlot.decrementOccupancy();
-                newSlot.incrementOccupancy();
-                token.reallocate(newSlot.getSlotId());
+                // Move token to new slot; skip it if it left an active status meanwhile
+                if (!token.reallocate(overflowSlot, newSlot)) {
+                    continue;
+                }
+                recordNotice(state, token, overflowSlot, newSlot);
 
                 log.info("Reallocated token {} from slot {} to slot {}",
                         token.getTokenNumber(), overflowSlot.getSlotId(), newSlot.getSlotId());
             } else {
-                log.error("Could not find alternative slot for token {}. Patient must be notified.",
+                recordNotice(state, token, overflowSlot, null);
+                log.error("Could not find alternative slot for token {}. Patient will be notified.",
                         token.getTokenNumber());
             }
         }
@@ -219,154 +780,584 @@ public class OPDTokenEngine {
     /**
      * Find next available slot after given time.
      */
-    private TimeSlot findNextAvailableSlot(String doctorId, LocalDateTime afterTime) {
-        return slots.values().stream()
-                .filter(slot -> slot.getDoctorId().equals(doctorId))
+    private TimeSlot findNextAvailableSlot(DoctorState state, LocalDateTime afterTime) {
+        return state.slots.values().stream()
                 .filter(slot -> slot.isActive())
                 .filter(slot -> slot.getStartTime().isAfter(afterTime))
-                .filter(TimeSlot::hasCapacity)
+                .filter(this::hasBookingRoom)
                 .min(Comparator.comparing(TimeSlot::getStartTime))
                 .orElse(null);
     }
 
+    private boolean hasBookingRoom(TimeSlot slot) {
+        return slot.getCurrentOccupancy() < getBookingLimit(slot);
+    }
+
     /**
      * Cancel a token and free up slot capacity.
      */
     public Token cancelToken(String tokenId) {
+        return cancelToken(tokenId, null);
+    }
+
+    /**
+     * As {@link #cancelToken(String)}, but only if the token is still at {@code expectedVersion} (null: any).
+     */
+    public Token cancelToken(String tokenId, Long expectedVersion) {
+        return command(EngineCommand.builder().type(EngineCommand.Type.CANCEL).targetId(tokenId)
+                        .expectedVersion(expectedVersion),
+                () -> doCancelToken(tokenId, expectedVersion), Token::getTokenId);
+    }
+
+    private Published<Token> doCancelToken(String tokenId, Long expectedVersion) {
         Token token = getToken(tokenId);
+        DoctorState state = doctorState(token.getDoctorId());
+        long epoch;
+
+        synchronized (state) {
+            requireVersion(token, expectedVersion);
+            TimeSlot slot = getSlot(token.getSlotId());
+            if (!token.cancel(slot)) {
+                throw new InvalidTokenStateException(
+                        "Cannot cancel token in " + token.getStatus() + " state");
+            }
+            state.touch(token);
+            state.touch(slot);
 
-        if (token.getStatus().isTerminal()) {
-            throw new InvalidTokenStateException(
-                    "Cannot cancel token in " + token.getStatus() + " state");
+            if (token.getCheckedInAt() == null) {
+                noShowStatistics.record(token.getDoctorId(), token.getSource(), NoShowStatistics.Outcome.CANCELLED);
+            }
+            analytics.record(TokenAnalytics.Event.CANCELLED, token.getDoctorId(), slot.getDepartment(), now(), null);
+            epoch = publish(state);
         }
 
-        TimeSlot slot = getSlot(token.getSlotId());
-        slot.decrementOccupancy();
-        token.cancel();
-
         log.info("Cancelled token {} for patient {}", token.getTokenNumber(), token.getPatientName());
-        return token;
+        return new Published<>(token, epoch);
     }
 
     /**
      * Mark token as no-show.
      */
     public Token markNoShow(String tokenId) {
+        return markNoShow(tokenId, null);
+    }
+
+    /**
+     * As {@link #markNoShow(String)}, but only if the token is still at {@code expectedVersion} (null: any).
+     */
+    public Token markNoShow(String tokenId, Long expectedVersion) {
+        return command(EngineCommand.builder().type(EngineCommand.Type.NO_SHOW).targetId(tokenId)
+                        .expectedVersion(expectedVersion),
+                () -> doMarkNoShow(tokenId, expectedVersion), Token::getTokenId);
+    }
+
+    private Published<Token> doMarkNoShow(String tokenId, Long expectedVersion) {
         Token token = getToken(tokenId);
+        DoctorState state = doctorState(token.getDoctorId());
+        long epoch;
+
+        synchronized (state) {
+            requireVersion(token, expectedVersion);
+            TimeSlot slot = getSlot(token.getSlotId());
+            if (!token.markNoShow(slot)) {
+                throw new InvalidTokenStateException(
+                        "Cannot mark as no-show from " + token.getStatus() + " state");
+            }
+            state.touch(token);
+            state.touch(slot);
 
-        if (token.getStatus() != TokenStatus.ALLOCATED && token.getStatus() != TokenStatus.CHECKED_IN) {
-            throw new InvalidTokenStateException(
-                    "Cannot mark as no-show from " + token.getStatus() + " state");
+            if (token.getCheckedInAt() == null) {
+                noShowStatistics.record(token.getDoctorId(), token.getSource(), NoShowStatistics.Outcome.NO_SHOW);
+            }
+            analytics.record(TokenAnalytics.Event.NO_SHOW, token.getDoctorId(), slot.getDepartment(), now(), null);
+            epoch = publish(state);
         }
 
-        TimeSlot slot = getSlot(token.getSlotId());
-        slot.decrementOccupancy();
-        token.markNoShow();
-
         log.info("Marked token {} as no-show", token.getTokenNumber());
-        return token;
+        return new Published<>(token, epoch);
     }
 
     /**
      * Check-in a patient.
      */
     public Token checkIn(String tokenId) {
+        return checkIn(tokenId, null);
+    }
+
+    /**
+     * As {@link #checkIn(String)}, but only if the token is still at {@code expectedVersion} (null: any).
+     */
+    public Token checkIn(String tokenId, Long expectedVersion) {
+        return command(EngineCommand.builder().type(EngineCommand.Type.CHECK_IN).targetId(tokenId)
+                        .expectedVersion(expectedVersion),
+                () -> doCheckIn(tokenId, expectedVersion), Token::getTokenId);
+    }
+
+    private Published<Token> doCheckIn(String tokenId, Long expectedVersion) {
         Token token = getToken(tokenId);
+        DoctorState state = doctorState(token.getDoctorId());
+        long epoch;
+
+        synchronized (state) {
+            requireVersion(token, expectedVersion);
+            if (!token.checkIn(now())) {
+                throw new InvalidTokenStateException(
+                        "Cannot check-in token in " + token.getStatus() + " state");
+            }
+            state.touch(token);
 
-        if (token.getStatus() != TokenStatus.ALLOCATED && token.getStatus() != TokenStatus.REALLOCATED) {
-            throw new InvalidTokenStateException(
-                    "Cannot check-in token in " + token.getStatus() + " state");
+            if (state.checkInQueue != null) {
+                state.checkInQueue.add(token);
+            }
+            noShowStatistics.record(token.getDoctorId(), token.getSource(), NoShowStatistics.Outcome.ATTENDED);
+            analytics.record(TokenAnalytics.Event.ARRIVED, token.getDoctorId(), departmentOf(state, token),
+                    token.getCheckedInAt(), null);
+            epoch = publish(state);
         }
 
-        token.checkIn();
         log.info("Checked in token {} for patient {}", token.getTokenNumber(), token.getPatientName());
-        return token;
+        return new Published<>(token, epoch);
     }
 
     /**
      * Start consultation.
      */
     public Token startConsultation(String tokenId) {
+        return startConsultation(tokenId, null);
+    }
+
+    /**
+     * As {@link #startConsultation(String)}, but only if the token is still at {@code expectedVersion} (null: any).
+     */
+    public Token startConsultation(String tokenId, Long expectedVersion) {
+        return command(EngineCommand.builder().type(EngineCommand.Type.START_CONSULTATION).targetId(tokenId)
+                        .expectedVersion(expectedVersion),
+                () -> doStartConsultation(tokenId, expectedVersion), Token::getTokenId);
+    }
+
+    private Published<Token> doStartConsultation(String tokenId, Long expectedVersion) {
         Token token = getToken(tokenId);
+        DoctorState state = doctorState(token.getDoctorId());
+        long epoch;
+
+        synchronized (state) {
+            requireVersion(token, expectedVersion);
+            if (!token.startConsultation(now())) {
+                throw new InvalidTokenStateException(
+                        "Cannot start consultation from " + token.getStatus() + " state");
+            }
+            state.touch(token);
 
-        if (token.getStatus() != TokenStatus.CHECKED_IN) {
-            throw new InvalidTokenStateException(
-                    "Cannot start consultation from " + token.getStatus() + " state");
+            analytics.record(TokenAnalytics.Event.CONSULTATION_STARTED, token.getDoctorId(), departmentOf(state, token),
+                    token.getConsultationStartedAt(),
+                    Duration.between(token.getCheckedInAt(), token.getConsultationStartedAt()));
+            epoch = publish(state);
         }
 
-        token.startConsultation();
         log.info("Started consultation for token {}", token.getTokenNumber());
-        return token;
+        return new Published<>(token, epoch);
     }
 
     /**
      * Complete consultation.
      */
     public Token completeConsultation(String tokenId) {
+        return completeConsultation(tokenId, null);
+    }
+
+    /**
+     * As {@link #completeConsultation(String)}, but only if the token is still at {@code expectedVersion} (null: any).
+     */
+    public Token completeConsultation(String tokenId, Long expectedVersion) {
+        return command(EngineCommand.builder().type(EngineCommand.Type.COMPLETE_CONSULTATION).targetId(tokenId)
+                        .expectedVersion(expectedVersion),
+                () -> doCompleteConsultation(tokenId, expectedVersion), Token::getTokenId);
+    }
+
+    private Published<Token> doCompleteConsultation(String tokenId, Long expectedVersion) {
         Token token = getToken(tokenId);
+        DoctorState state = doctorState(token.getDoctorId());
+        long epoch;
+
+        synchronized (state) {
+            requireVersion(token, expectedVersion);
+            if (!token.complete(now())) {
+                throw new InvalidTokenStateException(
+                        "Cannot complete consultation from " + token.getStatus() + " state");
+            }
+            state.touch(token);
 
-        if (token.getStatus() != TokenStatus.IN_CONSULTATION) {
-            throw new InvalidTokenStateException(
-                    "Cannot complete consultation from " + token.getStatus() + " state");
+            Duration length = Duration.between(token.getConsultationStartedAt(), token.getConsultationCompletedAt());
+            analytics.record(TokenAnalytics.Event.CONSULTATION_COMPLETED, token.getDoctorId(),
+                    departmentOf(state, token), token.getConsultationCompletedAt(), length);
+            consultationTimes.record(token.getDoctorId(), length.toMillis() / 60_000.0);
+            epoch = publish(state);
         }
 
-        token.complete();
         log.info("Completed consultation for token {}", token.getTokenNumber());
-        return token;
+        return new Published<>(token, epoch);
+    }
+
+    /**
+     * Close a slot whose time is over: tokens that never checked in become
+     * NO_SHOW and release their seat, and the slot is deactivated so it drops
+     * out of allocation. Normally triggered by the expiry timer.
+     */
+    public TimeSlot expireSlot(String slotId) {
+        return command(EngineCommand.builder().type(EngineCommand.Type.EXPIRE_SLOT).targetId(slotId),
+                () -> doExpireSlot(slotId), TimeSlot::getSlotId);
+    }
+
+    private Published<TimeSlot> doExpireSlot(String slotId) {
+        TimeSlot slot = getSlot(slotId);
+        DoctorState state = doctorState(slot.getDoctorId());
+        int noShows = 0;
+        long epoch;
+
+        synchronized (state) {
+            if (!slot.isActive()) {
+                return new Published<>(slot, epochCounter.get());
+            }
+
+            for (Token token : state.tokens.values()) {
+                if (token.getSlotId().equals(slotId)
+                        && (token.getStatus() == TokenStatus.ALLOCATED || token.getStatus() == TokenStatus.REALLOCATED)
+                        && token.markNoShow(slot)) {
+                    state.touch(token);
+                    noShowStatistics.record(token.getDoctorId(), token.getSource(), NoShowStatistics.Outcome.NO_SHOW);
+                    analytics.record(TokenAnalytics.Event.NO_SHOW, token.getDoctorId(), slot.getDepartment(), now(), null);
+                    noShows++;
+                }
+            }
+            slot.deactivate();
+            state.touch(slot);
+            epoch = publish(state);
+        }
+
+        log.info("Expired slot {} for Dr. {}; {} token(s) marked no-show", slotId, slot.getDoctorName(), noShows);
+        return new Published<>(slot, epoch);
+    }
+
+    private void scheduleExpiry(TimeSlot slot) {
+        LocalDateTime deadline = slot.getEndTime().plusMinutes(noShowGraceMinutes);
+        long deadlineMillis = deadline.atZone(clock.getZone()).toInstant().toEpochMilli();
+        String slotId = slot.getSlotId();
+        String doctorId = slot.getDoctorId();
+        expiryWheel.schedule(deadlineMillis, () -> {
+            if (ownsDoctor.test(doctorId)) {
+                expireSlot(slotId);
+            }
+        });
     }
 
     /**
      * Adjust slot capacity dynamically.
      */
     public TimeSlot adjustSlotCapacity(String slotId, int newCapacity) {
+        return adjustSlotCapacity(slotId, newCapacity, null);
+    }
+
+    /**
+     * As {@link #adjustSlotCapacity(String, int)}, but only if the slot is still at {@code expectedVersion} (null: any).
+     */
+    public TimeSlot adjustSlotCapacity(String slotId, int newCapacity, Long expectedVersion) {
+        return command(EngineCommand.builder()
+                        .type(EngineCommand.Type.ADJUST_CAPACITY).targetId(slotId).capacity(newCapacity)
+                        .expectedVersion(expectedVersion),
+                () -> doAdjustSlotCapacity(slotId, newCapacity, expectedVersion), TimeSlot::getSlotId);
+    }
+
+    private Published<TimeSlot> doAdjustSlotCapacity(String slotId, int newCapacity, Long expectedVersion) {
         TimeSlot slot = getSlot(slotId);
-        int oldCapacity = slot.getMaxCapacity();
-        slot.setMaxCapacity(newCapacity);
+        DoctorState state = doctorState(slot.getDoctorId());
+        long epoch;
+
+        synchronized (state) {
+            requireVersion(slot, expectedVersion);
+            int oldCapacity = slot.getMaxCapacity();
+            slot.changeCapacity(newCapacity);
+            state.touch(slot);
+
+            log.info("Adjusted capacity for slot {} from {} to {}", slotId, oldCapacity, newCapacity);
 
-        log.info("Adjusted capacity for slot {} from {} to {}", slotId, oldCapacity, newCapacity);
+            // If capacity reduced and now overcapacity, reallocate
+            if (getBookingLimit(slot) < slot.getCurrentOccupancy()) {
+                reallocateOverflowTokens(state, slot);
+            }
 
-        // If capacity reduced and now overcapacity, reallocate
-        if (newCapacity < slot.getCurrentOccupancy()) {
-            reallocateOverflowTokens(slot);
+            epoch = publish(state);
         }
 
-        return slot;
+        return new Published<>(slot, epoch);
+    }
+
+    /**
+     * Apply one capacity to every active slot of a doctor that overlaps {@code [from, to)},
+     * e.g. when the doctor starts late or leaves early. A capacity of 0 closes
+     * the slots, and their emergency tokens move to the next active slot with a
+     * notice. Everything happens under one lock and one snapshot publish.
+     *
+     * Displaced tokens (the lowest-priority ones in each overflowing slot) are
+     * rebalanced in a single ordered pass: earliest affected slot first, highest
+     * priority first within it, each to the earliest later slot with room.
+     */
+    public RebalanceSummary adjustCapacityRange(String doctorId, LocalDateTime from, LocalDateTime to,
+            int newCapacity) {
+        return command(EngineCommand.builder()
+                        .type(EngineCommand.Type.ADJUST_CAPACITY_RANGE)
+                        .doctorId(doctorId).startTime(from).endTime(to).capacity(newCapacity),
+                () -> doAdjustCapacityRange(doctorId, from, to, newCapacity), summary -> null);
+    }
+
+    private Published<RebalanceSummary> doAdjustCapacityRange(String doctorId, LocalDateTime from, LocalDateTime to,
+            int newCapacity) {
+        if (newCapacity < 0 || !from.isBefore(to)) {
+            throw new IllegalArgumentException("Capacity cannot be negative and the range must not be empty");
+        }
+
+        DoctorState state = doctorState(doctorId);
+        List<RebalanceSummary.TokenMove> moves = new ArrayList<>();
+        int slotsAdjusted;
+        int slotsClosed = 0;
+        int moved = 0;
+        long epoch;
+
+        synchronized (state) {
+            // Ordered by end time so the earliest slot a displaced token may move to never goes backwards
+            // Expired or closed slots keep their final capacity
+            List<TimeSlot> affected = state.slots.values().stream()
+                    .filter(TimeSlot::isActive)
+                    .filter(slot -> slot.getStartTime().isBefore(to) && slot.getEndTime().isAfter(from))
+                    .sorted(Comparator.comparing(TimeSlot::getEndTime).thenComparing(TimeSlot::getStartTime))
+                    .collect(Collectors.toList());
+            slotsAdjusted = affected.size();
+
+            Map<String, Integer> overflowBySlot = new HashMap<>();
+            for (TimeSlot slot : affected) {
+                slot.changeCapacity(newCapacity);
+                state.touch(slot);
+                if (newCapacity == 0) {
+                    slot.deactivate();
+                    slotsClosed++;
+                }
+                int overflow = slot.getCurrentOccupancy() - getBookingLimit(slot);
+                if (overflow > 0) {
+                    overflowBySlot.put(slot.getSlotId(), overflow);
+                }
+            }
+
+            // One scan of the doctor's tokens for all overflowing slots
+            Map<String, List<Token>> candidates = new HashMap<>();
+            List<Token> emergencies = new ArrayList<>();
+            if (!overflowBySlot.isEmpty()) {
+                for (Token token : state.tokens.values()) {
+                    if (!overflowBySlot.containsKey(token.getSlotId())) {
+                        continue;
+                    }
+                    if (token.canBeReallocated()) {
+                        candidates.computeIfAbsent(token.getSlotId(), id -> new ArrayList<>()).add(token);
+                    } else if (newCapacity == 0 && token.getStatus().isActive()) {
+                        emergencies.add(token);
+                    }
+                }
+            }
+
+            // Emergencies never make room for others, but a closed slot cannot keep them: they go to the
+            // doctor's next active slot regardless of its capacity, like any emergency
+            for (Token token : emergencies) {
+                TimeSlot origin = state.slots.get(token.getSlotId());
+                TimeSlot target = findEmergencySlot(state);
+                if (target == null) {
+                    recordNotice(state, token, origin, null);
+                    moves.add(new RebalanceSummary.TokenMove(token.getTokenId(), token.getTokenNumber(),
+                            token.getPatientId(), token.getSource(), origin.getSlotId(), null, null));
+                } else if (token.reallocate(origin, target)) {
+                    recordNotice(state, token, origin, target);
+                    moves.add(new RebalanceSummary.TokenMove(token.getTokenId(), token.getTokenNumber(),
+                            token.getPatientId(), token.getSource(), origin.getSlotId(), target.getSlotId(),
+                            target.getStartTime()));
+                    moved++;
+                }
+            }
+
+            LocalDateTime now = now();
+            List<Token> displaced = new ArrayList<>();
+            for (TimeSlot slot : affected) {
+                List<Token> inSlot = candidates.get(slot.getSlotId());
+                if (inSlot == null) {
+                    continue;
+                }
+                // Lowest priority leaves; among those leaving, the highest priority picks first
+                inSlot.sort(Comparator.comparingDouble(t -> t.getDynamicPriority(now)));
+                List<Token> leaving = new ArrayList<>(
+                        inSlot.subList(0, Math.min(overflowBySlot.get(slot.getSlotId()), inSlot.size())));
+                Collections.reverse(leaving);
+                displaced.addAll(leaving);
+            }
+
+            List<TimeSlot> targets = state.slots.values().stream()
+                    .filter(TimeSlot::isActive)
+                    .filter(this::hasBookingRoom)
+                    .sorted(Comparator.comparing(TimeSlot::getStartTime))
+                    .collect(Collectors.toList());
+            int next = 0;
+
+            for (Token token : displaced) {
+                TimeSlot origin = state.slots.get(token.getSlotId());
+                // Slots skipped here are either too early or full for every later token too
+                while (next < targets.size() && (!targets.get(next).getStartTime().isAfter(origin.getEndTime())
+                        || !hasBookingRoom(targets.get(next)))) {
+                    next++;
+                }
+
+                if (next < targets.size()) {
+                    TimeSlot target = targets.get(next);
+                    if (!token.reallocate(origin, target)) {
+                        continue;
+                    }
+                    recordNotice(state, token, origin, target);
+                    moves.add(new RebalanceSummary.TokenMove(token.getTokenId(), token.getTokenNumber(),
+                            token.getPatientId(), token.getSource(), origin.getSlotId(), target.getSlotId(),
+                            target.getStartTime()));
+                    moved++;
+                } else {
+                    recordNotice(state, token, origin, null);
+                    moves.add(new RebalanceSummary.TokenMove(token.getTokenId(), token.getTokenNumber(),
+                            token.getPatientId(), token.getSource(), origin.getSlotId(), null, null));
+                }
+            }
+
+            epoch = publish(state);
+        }
+
+        log.info("Set capacity {} on {} slot(s) of Dr. {} between {} and {}: {} token(s) moved, {} unplaced",
+                newCapacity, slotsAdjusted, doctorId, from, to, moved, moves.size() - moved);
+
+        RebalanceSummary summary = RebalanceSummary.builder()
+                .doctorId(doctorId)
+                .from(from)
+                .to(to)
+                .newCapacity(newCapacity)
+                .slotsAdjusted(slotsAdjusted)
+                .slotsClosed(slotsClosed)
+                .tokensDisplaced(moves.size())
+                .tokensMoved(moved)
+                .tokensUnplaced(moves.size() - moved)
+                .moves(moves)
+                .build();
+        return new Published<>(summary, epoch);
     }
 
     /**
      * Get current queue for a doctor (sorted by priority).
+     * Served from the doctor's published snapshot, so it never blocks writers.
+     * Checked-in patients stay in the queue even if their slot has already ended.
+     *
+     * Under a fair {@link QueueDiscipline}, checked-in patients come first, in
+     * the calling order kept since they checked in, then patients yet to
+     * arrive in slot order.
      */
     public List<Token> getDoctorQueue(String doctorId) {
-        LocalDateTime now = LocalDateTime.now();
+        return queueOf(getDoctorSnapshot(doctorId), now());
+    }
 
-        return tokens.values().stream()
-                .filter(t -> t.getDoctorId().equals(doctorId))
+    private static List<Token> queueOf(DoctorSnapshot snapshot, LocalDateTime now) {
+        if (snapshot.getCallOrder() != null) {
+            List<Token> queue = new ArrayList<>(snapshot.getCallOrder());
+            snapshot.getTokens().stream()
+                    .filter(t -> t.getStatus() == TokenStatus.ALLOCATED || t.getStatus() == TokenStatus.REALLOCATED)
+                    .filter(t -> {
+                        TimeSlot slot = snapshot.getSlotsById().get(t.getSlotId());
+                        return slot != null && (slot.isOngoing(now) || slot.isFuture(now));
+                    })
+                    .sorted(Comparator.comparing((Token t) -> snapshot.getSlotsById().get(t.getSlotId()).getStartTime())
+                            .thenComparingInt(Token::getTokenNumber))
+                    .forEach(queue::add);
+            return queue;
+        }
+        return snapshot.getTokens().stream()
                 .filter(t -> t.getStatus().isActive())
                 .filter(t -> {
-                    TimeSlot slot = slots.get(t.getSlotId());
-                    return slot != null && (slot.isOngoing(now) || slot.isFuture(now));
+                    TimeSlot slot = snapshot.getSlotsById().get(t.getSlotId());
+                    return slot != null && (t.getStatus() == TokenStatus.CHECKED_IN
+                            || slot.isOngoing(now) || slot.isFuture(now));
                 })
-                .sorted(Comparator.comparingDouble(Token::getDynamicPriority).reversed())
+                .sorted(Comparator.comparingDouble((Token t) -> t.getDynamicPriority(now)).reversed())
                 .collect(Collectors.toList());
     }
 
+    /**
+     * The doctor's queue, in the same order as {@link #getDoctorQueue}, with an
+     * estimated call time for each patient.
+     *
+     * Walks the queue as the doctor would work through it: the consultation in
+     * progress finishes after the doctor's smoothed consultation length, then
+     * checked-in patients are seen in priority order, then patients yet to
+     * arrive, none before their slot starts. Costs one pass over the queue; the
+     * consultation length itself is maintained incrementally on completion.
+     */
+    public List<QueueEntry> getDoctorQueueWithEstimates(String doctorId) {
+        LocalDateTime now = now();
+        DoctorSnapshot snapshot = getDoctorSnapshot(doctorId);
+        List<Token> queue = queueOf(snapshot, now);
+        long consultationSeconds = Math.round(consultationTimes.getEstimate(doctorId).getMeanMinutes() * 60);
+
+        LocalDateTime doctorFreeAt = now;
+        for (Token token : snapshot.getTokens()) {
+            if (token.getStatus() == TokenStatus.IN_CONSULTATION) {
+                LocalDateTime expectedEnd = token.getConsultationStartedAt().plusSeconds(consultationSeconds);
+                doctorFreeAt = expectedEnd.isAfter(doctorFreeAt) ? expectedEnd : doctorFreeAt;
+            }
+        }
+
+        List<Token> callOrder = new ArrayList<>(queue.size());
+        queue.stream().filter(t -> t.getStatus() == TokenStatus.CHECKED_IN).forEach(callOrder::add);
+        queue.stream().filter(t -> t.getStatus() != TokenStatus.CHECKED_IN)
+                .sorted(Comparator.comparing((Token t) -> snapshot.getSlotsById().get(t.getSlotId()).getStartTime()))
+                .forEach(callOrder::add);
+
+        Map<String, LocalDateTime> callAt = new HashMap<>();
+        for (Token token : callOrder) {
+            LocalDateTime slotStart = snapshot.getSlotsById().get(token.getSlotId()).getStartTime();
+            LocalDateTime at = token.getStatus() != TokenStatus.CHECKED_IN && slotStart.isAfter(doctorFreeAt)
+                    ? slotStart : doctorFreeAt;
+            callAt.put(token.getTokenId(), at);
+            doctorFreeAt = at.plusSeconds(consultationSeconds);
+        }
+
+        List<QueueEntry> entries = new ArrayList<>(queue.size());
+        for (Token token : queue) {
+            LocalDateTime at = callAt.get(token.getTokenId());
+            entries.add(QueueEntry.builder()
+                    .token(token)
+                    .position(entries.size() + 1)
+                    .estimatedCallAt(at)
+                    .estimatedWaitMinutes(Math.max(0, Duration.between(now, at).toMinutes()))
+                    .build());
+        }
+        return entries;
+    }
+
     /**
      * Get all slots for a doctor.
      */
     public List<TimeSlot> getDoctorSlots(String doctorId) {
-        return slots.values().stream()
-                .filter(slot -> slot.getDoctorId().equals(doctorId))
-                .sorted(Comparator.comparing(TimeSlot::getStartTime))
-                .collect(Collectors.toList());
+        return getDoctorSnapshot(doctorId).getSlots();
     }
 
     /**
      * Get statistics for a doctor or overall.
      */
     public Map<String, Object> getStatistics(String doctorId) {
-        List<Token> relevantTokens = doctorId != null
-                ? tokens.values().stream().filter(t -> t.getDoctorId().equals(doctorId)).collect(Collectors.toList())
-                : new ArrayList<>(tokens.values());
+        List<Token> relevantTokens;
+        if (doctorId != null) {
+            relevantTokens = getDoctorSnapshot(doctorId).getTokens();
+        } else {
+            relevantTokens = new ArrayList<>();
+            for (DoctorState state : doctors.values()) {
+                relevantTokens.addAll(state.snapshot.getTokens());
+            }
+        }
 
         Map<String, Object> stats = new HashMap<>();
         stats.put("totalTokens", relevantTokens.size());
@@ -386,11 +1377,177 @@ public class OPDTokenEngine {
                     .mapToDouble(TimeSlot::getUtilizationPercentage)
                     .average()
                     .orElse(0.0));
+            stats.put("expectedShowRate", noShowStatistics.getShowProbability(doctorId));
         }
+        stats.put("noShowRateBySource", noShowStatistics.getNoShowRates(doctorId));
+        stats.put("overbookingEnabled", overbookingEnabled);
 
         return stats;
     }
 
+    /**
+     * Install another node's copy of a doctor's slots and tokens (upsert by ID).
+     * Used by cluster replication; does not notify snapshot or command listeners.
+     */
+    public void applyReplicatedState(String doctorId, List<TimeSlot> slotImages, List<Token> tokenImages) {
+        DoctorState state = doctorState(doctorId);
+        List<TimeSlot> newSlots = new ArrayList<>();
+
+        synchronized (state) {
+            for (TimeSlot image : slotImages) {
+                TimeSlot live = state.slots.get(image.getSlotId());
+                if (live == null) {
+                    live = image.toBuilder().build();
+                    slots.put(live.getSlotId(), live);
+                    state.slots.put(live.getSlotId(), live);
+                    newSlots.add(live);
+                } else {
+                    live.setMaxCapacity(image.getMaxCapacity());
+                    live.setCurrentOccupancy(image.getCurrentOccupancy());
+                    live.setActive(image.isActive());
+                    live.setNotes(image.getNotes());
+                    live.setVersion(image.getVersion());
+                }
+                state.touch(live);
+            }
+            for (Token image : tokenImages) {
+                Token copy = image.toBuilder().build();
+                storeToken(state, copy);
+            }
+            if (state.checkInQueue != null) {
+                state.checkInQueue.rebuild(state.tokens.values());
+            }
+            publish(state, false);
+        }
+
+        if (expiryEnabled) {
+            // Armed here too so a replica that takes over ownership also closes the slots
+            newSlots.stream().filter(TimeSlot::isActive).forEach(this::scheduleExpiry);
+        }
+    }
+
+    /**
+     * Up to {@code max} reallocation notices still to be delivered, from doctors
+     * this node owns, each doctor's in the order its tokens were moved. Notices
+     * of tokens since cancelled, completed or marked no-show are dropped
+     * instead of returned.
+     */
+    public List<ReallocationNotice> collectNotices(int max) {
+        List<ReallocationNotice> notices = new ArrayList<>();
+        for (String doctorId : doctorsWithNotices) {
+            if (notices.size() >= max) {
+                break;
+            }
+            if (!ownsDoctor.test(doctorId)) {
+                continue;
+            }
+            DoctorState state = doctorState(doctorId);
+            synchronized (state) {
+                boolean dropped = false;
+                Iterator<String> pending = state.noticeTokenIds.iterator();
+                while (pending.hasNext() && notices.size() < max) {
+                    Token token = state.tokens.get(pending.next());
+                    if (token.getStatus().isTerminal()) {
+                        token.setPendingNotice(null);
+                        state.touch(token);
+                        pending.remove();
+                        dropped = true;
+                    } else {
+                        notices.add(token.getPendingNotice());
+                    }
+                }
+                if (state.noticeTokenIds.isEmpty()) {
+                    doctorsWithNotices.remove(doctorId);
+                }
+                if (dropped) {
+                    publish(state);
+                }
+            }
+        }
+        return notices;
+    }
+
+    /**
+     * Clear notices that have been delivered. A notice replaced by a later move
+     * in the meantime stays pending, so the patient hears about that move too.
+     * Bookkeeping only: not a command, and token versions do not change.
+     */
+    public void acknowledgeNotices(Collection<ReallocationNotice> delivered) {
+        Map<String, List<ReallocationNotice>> byDoctor = delivered.stream()
+                .collect(Collectors.groupingBy(ReallocationNotice::getDoctorId));
+        byDoctor.forEach((doctorId, notices) -> {
+            DoctorState state = doctorState(doctorId);
+            synchronized (state) {
+                boolean cleared = false;
+                for (ReallocationNotice notice : notices) {
+                    Token token = state.tokens.get(notice.getTokenId());
+                    ReallocationNotice current = token != null ? token.getPendingNotice() : null;
+                    if (current != null && current.getSequence() == notice.getSequence()) {
+                        token.setPendingNotice(null);
+                        state.touch(token);
+                        state.noticeTokenIds.remove(token.getTokenId());
+                        cleared = true;
+                    }
+                }
+                if (state.noticeTokenIds.isEmpty()) {
+                    doctorsWithNotices.remove(doctorId);
+                }
+                if (cleared) {
+                    // Published so standbys and backups see the delivery and do not repeat it
+                    publish(state);
+                }
+            }
+        });
+    }
+
+    /**
+     * Number of tokens, across all doctors held here, whose patient has yet to be notified.
+     */
+    public int getPendingNoticeCount() {
+        int count = 0;
+        for (String doctorId : doctorsWithNotices) {
+            DoctorState state = doctors.get(doctorId);
+            synchronized (state) {
+                count += state.noticeTokenIds.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Doctor a slot or token belongs to, or null if this node has never seen the ID.
+     */
+    public String findDoctorId(String slotOrTokenId) {
+        TimeSlot slot = slots.get(slotOrTokenId);
+        if (slot != null) {
+            return slot.getDoctorId();
+        }
+        Token token = tokens.get(slotOrTokenId);
+        return token != null ? token.getDoctorId() : null;
+    }
+
+    /**
+     * Doctors this node holds any state for.
+     */
+    public Set<String> getDoctorIds() {
+        return Collections.unmodifiableSet(doctors.keySet());
+    }
+
+    /**
+     * Latest published snapshot for a doctor. Wait-free: a single volatile read.
+     */
+    public DoctorSnapshot getDoctorSnapshot(String doctorId) {
+        DoctorState state = doctors.get(doctorId);
+        return state != null ? state.snapshot : DoctorSnapshot.empty(doctorId);
+    }
+
+    /**
+     * Epoch of the most recently published snapshot across all doctors.
+     */
+    public long getCurrentEpoch() {
+        return epochCounter.get();
+    }
+
     // Helper methods
     public TimeSlot getSlot(String slotId) {
         TimeSlot slot = slots.get(slotId);
@@ -409,10 +1566,349 @@ public class OPDTokenEngine {
     }
 
     public List<TimeSlot> getAllSlots() {
-        return new ArrayList<>(slots.values());
+        List<TimeSlot> allSlots = new ArrayList<>();
+        for (DoctorState state : doctors.values()) {
+            allSlots.addAll(state.snapshot.getSlots());
+        }
+        return allSlots;
     }
 
     public List<Token> getAllTokens() {
         return new ArrayList<>(tokens.values());
     }
+
+    public int getSlotCount() {
+        return slots.size();
+    }
+
+    public int getTokenCount() {
+        return tokens.size();
+    }
+
+    /**
+     * A patient's tokens across all doctors, most recent first, as copies from
+     * each doctor's published snapshot. Only looks at the patient's own tokens,
+     * via the patient index; a token booked but not yet published is left out.
+     *
+     * @param includeHistory also return completed, cancelled and no-show tokens
+     */
+    public List<Token> getPatientTokens(String patientId, boolean includeHistory) {
+        return tokenIdsByPatient.getOrDefault(patientId, Set.of()).stream()
+                .map(this::publishedToken)
+                .filter(Objects::nonNull)
+                .filter(t -> includeHistory || !t.getStatus().isTerminal())
+                .sorted(Comparator.comparing(Token::getCreatedAt).reversed())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * The snapshot copy of a token, or null if it has not been published yet.
+     * A token's index in its doctor's published list never changes, so this
+     * needs no lock.
+     */
+    private Token publishedToken(String tokenId) {
+        Token live = tokens.get(tokenId);
+        DoctorState state = live != null ? doctors.get(live.getDoctorId()) : null;
+        Integer index = state != null ? state.publishedTokenIndex.get(tokenId) : null;
+        if (index == null) {
+            return null;
+        }
+        List<Token> published = state.snapshot.getTokens();
+        return index < published.size() ? published.get(index) : null;
+    }
+
+    /**
+     * Conditional updates: checked under the doctor's lock, in the same critical
+     * section as the change, so nothing can slip in between check and write.
+     */
+    private static void requireVersion(Token token, Long expectedVersion) {
+        if (expectedVersion != null && token.getVersion() != expectedVersion) {
+            throw new VersionConflictException("Token", token.getTokenId(), expectedVersion, token.getVersion());
+        }
+    }
+
+    private static void requireVersion(TimeSlot slot, Long expectedVersion) {
+        if (expectedVersion != null && slot.getVersion() != expectedVersion) {
+            throw new VersionConflictException("Slot", slot.getSlotId(), expectedVersion, slot.getVersion());
+        }
+    }
+
+    /**
+     * Put a notice for a token just moved from {@code from} to {@code to} (null: left
+     * in {@code from} for want of room) on the token, folding in any notice not yet
+     * delivered. Only touches memory, so it adds nothing noticeable to emergency
+     * allocations; delivery is up to whoever calls {@link #collectNotices}.
+     * Must be called while holding the doctor's lock.
+     */
+    private void recordNotice(DoctorState state, Token token, TimeSlot from, TimeSlot to) {
+        ReallocationNotice previous = token.getPendingNotice();
+        TimeSlot current = to != null ? to : from;
+        token.setPendingNotice(ReallocationNotice.builder()
+                .sequence(noticeSequence.incrementAndGet())
+                .type(to != null ? ReallocationNotice.Type.MOVED : ReallocationNotice.Type.UNPLACED)
+                .tokenId(token.getTokenId())
+                .tokenNumber(token.getTokenNumber())
+                .patientId(token.getPatientId())
+                .patientName(token.getPatientName())
+                .doctorId(token.getDoctorId())
+                .originalSlotId(previous != null ? previous.getOriginalSlotId() : from.getSlotId())
+                .originalStartTime(previous != null ? previous.getOriginalStartTime() : from.getStartTime())
+                .slotId(current.getSlotId())
+                .startTime(current.getStartTime())
+                .moves(previous != null ? previous.getMoves() + 1 : 1)
+                .recordedAt(now())
+                .build());
+        state.touch(token);
+        state.touch(from);
+        if (to != null) {
+            state.touch(to);
+        }
+        indexNotice(state, token);
+    }
+
+    private void indexNotice(DoctorState state, Token token) {
+        if (token.getPendingNotice() != null) {
+            state.noticeTokenIds.add(token.getTokenId());
+            doctorsWithNotices.add(state.doctorId);
+        } else {
+            state.noticeTokenIds.remove(token.getTokenId());
+        }
+    }
+
+    private static String departmentOf(DoctorState state, Token token) {
+        TimeSlot slot = state.slots.get(token.getSlotId());
+        return slot != null ? slot.getDepartment() : null;
+    }
+
+    /**
+     * Insert or replace a token in the global map and every index.
+     * Must be called while holding the doctor's lock.
+     */
+    private void storeToken(DoctorState state, Token token) {
+        tokens.put(token.getTokenId(), token);
+        state.addToken(token);
+        indexNotice(state, token);
+        tokenIdsByPatient.computeIfAbsent(token.getPatientId(), p -> ConcurrentHashMap.newKeySet())
+                .add(token.getTokenId());
+    }
+
+    private DoctorState doctorState(String doctorId) {
+        return doctors.computeIfAbsent(doctorId, id -> new DoctorState(id, newCheckInQueue()));
+    }
+
+    /**
+     * Publish a fresh snapshot of the doctor's live state and swap it in.
+     * Only slots and tokens touched since the last publish are copied; the
+     * rest are the previous snapshot's copies, which are immutable once
+     * published, so a mutation costs a copy of what it changed plus an
+     * array copy of the lists it changed, however long the doctor's history.
+     * Must be called while holding the doctor's lock, once per mutation batch.
+     */
+    /**
+     * @return the epoch of the new snapshot
+     */
+    private long publish(DoctorState state) {
+        return publish(state, true);
+    }
+
+    private long publish(DoctorState state, boolean local) {
+        DoctorSnapshot previous = state.snapshot;
+
+        // Published by start time; start times never change, so changed slots stay in place and new ones
+        // go after any with the same start time, as a stable sort of the slots in creation order would put them
+        List<TimeSlot> slotCopies = previous.getSlots();
+        Set<String> changedSlotIds = Set.of();
+        if (!state.changedSlotIds.isEmpty()) {
+            changedSlotIds = new LinkedHashSet<>(state.changedSlotIds);
+            slotCopies = new ArrayList<>(slotCopies);
+            List<TimeSlot> added = new ArrayList<>();
+            for (String slotId : state.changedSlotIds) {
+                TimeSlot copy = state.slots.get(slotId).toBuilder().build();
+                Integer index = state.publishedSlotIndex.get(slotId);
+                if (index == null) {
+                    added.add(copy);
+                } else {
+                    slotCopies.set(index, copy);
+                }
+            }
+            for (TimeSlot copy : added) {
+                slotCopies.add(insertionPoint(slotCopies, copy.getStartTime()), copy);
+            }
+            if (!added.isEmpty()) {
+                state.publishedSlotIndex.clear();
+                for (int i = 0; i < slotCopies.size(); i++) {
+                    state.publishedSlotIndex.put(slotCopies.get(i).getSlotId(), i);
+                }
+            }
+            state.changedSlotIds.clear();
+        }
+
+        // Published in insertion order, so new tokens go at the end and changed ones stay in place
+        List<Token> tokenCopies = previous.getTokens();
+        Map<String, Integer> changedTokenIndexes = Map.of();
+        if (!state.changedTokenIds.isEmpty()) {
+            tokenCopies = new ArrayList<>(tokenCopies);
+            changedTokenIndexes = new LinkedHashMap<>();
+            for (String tokenId : state.changedTokenIds) {
+                Token copy = state.tokens.get(tokenId).toBuilder().build();
+                Integer index = state.publishedTokenIndex.putIfAbsent(tokenId, tokenCopies.size());
+                if (index == null) {
+                    changedTokenIndexes.put(tokenId, tokenCopies.size());
+                    tokenCopies.add(copy);
+                } else {
+                    changedTokenIndexes.put(tokenId, index);
+                    tokenCopies.set(index, copy);
+                }
+            }
+            state.changedTokenIds.clear();
+        }
+
+        List<Token> published = tokenCopies;
+        List<Token> callOrder = state.checkInQueue == null ? null : state.checkInQueue.callOrder().stream()
+                .map(token -> published.get(state.publishedTokenIndex.get(token.getTokenId())))
+                .collect(Collectors.toList());
+
+        long epoch = epochCounter.incrementAndGet();
+        state.snapshot = new DoctorSnapshot(state.doctorId, epoch, slotCopies, tokenCopies, callOrder,
+                changedSlotIds, changedTokenIndexes);
+
+        if (local) {
+            for (DoctorSnapshotListener listener : snapshotListeners) {
+                try {
+                    listener.onPublish(previous, state.snapshot);
+                } catch (RuntimeException e) {
+                    log.error("Snapshot listener {} failed", listener, e);
+                }
+            }
+        }
+        return epoch;
+    }
+
+    /**
+     * Index after every slot starting at or before {@code start} in a list sorted by start time.
+     */
+    private static int insertionPoint(List<TimeSlot> sorted, LocalDateTime start) {
+        int low = 0;
+        int high = sorted.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted.get(mid).getStartTime().isAfter(start)) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Result of a mutating operation with the epoch of the snapshot it
+     * published, or the engine's current epoch if it published nothing.
+     */
+    private static final class Published<T> {
+        private final T result;
+        private final long epoch;
+
+        private Published(T result, long epoch) {
+            this.result = result;
+            this.epoch = epoch;
+        }
+    }
+
+    /**
+     * Run a mutating operation and, if anyone is listening, report it as an
+     * {@link EngineCommand} with timing, outcome and publish sequence.
+     */
+    private <T> T command(EngineCommand.EngineCommandBuilder command, Supplier<Published<T>> operation,
+            Function<T, String> resultId) {
+        if (commandListeners.isEmpty()) {
+            return operation.get().result;
+        }
+
+        long timestamp = clock.millis();
+        long start = System.nanoTime();
+        try {
+            Published<T> published = operation.get();
+            T result = published.result;
+            notifyListeners(command
+                    .sequence(published.epoch)
+                    .timestampMillis(timestamp)
+                    .durationNanos(System.nanoTime() - start)
+                    .resultId(resultId.apply(result))
+                    .build());
+            return result;
+        } catch (RuntimeException e) {
+            notifyListeners(command
+                    .sequence(epochCounter.get())
+                    .timestampMillis(timestamp)
+                    .durationNanos(System.nanoTime() - start)
+                    .failure(e.getClass().getSimpleName())
+                    .build());
+            throw e;
+        }
+    }
+
+    private void notifyListeners(EngineCommand command) {
+        for (EngineCommandListener listener : commandListeners) {
+            try {
+                listener.onCommand(command);
+            } catch (RuntimeException e) {
+                log.error("Command listener {} failed", listener, e);
+            }
+        }
+    }
+
+    /**
+     * Live state owned by one doctor. Writers synchronize on the instance;
+     * readers only ever look at {@link #snapshot}.
+     */
+    private static final class DoctorState {
+        private final String doctorId;
+        private final Map<String, TimeSlot> slots = new LinkedHashMap<>();
+        private final Map<String, Token> tokens = new LinkedHashMap<>();
+        private final Map<String, List<String>> tokenIdsByPatient = new HashMap<>();
+        // Tokens carrying a reallocation notice not yet delivered, in the order they were first moved
+        private final Set<String> noticeTokenIds = new LinkedHashSet<>();
+        // Checked-in patients in calling order; null under priority aging
+        private CheckInQueue checkInQueue;
+        // Changed since the last publish, so their snapshot copies are stale
+        private final Set<String> changedSlotIds = new LinkedHashSet<>();
+        private final Set<String> changedTokenIds = new LinkedHashSet<>();
+        // Position of each slot's and token's copy in the published lists; token
+        // positions are also read without the lock, by getPatientTokens
+        private final Map<String, Integer> publishedSlotIndex = new HashMap<>();
+        private final Map<String, Integer> publishedTokenIndex = new ConcurrentHashMap<>();
+        private volatile DoctorSnapshot snapshot;
+
+        private DoctorState(String doctorId, CheckInQueue checkInQueue) {
+            this.doctorId = doctorId;
+            this.checkInQueue = checkInQueue;
+            this.snapshot = DoctorSnapshot.empty(doctorId);
+        }
+
+        /**
+         * Insert or replace a token, keeping the per-patient index in step.
+         * Use {@link OPDTokenEngine#storeToken} rather than calling this directly.
+         */
+        private void addToken(Token token) {
+            if (tokens.put(token.getTokenId(), token) == null) {
+                tokenIdsByPatient.computeIfAbsent(token.getPatientId(), p -> new ArrayList<>(2))
+                        .add(token.getTokenId());
+            }
+            touch(token);
+        }
+
+        /**
+         * Note a change to a live token, to be copied at the next publish.
+         * Every mutation under the doctor's lock must call this (or
+         * {@link #touch(TimeSlot)}), or readers keep seeing the old copy.
+         */
+        private void touch(Token token) {
+            changedTokenIds.add(token.getTokenId());
+        }
+
+        private void touch(TimeSlot slot) {
+            changedSlotIds.add(slot.getSlotId());
+        }
+    }
 }
@@ -0,0 +1,80 @@
+package com.medoc.opd.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns a show probability into a booking limit for a slot: the largest
+ * number of bookings for which the chance that more patients turn up than
+ * the slot's capacity stays within the risk target. Attendance is modelled
+ * as independent Bernoulli trials, i.e. shows ~ Binomial(bookings, p).
+ *
+ * Limits are cached per (capacity, probability to 0.1%), so the binomial
+ * tail is only computed a handful of times per doctor.
+ */
+public class OverbookingPolicy {
+
+    private final double risk;
+    private final double maxRatio;
+    private final Map<Long, Integer> limits = new ConcurrentHashMap<>();
+
+    /**
+     * @param risk     acceptable probability that attendance exceeds capacity
+     * @param maxRatio hard cap on bookings as a multiple of capacity
+     */
+    public OverbookingPolicy(double risk, double maxRatio) {
+        if (risk <= 0 || risk >= 1 || maxRatio < 1) {
+            throw new IllegalArgumentException("Risk must be in (0, 1) and max ratio at least 1");
+        }
+        this.risk = risk;
+        this.maxRatio = maxRatio;
+    }
+
+    public double getRisk() {
+        return risk;
+    }
+
+    public double getMaxRatio() {
+        return maxRatio;
+    }
+
+    public int bookingLimit(int capacity, double showProbability) {
+        int permille = (int) Math.round(Math.max(0.0, showProbability) * 1000);
+        if (capacity <= 0 || permille >= 1000) {
+            return capacity;
+        }
+        return limits.computeIfAbsent(((long) capacity << 16) | permille,
+                k -> computeLimit(capacity, permille / 1000.0));
+    }
+
+    private int computeLimit(int capacity, double p) {
+        int cap = (int) Math.floor(capacity * maxRatio);
+        int limit = capacity;
+        while (limit < cap && overflowProbability(limit + 1, capacity, p) <= risk) {
+            limit++;
+        }
+        return limit;
+    }
+
+    /**
+     * P(X > capacity) for X ~ Binomial(bookings, p).
+     */
+    static double overflowProbability(int bookings, int capacity, double p) {
+        if (bookings <= capacity) {
+            return 0.0;
+        }
+        if (p <= 0.0) {
+            return 0.0;
+        }
+        // Walk the pmf up from k = 0 in log space to stay stable for larger slots
+        double logP = Math.log(p);
+        double logQ = Math.log1p(-p);
+        double logPmf = bookings * logQ;
+        double atMost = 0.0;
+        for (int k = 0; k <= capacity; k++) {
+            atMost += Math.exp(logPmf);
+            logPmf += Math.log(bookings - k) - Math.log(k + 1) + logP - logQ;
+        }
+        return Math.max(0.0, 1.0 - atMost);
+    }
+}
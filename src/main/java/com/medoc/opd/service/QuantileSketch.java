@@ -0,0 +1,98 @@
+package com.medoc.opd.service;
+
+/**
+ * Mergeable quantile sketch for non-negative durations in seconds, with a
+ * bounded relative error.
+ *
+ * Values are counted in logarithmically sized buckets: bucket {@code i}
+ * holds values in {@code (GAMMA^(i-1), GAMMA^i]}, so any quantile is reported
+ * within {@value #RELATIVE_ACCURACY} of a true value. Values up to one second
+ * share bucket 0 (reported as 0); values above {@value #MAX_SECONDS} s share
+ * the last one. Two sketches merge by adding their counts, which is what
+ * makes windows of any length cheap to query. Not thread-safe.
+ */
+public class QuantileSketch {
+
+    static final double RELATIVE_ACCURACY = 0.02;
+    static final double MAX_SECONDS = 86_400;
+
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final int BUCKETS = (int) Math.ceil(Math.log(MAX_SECONDS) / LOG_GAMMA) + 1;
+
+    // Allocated on first use; most time buckets of a series never see a consultation
+    private int[] counts;
+    private long count;
+    private double sum;
+
+    public void add(double seconds) {
+        if (counts == null) {
+            counts = new int[BUCKETS];
+        }
+        double value = Math.max(0, seconds);
+        counts[index(value)]++;
+        count++;
+        sum += value;
+    }
+
+    public void merge(QuantileSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        if (counts == null) {
+            counts = new int[BUCKETS];
+        }
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+    }
+
+    public void reset() {
+        counts = null;
+        count = 0;
+        sum = 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Mean of the recorded values (exact), or 0 if empty.
+     */
+    public double getMean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * Estimated value at quantile {@code q} (0..1), or 0 if empty.
+     */
+    public double quantile(double q) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(q * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1, rank)) {
+                return value(i);
+            }
+        }
+        return value(BUCKETS - 1);
+    }
+
+    private static int index(double seconds) {
+        if (seconds <= 1) {
+            return 0;
+        }
+        return Math.min(BUCKETS - 1, (int) Math.ceil(Math.log(seconds) / LOG_GAMMA));
+    }
+
+    private static double value(int index) {
+        // Midpoint (in relative terms) of the bucket's range
+        return index == 0 ? 0 : 2 * Math.pow(GAMMA, index) / (GAMMA + 1);
+    }
+}
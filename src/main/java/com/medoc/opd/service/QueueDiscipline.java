@@ -0,0 +1,32 @@
+package com.medoc.opd.service;
+
+/**
+ * Order in which a doctor calls checked-in patients.
+ */
+public enum QueueDiscipline {
+
+    /**
+     * Base priority plus 0.5 points per minute since check-in, re-sorted on
+     * every read. A walk-in needs over six hours to overtake a fresh online
+     * booking, so on busy days walk-ins starve.
+     */
+    PRIORITY_AGING,
+
+    /**
+     * Earliest deadline first: each patient is due at check-in time minus
+     * base priority / {@code opd.queue.aging-points-per-minute} minutes.
+     * This is the same order priority aging at that rate would give, but it
+     * is fixed at check-in. At 5 points per minute, a walk-in goes before an
+     * online booking that checked in more than 40 minutes after them.
+     */
+    DEADLINE,
+
+    /**
+     * Self-clocked weighted fair queueing across sources: while several
+     * sources have patients waiting, each is called in proportion to its
+     * weight ({@code opd.queue.fair-weights}), first come first served
+     * within a source. No source can crowd out another, however many of
+     * its patients are waiting.
+     */
+    WEIGHTED_FAIR
+}
@@ -0,0 +1,175 @@
+package com.medoc.opd.service;
+
+import com.medoc.opd.exception.ScheduleTemplateNotFoundException;
+import com.medoc.opd.model.ScheduleTemplate;
+import com.medoc.opd.model.TimeSlot;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recurring schedule templates and their materialization into slots.
+ *
+ * Slots are generated lazily: only up to a rolling horizon of
+ * {@code opd.schedule.horizon-days} from the engine's current date, extended
+ * periodically as days pass. Each template remembers how far it has been
+ * materialized, so rolling forward never creates the same day twice.
+ *
+ * Templates are held only by the node that received them and are not
+ * replicated: in a cluster, the slots they already created replicate like any
+ * other, but if that node dies the templates stop rolling forward until they
+ * are registered again.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ScheduleService {
+
+    private final OPDTokenEngine engine;
+
+    private final Map<String, ScheduleTemplate> templates = new ConcurrentHashMap<>();
+
+    @Value("${opd.schedule.horizon-days:14}")
+    private int horizonDays = 14;
+
+    @Value("${opd.schedule.roll-interval-minutes:60}")
+    private long rollIntervalMinutes = 60;
+
+    @Value("${opd.schedule.max-materialize-days:366}")
+    private int maxMaterializeDays = 366;
+
+    private ScheduledExecutorService roller;
+
+    @PostConstruct
+    public void start() {
+        roller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "schedule-roller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        roller.scheduleWithFixedDelay(this::rollForward, rollIntervalMinutes, rollIntervalMinutes, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void stop() {
+        roller.shutdownNow();
+    }
+
+    /**
+     * Register a template and materialize it up to the current horizon.
+     */
+    public ScheduleTemplate addTemplate(ScheduleTemplate template) {
+        template.validate();
+        templates.put(template.getTemplateId(), template);
+        int created = materialize(List.of(template), horizonEnd());
+        log.info("Added schedule template {} for Dr. {} ({} slots materialized)",
+                template.getTemplateId(), template.getDoctorName(), created);
+        return template;
+    }
+
+    /**
+     * Stop materializing a template. Slots already created are kept.
+     */
+    public ScheduleTemplate removeTemplate(String templateId) {
+        ScheduleTemplate removed = templates.remove(templateId);
+        if (removed == null) {
+            throw new ScheduleTemplateNotFoundException(templateId);
+        }
+        return removed;
+    }
+
+    public ScheduleTemplate getTemplate(String templateId) {
+        ScheduleTemplate template = templates.get(templateId);
+        if (template == null) {
+            throw new ScheduleTemplateNotFoundException(templateId);
+        }
+        return template;
+    }
+
+    public Collection<ScheduleTemplate> getTemplates() {
+        return templates.values();
+    }
+
+    /**
+     * Extend every template to the rolling horizon.
+     *
+     * @return number of slots created
+     */
+    public int rollForward() {
+        try {
+            return materialize(templates.values(), horizonEnd());
+        } catch (RuntimeException e) {
+            // Keep the roller thread alive; the next run retries from the same watermark
+            log.error("Schedule roll-forward failed", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Materialize every template through the given date (inclusive), at most
+     * {@code opd.schedule.max-materialize-days} ahead of today.
+     *
+     * @return number of slots created
+     */
+    public int materializeThrough(LocalDate through) {
+        LocalDate limit = engine.now().toLocalDate().plusDays(maxMaterializeDays);
+        if (through.isAfter(limit)) {
+            throw new IllegalArgumentException("Schedules can be materialized at most " + maxMaterializeDays
+                    + " days ahead (through " + limit + ")");
+        }
+        return materialize(templates.values(), through);
+    }
+
+    /**
+     * Generate all missing slots up to {@code through} and insert them into the
+     * engine in one batch. Synchronized so concurrent rolls cannot both claim a day.
+     */
+    private synchronized int materialize(Collection<ScheduleTemplate> targets, LocalDate through) {
+        LocalDate today = engine.now().toLocalDate();
+        List<TimeSlot> batch = new ArrayList<>();
+        Map<ScheduleTemplate, LocalDate> watermarks = new IdentityHashMap<>();
+
+        for (ScheduleTemplate template : targets) {
+            LocalDate from = template.getMaterializedThrough() != null
+                    ? template.getMaterializedThrough().plusDays(1)
+                    : today;
+            if (template.getValidFrom() != null && from.isBefore(template.getValidFrom())) {
+                from = template.getValidFrom();
+            }
+            LocalDate until = template.getValidUntil() != null && template.getValidUntil().isBefore(through)
+                    ? template.getValidUntil()
+                    : through;
+
+            for (LocalDate date = from; !date.isAfter(until); date = date.plusDays(1)) {
+                batch.addAll(template.slotsFor(date));
+            }
+            if (!until.isBefore(from)) {
+                watermarks.put(template, until);
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            engine.createSlots(batch);
+        }
+        watermarks.forEach(ScheduleTemplate::setMaterializedThrough);
+        return batch.size();
+    }
+
+    private LocalDate horizonEnd() {
+        return engine.now().toLocalDate().plusDays(horizonDays - 1L);
+    }
+}
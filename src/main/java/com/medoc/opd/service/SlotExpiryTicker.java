@@ -0,0 +1,53 @@
+package com.medoc.opd.service;
+
+import com.medoc.opd.tenant.TenantEngines;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives the engine's slot expiry timing wheel in a running server
+ * ({@code opd.expiry.enabled=true}). One tick per second is plenty: the wheel
+ * has one-second resolution and expiry only needs minute accuracy. Ticks
+ * every loaded tenant's engine; tenants enable expiry when they are loaded.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "opd.expiry.enabled", havingValue = "true")
+public class SlotExpiryTicker {
+
+    private final OPDTokenEngine engine;
+    private final TenantEngines tenants;
+
+    @Value("${opd.expiry.tick-millis:1000}")
+    private long tickMillis;
+
+    private ScheduledExecutorService ticker;
+
+    @PostConstruct
+    public void start() {
+        engine.setExpiryEnabled(true);
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "slot-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleWithFixedDelay(() -> tenants.forEachEngine((tenantId, tenantEngine) -> tenantEngine.advanceTimers()),
+                tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        log.info("Automatic slot expiry enabled (tick {} ms)", tickMillis);
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+    }
+}
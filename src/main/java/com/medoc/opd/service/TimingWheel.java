@@ -0,0 +1,186 @@
+package com.medoc.opd.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashed, two-level timing wheel for large numbers of coarse-grained timers.
+ *
+ * Scheduling is O(1) from any thread: the timeout is queued and placed into a
+ * bucket on the next {@link #advance}. The inner wheel holds timers due within
+ * one rotation, one bucket per tick. Timers further out sit in the outer
+ * wheel, one bucket per inner rotation, and cascade into the inner wheel once
+ * when their rotation begins. Every timer is therefore touched a constant
+ * number of times no matter how far ahead it was scheduled, and stretches
+ * with no inner timers are skipped a whole rotation at a time (handy when a
+ * simulated clock jumps hours ahead).
+ *
+ * Expired tasks run on the thread calling {@link #advance}.
+ */
+@Slf4j
+public class TimingWheel {
+
+    /**
+     * Handle to a scheduled task.
+     */
+    public static final class Timeout {
+        private final long deadlineTick;
+        private final Runnable task;
+        private volatile boolean cancelled;
+        private Timeout next;
+
+        private Timeout(long deadlineTick, Runnable task) {
+            this.deadlineTick = deadlineTick;
+            this.task = task;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final long tickMillis;
+    private final int bits;
+    private final int mask;
+    private final Timeout[] inner;
+    private final Timeout[] outer;
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private long lastTick = Long.MIN_VALUE;
+    private int innerSize;
+    private int size;
+
+    /**
+     * @param tickMillis resolution of the wheel
+     * @param wheelSize  buckets per level, rounded up to a power of two
+     */
+    public TimingWheel(long tickMillis, int wheelSize) {
+        if (tickMillis <= 0 || wheelSize <= 1) {
+            throw new IllegalArgumentException("Tick must be positive and wheel size at least 2");
+        }
+        this.tickMillis = tickMillis;
+        this.bits = 32 - Integer.numberOfLeadingZeros(wheelSize - 1);
+        this.mask = (1 << bits) - 1;
+        this.inner = new Timeout[mask + 1];
+        this.outer = new Timeout[mask + 1];
+    }
+
+    /**
+     * Schedule {@code task} to run once the wheel has been advanced past {@code deadlineMillis}.
+     */
+    public Timeout schedule(long deadlineMillis, Runnable task) {
+        // Round up so a task never runs before its deadline
+        Timeout timeout = new Timeout(-Math.floorDiv(-deadlineMillis, tickMillis), task);
+        incoming.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Move the wheel to {@code nowMillis} and run every task whose deadline has passed.
+     *
+     * @return number of tasks run
+     */
+    public synchronized int advance(long nowMillis) {
+        long nowTick = Math.floorDiv(nowMillis, tickMillis);
+        if (lastTick == Long.MIN_VALUE) {
+            lastTick = nowTick - 1;
+        }
+
+        int fired = 0;
+        Timeout timeout;
+        while ((timeout = incoming.poll()) != null) {
+            fired += place(timeout);
+        }
+
+        while (lastTick < nowTick) {
+            long tick = lastTick + 1;
+            if ((tick & mask) == 0) {
+                fired += cascade((int) ((tick >>> bits) & mask));
+            }
+            if (innerSize == 0) {
+                // Nothing due in this rotation: jump to the next cascade point
+                long nextRotation = (tick | mask) + 1;
+                lastTick = Math.min(nowTick, nextRotation - 1);
+                continue;
+            }
+            fired += expire((int) (tick & mask));
+            lastTick = tick;
+        }
+        return fired;
+    }
+
+    /**
+     * Timers currently held in the wheel (excluding ones not yet picked up by {@link #advance}).
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private int place(Timeout timeout) {
+        if (timeout.cancelled) {
+            return 0;
+        }
+        if (timeout.deadlineTick <= lastTick) {
+            // Already due; don't wait a full rotation for its bucket
+            return run(timeout);
+        }
+        if (timeout.deadlineTick - lastTick <= mask + 1) {
+            push(inner, (int) (timeout.deadlineTick & mask), timeout);
+            innerSize++;
+        } else {
+            push(outer, (int) ((timeout.deadlineTick >>> bits) & mask), timeout);
+        }
+        size++;
+        return 0;
+    }
+
+    private int cascade(int index) {
+        Timeout current = outer[index];
+        outer[index] = null;
+        int fired = 0;
+        while (current != null) {
+            Timeout next = current.next;
+            current.next = null;
+            size--;
+            fired += place(current);
+            current = next;
+        }
+        return fired;
+    }
+
+    private int expire(int index) {
+        Timeout current = inner[index];
+        inner[index] = null;
+        int fired = 0;
+        while (current != null) {
+            Timeout next = current.next;
+            current.next = null;
+            size--;
+            innerSize--;
+            if (!current.cancelled) {
+                fired += run(current);
+            }
+            current = next;
+        }
+        return fired;
+    }
+
+    private static void push(Timeout[] wheel, int index, Timeout timeout) {
+        timeout.next = wheel[index];
+        wheel[index] = timeout;
+    }
+
+    private static int run(Timeout timeout) {
+        try {
+            timeout.task.run();
+        } catch (RuntimeException e) {
+            log.error("Timer task failed", e);
+        }
+        return 1;
+    }
+}
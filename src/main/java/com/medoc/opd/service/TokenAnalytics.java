@@ -0,0 +1,235 @@
+package com.medoc.opd.service;
+
+import com.medoc.opd.model.AnalyticsPoint;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Incremental time series of token activity per doctor and per department,
+ * fed by the engine on every token transition.
+ *
+ * Each series is a ring of fixed-width time buckets covering the retention
+ * period; a bucket holds event counts plus quantile sketches of waiting and
+ * consultation time. Recording is O(1). A query merges the buckets inside
+ * the window, so its cost depends on the window length, never on how many
+ * tokens there are. Buckets older than the retention period are recycled.
+ */
+public class TokenAnalytics {
+
+    public enum Event { BOOKED, ARRIVED, CONSULTATION_STARTED, CONSULTATION_COMPLETED, CANCELLED, NO_SHOW }
+
+    private static final int EVENTS = Event.values().length;
+
+    private final int bucketMinutes;
+    private final int retentionHours;
+    private final long bucketSeconds;
+    private final int bucketCount;
+    private final Map<String, TimeSeries> byDoctor = new ConcurrentHashMap<>();
+    private final Map<String, TimeSeries> byDepartment = new ConcurrentHashMap<>();
+
+    public TokenAnalytics(int bucketMinutes, int retentionHours) {
+        if (bucketMinutes < 1 || retentionHours * 60 < bucketMinutes) {
+            throw new IllegalArgumentException("Need bucketMinutes >= 1 and a retention of at least one bucket");
+        }
+        this.bucketMinutes = bucketMinutes;
+        this.retentionHours = retentionHours;
+        this.bucketSeconds = bucketMinutes * 60L;
+        this.bucketCount = retentionHours * 60 / bucketMinutes;
+    }
+
+    public int getBucketMinutes() {
+        return bucketMinutes;
+    }
+
+    public int getRetentionHours() {
+        return retentionHours;
+    }
+
+    /**
+     * Count an event at the given time.
+     *
+     * @param duration waiting time for {@link Event#CONSULTATION_STARTED}, consultation
+     *                 length for {@link Event#CONSULTATION_COMPLETED}, otherwise ignored
+     */
+    public void record(Event event, String doctorId, String department, LocalDateTime at, Duration duration) {
+        long bucket = bucketOf(at);
+        byDoctor.computeIfAbsent(doctorId, d -> new TimeSeries()).record(event, bucket, duration);
+        if (department != null) {
+            byDepartment.computeIfAbsent(department, d -> new TimeSeries()).record(event, bucket, duration);
+        }
+    }
+
+    /**
+     * One point per {@code stepMinutes} (rounded to whole buckets) covering {@code [from, to)}.
+     * Windows longer than the retention period are cut to its most recent part.
+     */
+    public List<AnalyticsPoint> doctorSeries(String doctorId, LocalDateTime from, LocalDateTime to, int stepMinutes) {
+        return series(byDoctor.get(doctorId), from, to, stepMinutes);
+    }
+
+    public List<AnalyticsPoint> departmentSeries(String department, LocalDateTime from, LocalDateTime to,
+                                                 int stepMinutes) {
+        return series(byDepartment.get(department), from, to, stepMinutes);
+    }
+
+    /**
+     * The whole window {@code [from, to)} as a single point.
+     */
+    public AnalyticsPoint doctorSummary(String doctorId, LocalDateTime from, LocalDateTime to) {
+        return summary(byDoctor.get(doctorId), from, to);
+    }
+
+    public AnalyticsPoint departmentSummary(String department, LocalDateTime from, LocalDateTime to) {
+        return summary(byDepartment.get(department), from, to);
+    }
+
+    private List<AnalyticsPoint> series(TimeSeries series, LocalDateTime from, LocalDateTime to, int stepMinutes) {
+        long first = bucketOf(from);
+        long last = lastBucketBefore(to);
+        first = Math.max(first, last - bucketCount + 1);
+        long step = Math.max(1, stepMinutes * 60L / bucketSeconds);
+
+        List<AnalyticsPoint> points = new ArrayList<>();
+        for (long start = first; start <= last; start += step) {
+            long end = Math.min(last, start + step - 1);
+            Accumulator acc = new Accumulator();
+            if (series != null) {
+                series.collect(start, end, acc);
+            }
+            points.add(acc.toPoint(startOf(start), startOf(end + 1)));
+        }
+        return points;
+    }
+
+    private AnalyticsPoint summary(TimeSeries series, LocalDateTime from, LocalDateTime to) {
+        long last = lastBucketBefore(to);
+        long first = Math.max(bucketOf(from), last - bucketCount + 1);
+        Accumulator acc = new Accumulator();
+        if (series != null && first <= last) {
+            series.collect(first, last, acc);
+        }
+        return acc.toPoint(startOf(first), startOf(last + 1));
+    }
+
+    private long bucketOf(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), bucketSeconds);
+    }
+
+    private long lastBucketBefore(LocalDateTime exclusiveEnd) {
+        return Math.floorDiv(exclusiveEnd.toEpochSecond(ZoneOffset.UTC) - 1, bucketSeconds);
+    }
+
+    private LocalDateTime startOf(long bucket) {
+        return LocalDateTime.ofEpochSecond(bucket * bucketSeconds, 0, ZoneOffset.UTC);
+    }
+
+    private static final class Bucket {
+        private long number;
+        private final long[] counts = new long[EVENTS];
+        private final QuantileSketch wait = new QuantileSketch();
+        private final QuantileSketch consultation = new QuantileSketch();
+
+        private void reset(long number) {
+            this.number = number;
+            Arrays.fill(counts, 0);
+            wait.reset();
+            consultation.reset();
+        }
+    }
+
+    /**
+     * Ring of buckets; slot {@code n % bucketCount} holds bucket {@code n}
+     * until a newer bucket reuses it.
+     */
+    private final class TimeSeries {
+        private final Bucket[] ring = new Bucket[bucketCount];
+        private long newest = Long.MIN_VALUE;
+
+        private synchronized void record(Event event, long number, Duration duration) {
+            if (newest != Long.MIN_VALUE && number <= newest - bucketCount) {
+                return;
+            }
+            newest = Math.max(newest, number);
+
+            int slot = (int) Math.floorMod(number, (long) bucketCount);
+            Bucket bucket = ring[slot];
+            if (bucket == null) {
+                bucket = ring[slot] = new Bucket();
+                bucket.number = number;
+            } else if (bucket.number != number) {
+                bucket.reset(number);
+            }
+
+            bucket.counts[event.ordinal()]++;
+            if (event == Event.CONSULTATION_STARTED && duration != null) {
+                bucket.wait.add(duration.toMillis() / 1000.0);
+            } else if (event == Event.CONSULTATION_COMPLETED && duration != null) {
+                bucket.consultation.add(duration.toMillis() / 1000.0);
+            }
+        }
+
+        private synchronized void collect(long first, long last, Accumulator acc) {
+            long from = Math.max(first, newest - bucketCount + 1);
+            long to = Math.min(last, newest);
+            for (long n = from; n <= to; n++) {
+                Bucket bucket = ring[(int) Math.floorMod(n, (long) bucketCount)];
+                if (bucket != null && bucket.number == n) {
+                    acc.add(bucket);
+                }
+            }
+        }
+    }
+
+    private static final class Accumulator {
+        private final long[] counts = new long[EVENTS];
+        private final QuantileSketch wait = new QuantileSketch();
+        private final QuantileSketch consultation = new QuantileSketch();
+
+        private void add(Bucket bucket) {
+            for (int i = 0; i < EVENTS; i++) {
+                counts[i] += bucket.counts[i];
+            }
+            wait.merge(bucket.wait);
+            consultation.merge(bucket.consultation);
+        }
+
+        private AnalyticsPoint toPoint(LocalDateTime start, LocalDateTime end) {
+            long arrivals = counts[Event.ARRIVED.ordinal()];
+            long noShows = counts[Event.NO_SHOW.ordinal()];
+            return AnalyticsPoint.builder()
+                    .start(start)
+                    .end(end)
+                    .bookings(counts[Event.BOOKED.ordinal()])
+                    .arrivals(arrivals)
+                    .consultationsStarted(counts[Event.CONSULTATION_STARTED.ordinal()])
+                    .consultationsCompleted(counts[Event.CONSULTATION_COMPLETED.ordinal()])
+                    .cancellations(counts[Event.CANCELLED.ordinal()])
+                    .noShows(noShows)
+                    .noShowRate(arrivals + noShows == 0 ? 0 : round((double) noShows / (arrivals + noShows), 3))
+                    .waitMeanMinutes(minutes(wait.getMean()))
+                    .waitP50Minutes(minutes(wait.quantile(0.50)))
+                    .waitP90Minutes(minutes(wait.quantile(0.90)))
+                    .waitP99Minutes(minutes(wait.quantile(0.99)))
+                    .consultationMeanMinutes(minutes(consultation.getMean()))
+                    .consultationP50Minutes(minutes(consultation.quantile(0.50)))
+                    .consultationP90Minutes(minutes(consultation.quantile(0.90)))
+                    .build();
+        }
+
+        private static double minutes(double seconds) {
+            return round(seconds / 60, 1);
+        }
+
+        private static double round(double value, int decimals) {
+            double scale = Math.pow(10, decimals);
+            return Math.round(value * scale) / scale;
+        }
+    }
+}
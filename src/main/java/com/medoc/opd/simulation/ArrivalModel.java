@@ -0,0 +1,180 @@
+package com.medoc.opd.simulation;
+
+import com.medoc.opd.model.TokenSource;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Stochastic arrival model for one OPD day: an online booking burst before
+ * opening, Poisson walk-ins, follow-ups, paid priority and emergencies, each
+ * patient tagged with whether they attend, cancel or never show up.
+ * Deterministic for a given {@link WorkloadConfig#getSeed()}.
+ */
+public class ArrivalModel {
+
+    public enum Fate { ATTEND, CANCEL, NO_SHOW }
+
+    @Value
+    public static class PatientArrival {
+        String doctorId;
+        String patientId;
+        TokenSource source;
+        LocalDateTime arrivalTime;
+        LocalDateTime preferredTime;
+        Fate fate;
+    }
+
+    private final WorkloadConfig config;
+    private final Random random;
+
+    public ArrivalModel(WorkloadConfig config) {
+        this.config = config;
+        this.random = new Random(config.getSeed());
+    }
+
+    public static String doctorId(int index) {
+        return String.format("LD%04d", index);
+    }
+
+    /**
+     * Build the day's arrivals for every doctor, ordered by arrival time.
+     */
+    public List<PatientArrival> generateArrivals() {
+        LocalDateTime opdStart = opdStart();
+        long opdMinutes = opdMinutes();
+        List<PatientArrival> arrivals = new ArrayList<>();
+        int patientSeq = 0;
+
+        for (int d = 0; d < config.getDoctors(); d++) {
+            String doctorId = doctorId(d);
+
+            // Morning burst: online bookings made in the hour before opening, for any time of day
+            for (int i = 0; i < config.getOnlineBurstPerDoctor(); i++) {
+                LocalDateTime booked = opdStart.minusSeconds(random.nextInt(3600));
+                LocalDateTime preferred = opdStart.plusMinutes(random.nextInt((int) opdMinutes));
+                arrivals.add(arrival(doctorId, patientSeq++, TokenSource.ONLINE_BOOKING, booked, preferred));
+            }
+
+            patientSeq = poisson(arrivals, doctorId, patientSeq, TokenSource.WALK_IN, config.getWalkInsPerHour());
+            patientSeq = poisson(arrivals, doctorId, patientSeq, TokenSource.FOLLOW_UP, config.getFollowUpsPerHour());
+            patientSeq = poisson(arrivals, doctorId, patientSeq, TokenSource.PAID_PRIORITY,
+                    config.getPaidPriorityPerHour());
+            patientSeq = poisson(arrivals, doctorId, patientSeq, TokenSource.EMERGENCY,
+                    config.getEmergenciesPerHour());
+        }
+
+        arrivals.sort(Comparator.comparing(PatientArrival::getArrivalTime));
+        return arrivals;
+    }
+
+    /**
+     * Turn the day into a timed request script: slot creation two hours before
+     * opening, then allocation, check-in, cancellation and no-show requests at
+     * plausible times. Consultations are left to whoever replays the script.
+     */
+    public List<DayEvent> generateDayEvents() {
+        LocalDateTime opdStart = opdStart();
+        List<DayEvent> events = new ArrayList<>();
+
+        for (int d = 0; d < config.getDoctors(); d++) {
+            for (int s = 0; s < config.getSlotsPerDoctor(); s++) {
+                LocalDateTime slotStart = opdStart.plusMinutes((long) s * config.getSlotMinutes());
+                events.add(DayEvent.builder()
+                        .time(opdStart.minusHours(2))
+                        .type(DayEvent.Type.CREATE_SLOT)
+                        .doctorId(doctorId(d))
+                        .startTime(slotStart)
+                        .endTime(slotStart.plusMinutes(config.getSlotMinutes()))
+                        .capacity(config.getSlotCapacity())
+                        .build());
+            }
+        }
+
+        for (PatientArrival arrival : generateArrivals()) {
+            boolean emergency = arrival.getSource() == TokenSource.EMERGENCY;
+            events.add(DayEvent.builder()
+                    .time(arrival.getArrivalTime())
+                    .type(emergency ? DayEvent.Type.EMERGENCY : DayEvent.Type.ALLOCATE)
+                    .doctorId(arrival.getDoctorId())
+                    .patientId(arrival.getPatientId())
+                    .source(arrival.getSource())
+                    .startTime(arrival.getPreferredTime())
+                    .build());
+
+            // Patients turn up a little before their preferred time, never before they booked
+            LocalDateTime turnUp = later(arrival.getArrivalTime().plusMinutes(1 + random.nextInt(5)),
+                    arrival.getPreferredTime().minusMinutes(random.nextInt(20)));
+
+            switch (arrival.getFate()) {
+                case ATTEND -> events.add(patientEvent(arrival, DayEvent.Type.CHECK_IN, turnUp));
+                case CANCEL -> events.add(patientEvent(arrival, DayEvent.Type.CANCEL,
+                        arrival.getArrivalTime().plusMinutes(random.nextInt(30))));
+                case NO_SHOW -> events.add(patientEvent(arrival, DayEvent.Type.NO_SHOW,
+                        arrival.getPreferredTime().plusMinutes(config.getSlotMinutes())));
+            }
+        }
+
+        events.sort(Comparator.comparing(DayEvent::getTime));
+        return events;
+    }
+
+    private int poisson(List<PatientArrival> arrivals, String doctorId, int patientSeq,
+            TokenSource source, double ratePerHour) {
+        if (ratePerHour <= 0) {
+            return patientSeq;
+        }
+        LocalDateTime opdStart = opdStart();
+        long opdMinutes = opdMinutes();
+        double minute = 0;
+        while (true) {
+            // Exponential inter-arrival gap for a Poisson process
+            minute += -Math.log(1 - random.nextDouble()) * 60.0 / ratePerHour;
+            if (minute >= opdMinutes) {
+                return patientSeq;
+            }
+            LocalDateTime at = opdStart.plusSeconds((long) (minute * 60));
+            arrivals.add(arrival(doctorId, patientSeq++, source, at, at));
+        }
+    }
+
+    private PatientArrival arrival(String doctorId, int seq, TokenSource source,
+            LocalDateTime arrivalTime, LocalDateTime preferredTime) {
+        Fate fate = Fate.ATTEND;
+        if (source != TokenSource.EMERGENCY) {
+            double roll = random.nextDouble();
+            if (roll < config.getCancelProbability()) {
+                fate = Fate.CANCEL;
+            } else if (roll < config.getCancelProbability() + config.getNoShowProbability()) {
+                fate = Fate.NO_SHOW;
+            }
+        }
+        return new PatientArrival(doctorId, "LOAD-PAT-" + seq, source, arrivalTime, preferredTime, fate);
+    }
+
+    private static DayEvent patientEvent(PatientArrival arrival, DayEvent.Type type, LocalDateTime time) {
+        return DayEvent.builder()
+                .time(time)
+                .type(type)
+                .doctorId(arrival.getDoctorId())
+                .patientId(arrival.getPatientId())
+                .source(arrival.getSource())
+                .build();
+    }
+
+    private static LocalDateTime later(LocalDateTime a, LocalDateTime b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private LocalDateTime opdStart() {
+        return config.getDay().atTime(config.getOpdStart());
+    }
+
+    private long opdMinutes() {
+        return (long) config.getSlotsPerDoctor() * config.getSlotMinutes();
+    }
+}
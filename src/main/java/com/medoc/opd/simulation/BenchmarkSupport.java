@@ -0,0 +1,27 @@
+package com.medoc.opd.simulation;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared helpers for the standalone benchmark and simulation runners.
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Engine logs every mutation at INFO; silence it so we measure the engine, not the console.
+     */
+    static void quietEngineLogging() {
+        ((Logger) LoggerFactory.getLogger("com.medoc.opd.service")).setLevel(Level.OFF);
+    }
+
+    static void printHeader(String title) {
+        System.out.println("\n" + "=".repeat(80));
+        System.out.println(" ".repeat(Math.max(0, (80 - title.length()) / 2)) + title);
+        System.out.println("=".repeat(80) + "\n");
+    }
+}
@@ -0,0 +1,43 @@
+package com.medoc.opd.simulation;
+
+import com.medoc.opd.model.TokenSource;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * One timestamped request in a recorded or generated OPD day.
+ * Token operations refer to patients rather than token IDs, because token
+ * IDs are only known once the replay has allocated them.
+ */
+@Value
+@Builder
+public class DayEvent {
+
+    public enum Type {
+        CREATE_SLOT,
+        ALLOCATE,
+        EMERGENCY,
+        CHECK_IN,
+        START_CONSULTATION,
+        COMPLETE_CONSULTATION,
+        CANCEL,
+        NO_SHOW
+    }
+
+    LocalDateTime time;
+    Type type;
+    String doctorId;
+    String patientId;
+    TokenSource source;
+
+    /** Slot start for CREATE_SLOT, preferred time for ALLOCATE. */
+    LocalDateTime startTime;
+
+    /** Slot end for CREATE_SLOT. */
+    LocalDateTime endTime;
+
+    /** Slot capacity for CREATE_SLOT. */
+    int capacity;
+}
@@ -0,0 +1,82 @@
+package com.medoc.opd.simulation;
+
+import com.medoc.opd.model.TokenSource;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plain-text request log, one {@link DayEvent} per line:
+ * {@code time,type,doctorId,patientId,source,startTime,endTime,capacity}.
+ * Empty fields are left blank; lines starting with {@code #} are comments.
+ */
+public final class DayEventLog {
+
+    private static final String HEADER = "# time,type,doctorId,patientId,source,startTime,endTime,capacity";
+
+    private DayEventLog() {
+    }
+
+    public static void write(Path file, List<DayEvent> events) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(HEADER);
+            out.newLine();
+            for (DayEvent e : events) {
+                out.write(String.join(",",
+                        e.getTime().toString(),
+                        e.getType().name(),
+                        blank(e.getDoctorId()),
+                        blank(e.getPatientId()),
+                        e.getSource() == null ? "" : e.getSource().name(),
+                        e.getStartTime() == null ? "" : e.getStartTime().toString(),
+                        e.getEndTime() == null ? "" : e.getEndTime().toString(),
+                        String.valueOf(e.getCapacity())));
+                out.newLine();
+            }
+        }
+    }
+
+    public static List<DayEvent> read(Path file) throws IOException {
+        List<DayEvent> events = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNo = 0;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] f = line.split(",", -1);
+                if (f.length != 8) {
+                    throw new IOException("Malformed request log line " + lineNo + ": " + line);
+                }
+                events.add(DayEvent.builder()
+                        .time(LocalDateTime.parse(f[0]))
+                        .type(DayEvent.Type.valueOf(f[1]))
+                        .doctorId(nullIfBlank(f[2]))
+                        .patientId(nullIfBlank(f[3]))
+                        .source(f[4].isEmpty() ? null : TokenSource.valueOf(f[4]))
+                        .startTime(f[5].isEmpty() ? null : LocalDateTime.parse(f[5]))
+                        .endTime(f[6].isEmpty() ? null : LocalDateTime.parse(f[6]))
+                        .capacity(Integer.parseInt(f[7]))
+                        .build());
+            }
+        }
+        return events;
+    }
+
+    private static String blank(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String nullIfBlank(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,262 @@
+package com.medoc.opd.simulation;
+
+import com.medoc.opd.exception.InvalidTokenStateException;
+import com.medoc.opd.exception.SlotCapacityExceededException;
+import com.medoc.opd.exception.SlotNotFoundException;
+import com.medoc.opd.model.Token;
+import com.medoc.opd.model.TokenSource;
+import com.medoc.opd.model.TokenStatus;
+import com.medoc.opd.service.OPDTokenEngine;
+import com.medoc.opd.service.QueueDiscipline;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Discrete-event runner that replays an OPD day against an engine driven by a
+ * {@link SimulationClock}. Requests from the log are applied at their recorded
+ * times; the clock jumps straight from one event to the next, so a full day
+ * replays in seconds.
+ *
+ * When {@code simulateDoctors} is on, consultation events in the log are
+ * ignored and each doctor instead calls the head of {@code getDoctorQueue}
+ * whenever they become free. That exercises the engine's priority ordering
+ * (including wait-time aging, or the {@code discipline=...} given) and
+ * yields per-source wait-time distributions.
+ *
+ * Slot expiry is enabled, so patients who never check in are marked no-show
+ * and slots are closed by the engine's own timers as the clock moves.
+ *
+ * Usage: mvn compile exec:java -Dexec.mainClass="com.medoc.opd.simulation.DayRunner" \
+ *            -Dexec.args="log=day.log consultMinutes=6"
+ *        (without log=..., a day is generated from WorkloadConfig options; writeLog=... saves it)
+ */
+public class DayRunner {
+
+    private final OPDTokenEngine engine;
+    private final SimulationClock clock;
+    private final Duration meanConsultation;
+    private final boolean simulateDoctors;
+    private final Random random;
+
+    private final PriorityQueue<Scheduled> agenda = new PriorityQueue<>();
+    private final Map<String, String> patientTokens = new HashMap<>();
+    private final Set<String> busyDoctors = new HashSet<>();
+    private final Map<TokenSource, Histogram> waitMinutes = new EnumMap<>(TokenSource.class);
+    private long sequence;
+    private long applied;
+    private long skipped;
+    private Duration simulated = Duration.ZERO;
+    private double realSeconds;
+
+    public DayRunner(OPDTokenEngine engine, SimulationClock clock, Duration meanConsultation,
+            boolean simulateDoctors, long seed) {
+        this.engine = engine;
+        this.clock = clock;
+        this.meanConsultation = meanConsultation;
+        this.simulateDoctors = simulateDoctors;
+        this.random = new Random(seed);
+        engine.setClock(clock);
+        engine.setExpiryEnabled(true);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new LinkedHashMap<>();
+        List<String> workloadArgs = new ArrayList<>();
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            if (kv.length == 2 && Set.of("log", "writeLog", "consultMinutes", "simulateDoctors", "discipline").contains(kv[0])) {
+                options.put(kv[0], kv[1]);
+            } else {
+                workloadArgs.add(arg);
+            }
+        }
+
+        WorkloadConfig config = WorkloadConfig.fromArgs(workloadArgs.toArray(String[]::new));
+        List<DayEvent> events = options.containsKey("log")
+                ? DayEventLog.read(Path.of(options.get("log")))
+                : new ArrivalModel(config).generateDayEvents();
+        if (options.containsKey("writeLog")) {
+            DayEventLog.write(Path.of(options.get("writeLog")), events);
+        }
+
+        BenchmarkSupport.quietEngineLogging();
+        BenchmarkSupport.printHeader("OPD DAY REPLAY (SIMULATED CLOCK)");
+
+        OPDTokenEngine engine = new OPDTokenEngine();
+        engine.setSimulationMode(true);
+        engine.setQueueDiscipline(QueueDiscipline.valueOf(options.getOrDefault("discipline", "PRIORITY_AGING")));
+        SimulationClock clock = SimulationClock.discrete(events.isEmpty()
+                ? LocalDateTime.now()
+                : events.get(0).getTime());
+        DayRunner runner = new DayRunner(engine, clock,
+                Duration.ofMinutes(Long.parseLong(options.getOrDefault("consultMinutes", "6"))),
+                Boolean.parseBoolean(options.getOrDefault("simulateDoctors", "true")),
+                config.getSeed());
+        runner.run(events);
+        runner.printReport();
+    }
+
+    /**
+     * Replay the given events in time order until the agenda is empty.
+     */
+    public void run(List<DayEvent> events) {
+        for (DayEvent event : events) {
+            schedule(event);
+        }
+
+        long realStart = System.nanoTime();
+        LocalDateTime simStart = clock.currentDateTime();
+
+        while (!agenda.isEmpty()) {
+            Scheduled next = agenda.poll();
+            clock.advanceTo(next.event.getTime());
+            engine.advanceTimers();
+            try {
+                apply(next.event, next.internal);
+                applied++;
+            } catch (InvalidTokenStateException | SlotCapacityExceededException | SlotNotFoundException e) {
+                skipped++;
+            }
+        }
+
+        simulated = Duration.between(simStart, clock.currentDateTime());
+        realSeconds = (System.nanoTime() - realStart) / 1e9;
+    }
+
+    private void apply(DayEvent event, boolean internal) {
+        switch (event.getType()) {
+            case CREATE_SLOT -> engine.createSlot(event.getDoctorId(), "Dr. " + event.getDoctorId(),
+                    "General Medicine", event.getStartTime(), event.getEndTime(), event.getCapacity());
+            case ALLOCATE -> patientTokens.put(event.getPatientId(), engine.allocateToken(event.getPatientId(),
+                    event.getPatientId(), event.getDoctorId(), event.getSource(), event.getStartTime(), null)
+                    .getTokenId());
+            case EMERGENCY -> {
+                patientTokens.put(event.getPatientId(), engine.allocateEmergencyToken(event.getPatientId(),
+                        event.getPatientId(), event.getDoctorId(), "replay").getTokenId());
+                // Emergencies are seen on arrival, no check-in step
+                if (simulateDoctors) {
+                    engine.checkIn(tokenFor(event));
+                    callNextPatient(event.getDoctorId());
+                }
+            }
+            case CHECK_IN -> {
+                engine.checkIn(tokenFor(event));
+                if (simulateDoctors) {
+                    callNextPatient(event.getDoctorId());
+                }
+            }
+            case START_CONSULTATION -> {
+                if (!simulateDoctors) {
+                    engine.startConsultation(tokenFor(event));
+                }
+            }
+            case COMPLETE_CONSULTATION -> {
+                if (!simulateDoctors) {
+                    engine.completeConsultation(tokenFor(event));
+                } else if (internal) {
+                    engine.completeConsultation(tokenFor(event));
+                    busyDoctors.remove(event.getDoctorId());
+                    callNextPatient(event.getDoctorId());
+                }
+            }
+            case CANCEL -> engine.cancelToken(tokenFor(event));
+            case NO_SHOW -> engine.markNoShow(tokenFor(event));
+        }
+    }
+
+    /**
+     * If the doctor is free, start the highest-priority checked-in patient and
+     * schedule the end of that consultation.
+     */
+    private void callNextPatient(String doctorId) {
+        if (busyDoctors.contains(doctorId)) {
+            return;
+        }
+        Optional<Token> next = engine.getDoctorQueue(doctorId).stream()
+                .filter(t -> t.getStatus() == TokenStatus.CHECKED_IN)
+                .findFirst();
+        if (next.isEmpty()) {
+            return;
+        }
+
+        Token token = next.get();
+        LocalDateTime now = engine.now();
+        engine.startConsultation(token.getTokenId());
+        busyDoctors.add(doctorId);
+        waitMinutes.computeIfAbsent(token.getSource(), s -> new Histogram(3))
+                .recordValue(Math.max(0, token.getWaitTimeMinutes(now)));
+
+        // Consultation length varies between half and one and a half times the mean
+        long seconds = (long) (meanConsultation.toSeconds() * (0.5 + random.nextDouble()));
+        patientTokens.putIfAbsent(token.getPatientId(), token.getTokenId());
+        agenda.add(new Scheduled(DayEvent.builder()
+                .time(now.plusSeconds(seconds))
+                .type(DayEvent.Type.COMPLETE_CONSULTATION)
+                .doctorId(doctorId)
+                .patientId(token.getPatientId())
+                .build(), sequence++, true));
+    }
+
+    private String tokenFor(DayEvent event) {
+        String tokenId = patientTokens.get(event.getPatientId());
+        if (tokenId == null) {
+            // Allocation was rejected earlier; nothing to act on
+            throw new InvalidTokenStateException("No token for patient " + event.getPatientId());
+        }
+        return tokenId;
+    }
+
+    private void schedule(DayEvent event) {
+        agenda.add(new Scheduled(event, sequence++, false));
+    }
+
+    /**
+     * Wait time from check-in to consultation start, per token source.
+     */
+    public Map<TokenSource, Histogram> getWaitMinutes() {
+        return waitMinutes;
+    }
+
+    public void printReport() {
+        System.out.printf("Replayed %,d events (%,d skipped) covering %dh%02dm of OPD time in %.2fs (%.0fx real time)%n",
+                applied, skipped, simulated.toHours(), simulated.toMinutesPart(), realSeconds,
+                realSeconds == 0 ? 0.0 : simulated.toSeconds() / realSeconds);
+
+        Map<String, Object> stats = engine.getStatistics(null);
+        System.out.printf("%nTokens: %s total, %s completed, %s cancelled, %s no-show, %s still active%n",
+                stats.get("totalTokens"), stats.get("completedTokens"), stats.get("cancelledTokens"),
+                stats.get("noShowTokens"), stats.get("activeTokens"));
+
+        if (!waitMinutes.isEmpty()) {
+            System.out.printf("%nWait from check-in to consultation (minutes)%n");
+            System.out.printf("%-16s %8s %6s %6s %6s %6s %6s%n", "source", "seen", "mean", "p50", "p90", "p99", "max");
+            waitMinutes.forEach((source, h) -> System.out.printf("%-16s %,8d %6.1f %6d %6d %6d %6d%n",
+                    source, h.getTotalCount(), h.getMean(), h.getValueAtPercentile(50),
+                    h.getValueAtPercentile(90), h.getValueAtPercentile(99), h.getMaxValue()));
+        }
+    }
+
+    private static final class Scheduled implements Comparable<Scheduled> {
+        private final DayEvent event;
+        private final long seq;
+        // Generated by the runner itself (simulated doctor), not read from the log
+        private final boolean internal;
+
+        private Scheduled(DayEvent event, long seq, boolean internal) {
+            this.event = event;
+            this.seq = seq;
+            this.internal = internal;
+        }
+
+        @Override
+        public int compareTo(Scheduled other) {
+            int byTime = event.getTime().compareTo(other.event.getTime());
+            return byTime != 0 ? byTime : Long.compare(seq, other.seq);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.medoc.opd.simulation;
+
+import com.medoc.opd.model.TimeSlot;
+import com.medoc.opd.model.Token;
+import com.medoc.opd.model.TokenSource;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * The engine operations a workload needs, so the same scenario can drive
+ * either an in-process {@code OPDTokenEngine} or a running server over HTTP.
+ * Implementations report a full slot as {@code SlotCapacityExceededException}.
+ */
+public interface EngineClient extends AutoCloseable {
+
+    String createSlot(String doctorId, String doctorName, String department,
+            LocalDateTime startTime, LocalDateTime endTime, int maxCapacity);
+
+    String allocateToken(String patientId, String patientName, String doctorId,
+            TokenSource source, LocalDateTime preferredTime, String notes);
+
+    String allocateEmergencyToken(String patientId, String patientName, String doctorId, String notes);
+
+    void checkIn(String tokenId);
+
+    void startConsultation(String tokenId);
+
+    void completeConsultation(String tokenId);
+
+    void cancelToken(String tokenId);
+
+    void markNoShow(String tokenId);
+
+    List<TimeSlot> getAllSlots();
+
+    List<Token> getAllTokens();
+
+    @Override
+    default void close() {
+    }
+}
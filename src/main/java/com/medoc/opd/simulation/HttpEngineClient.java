@@ -0,0 +1,156 @@
+package com.medoc.opd.simulation;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.medoc.opd.exception.InvalidTokenStateException;
+import com.medoc.opd.exception.SlotCapacityExceededException;
+import com.medoc.opd.model.TimeSlot;
+import com.medoc.opd.model.Token;
+import com.medoc.opd.model.TokenSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link EngineClient} that drives the REST controllers of a running instance.
+ * HTTP status codes are mapped back onto the engine's exceptions so the
+ * workload sees the same outcomes in both modes.
+ */
+public class HttpEngineClient implements EngineClient {
+
+    private final String baseUrl;
+    private final HttpClient http;
+    private final ObjectMapper mapper = JsonMapper.builder()
+            .findAndAddModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    public HttpEngineClient(String baseUrl) {
+        this.baseUrl = baseUrl.replaceAll("/+$", "");
+        this.http = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    @Override
+    public String createSlot(String doctorId, String doctorName, String department,
+            LocalDateTime startTime, LocalDateTime endTime, int maxCapacity) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("doctorId", doctorId);
+        body.put("doctorName", doctorName);
+        body.put("department", department);
+        body.put("startTime", startTime);
+        body.put("endTime", endTime);
+        body.put("maxCapacity", maxCapacity);
+        return send("POST", "/api/slots", body, TimeSlot.class).getSlotId();
+    }
+
+    @Override
+    public String allocateToken(String patientId, String patientName, String doctorId,
+            TokenSource source, LocalDateTime preferredTime, String notes) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("patientId", patientId);
+        body.put("patientName", patientName);
+        body.put("doctorId", doctorId);
+        body.put("source", source);
+        body.put("preferredTime", preferredTime);
+        body.put("notes", notes);
+        return send("POST", "/api/tokens", body, Token.class).getTokenId();
+    }
+
+    @Override
+    public String allocateEmergencyToken(String patientId, String patientName, String doctorId, String notes) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("patientId", patientId);
+        body.put("patientName", patientName);
+        body.put("doctorId", doctorId);
+        body.put("notes", notes);
+        return send("POST", "/api/tokens/emergency", body, Token.class).getTokenId();
+    }
+
+    @Override
+    public void checkIn(String tokenId) {
+        send("POST", "/api/tokens/" + tokenId + "/check-in", null, Token.class);
+    }
+
+    @Override
+    public void startConsultation(String tokenId) {
+        send("POST", "/api/tokens/" + tokenId + "/start-consultation", null, Token.class);
+    }
+
+    @Override
+    public void completeConsultation(String tokenId) {
+        send("POST", "/api/tokens/" + tokenId + "/complete-consultation", null, Token.class);
+    }
+
+    @Override
+    public void cancelToken(String tokenId) {
+        send("DELETE", "/api/tokens/" + tokenId, null, Token.class);
+    }
+
+    @Override
+    public void markNoShow(String tokenId) {
+        send("POST", "/api/tokens/" + tokenId + "/no-show", null, Token.class);
+    }
+
+    @Override
+    public List<TimeSlot> getAllSlots() {
+        return send("GET", "/api/slots", null,
+                mapper.getTypeFactory().constructCollectionType(List.class, TimeSlot.class));
+    }
+
+    @Override
+    public List<Token> getAllTokens() {
+        return send("GET", "/api/tokens", null,
+                mapper.getTypeFactory().constructCollectionType(List.class, Token.class));
+    }
+
+    private <T> T send(String method, String path, Object body, Class<T> responseType) {
+        return send(method, path, body, mapper.getTypeFactory().constructType(responseType));
+    }
+
+    private <T> T send(String method, String path, Object body, JavaType responseType) {
+        try {
+            HttpRequest.BodyPublisher publisher = body == null
+                    ? HttpRequest.BodyPublishers.noBody()
+                    : HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body));
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Content-Type", "application/json")
+                    .header("Accept", "application/json")
+                    .method(method, publisher)
+                    .build();
+
+            HttpResponse<byte[]> response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            int status = response.statusCode();
+            if (status == 409) {
+                throw new SlotCapacityExceededException(new String(response.body()));
+            }
+            if (status == 400) {
+                throw new InvalidTokenStateException(new String(response.body()));
+            }
+            if (status >= 300) {
+                throw new IllegalStateException(method + " " + path + " failed with HTTP " + status);
+            }
+            return mapper.readValue(response.body(), responseType);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during " + method + " " + path, e);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.medoc.opd.simulation;
+
+import com.medoc.opd.model.TimeSlot;
+import com.medoc.opd.model.Token;
+import com.medoc.opd.model.TokenSource;
+import com.medoc.opd.service.OPDTokenEngine;
+import lombok.RequiredArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * {@link EngineClient} that calls an engine living in the same JVM.
+ */
+@RequiredArgsConstructor
+public class InProcessEngineClient implements EngineClient {
+
+    private final OPDTokenEngine engine;
+
+    @Override
+    public String createSlot(String doctorId, String doctorName, String department,
+            LocalDateTime startTime, LocalDateTime endTime, int maxCapacity) {
+        return engine.createSlot(doctorId, doctorName, department, startTime, endTime, maxCapacity).getSlotId();
+    }
+
+    @Override
+    public String allocateToken(String patientId, String patientName, String doctorId,
+            TokenSource source, LocalDateTime preferredTime, String notes) {
+        return engine.allocateToken(patientId, patientName, doctorId, source, preferredTime, notes).getTokenId();
+    }
+
+    @Override
+    public String allocateEmergencyToken(String patientId, String patientName, String doctorId, String notes) {
+        return engine.allocateEmergencyToken(patientId, patientName, doctorId, notes).getTokenId();
+    }
+
+    @Override
+    public void checkIn(String tokenId) {
+        engine.checkIn(tokenId);
+    }
+
+    @Override
+    public void startConsultation(String tokenId) {
+        engine.startConsultation(tokenId);
+    }
+
+    @Override
+    public void completeConsultation(String tokenId) {
+        engine.completeConsultation(tokenId);
+    }
+
+    @Override
+    public void cancelToken(String tokenId) {
+        engine.cancelToken(tokenId);
+    }
+
+    @Override
+    public void markNoShow(String tokenId) {
+        engine.markNoShow(tokenId);
+    }
+
+    @Override
+    public List<TimeSlot> getAllSlots() {
+        return engine.getAllSlots();
+    }
+
+    @Override
+    public List<Token> getAllTokens() {
+        return engine.getAllTokens();
+    }
+}
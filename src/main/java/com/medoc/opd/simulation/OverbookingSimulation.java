@@ -0,0 +1,160 @@
+package com.medoc.opd.simulation;
+
+import com.medoc.opd.model.TimeSlot;
+import com.medoc.opd.model.Token;
+import com.medoc.opd.model.TokenSource;
+import com.medoc.opd.model.TokenStatus;
+import com.medoc.opd.service.OPDTokenEngine;
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Compares hard slot capacity with predictive overbooking on the same
+ * simulated days. Each policy gets its own engine; a few warm-up days run
+ * first so the engine has attendance history to learn no-show rates from,
+ * then one measured day is reported: bookings accepted, realised overflow
+ * (patients who turned up beyond a slot's capacity), idle seats and waits.
+ * {@code risk} takes a comma-separated list, one overbooking run per value;
+ * the default sweep reaches far enough that 10-seat slots start overbooking.
+ *
+ * Usage: mvn compile exec:java -Dexec.mainClass="com.medoc.opd.simulation.OverbookingSimulation" \
+ *            -Dexec.args="risk=0.05,0.15,0.25 warmupDays=3 doctors=50 noShowProbability=0.15"
+ */
+public class OverbookingSimulation {
+
+    /**
+     * Measured-day outcome for one capacity policy.
+     */
+    private static final class Result {
+        private final String policy;
+        private long requested;
+        private long booked;
+        private long seats;
+        private long attended;
+        private long overflow;
+        private long idle;
+        private long overflowingSlots;
+        private long slots;
+        private Map<TokenSource, Histogram> waits;
+
+        private Result(String policy) {
+            this.policy = policy;
+        }
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        List<String> workloadArgs = new ArrayList<>();
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            if (kv.length == 2 && Set.of("risk", "maxRatio", "warmupDays", "consultMinutes").contains(kv[0])) {
+                options.put(kv[0], kv[1]);
+            } else {
+                workloadArgs.add(arg);
+            }
+        }
+        WorkloadConfig config = WorkloadConfig.fromArgs(workloadArgs.toArray(String[]::new));
+        List<Double> risks = Arrays.stream(options.getOrDefault("risk", "0.05,0.15,0.25").split(","))
+                .map(String::trim)
+                .map(Double::parseDouble)
+                .collect(Collectors.toList());
+        double maxRatio = Double.parseDouble(options.getOrDefault("maxRatio", "1.5"));
+        int warmupDays = Integer.parseInt(options.getOrDefault("warmupDays", "3"));
+        Duration consult = Duration.ofMinutes(Long.parseLong(options.getOrDefault("consultMinutes", "6")));
+
+        BenchmarkSupport.quietEngineLogging();
+        BenchmarkSupport.printHeader("OVERBOOKING SIMULATION");
+        System.out.printf("%d doctors x %d slots of %d, %.0f%% cancel, %.0f%% no-show, %d warm-up day(s)%n%n",
+                config.getDoctors(), config.getSlotsPerDoctor(), config.getSlotCapacity(),
+                config.getCancelProbability() * 100, config.getNoShowProbability() * 100, warmupDays);
+
+        OPDTokenEngine hard = new OPDTokenEngine();
+        List<Result> results = new ArrayList<>();
+        results.add(run("hard capacity", hard, config, warmupDays, consult));
+        for (double risk : risks) {
+            OPDTokenEngine overbooked = new OPDTokenEngine();
+            overbooked.setOverbookingEnabled(true);
+            overbooked.setOverbookingRisk(risk);
+            overbooked.setOverbookingMaxRatio(maxRatio);
+            results.add(run(String.format("overbook r=%.2f", risk), overbooked, config, warmupDays, consult));
+        }
+        printReport(results);
+
+        System.out.printf("%nLearned show probability (first doctor, hard capacity): %.3f%n",
+                hard.getNoShowStatistics().getShowProbability(ArrivalModel.doctorId(0)));
+    }
+
+    private static Result run(String policy, OPDTokenEngine engine, WorkloadConfig config,
+            int warmupDays, Duration consult) {
+        engine.setSimulationMode(true);
+        LocalDate measuredDay = config.getDay();
+        long seed = config.getSeed();
+        DayRunner runner = null;
+        List<DayEvent> events = List.of();
+
+        for (int d = warmupDays; d >= 0; d--) {
+            // Every policy sees exactly the same days
+            config.setDay(measuredDay.minusDays(d));
+            config.setSeed(seed + d);
+            events = new ArrivalModel(config).generateDayEvents();
+            runner = new DayRunner(engine, SimulationClock.discrete(events.get(0).getTime()), consult, true, seed + d);
+            runner.run(events);
+        }
+        config.setDay(measuredDay);
+        config.setSeed(seed);
+
+        Result result = new Result(policy);
+        result.requested = events.stream()
+                .filter(e -> e.getType() == DayEvent.Type.ALLOCATE || e.getType() == DayEvent.Type.EMERGENCY)
+                .count();
+        result.waits = runner.getWaitMinutes();
+
+        Map<String, Long> attendedBySlot = engine.getAllTokens().stream()
+                .filter(t -> t.getCheckedInAt() != null && t.getStatus() != TokenStatus.CANCELLED)
+                .collect(Collectors.groupingBy(Token::getSlotId, Collectors.counting()));
+        Set<String> measuredSlots = new HashSet<>();
+        for (TimeSlot slot : engine.getAllSlots()) {
+            if (!slot.getStartTime().toLocalDate().equals(measuredDay)) {
+                continue;
+            }
+            measuredSlots.add(slot.getSlotId());
+            long attended = attendedBySlot.getOrDefault(slot.getSlotId(), 0L);
+            result.slots++;
+            result.seats += slot.getMaxCapacity();
+            result.attended += attended;
+            result.overflow += Math.max(0, attended - slot.getMaxCapacity());
+            result.idle += Math.max(0, slot.getMaxCapacity() - attended);
+            if (attended > slot.getMaxCapacity()) {
+                result.overflowingSlots++;
+            }
+        }
+        result.booked = engine.getAllTokens().stream()
+                .filter(t -> measuredSlots.contains(t.getSlotId()))
+                .count();
+        return result;
+    }
+
+    private static void printReport(List<Result> results) {
+        System.out.printf("%-20s %9s %9s %9s %9s %9s %9s %11s %10s %10s%n", "policy", "requests", "booked",
+                "attended", "util %", "idle", "overflow", "ovf slots %", "walk p90", "online p90");
+        for (Result r : results) {
+            System.out.printf("%-20s %,9d %,9d %,9d %9.1f %,9d %,9d %11.1f %10d %10d%n", r.policy,
+                    r.requested, r.booked, r.attended,
+                    100.0 * (r.attended - r.overflow) / Math.max(1, r.seats),
+                    r.idle, r.overflow,
+                    100.0 * r.overflowingSlots / Math.max(1, r.slots),
+                    p90(r.waits, TokenSource.WALK_IN), p90(r.waits, TokenSource.ONLINE_BOOKING));
+        }
+        System.out.println("\nutil % = seats filled by patients who turned up; idle = empty seats;");
+        System.out.println("overflow = patients beyond a slot's capacity. Waits in minutes, check-in to consultation.");
+    }
+
+    private static long p90(Map<TokenSource, Histogram> waits, TokenSource source) {
+        Histogram h = waits.get(source);
+        return h == null ? 0 : h.getValueAtPercentile(90);
+    }
+}
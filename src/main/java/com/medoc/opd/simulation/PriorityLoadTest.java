@@ -0,0 +1,342 @@
+package com.medoc.opd.simulation;
+
+import com.medoc.opd.OPDTokenSystemApplication;
+import com.medoc.opd.model.Token;
+import com.medoc.opd.model.TokenSource;
+import com.medoc.opd.service.OPDTokenEngine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shows that patient-flow mutations and emergencies keep a tight latency
+ * under a read flood once admission control orders the server-side queue.
+ *
+ * Boots the application in-process three times: without admission control,
+ * with it in FIFO order, and with priority scheduling. Each run floods the
+ * server with closed-loop dashboard reads while paced probes issue
+ * check-ins, walk-in bookings and emergencies, and reports per-class
+ * latency, read throughput and how many requests were shed. Rate limits are
+ * set out of the way so only the scheduling differs.
+ *
+ * Usage: mvn compile exec:java -Dexec.mainClass="com.medoc.opd.simulation.PriorityLoadTest"
+ *            -Dexec.args="seconds=10 readers=64 maxConcurrent=4 sloMillis=50"
+ */
+public class PriorityLoadTest {
+
+    private static final int DOCTORS = 10;
+    private static final long WARMUP_MILLIS = 3_000;
+    private static final long CHECK_IN_INTERVAL_MILLIS = 50;
+    private static final long BOOKING_INTERVAL_MILLIS = 100;
+    private static final long EMERGENCY_INTERVAL_MILLIS = 250;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Expected key=value but got: " + arg);
+            }
+            options.put(kv[0], kv[1]);
+        }
+        long seconds = Long.parseLong(options.getOrDefault("seconds", "10"));
+        int readers = Integer.parseInt(options.getOrDefault("readers", "64"));
+        int maxConcurrent = Integer.parseInt(options.getOrDefault("maxConcurrent", "4"));
+        double sloMillis = Double.parseDouble(options.getOrDefault("sloMillis", "50"));
+
+        BenchmarkSupport.printHeader("PRIORITY LOAD TEST");
+        System.out.printf("%d closed-loop readers; probes: check-in every %d ms, walk-in booking every %d ms, "
+                        + "emergency every %d ms; %ds measured after %ds warm-up; max-concurrent=%d%n",
+                readers, CHECK_IN_INTERVAL_MILLIS, BOOKING_INTERVAL_MILLIS, EMERGENCY_INTERVAL_MILLIS, seconds,
+                WARMUP_MILLIS / 1000, maxConcurrent);
+
+        // Untimed pass so the first measured run does not pay for JIT compilation
+        run("JIT warm-up", false, false, readers, maxConcurrent, seconds);
+
+        List<Result> results = new ArrayList<>();
+        results.add(run("no admission control", false, false, readers, maxConcurrent, seconds));
+        results.add(run("admission, FIFO", true, false, readers, maxConcurrent, seconds));
+        results.add(run("admission, priority", true, true, readers, maxConcurrent, seconds));
+
+        System.out.printf("%n%-22s %-10s %9s %9s %9s %7s %7s%n", "run", "class", "p50 (ms)", "p99 (ms)", "max (ms)",
+                "429s", "errors");
+        System.out.println("-".repeat(80));
+        for (Result result : results) {
+            for (Probe probe : result.probes) {
+                System.out.printf("%-22s %-10s %9.1f %9.1f %9.1f %7d %7d%n", result.name, probe.name,
+                        millis(probe.latency, 50), millis(probe.latency, 99), probe.latency.getMaxValue() / 1000.0,
+                        probe.rejected.sum(), probe.failed.sum());
+            }
+            System.out.printf("%-22s %-10s %9.1f %9.1f %9.1f %7d %7d   %,.0f reads/s%n", result.name, "read",
+                    millis(result.reads.latency, 50), millis(result.reads.latency, 99),
+                    result.reads.latency.getMaxValue() / 1000.0, result.reads.rejected.sum(), result.reads.failed.sum(),
+                    result.reads.latency.getTotalCount() / (double) seconds);
+            System.out.println();
+        }
+
+        Result priority = results.get(results.size() - 1);
+        for (Probe probe : priority.probes) {
+            if (!probe.name.equals("booking")) {
+                double p99 = millis(probe.latency, 99);
+                System.out.printf("SLO %s p99 <= %.0f ms with priority scheduling: %s (%.1f ms)%n", probe.name,
+                        sloMillis, p99 <= sloMillis && probe.rejected.sum() + probe.failed.sum() == 0 ? "MET" : "MISSED", p99);
+            }
+        }
+    }
+
+    private static Result run(String name, boolean admission, boolean priority, int readers, int maxConcurrent,
+                              long seconds) throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(OPDTokenSystemApplication.class)
+                .run("--server.port=0",
+                        "--spring.main.banner-mode=off",
+                        "--logging.level.root=WARN",
+                        "--logging.level.com.medoc.opd=ERROR",
+                        "--opd.booking.one-per-patient-per-day=false",
+                        "--opd.admission.enabled=" + admission,
+                        "--opd.admission.priority-scheduling=" + priority,
+                        "--opd.admission.client-rate=1000000",
+                        "--opd.admission.client-burst=1000000",
+                        "--opd.admission.doctor-rate=1000000",
+                        "--opd.admission.doctor-burst=1000000",
+                        "--opd.admission.max-concurrent=" + maxConcurrent,
+                        // Every probe comes from loopback; keep their X-Client-Id buckets apart
+                        "--opd.admission.trusted-proxies=127.0.0.1,0:0:0:0:0:0:0:1",
+                        "--opd.admission.queue-timeout-millis=2000");
+        try {
+            String baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+            LocalDateTime start = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+            Queue<String> checkInTokens = setup(context.getBean(OPDTokenEngine.class), start, seconds);
+            Result result = drive(name, baseUrl, start, checkInTokens, readers, seconds);
+            if (admission) {
+                printQueueWait(context.getBean(MeterRegistry.class));
+            }
+            return result;
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * One all-day slot per doctor and enough booked tokens to check in for the whole run.
+     */
+    private static Queue<String> setup(OPDTokenEngine engine, LocalDateTime start, long seconds) {
+        int checkIns = (int) ((WARMUP_MILLIS + seconds * 1000) / CHECK_IN_INTERVAL_MILLIS) + DOCTORS;
+        for (int d = 0; d < DOCTORS; d++) {
+            engine.createSlot(doctorId(d), "Dr. Load " + d, "General Medicine", start, start.plusHours(12), 100_000);
+        }
+        Queue<String> tokens = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < checkIns; i++) {
+            Token token = engine.allocateToken(String.format("LOAD-%05d", i), "Booked Patient " + i,
+                    doctorId(i % DOCTORS), TokenSource.ONLINE_BOOKING, start, null);
+            tokens.add(token.getTokenId());
+        }
+        return tokens;
+    }
+
+    private static Result drive(String name, String baseUrl, LocalDateTime slotStart, Queue<String> checkInTokens,
+                                int readers, long seconds) throws InterruptedException {
+        // Separate clients, so probe responses do not queue behind reader responses in one client's selector
+        HttpClient readerHttp = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        AtomicBoolean recording = new AtomicBoolean(false);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger patients = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(readers + 3);
+
+        Probe reads = new Probe("read");
+        Probe checkIns = new Probe("check-in");
+        Probe bookings = new Probe("booking");
+        Probe emergencies = new Probe("emergency");
+
+        for (int r = 0; r < readers; r++) {
+            int reader = r;
+            start(done, () -> {
+                while (running.get()) {
+                    String path = switch (ThreadLocalRandom.current().nextInt(3)) {
+                        case 0 -> "/api/slots";
+                        case 1 -> "/api/tokens/statistics";
+                        default -> "/api/tokens/queue/" + doctorId(ThreadLocalRandom.current().nextInt(DOCTORS));
+                    };
+                    call(readerHttp, reads, recording, "dashboard-" + reader, get(baseUrl + path));
+                }
+            });
+        }
+        start(done, () -> pace(running, CHECK_IN_INTERVAL_MILLIS, () -> {
+            String tokenId = checkInTokens.poll();
+            if (tokenId != null) {
+                call(http, checkIns, recording, "reception", post(baseUrl + "/api/tokens/" + tokenId + "/check-in", ""));
+            }
+        }));
+        start(done, () -> pace(running, BOOKING_INTERVAL_MILLIS, () -> {
+            int patient = patients.incrementAndGet();
+            call(http, bookings, recording, "kiosk", post(baseUrl + "/api/tokens", String.format(
+                    "{\"patientId\":\"WALK-%05d\",\"patientName\":\"Walk-in %d\",\"doctorId\":\"%s\","
+                            + "\"source\":\"WALK_IN\",\"preferredTime\":\"%s\"}",
+                    patient, patient, doctorId(patient % DOCTORS), slotStart)));
+        }));
+        start(done, () -> pace(running, EMERGENCY_INTERVAL_MILLIS, () -> {
+            int patient = patients.incrementAndGet();
+            call(http, emergencies, recording, "casualty", post(baseUrl + "/api/tokens/emergency", String.format(
+                    "{\"patientId\":\"EMER-%05d\",\"patientName\":\"Emergency %d\",\"doctorId\":\"%s\"}",
+                    patient, patient, doctorId(patient % DOCTORS))));
+        }));
+
+        Thread.sleep(WARMUP_MILLIS);
+        recording.set(true);
+        Thread.sleep(seconds * 1000);
+        recording.set(false);
+        running.set(false);
+        done.await();
+
+        Result result = new Result(name, reads, List.of(checkIns, emergencies, bookings));
+        System.out.printf("%-22s done: %,d reads, %,d check-ins, %,d emergencies, %,d bookings%n", name,
+                reads.latency.getTotalCount(), checkIns.latency.getTotalCount(),
+                emergencies.latency.getTotalCount(), bookings.latency.getTotalCount());
+        return result;
+    }
+
+    /**
+     * Server-side view: how long admitted requests of each class waited for a concurrency slot.
+     */
+    private static void printQueueWait(MeterRegistry registry) {
+        StringBuilder line = new StringBuilder("  server-side queue wait, mean / max ms:");
+        for (Timer timer : registry.find("opd.admission.queue.wait").timers()) {
+            if (timer.count() > 0) {
+                line.append(String.format("  %s %.1f / %.1f", timer.getId().getTag("class"),
+                        timer.mean(TimeUnit.MILLISECONDS), timer.max(TimeUnit.MILLISECONDS)));
+            }
+        }
+        System.out.println(line);
+    }
+
+    /**
+     * Runs {@code action} every {@code intervalMillis} (open loop: a slow call does not delay the schedule).
+     */
+    private static void pace(AtomicBoolean running, long intervalMillis, Runnable action) {
+        ExecutorService callers = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r);
+            thread.setDaemon(true);
+            return thread;
+        });
+        long next = System.nanoTime();
+        while (running.get()) {
+            callers.execute(action);
+            next += intervalMillis * 1_000_000;
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep / 1_000_000, (int) (sleep % 1_000_000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        callers.shutdown();
+    }
+
+    private static void call(HttpClient http, Probe probe, AtomicBoolean recording, String client,
+                             HttpRequest.Builder request) {
+        long start = System.nanoTime();
+        int status;
+        try {
+            status = http.send(request.header("X-Client-Id", client).build(), HttpResponse.BodyHandlers.discarding())
+                    .statusCode();
+        } catch (IOException e) {
+            status = -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (!recording.get()) {
+            return;
+        }
+        if (status == 429) {
+            probe.rejected.increment();
+        } else if (status / 100 == 2) {
+            probe.latency.recordValue((System.nanoTime() - start) / 1_000);
+        } else {
+            probe.failed.increment();
+        }
+    }
+
+    private static HttpRequest.Builder get(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).GET();
+    }
+
+    private static HttpRequest.Builder post(String url, String json) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json));
+    }
+
+    private static void start(CountDownLatch done, Runnable body) {
+        Thread thread = new Thread(() -> {
+            try {
+                body.run();
+            } finally {
+                done.countDown();
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private static String doctorId(int index) {
+        return String.format("LD%02d", index);
+    }
+
+    private static final class Probe {
+        private final String name;
+        private final Histogram latency = new ConcurrentHistogram(3);
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+
+        private Probe(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final class Result {
+        private final String name;
+        private final Probe reads;
+        private final List<Probe> probes;
+
+        private Result(String name, Probe reads, List<Probe> probes) {
+            this.name = name;
+            this.reads = reads;
+            this.probes = probes;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.medoc.opd.simulation;
+
+import com.medoc.opd.model.TokenSource;
+import com.medoc.opd.service.OPDTokenEngine;
+import com.medoc.opd.service.QueueDiscipline;
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Replays the same busy day under each {@link QueueDiscipline} and reports
+ * the wait from check-in to consultation per token source. Doctors are
+ * simulated (each calls the head of the queue when free), and consultations
+ * default to 7 minutes against the workload's roughly 9 attending patients
+ * an hour per doctor, so queues build up through the day and the choice of
+ * discipline decides who bears the wait.
+ *
+ * Usage: mvn compile exec:java -Dexec.mainClass="com.medoc.opd.simulation.QueueDisciplineSimulation" \
+ *            -Dexec.args="consultMinutes=7 agingPointsPerMinute=5 doctors=50"
+ */
+public class QueueDisciplineSimulation {
+
+    private static final List<TokenSource> REPORTED = List.of(TokenSource.EMERGENCY, TokenSource.PAID_PRIORITY,
+            TokenSource.ONLINE_BOOKING, TokenSource.FOLLOW_UP, TokenSource.WALK_IN);
+
+    public static void main(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        List<String> workloadArgs = new ArrayList<>();
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            if (kv.length == 2 && Set.of("consultMinutes", "agingPointsPerMinute", "fairWeights").contains(kv[0])) {
+                options.put(kv[0], kv[1]);
+            } else {
+                workloadArgs.add(arg);
+            }
+        }
+        WorkloadConfig config = WorkloadConfig.fromArgs(workloadArgs.toArray(String[]::new));
+        Duration consult = Duration.ofMinutes(Long.parseLong(options.getOrDefault("consultMinutes", "7")));
+        List<DayEvent> events = new ArrivalModel(config).generateDayEvents();
+
+        BenchmarkSupport.quietEngineLogging();
+        BenchmarkSupport.printHeader("QUEUE DISCIPLINE SIMULATION");
+        System.out.printf("%d doctors, %.1f walk-ins/h, %d online bookings, %.1f follow-ups/h, %.1f paid/h, "
+                        + "%.1f emergencies/h per doctor; %d min consultations%n",
+                config.getDoctors(), config.getWalkInsPerHour(), config.getOnlineBurstPerDoctor(),
+                config.getFollowUpsPerHour(), config.getPaidPriorityPerHour(), config.getEmergenciesPerHour(),
+                consult.toMinutes());
+
+        for (QueueDiscipline discipline : QueueDiscipline.values()) {
+            OPDTokenEngine engine = new OPDTokenEngine();
+            engine.setSimulationMode(true);
+            options.computeIfPresent("agingPointsPerMinute", (k, v) -> {
+                engine.setAgingPointsPerMinute(Double.parseDouble(v));
+                return v;
+            });
+            options.computeIfPresent("fairWeights", (k, v) -> {
+                engine.setFairWeights(v);
+                return v;
+            });
+            engine.setQueueDiscipline(discipline);
+
+            DayRunner runner = new DayRunner(engine, SimulationClock.discrete(events.get(0).getTime()), consult,
+                    true, config.getSeed());
+            runner.run(events);
+            printWaits(discipline, runner.getWaitMinutes());
+        }
+        System.out.println("\nWaits in minutes from check-in to consultation; > 60 = share of patients waiting"
+                + " over an hour.");
+    }
+
+    private static void printWaits(QueueDiscipline discipline, Map<TokenSource, Histogram> waits) {
+        System.out.printf("%n%s%n", discipline);
+        System.out.printf("%-16s %8s %6s %6s %6s %6s %6s %7s%n",
+                "source", "seen", "mean", "p50", "p90", "p99", "max", "> 60");
+        Histogram all = new Histogram(3);
+        for (TokenSource source : REPORTED) {
+            Histogram h = waits.get(source);
+            if (h != null) {
+                all.add(h);
+                printRow(source.name(), h);
+            }
+        }
+        printRow("all", all);
+    }
+
+    private static void printRow(String label, Histogram h) {
+        double overAnHour = h.getTotalCount() == 0 ? 0
+                : 100.0 * (h.getTotalCount() - h.getCountBetweenValues(0, 60)) / h.getTotalCount();
+        System.out.printf("%-16s %,8d %6.1f %6d %6d %6d %6d %6.1f%%%n", label, h.getTotalCount(), h.getMean(),
+                h.getValueAtPercentile(50), h.getValueAtPercentile(90), h.getValueAtPercentile(99),
+                h.getMaxValue(), overAnHour);
+    }
+}
@@ -0,0 +1,98 @@
+package com.medoc.opd.simulation;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Controllable clock for replaying OPD days faster than real time.
+ *
+ * Two modes:
+ * - discrete: time only moves when {@link #advanceTo} / {@link #advance} is called
+ *   (discrete-event simulation, a whole day replays in as long as the work takes);
+ * - accelerated: time flows continuously at {@code speedup} times real time.
+ */
+public class SimulationClock extends Clock {
+
+    private final ZoneId zone;
+    private final double speedup;
+
+    // Simulated instant at the real-time anchor below, in epoch nanos
+    private volatile long baseSimNanos;
+    private volatile long baseRealNanos;
+
+    private SimulationClock(Instant start, ZoneId zone, double speedup) {
+        this.zone = zone;
+        this.speedup = speedup;
+        this.baseSimNanos = toNanos(start);
+        this.baseRealNanos = System.nanoTime();
+    }
+
+    /**
+     * Clock that stands still until explicitly advanced.
+     */
+    public static SimulationClock discrete(LocalDateTime start) {
+        ZoneId zone = ZoneId.systemDefault();
+        return new SimulationClock(start.atZone(zone).toInstant(), zone, 0.0);
+    }
+
+    /**
+     * Clock that runs {@code speedup} times faster than real time, e.g. 60 = one simulated hour per minute.
+     */
+    public static SimulationClock accelerated(LocalDateTime start, double speedup) {
+        if (speedup <= 0) {
+            throw new IllegalArgumentException("Speedup must be positive");
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        return new SimulationClock(start.atZone(zone).toInstant(), zone, speedup);
+    }
+
+    /**
+     * Jump to the given time. Moving backwards is ignored so the clock stays monotonic.
+     */
+    public synchronized void advanceTo(LocalDateTime time) {
+        long target = toNanos(time.atZone(zone).toInstant());
+        long current = currentSimNanos();
+        baseSimNanos = Math.max(target, current);
+        baseRealNanos = System.nanoTime();
+    }
+
+    public synchronized void advance(Duration duration) {
+        baseSimNanos = currentSimNanos() + duration.toNanos();
+        baseRealNanos = System.nanoTime();
+    }
+
+    public LocalDateTime currentDateTime() {
+        return LocalDateTime.ofInstant(instant(), zone);
+    }
+
+    @Override
+    public Instant instant() {
+        long nanos = currentSimNanos();
+        return Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L));
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        // Detached copy starting at the current simulated instant
+        return new SimulationClock(instant(), zone, speedup);
+    }
+
+    private long currentSimNanos() {
+        if (speedup == 0.0) {
+            return baseSimNanos;
+        }
+        return baseSimNanos + (long) ((System.nanoTime() - baseRealNanos) * speedup);
+    }
+
+    private static long toNanos(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+}
@@ -0,0 +1,139 @@
+package com.medoc.opd.simulation;
+
+import com.medoc.opd.exception.DuplicateBookingException;
+import com.medoc.opd.exception.SlotCapacityExceededException;
+import com.medoc.opd.model.Token;
+import com.medoc.opd.model.TokenSource;
+import com.medoc.opd.service.OPDTokenEngine;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mixed read/write benchmark for the snapshot-backed read endpoints.
+ * Runs a 95/5 and a 50/50 read/write mix against one engine and reports
+ * throughput and mean latency per operation class.
+ *
+ * Usage: mvn compile exec:java -Dexec.mainClass="com.medoc.opd.simulation.SnapshotReadWriteBenchmark"
+ */
+public class SnapshotReadWriteBenchmark {
+
+    private static final int DOCTORS = 20;
+    private static final int SLOTS_PER_DOCTOR = 8;
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final long RUN_MILLIS = 5_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        BenchmarkSupport.quietEngineLogging();
+        BenchmarkSupport.printHeader("SNAPSHOT READ/WRITE BENCHMARK");
+
+        runMix(95);
+        runMix(50);
+    }
+
+    private static void runMix(int readPercent) throws InterruptedException {
+        OPDTokenEngine engine = new OPDTokenEngine();
+        engine.setSimulationMode(true);
+        // Random patient IDs repeat; every write should be a booking, not a duplicate refusal
+        engine.setOnePerPatientPerDay(false);
+        setupSlots(engine);
+
+        LongAdder reads = new LongAdder();
+        LongAdder writes = new LongAdder();
+        LongAdder rejected = new LongAdder();
+        LongAdder readNanos = new LongAdder();
+        LongAdder writeNanos = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch done = new CountDownLatch(THREADS);
+
+        for (int t = 0; t < THREADS; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                List<Token> issued = new ArrayList<>();
+                try {
+                    while (running.get()) {
+                        String doctorId = doctorId(random.nextInt(DOCTORS));
+                        long start = System.nanoTime();
+                        if (random.nextInt(100) < readPercent) {
+                            read(engine, doctorId, random.nextInt(4));
+                            readNanos.add(System.nanoTime() - start);
+                            reads.increment();
+                        } else {
+                            try {
+                                write(engine, doctorId, issued, random);
+                            } catch (DuplicateBookingException | SlotCapacityExceededException e) {
+                                rejected.increment();
+                            }
+                            writeNanos.add(System.nanoTime() - start);
+                            writes.increment();
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "bench-" + t);
+            worker.start();
+        }
+
+        Thread.sleep(RUN_MILLIS);
+        running.set(false);
+        done.await();
+
+        double seconds = RUN_MILLIS / 1000.0;
+        System.out.printf("%d/%d read/write mix, %d threads, %.0fs%n", readPercent, 100 - readPercent, THREADS, seconds);
+        System.out.printf("  reads : %,12.0f ops/s  mean %8.2f us%n",
+                reads.sum() / seconds, mean(readNanos.sum(), reads.sum()));
+        System.out.printf("  writes: %,12.0f ops/s  mean %8.2f us  (%,d rejected)%n",
+                writes.sum() / seconds, mean(writeNanos.sum(), writes.sum()), rejected.sum());
+        System.out.printf("  snapshot epoch reached: %,d%n%n", engine.getCurrentEpoch());
+    }
+
+    private static void read(OPDTokenEngine engine, String doctorId, int which) {
+        switch (which) {
+            case 0 -> engine.getDoctorQueue(doctorId);
+            case 1 -> engine.getDoctorSlots(doctorId);
+            case 2 -> engine.getStatistics(doctorId);
+            default -> engine.getAllSlots();
+        }
+    }
+
+    private static void write(OPDTokenEngine engine, String doctorId, List<Token> issued, ThreadLocalRandom random) {
+        // Keep occupancy roughly steady: cancel an older token half of the time
+        if (!issued.isEmpty() && random.nextBoolean()) {
+            Token token = issued.remove(issued.size() - 1);
+            engine.cancelToken(token.getTokenId());
+            return;
+        }
+        LocalDateTime preferred = at(9 + random.nextInt(SLOTS_PER_DOCTOR), 0);
+        issued.add(engine.allocateToken("P" + random.nextInt(1_000_000), "Bench Patient", doctorId,
+                TokenSource.WALK_IN, preferred, null));
+    }
+
+    private static void setupSlots(OPDTokenEngine engine) {
+        for (int d = 0; d < DOCTORS; d++) {
+            for (int s = 0; s < SLOTS_PER_DOCTOR; s++) {
+                engine.createSlot(doctorId(d), "Dr. Bench " + d, "General Medicine",
+                        at(9 + s, 0), at(10 + s, 0), 1_000_000);
+            }
+        }
+    }
+
+    private static String doctorId(int index) {
+        return String.format("DR%03d", index);
+    }
+
+    private static LocalDateTime at(int hour, int minute) {
+        return LocalDateTime.of(LocalDate.now(), LocalTime.of(hour % 24, minute));
+    }
+
+    private static double mean(long totalNanos, long count) {
+        return count == 0 ? 0.0 : totalNanos / 1000.0 / count;
+    }
+}
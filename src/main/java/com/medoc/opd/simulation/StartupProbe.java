@@ -0,0 +1,185 @@
+package com.medoc.opd.simulation;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Measures how fast a server build becomes useful after launch: time until
+ * {@code /actuator/health} answers, time until the first token is allocated,
+ * how long that first (cold) allocation takes compared with later ones, and
+ * resident memory once ready. This is the recovery window of a restart or
+ * failover, so it is the number to compare between the plain jar, AppCDS,
+ * Spring AOT and the native image.
+ *
+ * Launches the given command, probes it, stops it, and repeats.
+ *
+ * Usage: mvn compile exec:java -Dexec.mainClass="com.medoc.opd.simulation.StartupProbe"
+ *            -Dexec.args="runs=3 port=8095 -- java -jar target/opd-token-system-1.0.0.jar --server.port=8095"
+ */
+public class StartupProbe {
+
+    private static final int WARM_ALLOCATIONS = 200;
+
+    public static void main(String[] args) throws Exception {
+        int separator = Arrays.asList(args).indexOf("--");
+        if (separator < 0 || separator == args.length - 1) {
+            throw new IllegalArgumentException("Usage: StartupProbe [runs=3] [port=8080] [timeoutSeconds=180] -- <command>");
+        }
+        Map<String, String> options = new HashMap<>();
+        for (String arg : Arrays.copyOfRange(args, 0, separator)) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Expected key=value but got: " + arg);
+            }
+            options.put(kv[0], kv[1]);
+        }
+        int runs = Integer.parseInt(options.getOrDefault("runs", "3"));
+        String baseUrl = "http://localhost:" + options.getOrDefault("port", "8080");
+        Duration timeout = Duration.ofSeconds(Long.parseLong(options.getOrDefault("timeoutSeconds", "180")));
+        List<String> command = List.of(Arrays.copyOfRange(args, separator + 1, args.length));
+
+        BenchmarkSupport.printHeader("STARTUP PROBE");
+        System.out.println("Command: " + String.join(" ", command));
+        System.out.printf("%n%-5s %12s %16s %16s %14s %10s%n",
+                "run", "ready (ms)", "1st alloc (ms)", "cold call (ms)", "warm p50 (ms)", "RSS (MB)");
+
+        List<Result> results = new ArrayList<>();
+        for (int run = 1; run <= runs; run++) {
+            Result result = probe(command, baseUrl, timeout, run);
+            results.add(result);
+            System.out.printf("%-5d %,12d %,16d %16.1f %14.2f %10s%n", run, result.readyMillis,
+                    result.firstAllocationMillis, result.coldCallMillis, result.warmMedianMillis,
+                    result.rssMegabytes < 0 ? "n/a" : String.valueOf(result.rssMegabytes));
+        }
+        System.out.printf("%-5s %,12.0f %,16.0f %16.1f %14.2f%n", "p50",
+                median(results, r -> r.readyMillis), median(results, r -> r.firstAllocationMillis),
+                median(results, r -> r.coldCallMillis), median(results, r -> r.warmMedianMillis));
+    }
+
+    private static Result probe(List<String> command, String baseUrl, Duration timeout, int run) throws Exception {
+        HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+        Path log = Files.createTempFile("startup-probe-", ".log");
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+        try {
+            long deadline = start + timeout.toNanos();
+            while (!healthy(http, baseUrl)) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Server exited with " + process.exitValue() + "; see " + log);
+                }
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException("Server not ready after " + timeout + "; see " + log);
+                }
+                Thread.sleep(10);
+            }
+            long ready = System.nanoTime();
+
+            String doctorId = "PROBE" + run;
+            LocalDateTime slotStart = LocalDateTime.now().plusHours(1).truncatedTo(ChronoUnit.MINUTES);
+            post(http, baseUrl + "/api/slots", String.format("{\"doctorId\":\"%s\",\"doctorName\":\"Dr. Probe\","
+                    + "\"department\":\"General Medicine\",\"startTime\":\"%s\",\"endTime\":\"%s\",\"maxCapacity\":%d}",
+                    doctorId, slotStart, slotStart.plusHours(4), WARM_ALLOCATIONS + 1));
+            long coldStart = System.nanoTime();
+            allocate(http, baseUrl, doctorId, 0, slotStart);
+            long firstAllocation = System.nanoTime();
+
+            double[] warm = new double[WARM_ALLOCATIONS];
+            for (int i = 0; i < WARM_ALLOCATIONS; i++) {
+                long callStart = System.nanoTime();
+                allocate(http, baseUrl, doctorId, i + 1, slotStart);
+                warm[i] = (System.nanoTime() - callStart) / 1e6;
+            }
+            Arrays.sort(warm);
+
+            Result result = new Result();
+            result.readyMillis = (ready - start) / 1_000_000;
+            result.firstAllocationMillis = (firstAllocation - start) / 1_000_000;
+            result.coldCallMillis = (firstAllocation - coldStart) / 1e6;
+            result.warmMedianMillis = warm[warm.length / 2];
+            result.rssMegabytes = residentMegabytes(process.pid());
+            return result;
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+            Files.deleteIfExists(log);
+        }
+    }
+
+    private static boolean healthy(HttpClient http, String baseUrl) {
+        try {
+            HttpResponse<Void> response = http.send(HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/health"))
+                    .timeout(Duration.ofSeconds(1)).build(), HttpResponse.BodyHandlers.discarding());
+            return response.statusCode() == 200;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void allocate(HttpClient http, String baseUrl, String doctorId, int patient,
+                                 LocalDateTime preferredTime) throws IOException, InterruptedException {
+        post(http, baseUrl + "/api/tokens", String.format("{\"patientId\":\"%s-P%d\",\"patientName\":\"Probe Patient\","
+                + "\"doctorId\":\"%s\",\"source\":\"WALK_IN\",\"preferredTime\":\"%s\"}",
+                doctorId, patient, doctorId, preferredTime));
+    }
+
+    private static void post(HttpClient http, String url, String json) throws IOException, InterruptedException {
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json)).build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() / 100 != 2) {
+            throw new IllegalStateException("POST " + url + " answered " + response.statusCode() + ": " + response.body());
+        }
+    }
+
+    /**
+     * Resident set size of a process in MB, or -1 where /proc is not available.
+     */
+    private static long residentMegabytes(long pid) {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/" + pid + "/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) / 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not Linux, or the process is gone
+        }
+        return -1;
+    }
+
+    private static double median(List<Result> results, ToDoubleFunction<Result> metric) {
+        List<Double> values = new ArrayList<>();
+        results.forEach(result -> values.add(metric.applyAsDouble(result)));
+        Collections.sort(values);
+        return values.get(values.size() / 2);
+    }
+
+    private static final class Result {
+        private long readyMillis;
+        private long firstAllocationMillis;
+        private double coldCallMillis;
+        private double warmMedianMillis;
+        private long rssMegabytes;
+    }
+}
@@ -0,0 +1,290 @@
+package com.medoc.opd.simulation;
+
+import com.medoc.opd.exception.InvalidTokenStateException;
+import com.medoc.opd.model.TimeSlot;
+import com.medoc.opd.model.Token;
+import com.medoc.opd.model.TokenSource;
+import com.medoc.opd.model.TokenStatus;
+import com.medoc.opd.service.OPDTokenEngine;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+
+/**
+ * Concurrency stress test for token status transitions, in the spirit of
+ * jcstress.
+ *
+ * Part one races conflicting transitions directly on tokens, with no lock
+ * at all: each actor runs on its own thread over the same tokens in the
+ * same order, so most tokens see the actors collide. Every outcome must be
+ * one that some serial order of the actors produces, and the slot's
+ * occupancy must match the final status (a seat released once, or not at
+ * all). Part two drives the engine from many threads with random
+ * transitions across several doctors and checks occupancy of every slot
+ * against its tokens afterwards.
+ *
+ * Exits with status 1 if any invariant is broken.
+ *
+ * Usage: mvn compile exec:java -Dexec.mainClass="com.medoc.opd.simulation.TokenTransitionStress"
+ */
+public class TokenTransitionStress {
+
+    private static final int ROUNDS = 200_000;
+    private static final int DOCTORS = 8;
+    private static final int TOKENS_PER_DOCTOR = 2_000;
+    private static final int ENGINE_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final int ENGINE_OPS_PER_THREAD = 50_000;
+    private static final LocalDateTime AT = LocalDateTime.of(LocalDate.now(), LocalTime.of(10, 0));
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws InterruptedException {
+        BenchmarkSupport.quietEngineLogging();
+        BenchmarkSupport.printHeader("TOKEN TRANSITION STRESS TEST");
+
+        race("cancel vs check-in", TokenStatus.ALLOCATED,
+                new Actor("cancel", Token::cancel),
+                new Actor("check-in", (token, slot) -> token.checkIn(AT)));
+        race("no-show vs start consultation", TokenStatus.CHECKED_IN,
+                new Actor("no-show", Token::markNoShow),
+                new Actor("start", (token, slot) -> token.startConsultation(AT)));
+        race("cancel vs complete", TokenStatus.IN_CONSULTATION,
+                new Actor("cancel", Token::cancel),
+                new Actor("complete", (token, slot) -> token.complete(AT)));
+        race("cancel vs no-show vs cancel", TokenStatus.ALLOCATED,
+                new Actor("cancel", Token::cancel),
+                new Actor("no-show", Token::markNoShow),
+                new Actor("cancel'", Token::cancel));
+
+        engineRace();
+
+        System.out.println(failures == 0 ? "All invariants held." : failures + " invariant violation(s).");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Run the actors concurrently over {@link #ROUNDS} fresh tokens, each with
+     * its own one-seat slot, and check every outcome against the serial ones.
+     */
+    private static void race(String name, TokenStatus initial, Actor... actors) throws InterruptedException {
+        Token[] tokens = new Token[ROUNDS];
+        TimeSlot[] slots = new TimeSlot[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            slots[i] = seatedSlot();
+            tokens[i] = tokenIn(initial);
+        }
+
+        boolean[][] succeeded = new boolean[actors.length][ROUNDS];
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int a = 0; a < actors.length; a++) {
+            Actor actor = actors[a];
+            boolean[] results = succeeded[a];
+            Thread thread = new Thread(() -> {
+                awaitQuietly(start);
+                for (int i = 0; i < ROUNDS; i++) {
+                    results[i] = actor.action.test(tokens[i], slots[i]);
+                }
+            }, "actor-" + actor.name);
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Set<String> allowed = serialOutcomes(initial, actors);
+        Map<String, Integer> observed = new TreeMap<>();
+        int violations = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            boolean[] mask = new boolean[actors.length];
+            for (int a = 0; a < actors.length; a++) {
+                mask[a] = succeeded[a][i];
+            }
+            String outcome = outcome(actors, mask, tokens[i], slots[i]);
+            observed.merge(outcome, 1, Integer::sum);
+            if (!allowed.contains(outcome)) {
+                violations++;
+            }
+        }
+
+        System.out.printf("%s (from %s), %,d rounds%n", name, initial, ROUNDS);
+        observed.forEach((outcome, count) -> System.out.printf("  %-48s %,9d%s%n",
+                outcome, count, allowed.contains(outcome) ? "" : "   FORBIDDEN"));
+        report(violations);
+    }
+
+    /**
+     * Every outcome reachable by running the actors one after another, in any order.
+     */
+    private static Set<String> serialOutcomes(TokenStatus initial, Actor[] actors) {
+        Set<String> outcomes = new HashSet<>();
+        permute(actors, new int[actors.length], new boolean[actors.length], 0, initial, outcomes);
+        return outcomes;
+    }
+
+    private static void permute(Actor[] actors, int[] order, boolean[] used, int depth,
+                                TokenStatus initial, Set<String> outcomes) {
+        if (depth == actors.length) {
+            Token token = tokenIn(initial);
+            TimeSlot slot = seatedSlot();
+            boolean[] mask = new boolean[actors.length];
+            for (int index : order) {
+                mask[index] = actors[index].action.test(token, slot);
+            }
+            outcomes.add(outcome(actors, mask, token, slot));
+            return;
+        }
+        for (int a = 0; a < actors.length; a++) {
+            if (!used[a]) {
+                used[a] = true;
+                order[depth] = a;
+                permute(actors, order, used, depth + 1, initial, outcomes);
+                used[a] = false;
+            }
+        }
+    }
+
+    private static String outcome(Actor[] actors, boolean[] mask, Token token, TimeSlot slot) {
+        List<String> winners = new ArrayList<>();
+        for (int a = 0; a < actors.length; a++) {
+            if (mask[a]) {
+                winners.add(actors[a].name);
+            }
+        }
+        return winners + " -> " + token.getStatus() + ", occupancy " + slot.getCurrentOccupancy();
+    }
+
+    /**
+     * Random transitions on the engine from many threads; afterwards every
+     * slot's occupancy must equal the number of its tokens still holding a seat.
+     */
+    private static void engineRace() throws InterruptedException {
+        OPDTokenEngine engine = new OPDTokenEngine();
+        engine.setSimulationMode(true);
+        engine.setOnePerPatientPerDay(false);
+
+        List<String> tokenIds = new ArrayList<>();
+        for (int d = 0; d < DOCTORS; d++) {
+            String doctorId = String.format("DR%03d", d);
+            engine.createSlot(doctorId, "Dr. Stress " + d, "General Medicine",
+                    AT.plusHours(1), AT.plusHours(2), TOKENS_PER_DOCTOR);
+            for (int t = 0; t < TOKENS_PER_DOCTOR; t++) {
+                tokenIds.add(engine.allocateToken("P" + d + "-" + t, "Stress Patient", doctorId,
+                        TokenSource.WALK_IN, AT.plusHours(1), null).getTokenId());
+            }
+        }
+
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < ENGINE_THREADS; t++) {
+            Thread thread = new Thread(() -> {
+                awaitQuietly(start);
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < ENGINE_OPS_PER_THREAD; i++) {
+                    String tokenId = tokenIds.get(random.nextInt(tokenIds.size()));
+                    try {
+                        switch (random.nextInt(5)) {
+                            case 0 -> engine.cancelToken(tokenId);
+                            case 1 -> engine.markNoShow(tokenId);
+                            case 2 -> engine.checkIn(tokenId);
+                            case 3 -> engine.startConsultation(tokenId);
+                            default -> engine.completeConsultation(tokenId);
+                        }
+                        succeeded.incrementAndGet();
+                    } catch (InvalidTokenStateException e) {
+                        rejected.incrementAndGet();
+                    }
+                }
+            }, "engine-" + t);
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int violations = 0;
+        for (TimeSlot slot : engine.getAllSlots()) {
+            long seated = engine.getAllTokens().stream()
+                    .filter(token -> token.getSlotId().equals(slot.getSlotId()))
+                    .filter(token -> !token.getStatus().releasesSeat())
+                    .count();
+            if (slot.getCurrentOccupancy() != seated || slot.getCurrentOccupancy() < 0) {
+                System.out.printf("  slot %s: occupancy %d, tokens holding a seat %d%n",
+                        slot.getSlotId(), slot.getCurrentOccupancy(), seated);
+                violations++;
+            }
+        }
+
+        System.out.printf("engine, %d doctors x %,d tokens, %d threads: %,d transitions applied, %,d rejected%n",
+                DOCTORS, TOKENS_PER_DOCTOR, ENGINE_THREADS, succeeded.get(), rejected.get());
+        report(violations);
+    }
+
+    private static void report(int violations) {
+        if (violations == 0) {
+            System.out.println("  OK\n");
+        } else {
+            System.out.printf("  FAILED: %,d violation(s)%n%n", violations);
+            failures += violations;
+        }
+    }
+
+    private static Token tokenIn(TokenStatus status) {
+        return Token.builder()
+                .patientId("P")
+                .slotId("S")
+                .doctorId("DR")
+                .source(TokenSource.WALK_IN)
+                .status(status)
+                .checkedInAt(status == TokenStatus.ALLOCATED ? null : AT)
+                .build();
+    }
+
+    private static TimeSlot seatedSlot() {
+        return TimeSlot.builder()
+                .slotId("S")
+                .doctorId("DR")
+                .startTime(AT)
+                .endTime(AT.plusHours(1))
+                .maxCapacity(1)
+                .currentOccupancy(1)
+                .build();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Actor {
+        private final String name;
+        private final BiPredicate<Token, TimeSlot> action;
+
+        private Actor(String name, BiPredicate<Token, TimeSlot> action) {
+            this.name = name;
+            this.action = action;
+        }
+    }
+}
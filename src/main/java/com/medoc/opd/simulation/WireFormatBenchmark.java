@@ -0,0 +1,135 @@
+package com.medoc.opd.simulation;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.medoc.opd.model.QueueEntry;
+import com.medoc.opd.model.Token;
+import com.medoc.opd.model.TokenSource;
+import com.medoc.opd.model.TokenView;
+import com.medoc.opd.service.OPDTokenEngine;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares the JSON and CBOR encodings of the queue and token responses:
+ * payload size (raw and gzipped, as it would cross a compressed link) and
+ * serialization CPU per response, for the full {@link QueueEntry} list and
+ * the slim {@link TokenView} display projection.
+ *
+ * The mappers are configured like the application's (ISO dates, Java time
+ * module), so the bytes are what a client would receive.
+ *
+ * Usage: mvn compile exec:java -Dexec.mainClass="com.medoc.opd.simulation.WireFormatBenchmark"
+ */
+public class WireFormatBenchmark {
+
+    private static final int QUEUE_LENGTH = 40;
+    private static final long RUN_NANOS = 2_000_000_000L;
+    private static final LocalDateTime START = LocalDateTime.of(LocalDate.now(), LocalTime.of(9, 0));
+
+    // Keeps the JIT from discarding serializations whose result is unused
+    private static volatile long sink;
+
+    public static void main(String[] args) {
+        BenchmarkSupport.quietEngineLogging();
+        BenchmarkSupport.printHeader("WIRE FORMAT BENCHMARK");
+
+        ObjectMapper json = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        ObjectMapper cbor = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .factory(new CBORFactory())
+                .build();
+
+        List<QueueEntry> queue = queue();
+        List<TokenView> display = queue.stream().map(TokenView::of).toList();
+        Token token = queue.get(0).getToken();
+
+        System.out.printf("Queue of %d tokens; serialization time is the mean of a %ds loop per row%n%n",
+                queue.size(), RUN_NANOS / 1_000_000_000L);
+        System.out.printf("%-28s %10s %10s %12s%n", "payload / encoding", "bytes", "gzipped", "serialize");
+        System.out.println("-".repeat(64));
+        report("queue, full, JSON", json, queue);
+        report("queue, full, CBOR", cbor, queue);
+        report("queue, display, JSON", json, display);
+        report("queue, display, CBOR", cbor, display);
+        report("single token, JSON", json, token);
+        report("single token, CBOR", cbor, token);
+    }
+
+    /**
+     * A morning queue: half the patients checked in, one in consultation.
+     */
+    private static List<QueueEntry> queue() {
+        OPDTokenEngine engine = new OPDTokenEngine();
+        engine.setSimulationMode(true);
+        engine.setOnePerPatientPerDay(false);
+        engine.setClock(SimulationClock.discrete(START));
+        engine.createSlot("DR001", "Dr. Wire", "General Medicine", START, START.plusHours(2), QUEUE_LENGTH);
+
+        TokenSource[] sources = {TokenSource.ONLINE_BOOKING, TokenSource.WALK_IN, TokenSource.PAID_PRIORITY,
+                TokenSource.FOLLOW_UP};
+        for (int i = 0; i < QUEUE_LENGTH; i++) {
+            Token token = engine.allocateToken(String.format("PAT-%05d", i), "Patient Number " + i, "DR001",
+                    sources[i % sources.length], START, null);
+            if (i % 2 == 0) {
+                engine.checkIn(token.getTokenId());
+            }
+            if (i == 0) {
+                engine.startConsultation(token.getTokenId());
+            }
+        }
+        return engine.getDoctorQueueWithEstimates("DR001");
+    }
+
+    private static void report(String name, ObjectMapper mapper, Object body) {
+        byte[] bytes = serialize(mapper, body);
+
+        // Warm up, then time
+        long deadline = System.nanoTime() + RUN_NANOS / 2;
+        while (System.nanoTime() < deadline) {
+            serialize(mapper, body);
+        }
+        long iterations = 0;
+        long start = System.nanoTime();
+        deadline = start + RUN_NANOS;
+        long now;
+        do {
+            sink += serialize(mapper, body).length;
+            iterations++;
+            now = System.nanoTime();
+        } while (now < deadline);
+        double micros = (now - start) / 1_000.0 / iterations;
+
+        System.out.printf("%-28s %,10d %,10d %9.2f us%n", name, bytes.length, gzip(bytes).length, micros);
+    }
+
+    private static byte[] serialize(ObjectMapper mapper, Object body) {
+        try {
+            return mapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,122 @@
+package com.medoc.opd.simulation;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Map;
+
+/**
+ * Parameters for a simulated OPD day driven by {@link WorkloadGenerator}.
+ * Rates are per doctor per hour of OPD time.
+ */
+@Data
+@Builder
+public class WorkloadConfig {
+
+    public enum Mode {
+        /** Call OPDTokenEngine directly in this JVM. */
+        IN_PROCESS,
+        /** Call the REST controllers of a running instance. */
+        HTTP
+    }
+
+    @Builder.Default
+    private Mode mode = Mode.IN_PROCESS;
+
+    @Builder.Default
+    private String baseUrl = "http://localhost:8080";
+
+    @Builder.Default
+    private int threads = Runtime.getRuntime().availableProcessors() * 4;
+
+    @Builder.Default
+    private long seed = 42L;
+
+    // Slot layout
+    @Builder.Default
+    private int doctors = 50;
+
+    @Builder.Default
+    private LocalDate day = LocalDate.now();
+
+    @Builder.Default
+    private LocalTime opdStart = LocalTime.of(9, 0);
+
+    @Builder.Default
+    private int slotMinutes = 60;
+
+    @Builder.Default
+    private int slotsPerDoctor = 8;
+
+    @Builder.Default
+    private int slotCapacity = 10;
+
+    // Arrival processes
+    @Builder.Default
+    private double walkInsPerHour = 6.0;
+
+    /** Online bookings made before the OPD opens, spread over the whole day. */
+    @Builder.Default
+    private int onlineBurstPerDoctor = 30;
+
+    @Builder.Default
+    private double emergenciesPerHour = 0.2;
+
+    @Builder.Default
+    private double followUpsPerHour = 1.0;
+
+    @Builder.Default
+    private double paidPriorityPerHour = 0.5;
+
+    // Patient outcomes
+    @Builder.Default
+    private double cancelProbability = 0.08;
+
+    @Builder.Default
+    private double noShowProbability = 0.10;
+
+    /**
+     * Build a config from {@code key=value} arguments, e.g. {@code doctors=300 mode=HTTP}.
+     * Unknown keys are rejected so typos do not silently fall back to defaults.
+     */
+    public static WorkloadConfig fromArgs(String[] args) {
+        WorkloadConfigBuilder builder = WorkloadConfig.builder();
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Expected key=value but got: " + arg);
+            }
+            apply(builder, kv[0], kv[1]);
+        }
+        return builder.build();
+    }
+
+    private static void apply(WorkloadConfigBuilder builder, String key, String value) {
+        Map<String, Runnable> setters = Map.ofEntries(
+                Map.entry("mode", () -> builder.mode(Mode.valueOf(value.toUpperCase()))),
+                Map.entry("baseUrl", () -> builder.baseUrl(value)),
+                Map.entry("threads", () -> builder.threads(Integer.parseInt(value))),
+                Map.entry("seed", () -> builder.seed(Long.parseLong(value))),
+                Map.entry("doctors", () -> builder.doctors(Integer.parseInt(value))),
+                Map.entry("day", () -> builder.day(LocalDate.parse(value))),
+                Map.entry("opdStart", () -> builder.opdStart(LocalTime.parse(value))),
+                Map.entry("slotMinutes", () -> builder.slotMinutes(Integer.parseInt(value))),
+                Map.entry("slotsPerDoctor", () -> builder.slotsPerDoctor(Integer.parseInt(value))),
+                Map.entry("slotCapacity", () -> builder.slotCapacity(Integer.parseInt(value))),
+                Map.entry("walkInsPerHour", () -> builder.walkInsPerHour(Double.parseDouble(value))),
+                Map.entry("onlineBurstPerDoctor", () -> builder.onlineBurstPerDoctor(Integer.parseInt(value))),
+                Map.entry("emergenciesPerHour", () -> builder.emergenciesPerHour(Double.parseDouble(value))),
+                Map.entry("followUpsPerHour", () -> builder.followUpsPerHour(Double.parseDouble(value))),
+                Map.entry("paidPriorityPerHour", () -> builder.paidPriorityPerHour(Double.parseDouble(value))),
+                Map.entry("cancelProbability", () -> builder.cancelProbability(Double.parseDouble(value))),
+                Map.entry("noShowProbability", () -> builder.noShowProbability(Double.parseDouble(value))));
+
+        Runnable setter = setters.get(key);
+        if (setter == null) {
+            throw new IllegalArgumentException("Unknown workload option: " + key);
+        }
+        setter.run();
+    }
+}
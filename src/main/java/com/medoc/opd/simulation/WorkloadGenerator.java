@@ -0,0 +1,175 @@
+package com.medoc.opd.simulation;
+
+import com.medoc.opd.exception.SlotCapacityExceededException;
+import com.medoc.opd.model.TimeSlot;
+import com.medoc.opd.model.Token;
+import com.medoc.opd.model.TokenSource;
+import com.medoc.opd.model.TokenStatus;
+import com.medoc.opd.service.OPDTokenEngine;
+import com.medoc.opd.simulation.ArrivalModel.PatientArrival;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Configurable high-volume workload for capacity planning.
+ * Generates a full OPD day of arrivals (online burst before opening, Poisson
+ * walk-ins, follow-ups, paid priority and emergencies), plays each patient's
+ * lifecycle on a thread pool and reports throughput, latency percentiles and
+ * utilisation/reallocation outcomes.
+ *
+ * Usage: mvn compile exec:java -Dexec.mainClass="com.medoc.opd.simulation.WorkloadGenerator" \
+ *            -Dexec.args="doctors=300 threads=64 mode=IN_PROCESS"
+ */
+public class WorkloadGenerator {
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.SECONDS.toMicros(60);
+
+    private final WorkloadConfig config;
+    private final EngineClient client;
+    private final Map<String, Histogram> latencies = new ConcurrentHashMap<>();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public WorkloadGenerator(WorkloadConfig config, EngineClient client) {
+        this.config = config;
+        this.client = client;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        WorkloadConfig config = WorkloadConfig.fromArgs(args);
+        BenchmarkSupport.quietEngineLogging();
+
+        EngineClient client;
+        if (config.getMode() == WorkloadConfig.Mode.HTTP) {
+            client = new HttpEngineClient(config.getBaseUrl());
+        } else {
+            OPDTokenEngine engine = new OPDTokenEngine();
+            engine.setSimulationMode(true);
+            client = new InProcessEngineClient(engine);
+        }
+
+        BenchmarkSupport.printHeader("OPD WORKLOAD GENERATOR - " + config.getMode());
+        try (client) {
+            new WorkloadGenerator(config, client).run();
+        }
+    }
+
+    /**
+     * Create the slot layout, generate the day's arrivals and play them.
+     */
+    public void run() throws InterruptedException {
+        createSlots();
+        List<PatientArrival> arrivals = new ArrivalModel(config).generateArrivals();
+
+        ExecutorService pool = Executors.newFixedThreadPool(config.getThreads());
+        long start = System.nanoTime();
+        for (PatientArrival arrival : arrivals) {
+            pool.execute(() -> play(arrival));
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.HOURS);
+        long elapsedNanos = System.nanoTime() - start;
+
+        report(arrivals.size(), elapsedNanos);
+    }
+
+    private void createSlots() {
+        LocalDateTime opdStart = config.getDay().atTime(config.getOpdStart());
+        for (int d = 0; d < config.getDoctors(); d++) {
+            String doctorId = ArrivalModel.doctorId(d);
+            for (int s = 0; s < config.getSlotsPerDoctor(); s++) {
+                LocalDateTime slotStart = opdStart.plusMinutes((long) s * config.getSlotMinutes());
+                String name = "Dr. Load " + d;
+                timed("createSlot", () -> client.createSlot(doctorId, name, "General Medicine",
+                        slotStart, slotStart.plusMinutes(config.getSlotMinutes()), config.getSlotCapacity()));
+            }
+        }
+    }
+
+    private void play(PatientArrival arrival) {
+        try {
+            String tokenId = arrival.getSource() == TokenSource.EMERGENCY
+                    ? timed("allocateEmergency", () -> client.allocateEmergencyToken(
+                            arrival.getPatientId(), arrival.getPatientId(), arrival.getDoctorId(), "load"))
+                    : timed("allocate", () -> client.allocateToken(
+                            arrival.getPatientId(), arrival.getPatientId(), arrival.getDoctorId(),
+                            arrival.getSource(), arrival.getPreferredTime(), null));
+
+            switch (arrival.getFate()) {
+                case CANCEL -> timed("cancel", () -> client.cancelToken(tokenId));
+                case NO_SHOW -> timed("noShow", () -> client.markNoShow(tokenId));
+                case ATTEND -> {
+                    timed("checkIn", () -> client.checkIn(tokenId));
+                    timed("startConsultation", () -> client.startConsultation(tokenId));
+                    timed("completeConsultation", () -> client.completeConsultation(tokenId));
+                }
+            }
+        } catch (SlotCapacityExceededException e) {
+            rejected.increment();
+        } catch (RuntimeException e) {
+            failed.increment();
+        }
+    }
+
+    private void timed(String operation, Runnable call) {
+        timed(operation, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    private <T> T timed(String operation, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } finally {
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            latencies.computeIfAbsent(operation, op -> new ConcurrentHistogram(MAX_LATENCY_MICROS, 3))
+                    .recordValue(Math.min(micros, MAX_LATENCY_MICROS));
+        }
+    }
+
+    private void report(int arrivals, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long operations = latencies.values().stream().mapToLong(Histogram::getTotalCount).sum();
+
+        System.out.printf("Doctors: %d, slots/doctor: %d, threads: %d, arrivals: %,d%n",
+                config.getDoctors(), config.getSlotsPerDoctor(), config.getThreads(), arrivals);
+        System.out.printf("Elapsed: %.2fs, throughput: %,.0f ops/s%n%n", seconds, operations / seconds);
+
+        System.out.printf("%-22s %10s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us");
+        new TreeMap<>(latencies).forEach((op, h) -> System.out.printf("%-22s %,10d %9d %9d %9d %9d %9d%n",
+                op, h.getTotalCount(),
+                h.getValueAtPercentile(50), h.getValueAtPercentile(90), h.getValueAtPercentile(99),
+                h.getValueAtPercentile(99.9), h.getMaxValue()));
+
+        List<TimeSlot> slots = client.getAllSlots();
+        List<Token> tokens = client.getAllTokens();
+        long capacity = slots.stream().mapToLong(TimeSlot::getMaxCapacity).sum();
+        long occupied = slots.stream().mapToLong(TimeSlot::getCurrentOccupancy).sum();
+        long overCapacity = slots.stream().filter(s -> s.getCurrentOccupancy() > s.getMaxCapacity()).count();
+        long reallocated = tokens.stream().filter(t -> t.getReallocatedCount() > 0).count();
+        Map<TokenStatus, Long> byStatus = tokens.stream()
+                .collect(Collectors.groupingBy(Token::getStatus, () -> new EnumMap<>(TokenStatus.class),
+                        Collectors.counting()));
+
+        System.out.println("\nOutcomes");
+        System.out.printf("  Tokens issued: %,d, rejected (no capacity): %,d, errors: %,d%n",
+                tokens.size(), rejected.sum(), failed.sum());
+        System.out.printf("  Slot utilisation: %,d / %,d seats (%.1f%%), slots over capacity: %d%n",
+                occupied, capacity, capacity == 0 ? 0.0 : occupied * 100.0 / capacity, overCapacity);
+        System.out.printf("  Tokens reallocated at least once: %,d%n", reallocated);
+        System.out.printf("  Final status: %s%n", byStatus);
+    }
+}
@@ -0,0 +1,167 @@
+package com.medoc.opd.standby;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.medoc.opd.cluster.ReplicationEntry;
+import com.medoc.opd.service.OPDTokenEngine;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Standby side of hot-standby replication: keeps a connection to the
+ * primary's {@link MutationStreamServer} open (reconnecting every second when
+ * it drops) and applies every frame to the local engine.
+ *
+ * Each connection starts with full copies, so a reconnect resyncs the whole
+ * state. A change that was queued before the copy was taken is skipped by
+ * its snapshot epoch.
+ */
+@Slf4j
+class MutationStreamFollower implements Closeable {
+
+    private static final long RECONNECT_MILLIS = 1000;
+
+    private final OPDTokenEngine engine;
+    private final ObjectMapper objectMapper;
+    private final String host;
+    private final int port;
+
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile Socket socket;
+
+    private volatile boolean connected;
+    private volatile long primarySequence;
+    private volatile long appliedSequence;
+    private volatile long appliedEntries;
+    private volatile long lastLagMillis;
+    private volatile long lastContactMillis = System.currentTimeMillis();
+
+    MutationStreamFollower(OPDTokenEngine engine, ObjectMapper objectMapper, String host, int port) {
+        this.engine = engine;
+        this.objectMapper = objectMapper;
+        this.host = host;
+        this.port = port;
+        this.thread = new Thread(this::run, "standby-follow");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // Closing only to unblock the reader
+            }
+        }
+        thread.interrupt();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    boolean isConnected() {
+        return connected;
+    }
+
+    long getPrimarySequence() {
+        return primarySequence;
+    }
+
+    long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    long getAppliedEntries() {
+        return appliedEntries;
+    }
+
+    /**
+     * Entries the primary has published that are not yet applied here.
+     */
+    long getLagEntries() {
+        return Math.max(0, primarySequence - appliedSequence);
+    }
+
+    /**
+     * Delay between the primary publishing a change and this node applying
+     * it. While disconnected, the time since the primary was last heard from.
+     */
+    long getLagMillis() {
+        return connected ? lastLagMillis : System.currentTimeMillis() - lastContactMillis;
+    }
+
+    private void run() {
+        while (running) {
+            try (Socket s = new Socket()) {
+                socket = s;
+                s.connect(new InetSocketAddress(host, port), (int) RECONNECT_MILLIS);
+                s.setTcpNoDelay(true);
+                // Heartbeats arrive every 500 ms; several missed ones mean the primary is gone
+                s.setSoTimeout((int) (MutationStreamServer.HEARTBEAT_MILLIS * 6));
+                connected = true;
+                log.info("Following primary at {}:{}", host, port);
+                follow(new DataInputStream(new BufferedInputStream(s.getInputStream(), 64 * 1024)));
+            } catch (IOException e) {
+                if (running && connected) {
+                    log.warn("Lost primary at {}:{}: {}", host, port, e.getMessage());
+                }
+            } finally {
+                connected = false;
+            }
+            if (running) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(RECONNECT_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void follow(DataInputStream in) throws IOException {
+        Map<String, Long> epochs = new HashMap<>();
+        while (running) {
+            byte[] frame = new byte[in.readInt()];
+            in.readFully(frame);
+            ReplicationEntry entry = objectMapper.readValue(frame, ReplicationEntry.class);
+
+            long now = System.currentTimeMillis();
+            lastContactMillis = now;
+            primarySequence = Math.max(primarySequence, entry.getSequence());
+            if (entry.getDoctorId() == null) {
+                // Heartbeat: everything published before it has been applied
+                appliedSequence = Math.max(appliedSequence, entry.getSequence());
+                lastLagMillis = Math.max(0, now - entry.getPublishedAtMillis());
+                continue;
+            }
+
+            Long applied = epochs.get(entry.getDoctorId());
+            if (applied == null || entry.getEpoch() > applied) {
+                engine.applyReplicatedState(entry.getDoctorId(), entry.getSlots(), entry.getTokens());
+                epochs.put(entry.getDoctorId(), entry.getEpoch());
+            }
+            appliedSequence = Math.max(appliedSequence, entry.getSequence());
+            appliedEntries++;
+            lastLagMillis = Math.max(0, now - entry.getPublishedAtMillis());
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.medoc.opd.standby;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.medoc.opd.cluster.ReplicationEntry;
+import com.medoc.opd.model.DoctorSnapshot;
+import com.medoc.opd.service.DoctorSnapshotListener;
+import com.medoc.opd.service.OPDTokenEngine;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Primary side of hot-standby replication. Standbys connect over TCP; each
+ * one first receives a full copy of every doctor and then the post-images of
+ * every change, in publish order, as length-prefixed JSON frames. An idle
+ * stream carries a heartbeat frame (no doctor) every
+ * {@value #HEARTBEAT_MILLIS} ms with the latest sequence, so standbys can
+ * measure their lag.
+ */
+@Slf4j
+class MutationStreamServer implements DoctorSnapshotListener, Closeable {
+
+    static final long HEARTBEAT_MILLIS = 500;
+    private static final int MAX_BATCH = 500;
+    private static final int MAX_BACKLOG = 100_000;
+
+    private final OPDTokenEngine engine;
+    private final ObjectMapper objectMapper;
+    private final String sourceNode;
+    private final int port;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final List<FollowerStream> followers = new CopyOnWriteArrayList<>();
+    private ServerSocket serverSocket;
+    private Thread acceptor;
+
+    MutationStreamServer(OPDTokenEngine engine, ObjectMapper objectMapper, String sourceNode, int port) {
+        this.engine = engine;
+        this.objectMapper = objectMapper;
+        this.sourceNode = sourceNode;
+        this.port = port;
+    }
+
+    void start() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port));
+        engine.addSnapshotListener(this);
+        acceptor = new Thread(this::acceptLoop, "standby-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("Streaming mutations to standbys on port {}", port);
+    }
+
+    @Override
+    public void close() throws IOException {
+        engine.removeSnapshotListener(this);
+        serverSocket.close();
+        followers.forEach(FollowerStream::close);
+    }
+
+    @Override
+    public void onPublish(DoctorSnapshot previous, DoctorSnapshot current) {
+        if (followers.isEmpty()) {
+            return;
+        }
+        ReplicationEntry entry = ReplicationEntry.delta(sourceNode, sequence.incrementAndGet(), previous, current);
+        for (FollowerStream follower : followers) {
+            follower.offer(entry);
+        }
+    }
+
+    long getSequence() {
+        return sequence.get();
+    }
+
+    int getFollowerCount() {
+        return followers.size();
+    }
+
+    /**
+     * Remote address and queued entry count of each connected standby.
+     */
+    List<String> describeFollowers() {
+        List<String> described = new ArrayList<>();
+        followers.forEach(f -> described.add(f.socket.getRemoteSocketAddress() + " (backlog " + f.queue.size() + ")"));
+        return described;
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                FollowerStream follower = new FollowerStream(socket);
+                // Registered before the full copy is taken, so no change can fall between the two
+                followers.add(follower);
+                follower.thread.start();
+                log.info("Standby connected from {}", socket.getRemoteSocketAddress());
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    log.warn("Accepting standby connection failed", e);
+                }
+            }
+        }
+    }
+
+    private final class FollowerStream {
+        private final Socket socket;
+        private final BlockingQueue<ReplicationEntry> queue = new LinkedBlockingQueue<>(MAX_BACKLOG);
+        private final Thread thread;
+
+        private FollowerStream(Socket socket) {
+            this.socket = socket;
+            this.thread = new Thread(this::run, "standby-stream-" + socket.getPort());
+            this.thread.setDaemon(true);
+        }
+
+        private void offer(ReplicationEntry entry) {
+            if (!queue.offer(entry)) {
+                // Dropping one entry would silently diverge the standby; make it reconnect and resync instead
+                log.error("Standby {} is {} entries behind; disconnecting it", socket.getRemoteSocketAddress(),
+                        MAX_BACKLOG);
+                close();
+            }
+        }
+
+        private void run() {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream(), 64 * 1024))) {
+                for (String doctorId : engine.getDoctorIds()) {
+                    write(out, ReplicationEntry.fullCopy(sourceNode, sequence.incrementAndGet(),
+                            engine.getDoctorSnapshot(doctorId)));
+                }
+                out.flush();
+
+                List<ReplicationEntry> batch = new ArrayList<>();
+                while (!socket.isClosed()) {
+                    ReplicationEntry first = queue.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        write(out, new ReplicationEntry(sourceNode, sequence.get(), null, 0,
+                                System.currentTimeMillis(), List.of(), List.of()));
+                    } else {
+                        batch.add(first);
+                        queue.drainTo(batch, MAX_BATCH - 1);
+                        for (ReplicationEntry entry : batch) {
+                            write(out, entry);
+                        }
+                        batch.clear();
+                    }
+                    out.flush();
+                }
+            } catch (IOException e) {
+                log.info("Standby {} disconnected: {}", socket.getRemoteSocketAddress(), e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        }
+
+        private void write(DataOutputStream out, ReplicationEntry entry) throws IOException {
+            byte[] frame = objectMapper.writeValueAsBytes(entry);
+            out.writeInt(frame.length);
+            out.write(frame);
+        }
+
+        private void close() {
+            followers.remove(this);
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already gone
+            }
+        }
+    }
+}
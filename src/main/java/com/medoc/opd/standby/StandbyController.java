@@ -0,0 +1,36 @@
+package com.medoc.opd.standby;
+
+import io.swagger.v3.oas.annotations.Hidden;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Operator endpoints for the primary / standby pair. Not part of the public API.
+ */
+@Hidden
+@RestController
+@RequestMapping("/internal/standby")
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "opd.standby.role")
+public class StandbyController {
+
+    private final StandbyReplication replication;
+
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Object>> status() {
+        return ResponseEntity.ok(replication.getStatus());
+    }
+
+    @PostMapping("/promote")
+    public ResponseEntity<Map<String, Object>> promote() {
+        replication.promote();
+        return ResponseEntity.ok(replication.getStatus());
+    }
+}
@@ -0,0 +1,51 @@
+package com.medoc.opd.standby;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.medoc.opd.config.GlobalExceptionHandler.ErrorResponse;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+/**
+ * Rejects API writes with 503 while this node is a standby, so clients retry
+ * against the primary; reads are served from the replicated state.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "opd.standby.role")
+public class StandbyReadOnlyFilter extends OncePerRequestFilter {
+
+    private final StandbyReplication replication;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/")
+                || HttpMethod.GET.matches(request.getMethod())
+                || HttpMethod.HEAD.matches(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!replication.isStandby()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), new ErrorResponse(HttpStatus.SERVICE_UNAVAILABLE.value(),
+                "This node is a read-only standby; send writes to the primary", LocalDateTime.now()));
+    }
+}
@@ -0,0 +1,162 @@
+package com.medoc.opd.standby;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.medoc.opd.service.OPDTokenEngine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Primary / hot-standby pair ({@code opd.standby.role=primary|standby}).
+ *
+ * The primary streams every engine change to connected standbys over a
+ * plain TCP socket. A standby applies the stream to its own engine, serves
+ * read requests, rejects writes, and does no background mutation (slot
+ * expiry) until it is promoted. Promotion stops following, resumes token
+ * numbering after the highest number replicated, and starts streaming to
+ * standbys of its own on {@code opd.standby.port}.
+ *
+ * Replication lag is published as the gauges {@code opd.standby.lag.entries}
+ * and {@code opd.standby.lag.millis}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "opd.standby.role")
+public class StandbyReplication {
+
+    public enum Role { PRIMARY, STANDBY }
+
+    private final OPDTokenEngine engine;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${opd.standby.role}")
+    private String configuredRole;
+
+    @Value("${opd.standby.port:9400}")
+    private int port;
+
+    @Value("${opd.standby.primary:localhost:9400}")
+    private String primaryAddress;
+
+    @Value("${spring.application.name:opd}-${server.port:8080}")
+    private String nodeName;
+
+    private volatile Role role;
+    private MutationStreamServer server;
+    private MutationStreamFollower follower;
+
+    @PostConstruct
+    public void start() throws IOException {
+        role = Role.valueOf(configuredRole.trim().toUpperCase());
+        if (role == Role.PRIMARY) {
+            startServer();
+        } else {
+            engine.setOwnershipCheck(doctorId -> role == Role.PRIMARY);
+            int colon = primaryAddress.lastIndexOf(':');
+            follower = new MutationStreamFollower(engine, objectMapper,
+                    primaryAddress.substring(0, colon), Integer.parseInt(primaryAddress.substring(colon + 1)));
+            follower.start();
+        }
+
+        Gauge.builder("opd.standby.lag.entries", this, StandbyReplication::getLagEntries)
+                .description("Changes published by the primary and not yet applied on this standby")
+                .register(meterRegistry);
+        Gauge.builder("opd.standby.lag.millis", this, StandbyReplication::getLagMillis)
+                .description("Delay between the primary publishing a change and this standby applying it")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("opd.standby.followers", this, s -> s.server != null ? s.server.getFollowerCount() : 0)
+                .description("Standbys connected to this primary")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public synchronized void stop() throws IOException {
+        if (follower != null) {
+            follower.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    public Role getRole() {
+        return role;
+    }
+
+    public boolean isStandby() {
+        return role == Role.STANDBY;
+    }
+
+    /**
+     * Turn this standby into a primary. Writes are accepted from the moment
+     * this returns. Promoting a primary is a no-op.
+     */
+    public synchronized void promote() {
+        if (role == Role.PRIMARY) {
+            return;
+        }
+        follower.close();
+        engine.continueTokenNumbering();
+        role = Role.PRIMARY;
+        log.warn("Promoted to primary after applying {} replicated changes (lag {} entries)",
+                follower.getAppliedEntries(), follower.getLagEntries());
+        try {
+            startServer();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Promoted, but could not listen for standbys on port " + port, e);
+        }
+    }
+
+    /**
+     * Changes the primary has published that this standby has not applied; 0 on a primary.
+     */
+    public long getLagEntries() {
+        return role == Role.STANDBY ? follower.getLagEntries() : 0;
+    }
+
+    /**
+     * Milliseconds this standby trails the primary; 0 on a primary.
+     */
+    public long getLagMillis() {
+        return role == Role.STANDBY ? follower.getLagMillis() : 0;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("role", role);
+        if (server != null) {
+            status.put("port", port);
+            status.put("sequence", server.getSequence());
+            status.put("standbys", server.describeFollowers());
+        }
+        if (follower != null) {
+            status.put("primary", primaryAddress);
+            status.put("connected", role == Role.STANDBY && follower.isConnected());
+            status.put("primarySequence", follower.getPrimarySequence());
+            status.put("appliedSequence", follower.getAppliedSequence());
+            status.put("appliedEntries", follower.getAppliedEntries());
+            status.put("lagEntries", getLagEntries());
+            status.put("lagMillis", getLagMillis());
+        }
+        return status;
+    }
+
+    private void startServer() throws IOException {
+        server = new MutationStreamServer(engine, objectMapper, nodeName, port);
+        server.start();
+    }
+}
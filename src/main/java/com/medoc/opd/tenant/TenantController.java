@@ -0,0 +1,37 @@
+package com.medoc.opd.tenant;
+
+import io.swagger.v3.oas.annotations.Hidden;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Operator endpoints for tenants: per-tenant size and manual eviction.
+ * Not part of the public API.
+ */
+@Hidden
+@RestController
+@RequestMapping("/internal/tenants")
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "opd.tenants.enabled", havingValue = "true")
+public class TenantController {
+
+    private final TenantEngines tenants;
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> usage() {
+        List<TenantUsage> usage = tenants.getUsage();
+        return ResponseEntity.ok(Map.of(
+                "tenants", usage,
+                "loadedEstimatedBytes", tenants.getLoadedBytes()));
+    }
+
+    @PostMapping("/{tenantId}/evict")
+    public ResponseEntity<Map<String, Object>> evict(@PathVariable String tenantId) {
+        return ResponseEntity.ok(Map.of("tenantId", tenantId, "evicted", tenants.evict(tenantId)));
+    }
+}
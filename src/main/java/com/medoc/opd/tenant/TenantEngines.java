@@ -0,0 +1,534 @@
+package com.medoc.opd.tenant;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.medoc.opd.model.DoctorSnapshot;
+import com.medoc.opd.model.TimeSlot;
+import com.medoc.opd.model.Token;
+import com.medoc.opd.service.OPDTokenEngine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * One {@link OPDTokenEngine} per tenant (hospital branch), so many branches
+ * can share a process without sharing slots, tokens, indexes or token
+ * numbers.
+ *
+ * The {@value #DEFAULT_TENANT} tenant is the application's engine bean and
+ * is always loaded; it is what every request without an
+ * {@value #TENANT_HEADER} header uses, exactly as before tenants existed.
+ * Other tenants ({@code opd.tenants.enabled=true}) are loaded on first use
+ * from {@code opd.tenants.dir} and saved back and dropped from memory when
+ * idle for {@code opd.tenants.idle-minutes}, or least recently used first
+ * when more than {@code opd.tenants.max-loaded} are loaded or their
+ * estimated heap exceeds {@code opd.tenants.memory-budget-mb}. A tenant is
+ * never evicted while a request is using it or while it has reallocation
+ * notices still to deliver. Loaded tenants changed since their last save
+ * are saved on every sweep, so a crash loses at most one sweep interval,
+ * and all loaded tenants are saved on shutdown.
+ *
+ * Reloading restores slots, tokens and pending notices. Learned statistics
+ * (no-show rates, consultation times, analytics) and idempotency keys start
+ * afresh, as after a restart.
+ *
+ * Command capture only listens on the default engine, so it cannot be
+ * combined with tenants, any more than clustering or hot standby can.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TenantEngines {
+
+    public static final String DEFAULT_TENANT = "default";
+    public static final String TENANT_HEADER = "X-Tenant-Id";
+
+    static final String LEASE_ATTRIBUTE = TenantEngines.class.getName() + ".lease";
+
+    private static final Pattern TENANT_ID = Pattern.compile("[A-Za-z0-9][A-Za-z0-9_-]{0,63}");
+    private static final String FILE_SUFFIX = ".json.gz";
+
+    // Retained heap per engine, slot and token, measured with Java 17 and compressed oops
+    // (empty engine: timing wheel, caches; slot and token: object plus every index and snapshot entry)
+    private static final long ENGINE_BYTES = 52_000;
+    private static final long SLOT_BYTES = 630;
+    private static final long TOKEN_BYTES = 900;
+
+    private final OPDTokenEngine defaultEngine;
+    private final AutowireCapableBeanFactory beanFactory;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${opd.tenants.enabled:false}")
+    private boolean enabled;
+
+    @Value("${opd.tenants.dir:tenant-data}")
+    private Path dir;
+
+    @Value("${opd.tenants.idle-minutes:30}")
+    private long idleMinutes;
+
+    @Value("${opd.tenants.max-loaded:100}")
+    private int maxLoaded;
+
+    @Value("${opd.tenants.memory-budget-mb:512}")
+    private long memoryBudgetMb;
+
+    @Value("${opd.tenants.sweep-interval-seconds:30}")
+    private long sweepIntervalSeconds;
+
+    @Value("${opd.expiry.enabled:false}")
+    private boolean expiryEnabled;
+
+    @Value("${opd.cluster.enabled:false}")
+    private boolean clusterEnabled;
+
+    @Value("${opd.standby.role:}")
+    private String standbyRole;
+
+    @Value("${opd.capture.enabled:false}")
+    private boolean captureEnabled;
+
+    private final Map<String, TenantState> loaded = new ConcurrentHashMap<>();
+    private final AtomicLong generations = new AtomicLong();
+
+    private ScheduledExecutorService sweeper;
+    private Counter loads;
+    private Counter evictions;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        if (clusterEnabled || !standbyRole.isBlank() || captureEnabled) {
+            throw new IllegalStateException("opd.tenants.enabled cannot be combined with opd.cluster.enabled, "
+                    + "opd.standby.role or opd.capture.enabled");
+        }
+        Files.createDirectories(dir);
+
+        loads = Counter.builder("opd.tenants.loads")
+                .description("Tenants loaded into memory")
+                .register(meterRegistry);
+        evictions = Counter.builder("opd.tenants.evictions")
+                .description("Tenants saved and dropped from memory")
+                .register(meterRegistry);
+        Gauge.builder("opd.tenants.loaded", loaded, Map::size)
+                .description("Tenants in memory besides the default one")
+                .register(meterRegistry);
+        Gauge.builder("opd.tenants.memory.estimated", this, TenantEngines::getLoadedBytes)
+                .description("Estimated heap held by loaded tenants besides the default one")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "tenant-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepIntervalSeconds, sweepIntervalSeconds, TimeUnit.SECONDS);
+        log.info("Multi-tenancy on: state in {}, evicting after {} min idle, at most {} tenants / {} MB loaded",
+                dir.toAbsolutePath(), idleMinutes, maxLoaded, memoryBudgetMb);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (sweeper == null) {
+            return;
+        }
+        sweeper.shutdownNow();
+        for (TenantState state : loaded.values()) {
+            synchronized (state) {
+                try {
+                    save(state);
+                } catch (UncheckedIOException e) {
+                    log.error("Could not save tenant {} on shutdown", state.tenantId, e);
+                }
+            }
+        }
+    }
+
+    public static boolean isValidTenantId(String tenantId) {
+        return tenantId != null && TENANT_ID.matcher(tenantId).matches();
+    }
+
+    /**
+     * Engine of the tenant the current request was made for, or the default
+     * engine outside a tenant-scoped request.
+     */
+    public OPDTokenEngine current() {
+        Lease lease = currentLease();
+        return lease != null ? lease.engine : defaultEngine;
+    }
+
+    /**
+     * Prefix that keeps per-request caches of different tenants apart; empty
+     * for the default tenant. Includes the load generation, so nothing cached
+     * from a tenant before it was evicted matches after it is reloaded.
+     */
+    public String currentScope() {
+        Lease lease = currentLease();
+        return lease != null && lease.state != null ? lease.state.tenantId + "#" + lease.state.generation : "";
+    }
+
+    /**
+     * Pins a tenant in memory, loading it if needed, until the lease is closed.
+     *
+     * @throws IllegalArgumentException for a malformed tenant ID, or any tenant
+     *                                  but the default one while multi-tenancy is off
+     */
+    public Lease acquire(String tenantId) {
+        if (DEFAULT_TENANT.equals(tenantId)) {
+            return new Lease(defaultEngine, null);
+        }
+        if (!enabled) {
+            throw new IllegalArgumentException("Multi-tenancy is disabled (opd.tenants.enabled=false)");
+        }
+        if (!isValidTenantId(tenantId)) {
+            throw new IllegalArgumentException("Invalid tenant ID: " + tenantId);
+        }
+        while (true) {
+            TenantState state = loaded.computeIfAbsent(tenantId, this::load);
+            synchronized (state) {
+                // Lost a race with eviction: load it again
+                if (!state.evicted) {
+                    state.active++;
+                    state.lastAccessMillis = System.currentTimeMillis();
+                    return new Lease(state.engine, state);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs {@code action} on the default engine and on every loaded tenant's,
+     * each pinned while it runs. For background work: notification delivery,
+     * slot expiry.
+     */
+    public void forEachEngine(BiConsumer<String, OPDTokenEngine> action) {
+        action.accept(DEFAULT_TENANT, defaultEngine);
+        for (TenantState state : loaded.values()) {
+            synchronized (state) {
+                if (state.evicted) {
+                    continue;
+                }
+                state.active++;
+            }
+            try {
+                action.accept(state.tenantId, state.engine);
+            } finally {
+                release(state, false);
+            }
+        }
+    }
+
+    /**
+     * Save and drop a tenant now, unless it is in use or has notices pending.
+     *
+     * @return true if the tenant was evicted
+     */
+    public boolean evict(String tenantId) {
+        TenantState state = loaded.get(tenantId);
+        return state != null && tryEvict(state);
+    }
+
+    /**
+     * Every tenant, loaded or only on disk, with its size.
+     */
+    public List<TenantUsage> getUsage() {
+        List<TenantUsage> usage = new ArrayList<>();
+        usage.add(usage(DEFAULT_TENANT, defaultEngine, 0, null));
+        Set<String> seen = new HashSet<>();
+        for (TenantState state : loaded.values()) {
+            seen.add(state.tenantId);
+            usage.add(usage(state.tenantId, state.engine, state.active, state.lastAccessMillis));
+        }
+        for (String tenantId : storedTenantIds()) {
+            if (!seen.contains(tenantId)) {
+                usage.add(TenantUsage.builder()
+                        .tenantId(tenantId)
+                        .loaded(false)
+                        .storedBytes(storedBytes(tenantId))
+                        .build());
+            }
+        }
+        return usage;
+    }
+
+    /**
+     * Estimated heap of all loaded tenants other than the default one.
+     */
+    public long getLoadedBytes() {
+        return loaded.values().stream().mapToLong(state -> estimateBytes(state.engine)).sum();
+    }
+
+    /**
+     * Evict tenants idle for too long, then least recently used ones while
+     * over the tenant count or memory budget, then save the rest that changed
+     * since their last save.
+     */
+    void sweep() {
+        try {
+            long idleBefore = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(idleMinutes);
+            List<TenantState> byLastUse = loaded.values().stream()
+                    .sorted(Comparator.comparingLong(state -> state.lastAccessMillis))
+                    .collect(Collectors.toList());
+            long budget = memoryBudgetMb * 1024 * 1024;
+            for (TenantState state : byLastUse) {
+                boolean overBudget = loaded.size() > maxLoaded || getLoadedBytes() > budget;
+                if (state.lastAccessMillis < idleBefore || overBudget) {
+                    tryEvict(state);
+                }
+            }
+            for (TenantState state : loaded.values()) {
+                saveIfChanged(state);
+            }
+        } catch (RuntimeException e) {
+            log.error("Tenant sweep failed", e);
+        }
+    }
+
+    private void release(TenantState state, boolean touch) {
+        synchronized (state) {
+            state.active--;
+            if (touch) {
+                state.lastAccessMillis = System.currentTimeMillis();
+            }
+        }
+    }
+
+    private boolean tryEvict(TenantState state) {
+        long bytes;
+        synchronized (state) {
+            if (state.evicted || state.active > 0 || state.engine.getPendingNoticeCount() > 0) {
+                return false;
+            }
+            bytes = estimateBytes(state.engine);
+            try {
+                save(state);
+            } catch (UncheckedIOException e) {
+                log.error("Could not save tenant {}; keeping it in memory", state.tenantId, e);
+                return false;
+            }
+            state.evicted = true;
+            loaded.remove(state.tenantId, state);
+        }
+        evictions.increment();
+        log.info("Evicted tenant {} (~{} KB)", state.tenantId, bytes / 1024);
+        return true;
+    }
+
+    private void saveIfChanged(TenantState state) {
+        synchronized (state) {
+            if (state.evicted || state.engine.getCurrentEpoch() == state.savedEpoch) {
+                return;
+            }
+            try {
+                save(state);
+            } catch (UncheckedIOException e) {
+                log.error("Could not save tenant {}; will retry on the next sweep", state.tenantId, e);
+            }
+        }
+    }
+
+    private TenantState load(String tenantId) {
+        OPDTokenEngine engine = beanFactory.createBean(OPDTokenEngine.class);
+        if (expiryEnabled) {
+            engine.setExpiryEnabled(true);
+        }
+        Path file = file(tenantId);
+        if (Files.exists(file)) {
+            TenantImage image;
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+                image = objectMapper.readValue(in, TenantImage.class);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not load tenant " + tenantId + " from " + file, e);
+            }
+            Map<String, List<TimeSlot>> slotsByDoctor = image.getSlots().stream()
+                    .collect(Collectors.groupingBy(TimeSlot::getDoctorId));
+            Map<String, List<Token>> tokensByDoctor = image.getTokens().stream()
+                    .collect(Collectors.groupingBy(Token::getDoctorId));
+            Set<String> doctorIds = new HashSet<>(slotsByDoctor.keySet());
+            doctorIds.addAll(tokensByDoctor.keySet());
+            for (String doctorId : doctorIds) {
+                engine.applyReplicatedState(doctorId, slotsByDoctor.getOrDefault(doctorId, List.of()),
+                        tokensByDoctor.getOrDefault(doctorId, List.of()));
+            }
+            engine.continueTokenNumbering();
+            log.info("Loaded tenant {}: {} slots, {} tokens", tenantId, engine.getSlotCount(), engine.getTokenCount());
+        } else {
+            log.info("Created tenant {}", tenantId);
+        }
+        loads.increment();
+        if (loaded.size() >= maxLoaded) {
+            sweeper.execute(this::sweep);
+        }
+        return new TenantState(tenantId, engine, generations.incrementAndGet());
+    }
+
+    /**
+     * Write the tenant's slots and tokens, replacing the previous file
+     * atomically. Caller holds the state's lock, which does not stop
+     * requests already in flight, so each doctor is written from one
+     * published snapshot: its slots' occupancy always matches its tokens.
+     */
+    private void save(TenantState state) {
+        // Read first: a change published while writing makes the tenant dirty again
+        long epoch = state.engine.getCurrentEpoch();
+        Path file = file(state.tenantId);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        List<TimeSlot> slots = new ArrayList<>();
+        List<Token> tokens = new ArrayList<>();
+        for (String doctorId : state.engine.getDoctorIds()) {
+            DoctorSnapshot snapshot = state.engine.getDoctorSnapshot(doctorId);
+            slots.addAll(snapshot.getSlots());
+            tokens.addAll(snapshot.getTokens());
+        }
+        TenantImage image = new TenantImage(state.tenantId, LocalDateTime.now(), slots, tokens);
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp))) {
+                objectMapper.writeValue(out, image);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not save tenant " + state.tenantId + " to " + file, e);
+        }
+        state.savedEpoch = epoch;
+    }
+
+    private TenantUsage usage(String tenantId, OPDTokenEngine engine, int active, Long lastAccessMillis) {
+        return TenantUsage.builder()
+                .tenantId(tenantId)
+                .loaded(true)
+                .doctors(engine.getDoctorIds().size())
+                .slots(engine.getSlotCount())
+                .tokens(engine.getTokenCount())
+                .pendingNotices(engine.getPendingNoticeCount())
+                .activeRequests(active)
+                .estimatedBytes(estimateBytes(engine))
+                .storedBytes(DEFAULT_TENANT.equals(tenantId) ? null : storedBytes(tenantId))
+                .lastAccessAt(lastAccessMillis != null
+                        ? LocalDateTime.ofInstant(Instant.ofEpochMilli(lastAccessMillis), ZoneId.systemDefault())
+                        : null)
+                .build();
+    }
+
+    private static long estimateBytes(OPDTokenEngine engine) {
+        return ENGINE_BYTES + engine.getSlotCount() * SLOT_BYTES + engine.getTokenCount() * TOKEN_BYTES;
+    }
+
+    private List<String> storedTenantIds() {
+        if (!enabled) {
+            return List.of();
+        }
+        try (var files = Files.list(dir)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(FILE_SUFFIX))
+                    .map(name -> name.substring(0, name.length() - FILE_SUFFIX.length()))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Long storedBytes(String tenantId) {
+        try {
+            Path file = file(tenantId);
+            return Files.exists(file) ? Files.size(file) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Path file(String tenantId) {
+        return dir.resolve(tenantId + FILE_SUFFIX);
+    }
+
+    private static Lease currentLease() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes != null
+                ? (Lease) attributes.getAttribute(LEASE_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST)
+                : null;
+    }
+
+    /**
+     * A tenant's engine, pinned in memory until closed.
+     */
+    public final class Lease implements AutoCloseable {
+        private final OPDTokenEngine engine;
+        private final TenantState state;
+        private boolean closed;
+
+        private Lease(OPDTokenEngine engine, TenantState state) {
+            this.engine = engine;
+            this.state = state;
+        }
+
+        public OPDTokenEngine getEngine() {
+            return engine;
+        }
+
+        @Override
+        public void close() {
+            if (state != null && !closed) {
+                closed = true;
+                release(state, true);
+            }
+        }
+    }
+
+    private static final class TenantState {
+        private final String tenantId;
+        private final OPDTokenEngine engine;
+        private final long generation;
+
+        // Guarded by this
+        private int active;
+        private boolean evicted;
+        // Engine epoch at load or at the last save; anything newer is unsaved
+        private long savedEpoch;
+        private volatile long lastAccessMillis = System.currentTimeMillis();
+
+        private TenantState(String tenantId, OPDTokenEngine engine, long generation) {
+            this.tenantId = tenantId;
+            this.engine = engine;
+            this.generation = generation;
+            this.savedEpoch = engine.getCurrentEpoch();
+        }
+    }
+}
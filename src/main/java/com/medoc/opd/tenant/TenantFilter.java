@@ -0,0 +1,75 @@
+package com.medoc.opd.tenant;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.medoc.opd.config.GlobalExceptionHandler.ErrorResponse;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+/**
+ * Scopes an API request to the tenant named in its {@code X-Tenant-Id}
+ * header: pins that tenant's engine for the duration of the request, where
+ * controllers find it through {@link TenantEngines#current()}. Requests
+ * without the header use the default tenant.
+ *
+ * Runs after admission control, so shed requests never load a tenant.
+ */
+@Component
+@Order(1)
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "opd.tenants.enabled", havingValue = "true")
+public class TenantFilter extends OncePerRequestFilter {
+
+    private final TenantEngines tenants;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String tenantId = request.getHeader(TenantEngines.TENANT_HEADER);
+        if (tenantId == null || tenantId.isBlank() || TenantEngines.DEFAULT_TENANT.equals(tenantId)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (!TenantEngines.isValidTenantId(tenantId)) {
+            writeError(response, "Invalid " + TenantEngines.TENANT_HEADER + ": expected up to 64 letters, digits, "
+                    + "'-' or '_'");
+            return;
+        }
+        String path = request.getRequestURI();
+        if (path.startsWith("/api/schedules") || path.startsWith("/api/events")) {
+            writeError(response, "Schedules and the event stream are only available for the default tenant");
+            return;
+        }
+
+        try (TenantEngines.Lease lease = tenants.acquire(tenantId)) {
+            request.setAttribute(TenantEngines.LEASE_ATTRIBUTE, lease);
+            chain.doFilter(request, response);
+        } finally {
+            request.removeAttribute(TenantEngines.LEASE_ATTRIBUTE);
+        }
+    }
+
+    private void writeError(HttpServletResponse response, String message) throws IOException {
+        response.setStatus(HttpStatus.BAD_REQUEST.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(),
+                new ErrorResponse(HttpStatus.BAD_REQUEST.value(), message, LocalDateTime.now()));
+    }
+}
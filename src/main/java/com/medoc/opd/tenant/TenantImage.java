@@ -0,0 +1,26 @@
+package com.medoc.opd.tenant;
+
+import com.medoc.opd.model.TimeSlot;
+import com.medoc.opd.model.Token;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Saved state of an evicted tenant: every slot and token, as replication
+ * would send them.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TenantImage {
+
+    private String tenantId;
+    private LocalDateTime savedAt;
+    private List<TimeSlot> slots = new ArrayList<>();
+    private List<Token> tokens = new ArrayList<>();
+}
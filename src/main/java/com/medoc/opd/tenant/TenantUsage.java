@@ -0,0 +1,33 @@
+package com.medoc.opd.tenant;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Size of one tenant's state, for capacity planning when consolidating
+ * branches. Heap figures are estimates from per-object sizes, not a heap walk.
+ */
+@Value
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TenantUsage {
+
+    String tenantId;
+    boolean loaded;
+
+    /** In-memory figures; absent for a tenant that is only on disk. */
+    Integer doctors;
+    Integer slots;
+    Integer tokens;
+    Integer pendingNotices;
+    Integer activeRequests;
+    Long estimatedBytes;
+
+    /** Size of the saved state on disk, if any. */
+    Long storedBytes;
+
+    LocalDateTime lastAccessAt;
+}